@@ -0,0 +1,142 @@
+package com.comp.bench;
+
+import com.comp.domain.MediaItem;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.TimeZone;
+import javax.imageio.ImageIO;
+
+/**
+ * Synthetic, deterministic benchmark inputs: photo-like images encoded in memory, EXIF blocks, and
+ * perceptual-hash populations with a controlled share of near-duplicates. Nothing is read from disk.
+ */
+public final class Fixtures {
+
+    private Fixtures() { }
+
+    /** A photo-like scene: a smooth gradient sky with random shapes, so DCT energy is realistic. */
+    public static BufferedImage scene(int width, int height, long seed) {
+        SplittableRandom rnd = new SplittableRandom(seed);
+        BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = img.createGraphics();
+        g.setPaint(new GradientPaint(0, 0, new Color(rnd.nextInt(1 << 24)),
+                                     width, height, new Color(rnd.nextInt(1 << 24))));
+        g.fillRect(0, 0, width, height);
+        for (int i = 0; i < 24; i++) {
+            g.setColor(new Color(rnd.nextInt(1 << 24)));
+            int w = 1 + rnd.nextInt(Math.max(1, width / 3));
+            int h = 1 + rnd.nextInt(Math.max(1, height / 3));
+            if (rnd.nextBoolean()) {
+                g.fillOval(rnd.nextInt(width), rnd.nextInt(height), w, h);
+            } else {
+                g.fillRect(rnd.nextInt(width), rnd.nextInt(height), w, h);
+            }
+        }
+        g.dispose();
+        return img;
+    }
+
+    public static byte[] jpeg(BufferedImage image) {
+        return encode(image, "jpg");
+    }
+
+    public static byte[] png(BufferedImage image) {
+        return encode(image, "png");
+    }
+
+    /** Splices a minimal EXIF block carrying {@code DateTimeOriginal} right after the JPEG SOI marker. */
+    public static byte[] withExifDate(byte[] jpeg, Date original) {
+        SimpleDateFormat fmt = new SimpleDateFormat("yyyy:MM:dd HH:mm:ss");
+        fmt.setTimeZone(TimeZone.getTimeZone("UTC"));
+        byte[] date = (fmt.format(original) + '\0').getBytes(StandardCharsets.US_ASCII);
+
+        // TIFF: header(8) | IFD0 @8: ExifIFDPointer | Exif IFD @26: DateTimeOriginal | string @44
+        ByteBuffer tiff = ByteBuffer.allocate(44 + date.length).order(ByteOrder.LITTLE_ENDIAN);
+        tiff.put((byte) 'I').put((byte) 'I').putShort((short) 42).putInt(8);
+        tiff.putShort((short) 1).putShort((short) 0x8769).putShort((short) 4).putInt(1).putInt(26).putInt(0);
+        tiff.putShort((short) 1).putShort((short) 0x9003).putShort((short) 2).putInt(date.length).putInt(44).putInt(0);
+        tiff.put(date);
+        return spliceApp1(jpeg, tiff.array());
+    }
+
+    /** Embeds {@code thumbnail} (a JPEG) as the EXIF IFD1 thumbnail, the way cameras store a preview. */
+    public static byte[] withExifThumbnail(byte[] jpeg, byte[] thumbnail) {
+        // TIFF: header(8) | IFD0 @8: no entries, next -> 14 | IFD1 @14: offset + length | JPEG @44
+        ByteBuffer tiff = ByteBuffer.allocate(44 + thumbnail.length).order(ByteOrder.LITTLE_ENDIAN);
+        tiff.put((byte) 'I').put((byte) 'I').putShort((short) 42).putInt(8);
+        tiff.putShort((short) 0).putInt(14);
+        tiff.putShort((short) 2);
+        tiff.putShort((short) 0x0201).putShort((short) 4).putInt(1).putInt(44);
+        tiff.putShort((short) 0x0202).putShort((short) 4).putInt(1).putInt(thumbnail.length);
+        tiff.putInt(0).put(thumbnail);
+        return spliceApp1(jpeg, tiff.array());
+    }
+
+    /**
+     * {@code n} non-zero 64-bit hashes; a {@code nearDupShare} fraction are copies of an earlier hash
+     * with up to three bits flipped, the rest uniformly random.
+     */
+    public static long[] hashes(int n, double nearDupShare, long seed) {
+        SplittableRandom rnd = new SplittableRandom(seed);
+        long[] out = new long[n];
+        for (int i = 0; i < n; i++) {
+            long h;
+            if (i > 0 && rnd.nextDouble() < nearDupShare) {
+                h = out[rnd.nextInt(i)];
+                for (int flips = rnd.nextInt(4); flips > 0; flips--) {
+                    h ^= 1L << rnd.nextInt(64);
+                }
+            } else {
+                h = rnd.nextLong();
+            }
+            out[i] = (h == 0) ? 1 : h;
+        }
+        return out;
+    }
+
+    /** Wraps hashes as items with distinct signatures, varied sizes and paths. */
+    public static List<MediaItem> items(long[] hashes, long seed) {
+        SplittableRandom rnd = new SplittableRandom(seed);
+        List<MediaItem> items = new ArrayList<>(hashes.length);
+        for (int i = 0; i < hashes.length; i++) {
+            items.add(new MediaItem(Paths.get("/photos/" + (i % 1000) + "/IMG_" + i + ".jpg"),
+                                    100_000 + rnd.nextInt(5_000_000), 1L, null, hashes[i], i + 1L));
+        }
+        return items;
+    }
+
+    private static byte[] spliceApp1(byte[] jpeg, byte[] tiff) {
+        byte[] header = "Exif\0\0".getBytes(StandardCharsets.US_ASCII);
+        int length = 2 + header.length + tiff.length;
+        ByteBuffer out = ByteBuffer.allocate(jpeg.length + 2 + length);
+        out.put(jpeg, 0, 2);                                   // SOI
+        out.put((byte) 0xFF).put((byte) 0xE1).putShort((short) length);
+        out.put(header).put(tiff);
+        out.put(jpeg, 2, jpeg.length - 2);
+        return out.array();
+    }
+
+    private static byte[] encode(BufferedImage image, String format) {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageIO.write(image, format, out);
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.comp.cache;
+
+import com.comp.domain.ScannedFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Warm-rerun startup and compaction of the persisted caches. {@code open*} measures open + close of
+ * an unchanged cache (nothing rewritten); {@code compact*} looks every file up but one tenth, then
+ * closes after a complete scan so the missing tenth is pruned and the file rewritten.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class FileHashCacheBenchmark {
+
+    private static final Path ROOT = Path.of("/photos");
+
+    @Param({"100000", "1000000"})
+    public int entries;
+
+    private Path dir;
+    private Path tsv;
+    private Path binary;
+
+    @Setup(Level.Trial)
+    public void createCaches() throws IOException {
+        dir = Files.createTempDirectory("phototidy-bench");
+        tsv = dir.resolve("cache.tsv");
+        binary = dir.resolve("cache.bin");
+        try (FileHashCache cache = new FileHashCache(tsv)) {
+            for (int i = 0; i < entries; i++) {
+                cache.put(file(i), new CacheEntry(i, i, CacheEntry.NO_EXIF, i * 31L, i * 17L));
+            }
+        }
+    }
+
+    /** Compaction benchmarks rewrite the files, so each iteration starts from a fresh copy. */
+    @Setup(Level.Iteration)
+    public void restore() throws IOException {
+        Path pristine = dir.resolve("pristine.tsv");
+        if (!Files.exists(pristine)) {
+            Files.copy(tsv, pristine);
+        }
+        Files.copy(pristine, tsv, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+        BinaryHashCache.migrate(tsv, binary);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteCaches() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path p : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(p);
+            }
+        }
+    }
+
+    @Benchmark
+    public void openTsv() throws IOException {
+        new FileHashCache(tsv).close();
+    }
+
+    @Benchmark
+    public void openBinary() throws IOException {
+        new BinaryHashCache(binary).close();
+    }
+
+    @Benchmark
+    public void compactTsv() throws IOException {
+        try (FileHashCache cache = new FileHashCache(tsv)) {
+            lookUpAllButATenth(cache);
+        }
+    }
+
+    @Benchmark
+    public void compactBinary() throws IOException {
+        try (BinaryHashCache cache = new BinaryHashCache(binary)) {
+            lookUpAllButATenth(cache);
+        }
+    }
+
+    private void lookUpAllButATenth(HashCache cache) {
+        for (int i = 0; i < entries; i++) {
+            if (i % 10 != 0) {
+                cache.get(file(i));
+            }
+        }
+        cache.markScanComplete(ROOT);
+    }
+
+    private static ScannedFile file(int i) {
+        return new ScannedFile(ROOT.resolve((i % 1000) + "/IMG_" + i + ".jpg"), i, i);
+    }
+}
@@ -0,0 +1,154 @@
+package com.comp.concurrent;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Streaming executor throughput (items/ms) for tiny items, where handoff overhead dominates (a warm
+ * rerun's cache hits), and for items burning a fixed slice of CPU (a cheap decode).
+ * <p>
+ * The {@code polling*} benchmarks run the previous consumer loop (a 50 ms timed poll plus a
+ * "still producing" flag) for comparison, and count its empty wake-ups: polls that timed out with
+ * no item, each one a worker waking for nothing, plus up to 50 ms of tail per batch. The current
+ * executor hands items over in chunks sized to their measured cost, so tiny items cost one
+ * work-stealing task per few thousand rather than a queue handoff each.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParallelBenchmark {
+
+    private static final int ITEMS = 100_000;
+
+    @Param({"4", "16"})
+    public int threads;
+
+    /** Empty wake-ups of the polling consumers, summed over the iteration. */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Wakeups {
+        public long emptyWakeups;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ITEMS)
+    public List<Integer> mapStreamingTiny() throws InterruptedException {
+        return Parallel.mapStreaming(ParallelBenchmark::produce, threads, x -> x + 1);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ITEMS)
+    public List<Integer> pollingTiny(Wakeups wakeups) throws InterruptedException {
+        return polling(ParallelBenchmark::produce, threads, x -> x + 1, wakeups);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ITEMS / 100)
+    public List<Integer> mapStreamingSmallWork() throws InterruptedException {
+        return Parallel.mapStreaming(ParallelBenchmark::produceFew, threads, ParallelBenchmark::smallWork);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ITEMS / 100)
+    public List<Integer> pollingSmallWork(Wakeups wakeups) throws InterruptedException {
+        return polling(ParallelBenchmark::produceFew, threads, ParallelBenchmark::smallWork, wakeups);
+    }
+
+    private static void produce(Parallel.Sink<Integer> sink) throws InterruptedException {
+        for (int i = 0; i < ITEMS; i++) {
+            sink.accept(i);
+        }
+    }
+
+    private static void produceFew(Parallel.Sink<Integer> sink) throws InterruptedException {
+        for (int i = 0; i < ITEMS / 100; i++) {
+            sink.accept(i);
+        }
+    }
+
+    private static Integer smallWork(Integer x) {
+        Blackhole.consumeCPU(20_000);
+        return x;
+    }
+
+    /** The previous {@code mapStreaming} consumer loop, instrumented to count timed-out polls. */
+    private static <I, O> List<O> polling(Parallel.Producer<I> producer, int threads,
+                                          Parallel.ThrowingMapper<I, O> mapper,
+                                          Wakeups wakeups) throws InterruptedException {
+        final int workers = Math.max(1, threads);
+        final BlockingQueue<I> queue = new ArrayBlockingQueue<>(Math.max(64, workers * 4));
+        final ConcurrentLinkedQueue<O> results = new ConcurrentLinkedQueue<>();
+        final AtomicBoolean producing = new AtomicBoolean(true);
+        final AtomicLong empty = new AtomicLong();
+
+        final ExecutorService exec = Executors.newFixedThreadPool(workers + 1);
+        try {
+            exec.submit(() -> {
+                try {
+                    producer.produce(queue::put);
+                } catch (Exception ignored) {
+                    // benchmark producers do not fail
+                } finally {
+                    producing.set(false);
+                }
+            });
+            final List<Future<?>> consumers = new ArrayList<>(workers);
+            for (int w = 0; w < workers; w++) {
+                consumers.add(exec.submit(() -> {
+                    while (true) {
+                        final I item = queue.poll(50, TimeUnit.MILLISECONDS);
+                        if (item == null) {
+                            empty.incrementAndGet();
+                            if (!producing.get() && queue.isEmpty()) {
+                                return null;
+                            }
+                            continue;
+                        }
+                        O out = mapper.apply(item);
+                        if (out != null) {
+                            results.add(out);
+                        }
+                    }
+                }));
+            }
+            for (final Future<?> f : consumers) {
+                try {
+                    f.get();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+        } finally {
+            exec.shutdownNow();
+        }
+        wakeups.emptyWakeups += empty.get();
+        return new ArrayList<>(results);
+    }
+}
@@ -0,0 +1,50 @@
+package com.comp.dedup;
+
+import com.comp.bench.Fixtures;
+import com.comp.domain.MediaItem;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole-batch deduplication at library scale: uniformly random hashes with 10% near-duplicates.
+ * The 10M case needs a large heap (forked with -Xmx12g); narrow it with {@code -p items=...}.
+ * {@code threads} sets the query workers, e.g. {@code -p threads=1,8}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx12g")
+public class MihDeduplicatorBenchmark {
+
+    @Param({"10000", "100000", "1000000", "10000000"})
+    public int items;
+
+    @Param({"1"})
+    public int threads;
+
+    private List<MediaItem> batch;
+
+    @Setup
+    public void setUp() {
+        batch = Fixtures.items(Fixtures.hashes(items, 0.1, 11), 12);
+    }
+
+    @Benchmark
+    public DeduplicationResult deduplicate() {
+        return new MihDeduplicator(threads).deduplicate(batch);
+    }
+}
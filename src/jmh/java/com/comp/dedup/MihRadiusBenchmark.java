@@ -0,0 +1,85 @@
+package com.comp.dedup;
+
+import com.comp.bench.Fixtures;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the multi-index and finding every pair within {@code radius} over bare hashes (10%
+ * near-duplicates), on one thread. {@code CLASSIC} splits hashes into {@code radius + 1} segments
+ * and looks each one up exactly; {@code PLANNED} is the layout {@link MihLayout#plan} picks for the
+ * radius and the number of hashes. The layout, candidates compared per hash and pairs found are
+ * printed once per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class MihRadiusBenchmark {
+
+    public enum Plan { CLASSIC, PLANNED }
+
+    @Param({"2", "5", "8", "10"})
+    public int radius;
+
+    @Param({"100000", "1000000"})
+    public int items;
+
+    @Param({"CLASSIC", "PLANNED"})
+    public Plan plan;
+
+    private long[] hashes;
+    private MihLayout layout;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        hashes = Fixtures.hashes(items, 0.1, 11);
+        layout = (plan == Plan.CLASSIC) ? new MihLayout(radius, Math.min(16, radius + 1)) : MihLayout.plan(radius, items);
+        final long[] counts = query(layout, hashes);
+        System.out.printf("%nradius %d, %s over %,d hashes (%s): %.1f candidates/hash, %,d pairs%n",
+                          radius, plan, items, layout, (double) counts[1] / items, counts[0]);
+    }
+
+    @Benchmark
+    public long buildAndQuery() {
+        return query(layout, hashes)[0];
+    }
+
+    /** Pairs within the radius, and candidates compared. */
+    private long[] query(MihLayout mih, long[] hashes) {
+        final SegmentTables tables = new SegmentTables(mih, hashes);
+        long pairs = 0;
+        long candidates = 0;
+        for (int i = 0; i < hashes.length; i++) {
+            for (int seg = 0; seg < mih.segments(); seg++) {
+                final long value = mih.segment(hashes[i], seg);
+                final int[] ids = tables.ids(seg);
+                for (final long mask : mih.masks(seg)) {
+                    final int start = tables.firstAfter(seg, value ^ mask, i);
+                    final int end = tables.end(seg, value ^ mask);
+                    for (int k = start; k < end; k++) {
+                        if (Long.bitCount(hashes[i] ^ hashes[ids[k]]) <= radius) {
+                            pairs++;
+                        }
+                    }
+                    candidates += end - start;
+                }
+            }
+        }
+        return new long[] {pairs, candidates};
+    }
+}
@@ -0,0 +1,127 @@
+package com.comp.dedup;
+
+import com.comp.bench.Fixtures;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The multi-index alone, over bare hashes (10% near-duplicates): building it, and building it plus
+ * finding every pair within the radius. {@code BOXED} is the former layout ({@code HashMap<Long,
+ * List<Integer>>} per segment, every bucket scanned whole); {@code PRIMITIVE} is {@link SegmentTables}.
+ * The heap each layout retains is printed once per trial. The 10M boxed case needs about 4 GB. Both
+ * use the classic six-segment split for the default radius; {@code MihRadiusBenchmark} covers the
+ * planned layouts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SegmentTablesBenchmark {
+
+    public enum Layout { BOXED, PRIMITIVE }
+
+    private static final int RADIUS = MihDeduplicator.DEFAULT_RADIUS;
+    private static final MihLayout MIH = new MihLayout(RADIUS, RADIUS + 1);
+    private static final int SEGMENTS = MIH.segments();
+
+    @Param({"1000000", "10000000"})
+    public int items;
+
+    @Param({"BOXED", "PRIMITIVE"})
+    public Layout layout;
+
+    private long[] hashes;
+    private Object measured;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        hashes = Fixtures.hashes(items, 0.1, 11);
+        final long before = usedHeap();
+        measured = build();
+        final long retained = usedHeap() - before;
+        System.out.printf("%n%s index over %,d hashes retains %,d B (%.1f B/hash)%n",
+                          layout, items, retained, (double) retained / items);
+        measured = null;
+    }
+
+    @Benchmark
+    public Object build() {
+        return (layout == Layout.BOXED) ? boxedIndex(hashes) : new SegmentTables(MIH, hashes);
+    }
+
+    @Benchmark
+    public long buildAndQuery() {
+        return (layout == Layout.BOXED) ? boxedPairs(hashes) : primitivePairs(hashes);
+    }
+
+    private static long primitivePairs(long[] hashes) {
+        final SegmentTables tables = new SegmentTables(MIH, hashes);
+        long pairs = 0;
+        for (int i = 0; i < hashes.length; i++) {
+            for (int seg = 0; seg < SEGMENTS; seg++) {
+                final long value = MIH.segment(hashes[i], seg);
+                final int[] ids = tables.ids(seg);
+                for (int k = tables.firstAfter(seg, value, i), end = tables.end(seg, value); k < end; k++) {
+                    if (Long.bitCount(hashes[i] ^ hashes[ids[k]]) <= RADIUS) {
+                        pairs++;
+                    }
+                }
+            }
+        }
+        return pairs;
+    }
+
+    private static long boxedPairs(long[] hashes) {
+        final List<Map<Long, List<Integer>>> index = boxedIndex(hashes);
+        long pairs = 0;
+        for (int i = 0; i < hashes.length; i++) {
+            for (int seg = 0; seg < SEGMENTS; seg++) {
+                for (int j : index.get(seg).getOrDefault(MIH.segment(hashes[i], seg), List.of())) {
+                    if (j > i && Long.bitCount(hashes[i] ^ hashes[j]) <= RADIUS) {
+                        pairs++;
+                    }
+                }
+            }
+        }
+        return pairs;
+    }
+
+    private static List<Map<Long, List<Integer>>> boxedIndex(long[] hashes) {
+        final List<Map<Long, List<Integer>>> index = new ArrayList<>(SEGMENTS);
+        for (int seg = 0; seg < SEGMENTS; seg++) {
+            index.add(new HashMap<>());
+        }
+        for (int i = 0; i < hashes.length; i++) {
+            for (int seg = 0; seg < SEGMENTS; seg++) {
+                index.get(seg).computeIfAbsent(MIH.segment(hashes[i], seg), k -> new ArrayList<>()).add(i);
+            }
+        }
+        return index;
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,39 @@
+package com.comp.media;
+
+import com.comp.bench.Fixtures;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Date;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/** Metadata parse cost for a camera-like JPEG with an EXIF capture date. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CaptureDateReaderBenchmark {
+
+    private byte[] jpeg;
+
+    @Setup
+    public void setUp() {
+        jpeg = Fixtures.withExifDate(Fixtures.jpeg(Fixtures.scene(1024, 768, 3)), new Date(1580728964000L));
+    }
+
+    @Benchmark
+    public Optional<Date> readDate() throws Exception {
+        return CaptureDateReader.readDate(jpeg);
+    }
+}
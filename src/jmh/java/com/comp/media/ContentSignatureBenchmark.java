@@ -0,0 +1,42 @@
+package com.comp.media;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/** Cost of the head+tail content fingerprint; flat beyond 128 KB since only the samples are read. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContentSignatureBenchmark {
+
+    @Param({"65536", "4194304"})
+    public int bytes;
+
+    private byte[] content;
+
+    @Setup
+    public void setUp() {
+        content = new byte[bytes];
+        new SplittableRandom(1).nextBytes(content);
+    }
+
+    @Benchmark
+    public long of() {
+        return ContentSignature.of(content);
+    }
+}
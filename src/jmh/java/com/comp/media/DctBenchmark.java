@@ -0,0 +1,49 @@
+package com.comp.media;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** The low-frequency DCT alone: separable transform versus the direct 2-D reference summation. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DctBenchmark {
+
+    private final double[] pixels = new double[32 * 32];
+    private final double[] partial = new double[32 * 8];
+    private final double[] out = new double[8 * 8];
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        for (int k = 0; k < pixels.length; k++) {
+            pixels[k] = random.nextInt(256);
+        }
+    }
+
+    @Benchmark
+    public double[] separable() {
+        ImageHasher.lowFrequencyDct(pixels, partial, out);
+        return out;
+    }
+
+    @Benchmark
+    public double[] reference() {
+        ImageHasher.lowFrequencyDctReference(pixels, out);
+        return out;
+    }
+}
@@ -0,0 +1,89 @@
+package com.comp.media;
+
+import com.comp.bench.Fixtures;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+/**
+ * Compatibility report for {@link ImageHasher.Downscale}: hashes a corpus with both paths and prints
+ * how many hash bits differ, plus the per-image time of each path. With a directory argument the
+ * corpus is every JPEG/PNG beneath it; otherwise a synthetic corpus is generated.
+ * <pre>
+ *   mvn -Pbenchmarks test-compile exec:exec -Dbench.main=com.comp.media.DownscaleReport -Djmh.args=/photos
+ * </pre>
+ */
+public final class DownscaleReport {
+
+    private static final int SYNTHETIC_IMAGES = 400;
+
+    private DownscaleReport() { }
+
+    public static void main(String[] args) throws IOException {
+        List<byte[]> corpus = args.length > 0 ? load(Path.of(args[0])) : synthetic();
+        int[] histogram = new int[65];
+        long java2dNanos = 0;
+        long directNanos = 0;
+        for (int round = 0; round < 2; round++) { // first round warms up both paths
+            java2dNanos = 0;
+            directNanos = 0;
+            histogram = new int[65];
+            for (byte[] bytes : corpus) {
+                long t0 = System.nanoTime();
+                long legacy = ImageHasher.fromBytes(bytes, ImageHasher.Downscale.JAVA2D);
+                long t1 = System.nanoTime();
+                long direct = ImageHasher.fromBytes(bytes, ImageHasher.Downscale.DIRECT);
+                long t2 = System.nanoTime();
+                java2dNanos += t1 - t0;
+                directNanos += t2 - t1;
+                histogram[ImageHasher.hammingDistance(legacy, direct)]++;
+            }
+        }
+
+        int n = corpus.size();
+        long totalBits = 0;
+        int withinRadius = 0;
+        System.out.printf("Images: %d%n%nBits differing  Images%n", n);
+        for (int d = 0; d <= 64; d++) {
+            totalBits += (long) d * histogram[d];
+            withinRadius += d <= 5 ? histogram[d] : 0;
+            if (histogram[d] > 0) {
+                System.out.printf("%14d  %6d%n", d, histogram[d]);
+            }
+        }
+        System.out.printf(Locale.ROOT, "%nMean bits differing: %.2f; within the near-duplicate radius (<=5): %.1f%%%n",
+                          (double) totalBits / n, 100.0 * withinRadius / n);
+        System.out.printf(Locale.ROOT, "fromBytes per image: JAVA2D %.0f us, DIRECT %.0f us%n",
+                          java2dNanos / 1e3 / n, directNanos / 1e3 / n);
+    }
+
+    private static List<byte[]> synthetic() {
+        List<byte[]> corpus = new ArrayList<>();
+        for (int i = 0; i < SYNTHETIC_IMAGES; i++) {
+            int width = 320 + (i % 7) * 260;
+            int height = 240 + (i % 5) * 210;
+            BufferedImage scene = Fixtures.scene(width, height, i);
+            corpus.add(i % 4 == 3 ? Fixtures.png(scene) : Fixtures.jpeg(scene));
+        }
+        return corpus;
+    }
+
+    private static List<byte[]> load(Path root) throws IOException {
+        List<byte[]> corpus = new ArrayList<>();
+        try (Stream<Path> files = Files.walk(root)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+                if (Files.isRegularFile(file) && name.matches(".*\\.(jpe?g|png)")) {
+                    corpus.add(Files.readAllBytes(file));
+                }
+            }
+        }
+        return corpus;
+    }
+}
@@ -0,0 +1,64 @@
+package com.comp.media;
+
+import com.comp.bench.Fixtures;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-image cost of each perceptual-hash source on a camera-like JPEG (with a 160x120 EXIF
+ * thumbnail): subsampled full decode, DC-only decode, and the embedded thumbnail.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HashSourceBenchmark {
+
+    @Param({"1024x768", "4000x3000"})
+    public String size;
+
+    private byte[] jpeg;
+
+    @Setup
+    public void setUp() {
+        String[] wh = size.split("x");
+        int width = Integer.parseInt(wh[0]);
+        int height = Integer.parseInt(wh[1]);
+        BufferedImage scene = Fixtures.scene(width, height, 42);
+        BufferedImage thumbnail = new BufferedImage(160, 160 * height / width, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = thumbnail.createGraphics();
+        g.drawImage(scene, 0, 0, thumbnail.getWidth(), thumbnail.getHeight(), null);
+        g.dispose();
+        jpeg = Fixtures.withExifThumbnail(Fixtures.jpeg(scene), Fixtures.jpeg(thumbnail));
+    }
+
+    @Benchmark
+    public long decoded() {
+        return ImageHasher.fromBytes(jpeg, ImageHasher.Downscale.DIRECT);
+    }
+
+    @Benchmark
+    public long dcOnly() {
+        return ImageHasher.fromJpegDc(jpeg);
+    }
+
+    @Benchmark
+    public long thumbnail() {
+        return ImageHasher.fromThumbnail(jpeg, ImageHasher.Downscale.DIRECT);
+    }
+}
@@ -0,0 +1,58 @@
+package com.comp.media;
+
+import com.comp.bench.Fixtures;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/** Per-image cost of the perceptual hash: full decode path and the hash of an already decoded image. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImageHasherBenchmark {
+
+    @Param({"1024x768", "4000x3000"})
+    public String size;
+
+    private byte[] jpeg;
+    private byte[] png;
+    private BufferedImage decoded;
+
+    @Setup
+    public void setUp() {
+        String[] wh = size.split("x");
+        BufferedImage scene = Fixtures.scene(Integer.parseInt(wh[0]), Integer.parseInt(wh[1]), 42);
+        jpeg = Fixtures.jpeg(scene);
+        png = Fixtures.png(scene);
+        decoded = Fixtures.scene(512, 384, 7);
+    }
+
+    @Benchmark
+    public long fromBytesJpeg() {
+        return ImageHasher.fromBytes(jpeg);
+    }
+
+    @Benchmark
+    public long fromBytesPng() {
+        return ImageHasher.fromBytes(png);
+    }
+
+    @Benchmark
+    public long hashDecoded() {
+        return ImageHasher.hash(decoded);
+    }
+}
@@ -0,0 +1,110 @@
+package com.comp.pipeline;
+
+import com.comp.app.Options;
+import com.comp.dedup.DeduplicationResult;
+import com.comp.domain.MediaItem;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Files copied per second by {@link FileMover} in copy mode with {@code threads} filing workers,
+ * {@value #FILES} files of {@code sizeKb} spread over twelve month directories, copied in
+ * {@code chunkKb} chunks and forced to disk per {@code durability}. Every invocation
+ * overwrites the previous one's copies ({@code policy.duplicate=OVERWRITE}). Multiply by the file
+ * size for MB/s. Point {@code -Dbench.dst} at another disk or a NAS mount to measure that target;
+ * the default is a temp directory beside the sources.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class FileMoverBenchmark {
+
+    private static final int FILES = 96;
+
+    @Param({"1", "4", "16"})
+    public int threads;
+
+    @Param({"4096"})
+    public int sizeKb;
+
+    @Param({"8192"})
+    public int chunkKb;
+
+    @Param({"NONE"})
+    public Options.Durability durability;
+
+    private Path src;
+    private Path dst;
+    private Options opts;
+    private DeduplicationResult batch;
+
+    @Setup
+    public void setUp() throws IOException {
+        src = Files.createTempDirectory("mover-src");
+        final String target = System.getProperty("bench.dst");
+        dst = (target != null) ? Files.createTempDirectory(Path.of(target), "mover-dst")
+                               : Files.createTempDirectory("mover-dst");
+        final Random random = new Random(7);
+        final byte[] bytes = new byte[sizeKb * 1024];
+        final List<MediaItem> keepers = new ArrayList<>(FILES);
+        for (int i = 0; i < FILES; i++) {
+            random.nextBytes(bytes);
+            final Path file = src.resolve("img" + i + ".jpg");
+            Files.write(file, bytes);
+            final Date taken = new Date(1_577_836_800_000L + (i % 12) * 31L * 86_400_000L + i * 1000L);
+            keepers.add(new MediaItem(file, bytes.length, 0, taken, 0, 0));
+        }
+        batch = new DeduplicationResult(keepers, List.of());
+
+        opts = new Options();
+        opts.dstBaseDir = dst.toString();
+        opts.dryRun = false;
+        opts.moveFiles = false;
+        opts.duplicateOpt = Options.DuplicateOpt.OVERWRITE;
+        opts.fileThreads = threads;
+        opts.copyChunkBytes = chunkKb * 1024L;
+        opts.durability = durability;
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        for (final Path root : List.of(src, dst)) {
+            try (Stream<Path> files = Files.walk(root)) {
+                for (final Path p : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.deleteIfExists(p);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FILES)
+    public int copy() {
+        return new FileMover(opts).move(batch, n -> { });
+    }
+}
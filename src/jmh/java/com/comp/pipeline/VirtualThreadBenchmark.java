@@ -0,0 +1,101 @@
+package com.comp.pipeline;
+
+import com.comp.bench.Fixtures;
+import com.comp.concurrent.ByteBudget;
+import com.comp.concurrent.Parallel;
+import com.comp.domain.MediaItem;
+import com.comp.domain.ScannedFile;
+import com.comp.media.ImageHasher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Files hashed per second by {@link MediaHasher} on platform vs virtual threads, when every file
+ * open first waits {@code latencyMs} — a stand-in for a NAS/SMB/cloud round trip on top of a local
+ * temp directory. Platform mode runs {@code concurrency} OS threads that each read and decode;
+ * virtual mode keeps {@code concurrency} reads in flight with decoding gated at the core count, as
+ * {@code run.parser.threads=VIRTUAL} does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class VirtualThreadBenchmark {
+
+    private static final int FILES = 256;
+
+    @Param({"PLATFORM", "VIRTUAL"})
+    public String threads;
+
+    @Param({"8", "256"})
+    public int concurrency;
+
+    @Param({"0", "20"})
+    public int latencyMs;
+
+    private Path dir;
+    private List<ScannedFile> files;
+    private MediaHasher hasher;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("vt-bench");
+        files = new ArrayList<>(FILES);
+        for (int i = 0; i < FILES; i++) {
+            Path file = dir.resolve("img" + i + ".jpg");
+            Files.write(file, Fixtures.jpeg(Fixtures.scene(1024, 768, i)));
+            files.add(new ScannedFile(file, Files.size(file), 0));
+        }
+        Semaphore cpu = threads.equals("VIRTUAL") ? new Semaphore(Runtime.getRuntime().availableProcessors()) : null;
+        hasher = new MediaHasher(ImageHasher.Downscale.DIRECT, false, MediaHasher.DEFAULT_BUFFER_BYTES,
+                                 new ByteBudget(0), cpu);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        for (ScannedFile f : files) {
+            Files.deleteIfExists(f.path());
+        }
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FILES)
+    public List<MediaItem> hashAll() throws InterruptedException {
+        Parallel.Producer<ScannedFile> producer = sink -> {
+            for (ScannedFile f : files) {
+                sink.accept(f);
+            }
+        };
+        Parallel.ThrowingMapper<ScannedFile, MediaItem> slowOpen = file -> {
+            if (latencyMs > 0) {
+                Thread.sleep(latencyMs);
+            }
+            return hasher.hash(file);
+        };
+        return threads.equals("VIRTUAL")
+                ? Parallel.mapStreamingVirtual(producer, concurrency, slowOpen)
+                : Parallel.mapStreaming(producer, concurrency, slowOpen);
+    }
+}
@@ -1,5 +1,9 @@
 package com.comp.app;
 
+import com.comp.dedup.MihDeduplicator;
+import com.comp.media.ImageHasher;
+import com.comp.pipeline.CopyEngine;
+import com.comp.pipeline.MediaHasher;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
@@ -19,8 +23,29 @@ public class Options {
     public boolean dryRun;
     public boolean moveFiles;
     public int parserCounts;
+    public ThreadMode threadMode;
+    public int readerCounts;
+    public int hasherCounts;
+    public int scanThreads;
+    public boolean incrementalScan;
+    public boolean incrementalDedup;
+    public int dedupRadius;
+    public boolean compactDedup;
+    public int fileThreads;
+    public long copyChunkBytes;
+    public long copyBytesPerSecond;
+    public int copySyncFiles;
+    public Durability durability;
+    public boolean watch;
+    public int watchDebounceMillis;
     public boolean useCache;
     public String cacheFile;
+    public CacheFormat cacheFormat;
+    public CacheIndex cacheIndex;
+    public ImageHasher.Downscale hashDownscale;
+    public HashSourceMode hashSource;
+    public int readBufferBytes;
+    public long inflightBytes;
 
     public String srcDir;
     public String dstBaseDir;
@@ -56,8 +81,36 @@ public class Options {
         opts.dryRun = parseBool(prop, "run.mode.drymode", opts.dryRun);
         opts.moveFiles = parseBool(prop, "run.mode.filemove", opts.moveFiles);
         opts.parserCounts = parseInt(prop, "run.parser.count", opts.parserCounts);
+        opts.threadMode = parseEnum(prop, "run.parser.threads", ThreadMode.class, opts.threadMode);
+        opts.readerCounts = parseInt(prop, "run.parser.read.count", opts.readerCounts);
+        opts.hasherCounts = parseInt(prop, "run.parser.hash.count", opts.hasherCounts);
+        opts.scanThreads = parseInt(prop, "run.scan.threads", opts.scanThreads);
+        opts.incrementalScan = parseBool(prop, "run.scan.incremental", opts.incrementalScan);
+        opts.incrementalDedup = parseBool(prop, "run.dedup.incremental", opts.incrementalDedup);
+        final int radius = parseInt(prop, "run.dedup.radius", opts.dedupRadius);
+        if (radius >= 0 && radius <= MihDeduplicator.MAX_RADIUS) {
+            opts.dedupRadius = radius;
+        }
+        opts.compactDedup = parseBool(prop, "run.dedup.compact", opts.compactDedup);
+        opts.fileThreads = parseInt(prop, "run.file.threads", opts.fileThreads);
+        final long chunk = parseSize(prop, "run.copy.chunk", opts.copyChunkBytes);
+        if (chunk > 0) {
+            opts.copyChunkBytes = chunk;
+        }
+        opts.copyBytesPerSecond = parseSize(prop, "run.copy.bandwidth", opts.copyBytesPerSecond);
+        opts.copySyncFiles = Math.max(0, parseInt(prop, "run.copy.sync", opts.copySyncFiles));
+        opts.durability = parseEnum(prop, "run.file.durability", Durability.class, opts.durability);
+        opts.watch = parseBool(prop, "run.watch.enabled", opts.watch);
+        opts.watchDebounceMillis = parseInt(prop, "run.watch.debounce", opts.watchDebounceMillis);
         opts.useCache = parseBool(prop, "run.cache.enabled", opts.useCache);
         opts.cacheFile = prop.getProperty("run.cache.file", opts.cacheFile);
+        opts.cacheFormat = parseEnum(prop, "run.cache.format", CacheFormat.class, opts.cacheFormat);
+        opts.cacheIndex = parseEnum(prop, "run.cache.index", CacheIndex.class, opts.cacheIndex);
+        opts.hashDownscale = parseEnum(prop, "run.hash.downscale", ImageHasher.Downscale.class, opts.hashDownscale);
+        opts.hashSource = parseEnum(prop, "run.hash.source", HashSourceMode.class, opts.hashSource);
+        opts.readBufferBytes = (int) Math.min(Integer.MAX_VALUE,
+                                              parseSize(prop, "run.memory.buffer", opts.readBufferBytes));
+        opts.inflightBytes = parseSize(prop, "run.memory.inflight", opts.inflightBytes);
 
         opts.noExifDir = parseEnum(prop, "policy.noexif", NoExifOpt.class, opts.noExifDir);
         opts.noExifDirName = prop.getProperty("policy.noexif.dir", opts.noExifDirName);
@@ -84,6 +137,27 @@ public class Options {
         }
     }
 
+    /** A byte count with an optional {@code k}, {@code m} or {@code g} suffix (binary units), e.g. {@code 16m}. */
+    private static long parseSize(final Properties prop, final String key, final long fallback) {
+        final String v = prop.getProperty(key);
+        if (v == null || v.isBlank()) {
+            return fallback;
+        }
+        final String s = v.trim().toLowerCase();
+        final int shift = switch (s.charAt(s.length() - 1)) {
+            case 'k' -> 10;
+            case 'm' -> 20;
+            case 'g' -> 30;
+            default -> 0;
+        };
+        try {
+            final long n = Long.parseLong(shift == 0 ? s : s.substring(0, s.length() - 1).trim());
+            return (n < 0) ? fallback : n << shift;
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
     private static <E extends Enum<E>> E parseEnum(final Properties prop, final String key,
                                                    final Class<E> type, final E fallback) {
         final String v = prop.getProperty(key);
@@ -112,11 +186,32 @@ public class Options {
     }
 
     private void initDefaultOpts() {
-        parserCounts = 0;   // 0 = auto (all available cores)
+        parserCounts = 0;   // 0 = auto (all available cores; 256 reads in flight on virtual threads)
+        threadMode = ThreadMode.PLATFORM;
+        readerCounts = 0;   // STAGED only; 0 = auto (all available cores)
+        hasherCounts = 0;   // STAGED only; 0 = auto (all available cores)
+        scanThreads = 1;    // 1 = walk on one thread; 0 = auto (all available cores)
+        incrementalScan = false;
+        incrementalDedup = false;  // true = persist the MIH index next to the cache file (.mih)
+        dedupRadius = MihDeduplicator.DEFAULT_RADIUS;  // max differing bits of 64 for near-duplicates
+        compactDedup = false;  // true = dedup columns read back from the BINARY cache, not MediaItems
+        fileThreads = 1;    // 1 = file on one thread; 0 = auto (all available cores)
+        copyChunkBytes = CopyEngine.DEFAULT_CHUNK_BYTES;
+        copyBytesPerSecond = 0;  // 0 = unlimited
+        copySyncFiles = 0;  // 0 = leave write-back to the OS; N = force copies to disk N files at a time
+        durability = Durability.NONE;
+        watch = false;
+        watchDebounceMillis = 2000;
         dryRun = true;
         moveFiles = false;
         useCache = true;
         cacheFile = ".phototidy-cache.tsv";
+        cacheFormat = CacheFormat.TSV;
+        cacheIndex = CacheIndex.MAP;
+        hashDownscale = ImageHasher.Downscale.JAVA2D;
+        hashSource = HashSourceMode.DECODE;
+        readBufferBytes = MediaHasher.DEFAULT_BUFFER_BYTES;
+        inflightBytes = 0;  // 0 = auto (a quarter of the max heap)
         noExifDir = NoExifOpt.MODIFIED_DATE;
         noExifDirName = "noExif";
         duplicatesDirName = "duplicates";
@@ -145,6 +240,33 @@ public class Options {
         STOP            // stop processing
     }
 
+    public enum ThreadMode {
+        PLATFORM,   // run.parser.count OS threads, each reading and decoding
+        VIRTUAL,    // a virtual thread per file, run.parser.count reads in flight; decoding capped at the core count
+        STAGED      // a read pool and a decode+hash pool joined by a bounded queue, sized separately
+    }
+
+    public enum CacheFormat {
+        TSV,        // plain text, parsed fully on startup
+        BINARY      // fixed-width records read in place through a memory mapping
+    }
+
+    public enum CacheIndex {
+        MAP,        // ConcurrentHashMap of entry objects
+        COMPACT     // primitive arrays keyed by a 64-bit path hash (less heap on huge scans)
+    }
+
+    public enum HashSourceMode {
+        DECODE,     // always hash the decoded image
+        FAST        // JPEGs: prefer the EXIF thumbnail, then a DC-only decode; decode only as a last resort
+    }
+
+    public enum Durability {
+        NONE,       // leave write-back to the OS
+        DIRECTORY,  // force copied data and each changed directory to disk once, at the end of a batch
+        FILE        // force each file's data and its directory entry before filing the next file
+    }
+
     public enum DuplicateOpt {
         SKIP,       // skip
         INCREASE,   // move with the different name
@@ -1,92 +1,424 @@
 package com.comp.app;
 
+import com.comp.cache.BinaryHashCache;
+import com.comp.cache.CacheEntry;
+import com.comp.cache.CacheTable;
 import com.comp.cache.CachingHasher;
+import com.comp.cache.CompactHashCache;
+import com.comp.cache.DirectoryIndex;
 import com.comp.cache.FileHashCache;
 import com.comp.cache.HashCache;
 import com.comp.cache.InMemoryHashCache;
 import com.comp.cli.Console;
+import com.comp.concurrent.ByteBudget;
 import com.comp.concurrent.Parallel;
+import com.comp.concurrent.StageStats;
 import com.comp.dedup.DeduplicationResult;
 import com.comp.dedup.Deduplicator;
+import com.comp.dedup.HashBatch;
+import com.comp.dedup.IncrementalDeduplicator;
 import com.comp.dedup.MihDeduplicator;
+import com.comp.domain.HashSource;
 import com.comp.domain.MediaItem;
+import com.comp.domain.ScannedFile;
+import com.comp.media.ImageHasher;
 import com.comp.pipeline.DirectoryScanner;
 import com.comp.pipeline.FileMover;
 import com.comp.pipeline.MediaHasher;
+import com.comp.pipeline.SourceWatcher;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 
 /**
  * Runs the pipeline as three stages: {@code scan + hash (overlapped) -> deduplicate (barrier) ->
- * file (serial)}.
+ * file (parallel per target directory)}.
+ * <p>
+ * Filing groups the files by target directory and spreads the directories over
+ * {@code run.file.threads} workers, each filing one directory's files in order (see
+ * {@link FileMover}).
  * <p>
  * Deduplication needs every item hashed before it can classify any, so the batch is held in heap
  * regardless (O(N)); scanning is streamed into the parallel hashing stage (via {@link Parallel}) so
  * the two overlap, and a {@link HashCache} lets unchanged files skip hashing on reruns.
  * <p>
+ * With {@code run.watch.enabled} the run then stays up and handles files added to the source later,
+ * batch by batch, deduplicating each batch against everything seen so far (see {@link #watch}).
+ * <p>
+ * With {@code run.dedup.compact} the batch is not held as items at all: hashed files only go to the
+ * cache, and deduplication and filing read them back from it (see {@link #runCompact}).
+ * <p>
  * {@link #scanAndHash}, {@link #getDeduplicator}, {@link #createFileMover} and {@link #openCache}
  * are overridable so tests can drive stages in isolation.
  */
 public class Pipeline {
 
+    private static final int VIRTUAL_READS_IN_FLIGHT = 256;
+    private static final long SHUTDOWN_WAIT_MILLIS = 30_000;
+
     private final Options opts;
     private final int hashThreads;
+    private final int readThreads;
+    private final int stagedHashThreads;
+    private final long inflightBytes;
+    private final int scanThreads;
+    private final boolean compactDedup;
 
     public Pipeline(Options opts) {
         this.opts = opts;
+        final int cores = Math.max(2, Runtime.getRuntime().availableProcessors());
         this.hashThreads = opts.parserCounts > 0
                 ? opts.parserCounts
-                : Math.max(2, Runtime.getRuntime().availableProcessors());
+                : opts.threadMode == Options.ThreadMode.VIRTUAL
+                ? VIRTUAL_READS_IN_FLIGHT
+                : cores;
+        this.readThreads = opts.readerCounts > 0 ? opts.readerCounts : cores;
+        this.stagedHashThreads = opts.hasherCounts > 0 ? opts.hasherCounts : cores;
+        this.scanThreads = opts.scanThreads > 0 ? opts.scanThreads : cores;
+        this.inflightBytes = opts.inflightBytes > 0
+                ? opts.inflightBytes
+                : Runtime.getRuntime().maxMemory() / 4;
+        // The compact pass reads the batch back from the binary table; the index and watch modes need items.
+        this.compactDedup = opts.compactDedup && opts.useCache && opts.cacheFormat == Options.CacheFormat.BINARY
+                && !opts.incrementalDedup && !opts.watch;
     }
 
     public void execute() throws Exception {
         final Stats stats = new Stats();
         printHeader();
+        if (compactDedup) {
+            runCompact(stats);
+            return;
+        }
 
+        // Watching starts before the scan, so files arriving during phases 1-3 are not missed.
+        try (SourceWatcher watcher = opts.watch ? createWatcher() : null) {
+            final IncrementalDeduplicator index = openDedupIndex();
+            final List<MediaItem> filed = runOnce(stats, index);
+            if (watcher != null) {
+                watch(watcher, (index != null) ? index : seeded(filed));
+            }
+        }
+    }
+
+    /**
+     * Phases 1-3 over the whole source; returns the items filed (or that would be, in a dry run). With
+     * a persisted dedup index, only the items it does not hold yet are deduplicated (against it) and
+     * filed, and only those filed are kept in it and saved: one that failed is new to the next run.
+     */
+    private List<MediaItem> runOnce(final Stats stats, final IncrementalDeduplicator index) throws Exception {
         Console.section("Phase 1: Scanning & hashing...");
         final List<MediaItem> items = scanAndHash(stats);
-        Console.kv("Scanned", stats.scannedFiles.get());
-        Console.kv("From cache", stats.cacheHits.get());
+        printScan(stats);
 
         Console.section("Phase 2: Deduplicating...");
-        final DeduplicationResult result = getDeduplicator().deduplicate(items);
+        final DeduplicationResult result = (index != null)
+                ? index.deduplicate(items)
+                : getDeduplicator().deduplicate(items);
         stats.duplicatesFound.set(result.duplicates().size());
+        if (index != null) {
+            Console.kv("Known", items.size() - result.total());
+        }
+        final Map<HashSource, Integer> sources = new EnumMap<>(HashSource.class);
+        for (final MediaItem item : items) {
+            if (item.getPerceptualHash() != 0) {
+                sources.merge(item.getHashSource(), 1, Integer::sum);
+            }
+        }
+        printSources(sources);
         Console.kv("Keepers", result.keepers().size());
         Console.kv("Duplicates", result.duplicates().size());
+        final FileMover mover = createFileMover();
+        long bytes = 0;
+        for (final MediaItem item : result.keepers()) {
+            bytes += item.getFileSize();
+        }
+        for (final MediaItem item : result.duplicates()) {
+            bytes += item.getFileSize();
+        }
+        printFilingPlan(mover, result.total(), bytes);
 
         Console.section("Phase 3: Filing...");
         final var progress = new Console.ProgressBar(result.total(), "Filing");
-        final int moved = createFileMover().move(result, progress::update);
-        stats.movedFiles.set(moved);
+        mover.setTransferListener(t -> progress.detail(t.toString()));
+        final long filing = System.nanoTime();
+        final List<MediaItem> filed = new ArrayList<>(result.total());
+        stats.movedFiles.set(mover.move(result, progress::update, filed::add));
+        recordFiling(stats, mover, filing);
+        if (index != null) {
+            index.retain(filed);
+            if (!opts.dryRun) {
+                index.save();
+            }
+        }
 
         printSummary(stats);
+        return filed;
     }
 
     /**
-     * Discovers files and hashes them in one overlapped stage: the directory walk runs on its own
-     * thread and feeds the hashing workers as files are found. Returns every analyzed item.
+     * Phases 1-3 without holding the batch in heap. The scan only fills the cache; closing it writes
+     * every file of this run to the binary table (pruning deleted ones). Deduplication then reads the
+     * hashes of the files under the source back from the table into a {@link HashBatch}, whose path
+     * ids are table records, and filing turns each record back into an item only as it files it.
+     */
+    private void runCompact(final Stats stats) throws Exception {
+        Console.section("Phase 1: Scanning & hashing...");
+        scanAndHash(stats, false);
+        printScan(stats);
+
+        Console.section("Phase 2: Deduplicating...");
+        final CacheTable table = CacheTable.open(BinaryHashCache.tablePath(Paths.get(opts.cacheFile)));
+        final Path root = Paths.get(opts.srcDir);
+        final HashBatch batch = new HashBatch(stats.scannedFiles.get());
+        final Map<HashSource, Integer> sources = new EnumMap<>(HashSource.class);
+        for (int i = 0; i < table.size(); i++) {
+            final String path = table.path(i);
+            if (Paths.get(path).startsWith(root)) {
+                final CacheEntry entry = table.entry(i);
+                batch.add(i, entry.perceptualHash(), entry.contentSignature(), entry.fileSize(),
+                          entry.hashSource(), path.length());
+                if (entry.perceptualHash() != 0) {
+                    sources.merge(entry.hashSource(), 1, Integer::sum);
+                }
+            }
+        }
+        printSources(sources);
+        if (batch.size() < stats.scannedFiles.get()) {
+            // The table could not be replaced (its journal is kept); those files are filed next run.
+            Console.kv("Not in cache", stats.scannedFiles.get() - batch.size());
+        }
+        final BitSet duplicates = new MihDeduplicator(opts.dedupRadius, Runtime.getRuntime().availableProcessors())
+                .deduplicate(batch);
+        stats.duplicatesFound.set(duplicates.cardinality());
+        Console.kv("Keepers", batch.size() - duplicates.cardinality());
+        Console.kv("Duplicates", duplicates.cardinality());
+        final FileMover mover = createFileMover();
+        long bytes = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            bytes += batch.fileSize(i);
+        }
+        printFilingPlan(mover, batch.size(), bytes);
+
+        Console.section("Phase 3: Filing...");
+        final var progress = new Console.ProgressBar(batch.size(), "Filing");
+        mover.setTransferListener(t -> progress.detail(t.toString()));
+        final long filing = System.nanoTime();
+        stats.movedFiles.set(mover.move(batch.size(), duplicates, i -> table.item(batch.pathId(i)), progress::update));
+        recordFiling(stats, mover, filing);
+
+        printSummary(stats);
+    }
+
+    /**
+     * Handles files added to (or changed in) the source after the full run, until stopped. On Ctrl-C
+     * a shutdown hook {@link SourceWatcher#stop stops} the watcher, which returns once the batch it
+     * is handling is filed and saved, and waits for that. Each debounced batch is hashed,
+     * deduplicated by {@code dedup} against every item seen so far (the full run's included) and
+     * filed. A file that already has a cache entry for its size and mtime was handled before and is
+     * skipped.
+     */
+    protected void watch(final SourceWatcher watcher, final IncrementalDeduplicator dedup) throws Exception {
+        Console.section("Watching " + opts.srcDir + " (Ctrl-C to stop)...");
+        final boolean fastSources = opts.hashSource == Options.HashSourceMode.FAST;
+        final MediaHasher hasher = new MediaHasher(opts.hashDownscale, fastSources, opts.readBufferBytes,
+                                                   new ByteBudget(inflightBytes), null);
+        final int threads = (opts.threadMode == Options.ThreadMode.PLATFORM)
+                ? hashThreads
+                : Runtime.getRuntime().availableProcessors();
+        final FileMover mover = createFileMover();
+
+        final Thread watching = Thread.currentThread();
+        final Thread hook = new Thread(() -> {
+            try {
+                watcher.stop();
+                watching.join(SHUTDOWN_WAIT_MILLIS);
+            } catch (IOException | InterruptedException ignored) {
+                // exiting anyway
+            }
+        }, "watch-shutdown");
+        Runtime.getRuntime().addShutdownHook(hook);
+        try (HashCache cache = openCache()) {
+            final CachingHasher caching = cachingHasher(cache, hasher::hash);
+            watcher.run(batch -> {
+                final List<ScannedFile> fresh = batch.stream().filter(f -> cache.get(f).isEmpty()).toList();
+                if (fresh.isEmpty()) {
+                    return;
+                }
+                final List<MediaItem> items = Parallel.map(fresh, threads, caching::hash);
+                final DeduplicationResult result = dedup.deduplicate(items);
+                final List<MediaItem> filed = new ArrayList<>(result.total());
+                final int moved = mover.move(result, n -> { }, filed::add);
+                dedup.retain(filed);
+                if (!opts.dryRun) {
+                    dedup.save();
+                }
+                Console.kv(LocalTime.now().truncatedTo(ChronoUnit.SECONDS).toString(),
+                           String.format("%d new: %d keepers, %d duplicates, %d filed",
+                                         items.size(), result.keepers().size(), result.duplicates().size(), moved));
+            });
+        } finally {
+            try {
+                Runtime.getRuntime().removeShutdownHook(hook);
+            } catch (IllegalStateException ignored) {
+                // already shutting down: the hook is what stopped us
+            }
+        }
+    }
+
+    /**
+     * Discovers files and hashes them in one overlapped stage: the directory walk (on
+     * {@code run.scan.threads} listers) feeds the hashing workers as files are found. In
+     * {@code STAGED} mode the workers are two pools, one reading files and one decoding and hashing
+     * them, and each pool's utilization is added to {@code stats}. Returns every analyzed item.
      */
     protected List<MediaItem> scanAndHash(final Stats stats) throws Exception {
-        final DirectoryScanner scanner = new DirectoryScanner(opts.srcDir, opts.getSupportingExts());
-        final MediaHasher hasher = new MediaHasher();
+        return scanAndHash(stats, true);
+    }
+
+    /** As {@link #scanAndHash(Stats)}; unless {@code retain}, items are only cached and counted, and none are returned. */
+    private List<MediaItem> scanAndHash(final Stats stats, final boolean retain) throws Exception {
+        final DirectoryIndex dirs = openDirectoryIndex();
+        final DirectoryScanner scanner = new DirectoryScanner(Paths.get(opts.srcDir), opts.getSupportingExts(),
+                                                              scanThreads, dirs);
+        final boolean fastSources = opts.hashSource == Options.HashSourceMode.FAST;
+        final ByteBudget budget = new ByteBudget(inflightBytes);
+        final boolean virtual = opts.threadMode == Options.ThreadMode.VIRTUAL;
+        // On virtual threads the thread count no longer bounds decoding; gate it at the core count.
+        final Semaphore cpu = virtual ? new Semaphore(Runtime.getRuntime().availableProcessors()) : null;
+        final MediaHasher hasher = new MediaHasher(opts.hashDownscale, fastSources, opts.readBufferBytes, budget, cpu);
+        final LongAdder dropped = new LongAdder();
+        final UnaryOperator<MediaItem> keep = retain ? item -> item : item -> {
+            dropped.increment();
+            return null;
+        };
         try (HashCache cache = openCache()) {
-            final CachingHasher caching = new CachingHasher(cache, hasher::hash);
-            final List<MediaItem> items = Parallel.mapStreaming(scanner::traverse, hashThreads, caching::hash);
+            final CachingHasher caching = cachingHasher(cache, hasher::hash);
+            final List<MediaItem> items = switch (opts.threadMode) {
+                case PLATFORM -> Parallel.mapStreaming(scanner::traverse, hashThreads,
+                                                       file -> keep.apply(caching.hash(file)));
+                case VIRTUAL -> Parallel.mapStreamingVirtual(scanner::traverse, hashThreads,
+                                                             file -> keep.apply(caching.hash(file)));
+                case STAGED -> {
+                    final StageStats reads = new StageStats("Read");
+                    final StageStats hashes = new StageStats("Hash");
+                    stats.stages.add(reads);
+                    stats.stages.add(hashes);
+                    yield Parallel.mapStreamingStaged(scanner::traverse,
+                            readThreads, file -> readStage(caching, hasher, file), reads,
+                            stagedHashThreads, pending -> keep.apply(hashStage(caching, hasher, pending)), hashes);
+                }
+            };
             cache.markScanComplete(Paths.get(opts.srcDir));
-            stats.scannedFiles.set(items.size());
+            if (dirs != null) {
+                dirs.save();
+            }
+            stats.scannedFiles.set(items.size() + dropped.intValue());
             stats.cacheHits.set((int) caching.cacheHits());
+            stats.walkDirs.set(scanner.directories());
+            stats.walkUnchangedDirs.set(scanner.unchangedDirectories());
+            stats.walkFiles.set(scanner.files());
+            stats.walkNanos.set(scanner.walkNanos());
+            stats.budgetWaits.set(budget.waits());
+            stats.budgetWaitMillis.set(budget.waitMillis());
             return items;
         }
     }
 
+    /**
+     * Hashes through {@code cache}, reusing only the entries this run would have hashed from the same
+     * source, so one run clusters each picture in one space. A decode-only run re-hashes entries
+     * cached from a thumbnail or DC image. A fast run re-hashes decoded hashes made by a decode-only
+     * run, since it would have used the thumbnail or DC image where there is one; it keeps its own
+     * decoded fallbacks. Either re-hashes a decoded or thumbnail hash made through the other
+     * {@code run.hash.downscale} path (DC hashes are not downscaled). Entries without a hash (videos,
+     * unreadable files) stay as they are.
+     */
+    CachingHasher cachingHasher(final HashCache cache, final Function<ScannedFile, MediaItem> compute) {
+        final boolean fast = opts.hashSource == Options.HashSourceMode.FAST;
+        final int direct = (opts.hashDownscale == ImageHasher.Downscale.DIRECT) ? CacheEntry.DIRECT_DOWNSCALE : 0;
+        final Predicate<CacheEntry> sameSource = fast
+                ? entry -> entry.hashSource() != HashSource.DECODED
+                           || (entry.hashFlags() & CacheEntry.FAST_SOURCES) != 0
+                : entry -> entry.hashSource() == HashSource.DECODED;
+        final Predicate<CacheEntry> sameDownscale = entry -> entry.hashSource() == HashSource.DC
+                || (entry.hashFlags() & CacheEntry.DIRECT_DOWNSCALE) == direct;
+        return new CachingHasher(cache, compute, (fast ? CacheEntry.FAST_SOURCES : 0) | direct,
+                entry -> entry.perceptualHash() == 0 || (sameSource.test(entry) && sameDownscale.test(entry)));
+    }
+
+    /** Cache hits skip both stages: they pass straight through with their item. */
+    private static Pending readStage(final CachingHasher caching, final MediaHasher hasher, final ScannedFile file) {
+        return caching.lookup(file)
+                      .map(item -> new Pending(item, null))
+                      .orElseGet(() -> new Pending(null, hasher.read(file)));
+    }
+
+    private static MediaItem hashStage(final CachingHasher caching, final MediaHasher hasher, final Pending pending) {
+        if (pending.cached() != null) {
+            return pending.cached();
+        }
+        return caching.store(pending.loaded().file(), hasher.analyze(pending.loaded()));
+    }
+
     protected HashCache openCache() throws IOException {
-        return opts.useCache ? new FileHashCache(Paths.get(opts.cacheFile)) : new InMemoryHashCache();
+        final boolean compact = opts.cacheIndex == Options.CacheIndex.COMPACT;
+        if (!opts.useCache) {
+            return compact ? new CompactHashCache() : new InMemoryHashCache();
+        }
+        final Path file = Paths.get(opts.cacheFile);
+        return switch (opts.cacheFormat) {
+            case TSV -> new FileHashCache(file, compact);
+            case BINARY -> BinaryHashCache.open(file, compact);
+        };
+    }
+
+    /**
+     * The directory listings kept next to the cache file for {@code run.scan.incremental}, or null for
+     * a full walk. Without a persistent cache every file is re-hashed anyway, so there is no index.
+     */
+    private DirectoryIndex openDirectoryIndex() throws IOException {
+        if (!opts.incrementalScan || !opts.useCache) {
+            return null;
+        }
+        return DirectoryIndex.load(Paths.get(opts.cacheFile + ".dirs"));
+    }
+
+    /** The persisted dedup index next to the hash cache, if {@code run.dedup.incremental} is on. */
+    protected IncrementalDeduplicator openDedupIndex() throws IOException {
+        if (!opts.incrementalDedup) {
+            return null;
+        }
+        return IncrementalDeduplicator.open(Paths.get(opts.cacheFile + ".mih"), opts.dedupRadius);
+    }
+
+    private IncrementalDeduplicator seeded(final List<MediaItem> filed) {
+        final IncrementalDeduplicator dedup = new IncrementalDeduplicator(opts.dedupRadius);
+        dedup.seed(filed);
+        return dedup;
+    }
+
+    protected SourceWatcher createWatcher() throws IOException {
+        return new SourceWatcher(Paths.get(opts.srcDir), opts.getSupportingExts(), opts.watchDebounceMillis);
     }
 
     protected Deduplicator getDeduplicator() {
-        return new MihDeduplicator();
+        return new MihDeduplicator(opts.dedupRadius, Runtime.getRuntime().availableProcessors());
     }
 
     protected FileMover createFileMover() {
@@ -97,8 +429,71 @@ public class Pipeline {
         Console.header("Photo Tidy");
         Console.kv("Source", opts.srcDir);
         Console.kv("Dest", opts.dstBaseDir);
-        Console.kv("Threads", hashThreads);
-        Console.kv("Mode", opts.dryRun ? "DRY RUN" : "LIVE");
+        Console.kv("Threads", switch (opts.threadMode) {
+            case PLATFORM -> String.valueOf(hashThreads);
+            case VIRTUAL -> hashThreads + " (virtual)";
+            case STAGED -> readThreads + " read + " + stagedHashThreads + " hash";
+        });
+        Console.kv("Scan threads", scanThreads);
+        Console.kv("File threads", opts.fileThreads > 0 ? opts.fileThreads : Runtime.getRuntime().availableProcessors());
+        if (!opts.moveFiles) {
+            Console.kv("Copy", (opts.copyChunkBytes >> 10) + " KB chunks"
+                    + (opts.copyBytesPerSecond > 0 ? ", max " + (opts.copyBytesPerSecond >> 20) + " MB/s" : "")
+                    + (opts.copySyncFiles > 0 ? ", sync every " + opts.copySyncFiles + " files" : ""));
+        }
+        if (opts.durability != Options.Durability.NONE) {
+            Console.kv("Durability", opts.durability);
+        }
+        Console.kv("In flight", (inflightBytes >> 20) + " MB");
+        Console.kv("Dedup radius", opts.dedupRadius + " bits" + (compactDedup ? " (compact)" : ""));
+        Console.kv("Mode", (opts.dryRun ? "DRY RUN" : "LIVE") + (opts.watch ? ", WATCH" : ""));
+        Console.kv("Filing", FileMover.method(opts).description());
+    }
+
+    /**
+     * What phase 3 is about to do with {@code files} of {@code bytes} in total: nothing is copied
+     * when filing renames; otherwise about that much, less whatever is skipped.
+     */
+    private static void printFilingPlan(final FileMover mover, final int files, final long bytes) {
+        final long toCopy = (mover.method() == FileMover.Method.RENAME) ? 0 : bytes;
+        Console.kv("To file", String.format("%d files, %.1f MB to copy (%s)", files, toCopy / (1024.0 * 1024.0),
+                                            mover.method().description()));
+    }
+
+    private static void recordFiling(final Stats stats, final FileMover mover, final long startNanos) {
+        stats.fileNanos.set(System.nanoTime() - startNanos);
+        stats.filedBytes.set(mover.bytesFiled());
+        Console.kv("Filed", stats.getFileRate());
+    }
+
+    private void printScan(Stats stats) {
+        Console.kv("Scanned", stats.scannedFiles.get());
+        Console.kv("From cache", stats.cacheHits.get());
+        Console.kv("Walk", stats.getWalkRate());
+        Console.kv("Budget waits", stats.getBudgetWait());
+        for (final StageStats stage : stats.stages) {
+            Console.kv(stage.name() + " stage", stage);
+        }
+    }
+
+    /**
+     * Prints how many hashed items each source gave, when there is more than one: near-duplicates are
+     * only matched within a source, so the items outside the largest are never compared with it.
+     */
+    private static void printSources(final Map<HashSource, Integer> counts) {
+        if (counts.size() < 2) {
+            return;
+        }
+        final HashSource largest = Collections.max(counts.entrySet(), Map.Entry.comparingByValue()).getKey();
+        int outside = 0;
+        final StringJoiner line = new StringJoiner(", ");
+        for (final Map.Entry<HashSource, Integer> count : counts.entrySet()) {
+            line.add(count.getValue() + " " + count.getKey());
+            if (count.getKey() != largest) {
+                outside += count.getValue();
+            }
+        }
+        Console.kv("Hash sources", line + " (" + outside + " not compared with " + largest + ")");
     }
 
     private void printSummary(Stats stats) {
@@ -110,4 +505,7 @@ public class Pipeline {
         Console.kv("Moved", stats.movedFiles.get());
         Console.separator();
     }
+
+    /** Between the staged read and hash pools: a cache hit's item, or a file read for hashing. */
+    private record Pending(MediaItem cached, MediaHasher.Loaded loaded) { }
 }
@@ -1,15 +1,50 @@
 package com.comp.app;
 
+import com.comp.concurrent.StageStats;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class Stats {
     public final AtomicInteger scannedFiles = new AtomicInteger(0);
     public final AtomicInteger cacheHits = new AtomicInteger(0);
     public final AtomicInteger duplicatesFound = new AtomicInteger(0);
     public final AtomicInteger movedFiles = new AtomicInteger(0);
+    public final AtomicLong budgetWaits = new AtomicLong(0);
+    public final AtomicLong budgetWaitMillis = new AtomicLong(0);
+    public final AtomicLong walkDirs = new AtomicLong(0);
+    public final AtomicLong walkUnchangedDirs = new AtomicLong(0);
+    public final AtomicLong walkFiles = new AtomicLong(0);
+    public final AtomicLong walkNanos = new AtomicLong(0);
+    public final AtomicLong filedBytes = new AtomicLong(0);
+    public final AtomicLong fileNanos = new AtomicLong(0);
+    public final List<StageStats> stages = new CopyOnWriteArrayList<>();
 
     private final long startTime = System.currentTimeMillis();
 
+    /** How often, and for how long in total (summed across workers), reads waited on the in-flight byte budget. */
+    public String getBudgetWait() {
+        return String.format("%d (%.2f sec)", budgetWaits.get(), budgetWaitMillis.get() / 1000.0);
+    }
+
+    /** Walk rate over its wall time, which includes time the hashing workers held it up. */
+    public String getWalkRate() {
+        final double secs = Math.max(1, walkNanos.get()) / 1e9;
+        return String.format("%d dirs (%d unchanged), %d files in %.2f sec (%.0f dirs/s, %.0f files/s)",
+                             walkDirs.get(), walkUnchangedDirs.get(), walkFiles.get(), secs,
+                             walkDirs.get() / secs, walkFiles.get() / secs);
+    }
+
+    /** Filing rate over its wall time; in a dry run, the rate of planning it. */
+    public String getFileRate() {
+        final double secs = Math.max(1, fileNanos.get()) / 1e9;
+        final double mb = filedBytes.get() / (1024.0 * 1024.0);
+        return String.format("%d files, %.1f MB in %.2f sec (%.0f files/s, %.1f MB/s)",
+                             movedFiles.get(), mb, secs, movedFiles.get() / secs, mb / secs);
+    }
+
     public String getDuration() {
         return String.format("%.2f sec", (System.currentTimeMillis() - startTime) / 1000.0);
     }
@@ -9,7 +9,16 @@ import java.util.concurrent.ConcurrentHashMap;
 /** Shared map-backed lookup and staleness validation for {@link HashCache} implementations. */
 abstract class AbstractMapHashCache implements HashCache {
 
-    protected final Map<String, CacheEntry> entries = new ConcurrentHashMap<>();
+    protected final Map<String, CacheEntry> entries;
+
+    protected AbstractMapHashCache() {
+        this(new ConcurrentHashMap<>());
+    }
+
+    /** @param entries a thread-safe map, e.g. a {@link CompactEntryMap} for very large caches */
+    protected AbstractMapHashCache(Map<String, CacheEntry> entries) {
+        this.entries = entries;
+    }
 
     @Override
     public Optional<CacheEntry> get(ScannedFile file) {
@@ -0,0 +1,422 @@
+package com.comp.cache;
+
+import com.comp.domain.ScannedFile;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Cache persisted as a sorted, fixed-width binary table that is read in place through a
+ * {@link java.nio.MappedByteBuffer}, so opening it costs the same for ten entries or ten million.
+ *
+ * <h2>Layout</h2>
+ * {@code header | records | path pool}. The 32-byte header holds a magic number, version, record
+ * count, and the pool's offset and length. Each 64-byte record holds {@code pathHash,
+ * perceptualHash, fileSize, lastModified, exifMillis, contentSignature} (longs), then the path's
+ * offset into the pool (long) and its UTF-8 length (int), and the {@link CacheEntry#sourceCode()
+ * source code} (int; 0, {@code DECODED}, in tables written before sources existed). Records are sorted by
+ * {@link PathHash path hash}, then path bytes, so a lookup is a binary search over the mapping
+ * followed by a byte comparison against the pool to rule out hash collisions. Nothing is parsed or
+ * materialized up front; pages are faulted in only as lookups touch them.
+ *
+ * <h2>Writes</h2>
+ * Entries put during a run live in an in-memory overlay and are appended to a TSV
+ * {@link CacheJournal} next to the table, so crash loss stays bounded to one checkpoint and a crashed
+ * run is replayed on the next open. On {@link #close()} the table is rewritten — a streaming merge of
+ * the surviving records with the sorted overlay — only if something changed (new or superseded
+ * entries, or files pruned as deleted after a {@link #markScanComplete(Path) complete scan}); an
+ * unchanged rerun writes nothing. If the platform refuses to replace a still-mapped file, the journal
+ * is kept and replayed next run instead.
+ * <p>
+ * Each mapped region is limited to 2 GB, i.e. roughly 33M records.
+ */
+public class BinaryHashCache extends AbstractMapHashCache {
+
+    private static final Logger logger = LogManager.getLogger(BinaryHashCache.class);
+
+    static final int MAGIC = 0x50544843; // "PTHC"
+    static final int VERSION = 1;
+    static final int HEADER = 32;
+    static final int RECORD = 64;
+    private static final int IO_BUFFER = 64 * 1024;
+
+    static final int PATH_HASH = 0;
+    static final int PERCEPTUAL_HASH = 8;
+    static final int FILE_SIZE = 16;
+    static final int LAST_MODIFIED = 24;
+    static final int EXIF_MILLIS = 32;
+    static final int CONTENT_SIGNATURE = 40;
+    static final int POOL_OFFSET = 48;
+    static final int PATH_LENGTH = 56;
+    static final int HASH_SOURCE = 60;
+
+    private static final Comparator<Fresh> FRESH_ORDER =
+            Comparator.comparingLong(Fresh::hash).thenComparing(Fresh::path, Arrays::compareUnsigned);
+
+    private final Path file;
+    private final Path journalFile;
+    private final CacheJournal journal;
+    private final Set<String> seenFresh = ConcurrentHashMap.newKeySet();
+
+    private CacheTable table;
+    private ByteBuffer records;
+    private ByteBuffer pool;
+    private int count;
+    private AtomicLongArray seen;
+    private Path completedRoot;
+
+    public BinaryHashCache(Path file) throws IOException {
+        this(file, false);
+    }
+
+    /** @param compactIndex hold the overlay in a {@link CompactEntryMap} rather than a hash map of objects */
+    public BinaryHashCache(Path file, boolean compactIndex) throws IOException {
+        super(compactIndex ? new CompactEntryMap() : new ConcurrentHashMap<>());
+        this.file = file;
+        this.journalFile = file.resolveSibling(file.getFileName() + ".journal");
+        mapTable();
+        long replayed = CacheJournal.replay(journalFile, entries::put);
+        if (replayed > 0) {
+            logger.info("Recovered {} journaled hashes from {}", replayed, journalFile);
+        }
+        this.journal = new CacheJournal(journalFile);
+    }
+
+    /**
+     * Opens the binary cache for a configured cache path. A configured {@code .tsv} path maps to a
+     * sibling {@code .bin} table; if only the TSV exists it is migrated once and left untouched.
+     */
+    public static BinaryHashCache open(Path configured) throws IOException {
+        return open(configured, false);
+    }
+
+    /** As {@link #open(Path)}, holding the overlay in a {@link CompactEntryMap} if {@code compactIndex}. */
+    public static BinaryHashCache open(Path configured, boolean compactIndex) throws IOException {
+        Path binary = tablePath(configured);
+        if (!binary.equals(configured) && !Files.exists(binary) && Files.exists(configured)) {
+            long migrated = migrate(configured, binary);
+            logger.info("Migrated {} cached hashes from {} to {}", migrated, configured, binary);
+        }
+        return new BinaryHashCache(binary, compactIndex);
+    }
+
+    /** Where {@link #open} keeps the table for a configured cache path. */
+    public static Path tablePath(Path configured) {
+        String name = configured.getFileName().toString();
+        if (!name.endsWith(".tsv")) {
+            return configured;
+        }
+        return configured.resolveSibling(name.substring(0, name.length() - 4) + ".bin");
+    }
+
+    /** One-shot conversion of a TSV cache into a binary table at {@code binary} (replaced if present). */
+    public static long migrate(Path tsv, Path binary) throws IOException {
+        Files.deleteIfExists(binary);
+        try (BinaryHashCache cache = new BinaryHashCache(binary)) {
+            CacheJournal.replay(tsv, cache.entries::put);
+            return cache.entries.size();
+        }
+    }
+
+    @Override
+    public Optional<CacheEntry> get(ScannedFile file) {
+        String key = key(file);
+        CacheEntry fresh = entries.get(key);
+        if (fresh != null) {
+            seenFresh.add(key);
+            return fresh.matches(file) ? Optional.of(fresh) : Optional.empty();
+        }
+        int i = find(key.getBytes(UTF_8));
+        if (i < 0) {
+            return Optional.empty();
+        }
+        markSeen(i);
+        int at = i * RECORD;
+        if (records.getLong(at + FILE_SIZE) != file.fileSize()
+                || records.getLong(at + LAST_MODIFIED) != file.lastModified()) {
+            return Optional.empty();
+        }
+        return Optional.of(table.entry(i));
+    }
+
+    @Override
+    public void put(ScannedFile file, CacheEntry entry) {
+        seenFresh.add(key(file));
+        super.put(file, entry);
+        journal.append(key(file), entry);
+    }
+
+    @Override
+    public void markScanComplete(Path root) {
+        this.completedRoot = root;
+    }
+
+    @Override
+    public void close() throws IOException {
+        journal.close();
+        BitSet dropped = new BitSet(count);
+        markSuperseded(dropped);
+        int pruned = pruneDeleted(dropped);
+        if (entries.isEmpty() && pruned == 0) {
+            Files.deleteIfExists(journalFile); // table already exact
+            return;
+        }
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        long written = writeTable(tmp, dropped);
+        table = null;
+        records = null;
+        pool = null;
+        try {
+            Files.move(tmp, file, REPLACE_EXISTING, ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Could not replace {} ({}); keeping journal for next run", file, e.toString());
+            return;
+        }
+        Files.deleteIfExists(journalFile);
+        logger.info("Wrote binary cache -> {} entries ({} deleted pruned)", written, pruned);
+    }
+
+    private void mapTable() throws IOException {
+        table = CacheTable.open(file);
+        if (table.size() == 0) {
+            return;
+        }
+        records = table.records;
+        pool = table.pool;
+        count = table.size();
+        seen = new AtomicLongArray((count + 63) / 64);
+        logger.info("Mapped {} cached hashes from {}", count, file);
+    }
+
+    /** Record index holding {@code path}, or -1. */
+    private int find(byte[] path) {
+        long hash = PathHash.of(path);
+        int lo = 0;
+        int hi = count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (hashAt(mid) < hash) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        for (int i = lo; i < count && hashAt(i) == hash; i++) {
+            if (compareAt(i, path) == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private long hashAt(int i) {
+        return records.getLong(i * RECORD + PATH_HASH);
+    }
+
+    /** Unsigned lexicographic comparison of record {@code i}'s path bytes with {@code path}. */
+    private int compareAt(int i, byte[] path) {
+        int off = (int) records.getLong(i * RECORD + POOL_OFFSET);
+        int len = records.getInt(i * RECORD + PATH_LENGTH);
+        int common = Math.min(len, path.length);
+        for (int k = 0; k < common; k++) {
+            int c = Integer.compare(pool.get(off + k) & 0xff, path[k] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return Integer.compare(len, path.length);
+    }
+
+    private void markSeen(int i) {
+        long bit = 1L << (i & 63);
+        if ((seen.get(i >>> 6) & bit) == 0) {
+            seen.getAndAccumulate(i >>> 6, bit, (a, b) -> a | b);
+        }
+    }
+
+    private boolean isSeen(int i) {
+        return (seen.get(i >>> 6) & (1L << (i & 63))) != 0;
+    }
+
+    /** Drops mapped records whose path now has a fresher overlay entry. */
+    private void markSuperseded(BitSet dropped) {
+        if (count == 0) {
+            return;
+        }
+        for (String key : entries.keySet()) {
+            int i = find(key.getBytes(UTF_8));
+            if (i >= 0) {
+                dropped.set(i);
+            }
+        }
+    }
+
+    /** Drops entries under the completely scanned root that were never looked up this run. */
+    private int pruneDeleted(BitSet dropped) {
+        if (completedRoot == null) {
+            return 0;
+        }
+        int pruned = 0;
+        for (int i = dropped.nextClearBit(0); i < count; i = dropped.nextClearBit(i + 1)) {
+            if (!isSeen(i) && Path.of(table.path(i)).startsWith(completedRoot)) {
+                dropped.set(i);
+                pruned++;
+            }
+        }
+        for (String key : new ArrayList<>(entries.keySet())) {
+            if (!seenFresh.contains(key) && Path.of(key).startsWith(completedRoot)) {
+                entries.remove(key);
+                pruned++;
+            }
+        }
+        return pruned;
+    }
+
+    /** Streams surviving mapped records merged with the sorted overlay into {@code target}. */
+    private long writeTable(Path target, BitSet dropped) throws IOException {
+        List<Fresh> fresh = new ArrayList<>(entries.size());
+        for (Map.Entry<String, CacheEntry> e : entries.entrySet()) {
+            byte[] path = e.getKey().getBytes(UTF_8);
+            fresh.add(new Fresh(PathHash.of(path), path, e.getValue()));
+        }
+        fresh.sort(FRESH_ORDER);
+
+        long n = fresh.size();
+        long poolLength = 0;
+        for (Fresh f : fresh) {
+            poolLength += f.path().length;
+        }
+        for (int i = dropped.nextClearBit(0); i < count; i = dropped.nextClearBit(i + 1)) {
+            n++;
+            poolLength += records.getInt(i * RECORD + PATH_LENGTH);
+        }
+
+        try (FileChannel out = FileChannel.open(target, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            TableWriter writer = new TableWriter(out, n, poolLength);
+            int i = dropped.nextClearBit(0);
+            int f = 0;
+            while (i < count || f < fresh.size()) {
+                boolean mappedFirst = f == fresh.size()
+                        || (i < count && compareTo(i, fresh.get(f)) < 0);
+                if (mappedFirst) {
+                    writer.copy(i);
+                    i = dropped.nextClearBit(i + 1);
+                } else {
+                    writer.add(fresh.get(f++));
+                }
+            }
+            writer.finish();
+        }
+        return n;
+    }
+
+    private int compareTo(int i, Fresh f) {
+        int c = Long.compare(hashAt(i), f.hash());
+        return (c != 0) ? c : compareAt(i, f.path());
+    }
+
+    private record Fresh(long hash, byte[] path, CacheEntry entry) { }
+
+    /** Sequential writer filling the record and pool regions of a new table through two buffers. */
+    private final class TableWriter {
+        private final FileChannel out;
+        private final ByteBuffer recordBuf = ByteBuffer.allocate(IO_BUFFER).order(ByteOrder.LITTLE_ENDIAN);
+        private final ByteBuffer poolBuf = ByteBuffer.allocate(IO_BUFFER);
+        private long recordPos = HEADER;
+        private long poolPos;
+        private long poolCursor;
+
+        TableWriter(FileChannel out, long n, long poolLength) throws IOException {
+            this.out = out;
+            this.poolPos = HEADER + n * RECORD;
+            ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN)
+                                          .putInt(MAGIC).putInt(VERSION)
+                                          .putLong(n).putLong(poolPos).putLong(poolLength)
+                                          .flip();
+            writeFully(header, 0);
+        }
+
+        void add(Fresh f) throws IOException {
+            ensureRecordRoom();
+            CacheEntry e = f.entry();
+            recordBuf.putLong(f.hash()).putLong(e.perceptualHash()).putLong(e.fileSize())
+                     .putLong(e.lastModified()).putLong(e.exifMillis()).putLong(e.contentSignature())
+                     .putLong(poolCursor).putInt(f.path().length).putInt(e.sourceCode());
+            appendPath(ByteBuffer.wrap(f.path()));
+        }
+
+        void copy(int i) throws IOException {
+            ensureRecordRoom();
+            int at = recordBuf.position();
+            recordBuf.put(at, records, i * RECORD, RECORD).position(at + RECORD);
+            recordBuf.putLong(at + POOL_OFFSET, poolCursor);
+            int off = (int) records.getLong(i * RECORD + POOL_OFFSET);
+            int len = records.getInt(i * RECORD + PATH_LENGTH);
+            appendPath(pool.slice(off, len));
+        }
+
+        void finish() throws IOException {
+            flushRecords();
+            flushPool();
+        }
+
+        private void ensureRecordRoom() throws IOException {
+            if (recordBuf.remaining() < RECORD) {
+                flushRecords();
+            }
+        }
+
+        private void appendPath(ByteBuffer path) throws IOException {
+            poolCursor += path.remaining();
+            if (path.remaining() > poolBuf.remaining()) {
+                flushPool();
+                if (path.remaining() > poolBuf.remaining()) {
+                    poolPos += writeFully(path, poolPos);
+                    return;
+                }
+            }
+            poolBuf.put(path);
+        }
+
+        private void flushRecords() throws IOException {
+            recordPos += writeFully(recordBuf.flip(), recordPos);
+            recordBuf.clear();
+        }
+
+        private void flushPool() throws IOException {
+            poolPos += writeFully(poolBuf.flip(), poolPos);
+            poolBuf.clear();
+        }
+
+        private int writeFully(ByteBuffer buf, long position) throws IOException {
+            int total = 0;
+            while (buf.hasRemaining()) {
+                total += out.write(buf, position + total);
+            }
+            return total;
+        }
+    }
+}
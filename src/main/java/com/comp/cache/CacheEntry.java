@@ -1,5 +1,6 @@
 package com.comp.cache;
 
+import com.comp.domain.HashSource;
 import com.comp.domain.MediaItem;
 import com.comp.domain.ScannedFile;
 
@@ -7,17 +8,58 @@ import java.util.Date;
 
 /**
  * A cached analysis result for one file, keyed in the cache by path and validated against the
- * file's size and modification time so stale entries are ignored when a file changes.
+ * file's size and modification time so stale entries are ignored when a file changes. The
+ * {@link HashSource} travels with the hash so a reload never mixes sources unknowingly, and
+ * {@code hashFlags} record how the run that hashed it was set up ({@link #FAST_SOURCES},
+ * {@link #DIRECT_DOWNSCALE}), so a run set up otherwise can tell the entries it would have hashed
+ * differently.
+ * <p>
+ * The cache formats persist source and flags as one {@link #sourceCode()}: the source in the low
+ * four bits, the flags above. Codes written before flags existed are the bare source.
  */
 public record CacheEntry(long fileSize, long lastModified, long exifMillis,
-                         long perceptualHash, long contentSignature) {
+                         long perceptualHash, long contentSignature, HashSource hashSource, int hashFlags) {
 
     static final long NO_EXIF = -1L;
 
+    /** Hashed by a {@code run.hash.source=FAST} run: a decoded hash is what it fell back to. */
+    public static final int FAST_SOURCES = 1;
+    /** Hashed by a {@code run.hash.downscale=DIRECT} run: a decoded or thumbnail hash took the box filter. */
+    public static final int DIRECT_DOWNSCALE = 2;
+
+    private static final int FLAG_SHIFT = 4;
+    private static final int SOURCE_MASK = (1 << FLAG_SHIFT) - 1;
+
+    public CacheEntry(long fileSize, long lastModified, long exifMillis, long perceptualHash, long contentSignature) {
+        this(fileSize, lastModified, exifMillis, perceptualHash, contentSignature, HashSource.DECODED);
+    }
+
+    public CacheEntry(long fileSize, long lastModified, long exifMillis, long perceptualHash, long contentSignature,
+                      HashSource hashSource) {
+        this(fileSize, lastModified, exifMillis, perceptualHash, contentSignature, hashSource, 0);
+    }
+
+    /** An entry read back from the cache, with the source and flags of a persisted {@link #sourceCode()}. */
+    static CacheEntry fromCode(long fileSize, long lastModified, long exifMillis, long perceptualHash,
+                               long contentSignature, int sourceCode) {
+        return new CacheEntry(fileSize, lastModified, exifMillis, perceptualHash, contentSignature,
+                              HashSource.fromCode(sourceCode & SOURCE_MASK), sourceCode >>> FLAG_SHIFT);
+    }
+
     public static CacheEntry of(ScannedFile file, MediaItem item) {
+        return of(file, item, 0);
+    }
+
+    /** The entry for {@code item}, hashed by a run set up as {@code hashFlags} say. */
+    public static CacheEntry of(ScannedFile file, MediaItem item, int hashFlags) {
         long exif = item.getExifDate().map(Date::getTime).orElse(NO_EXIF);
         return new CacheEntry(file.fileSize(), file.lastModified(), exif,
-                              item.getPerceptualHash(), item.getContentSignature());
+                              item.getPerceptualHash(), item.getContentSignature(), item.getHashSource(), hashFlags);
+    }
+
+    /** The source and flags as the one int the cache formats persist. */
+    public int sourceCode() {
+        return hashSource.code() | hashFlags << FLAG_SHIFT;
     }
 
     public boolean matches(ScannedFile file) {
@@ -27,6 +69,6 @@ public record CacheEntry(long fileSize, long lastModified, long exifMillis,
     public MediaItem toMediaItem(ScannedFile file) {
         Date exif = (exifMillis == NO_EXIF) ? null : new Date(exifMillis);
         return new MediaItem(file.path(), file.fileSize(), file.lastModified(),
-                             exif, perceptualHash, contentSignature);
+                             exif, perceptualHash, contentSignature, hashSource);
     }
 }
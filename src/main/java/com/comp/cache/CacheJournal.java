@@ -0,0 +1,179 @@
+package com.comp.cache;
+
+import com.comp.domain.HashSource;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+
+/**
+ * Append-only tab-separated log of cache entries, shared by the cache file formats.
+ * <p>
+ * Hashing threads only enqueue lines (lock-free); a single background thread appends them in batches
+ * every {@link #CHECKPOINT_MILLIS}. This keeps hashing off the write path and bounds crash loss to
+ * roughly one checkpoint interval.
+ * <p>
+ * Line format: {@code perceptualHash \t fileSize \t lastModified \t exifMillis \t contentSignature
+ * \t sourceCode \t path} (path last so rare tabs in a path survive the length-limited split), where
+ * {@code sourceCode} is {@link CacheEntry#sourceCode()}. Lines written before hash sources existed
+ * have no {@code sourceCode} field and read as {@link HashSource#DECODED}; the field is one to three
+ * digits (a single one before flags existed), which is how the two shapes are told apart.
+ */
+final class CacheJournal implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger(CacheJournal.class);
+    private static final int FIELDS = 7;
+    private static final long CHECKPOINT_MILLIS = 2000;
+
+    private final BufferedWriter writer;
+    private final ConcurrentLinkedQueue<String> pending = new ConcurrentLinkedQueue<>();
+    private final LongAdder appended = new LongAdder();
+    private final Thread checkpointer;
+
+    private volatile boolean running = true;
+
+    CacheJournal(Path file) throws IOException {
+        this.writer = Files.newBufferedWriter(file, CREATE, APPEND);
+        this.checkpointer = Thread.ofPlatform().name("hashcache-checkpoint").daemon(true).start(this::checkpointLoop);
+    }
+
+    void append(String path, CacheEntry entry) {
+        pending.add(line(path, entry));
+        appended.increment();
+    }
+
+    /** Lines appended through this journal since it was opened. */
+    long appended() {
+        return appended.sum();
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        checkpointer.interrupt();
+        join(checkpointer);
+        flushPending();
+        writer.close();
+    }
+
+    /**
+     * Streams every well-formed line of {@code file} to {@code sink} in file order (later lines
+     * supersede earlier ones for the same path). Returns the number of lines delivered.
+     */
+    static long replay(Path file, BiConsumer<String, CacheEntry> sink) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        long rows = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                Optional<Row> row = parse(line);
+                if (row.isPresent()) {
+                    sink.accept(row.get().path(), row.get().entry());
+                    rows++;
+                }
+            }
+        }
+        return rows;
+    }
+
+    /** Atomically replaces {@code file} with exactly the given entries (written via a sibling temp file). */
+    static void rewrite(Path file, Map<String, CacheEntry> entries) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(tmp, CREATE, TRUNCATE_EXISTING)) {
+            for (Map.Entry<String, CacheEntry> e : entries.entrySet()) {
+                out.write(line(e.getKey(), e.getValue()));
+                out.newLine();
+            }
+        }
+        Files.move(tmp, file, REPLACE_EXISTING);
+    }
+
+    private void checkpointLoop() {
+        try {
+            while (running) {
+                Thread.sleep(CHECKPOINT_MILLIS);
+                flushPending();
+            }
+        } catch (InterruptedException ignored) {
+            // stopping; final flush happens in close()
+        }
+    }
+
+    private synchronized void flushPending() {
+        try {
+            for (String line = pending.poll(); line != null; line = pending.poll()) {
+                writer.write(line);
+                writer.newLine();
+            }
+            writer.flush();
+        } catch (IOException e) {
+            logger.error("Failed to checkpoint hash cache: {}", e.toString());
+        }
+    }
+
+    private static String line(String path, CacheEntry e) {
+        return String.join("\t",
+                Long.toString(e.perceptualHash()),
+                Long.toString(e.fileSize()),
+                Long.toString(e.lastModified()),
+                Long.toString(e.exifMillis()),
+                Long.toString(e.contentSignature()),
+                Integer.toString(e.sourceCode()),
+                path);
+    }
+
+    private static Optional<Row> parse(String line) {
+        String[] f = line.split("\t", FIELDS);
+        if (f.length < FIELDS - 1) {
+            return Optional.empty();
+        }
+        boolean sourced = f.length == FIELDS && isSourceCode(f[5]);
+        String path = sourced ? f[6] : (f.length == FIELDS ? f[5] + '\t' + f[6] : f[5]);
+        int sourceCode = sourced ? Integer.parseInt(f[5]) : HashSource.DECODED.code();
+        try {
+            CacheEntry entry = CacheEntry.fromCode(
+                    Long.parseLong(f[1]), Long.parseLong(f[2]), Long.parseLong(f[3]),
+                    Long.parseLong(f[0]), Long.parseLong(f[4]), sourceCode);
+            return Optional.of(new Row(path, entry));
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static boolean isSourceCode(String field) {
+        if (field.isEmpty() || field.length() > 3) {
+            return false;
+        }
+        for (int i = 0; i < field.length(); i++) {
+            if (!Character.isDigit(field.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void join(Thread t) {
+        try {
+            t.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private record Row(String path, CacheEntry entry) { }
+}
@@ -0,0 +1,101 @@
+package com.comp.cache;
+
+import com.comp.domain.MediaItem;
+import com.comp.domain.ScannedFile;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static com.comp.cache.BinaryHashCache.CONTENT_SIGNATURE;
+import static com.comp.cache.BinaryHashCache.EXIF_MILLIS;
+import static com.comp.cache.BinaryHashCache.FILE_SIZE;
+import static com.comp.cache.BinaryHashCache.HASH_SOURCE;
+import static com.comp.cache.BinaryHashCache.HEADER;
+import static com.comp.cache.BinaryHashCache.LAST_MODIFIED;
+import static com.comp.cache.BinaryHashCache.MAGIC;
+import static com.comp.cache.BinaryHashCache.PATH_LENGTH;
+import static com.comp.cache.BinaryHashCache.PERCEPTUAL_HASH;
+import static com.comp.cache.BinaryHashCache.POOL_OFFSET;
+import static com.comp.cache.BinaryHashCache.RECORD;
+import static com.comp.cache.BinaryHashCache.VERSION;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * A read-only view of a {@link BinaryHashCache} table as written: its records by index, read in
+ * place through the mapping. Record ids are fixed for the life of the view, so a pass over
+ * the whole cache can refer to a file by its index and turn it back into a path, dates and hashes
+ * only when it needs them. Entries still in a cache's journal are not in the table. The mappings are
+ * released once the view is unreachable.
+ */
+public final class CacheTable {
+
+    private static final Logger logger = LogManager.getLogger(CacheTable.class);
+    private static final CacheTable EMPTY = new CacheTable(null, null, 0);
+
+    final ByteBuffer records;
+    final ByteBuffer pool;
+    private final int count;
+
+    private CacheTable(ByteBuffer records, ByteBuffer pool, int count) {
+        this.records = records;
+        this.pool = pool;
+        this.count = count;
+    }
+
+    /** Maps the table at {@code file}; a missing, unreadable or truncated table is empty. */
+    public static CacheTable open(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return EMPTY;
+        }
+        try (FileChannel ch = FileChannel.open(file, READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+            if (ch.read(header, 0) < HEADER || header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                logger.warn("Ignoring unreadable binary cache {}", file);
+                return EMPTY;
+            }
+            long n = header.getLong(8);
+            long poolOffset = header.getLong(16);
+            long poolLength = header.getLong(24);
+            if (n * RECORD > Integer.MAX_VALUE || poolLength > Integer.MAX_VALUE) {
+                throw new IOException("Binary cache too large to map: " + file);
+            }
+            if (poolOffset != HEADER + n * RECORD || poolOffset + poolLength > ch.size()) {
+                logger.warn("Ignoring truncated binary cache {}", file);
+                return EMPTY;
+            }
+            return new CacheTable(ch.map(FileChannel.MapMode.READ_ONLY, HEADER, n * RECORD).order(ByteOrder.LITTLE_ENDIAN),
+                                  ch.map(FileChannel.MapMode.READ_ONLY, poolOffset, poolLength),
+                                  (int) n);
+        }
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public String path(int i) {
+        byte[] bytes = new byte[records.getInt(i * RECORD + PATH_LENGTH)];
+        pool.get((int) records.getLong(i * RECORD + POOL_OFFSET), bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    public CacheEntry entry(int i) {
+        int at = i * RECORD;
+        return CacheEntry.fromCode(records.getLong(at + FILE_SIZE), records.getLong(at + LAST_MODIFIED),
+                                   records.getLong(at + EXIF_MILLIS), records.getLong(at + PERCEPTUAL_HASH),
+                                   records.getLong(at + CONTENT_SIGNATURE), records.getInt(at + HASH_SOURCE));
+    }
+
+    /** Record {@code i} as the item it was cached from. */
+    public MediaItem item(int i) {
+        CacheEntry entry = entry(i);
+        return entry.toMediaItem(new ScannedFile(Path.of(path(i)), entry.fileSize(), entry.lastModified()));
+    }
+}
@@ -3,37 +3,64 @@ package com.comp.cache;
 import com.comp.domain.MediaItem;
 import com.comp.domain.ScannedFile;
 
+import java.util.Optional;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
+import java.util.function.Predicate;
 
 /**
  * Wraps a hashing function with a {@link HashCache}: cache hits skip the (expensive) recompute,
- * misses compute and populate the cache. Safe for concurrent use across hashing threads.
+ * misses compute and populate the cache. A cached entry the {@code reusable} predicate rejects (e.g.
+ * one hashed from a source the current run would not use) counts as a miss and is overwritten. The
+ * entries it writes carry the {@link CacheEntry#hashFlags() hashFlags} it was given, so a later run
+ * can tell how they were hashed.
+ * Safe for concurrent use across hashing threads. A pipeline that computes in stages uses
+ * {@link #lookup} before its first stage and {@link #store} after its last instead of {@link #hash}.
  */
 public class CachingHasher {
 
     private final HashCache cache;
     private final Function<ScannedFile, MediaItem> compute;
+    private final int hashFlags;
+    private final Predicate<CacheEntry> reusable;
     private final LongAdder hits = new LongAdder();
 
     public CachingHasher(HashCache cache, Function<ScannedFile, MediaItem> compute) {
+        this(cache, compute, entry -> true);
+    }
+
+    public CachingHasher(HashCache cache, Function<ScannedFile, MediaItem> compute, Predicate<CacheEntry> reusable) {
+        this(cache, compute, 0, reusable);
+    }
+
+    public CachingHasher(HashCache cache, Function<ScannedFile, MediaItem> compute, int hashFlags,
+                         Predicate<CacheEntry> reusable) {
         this.cache = cache;
         this.compute = compute;
+        this.hashFlags = hashFlags;
+        this.reusable = reusable;
     }
 
     public MediaItem hash(ScannedFile file) {
+        return lookup(file).orElseGet(() -> store(file, compute.apply(file)));
+    }
+
+    /** The cached item for {@code file}, if there is a reusable entry (counted as a hit). */
+    public Optional<MediaItem> lookup(ScannedFile file) {
         return cache.get(file)
+                    .filter(reusable)
                     .map(entry -> {
                         hits.increment();
                         return entry.toMediaItem(file);
-                    })
-                    .orElseGet(() -> {
-                        MediaItem item = compute.apply(file);
-                        cache.put(file, CacheEntry.of(file, item));
-                        return item;
                     });
     }
 
+    /** Caches an item computed outside {@link #hash} and returns it. */
+    public MediaItem store(ScannedFile file, MediaItem item) {
+        cache.put(file, CacheEntry.of(file, item, hashFlags));
+        return item;
+    }
+
     public long cacheHits() {
         return hits.sum();
     }
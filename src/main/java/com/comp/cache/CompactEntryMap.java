@@ -0,0 +1,485 @@
+package com.comp.cache;
+
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.StampedLock;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Thread-safe {@code path -> CacheEntry} map that stores entries in primitive arrays instead of a
+ * node, key {@link String} and {@link CacheEntry} object per file.
+ * <p>
+ * A path is split into its directory, interned once in a shared pool, and its file name, stored as
+ * UTF-8 bytes. The pair is reduced to a 64-bit hash whose top bits pick one of {@value #SEGMENTS}
+ * segments, each guarded by its own {@link StampedLock} so concurrent hashing threads rarely contend.
+ * A segment keeps its entries densely in parallel {@code long[]}/{@code int[]} columns and finds them
+ * through an open-addressing (linear probing) {@code int[]} table; every hash match is verified
+ * against the interned directory and the stored name, so collisions never alias two files.
+ * <p>
+ * {@link CacheEntry} values are rebuilt on each {@link #get}. Iteration is weakly consistent: it
+ * snapshots one segment at a time.
+ */
+final class CompactEntryMap extends AbstractMap<String, CacheEntry> {
+
+    private static final int SEGMENT_BITS = 6;
+    private static final int SEGMENTS = 1 << SEGMENT_BITS;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final Map<String, Integer> dirIds = new ConcurrentHashMap<>();
+    private final List<String> dirs = new ArrayList<>();
+
+    CompactEntryMap() {
+        for (int s = 0; s < SEGMENTS; s++) {
+            segments[s] = new Segment();
+        }
+    }
+
+    @Override
+    public CacheEntry get(Object key) {
+        if (!(key instanceof String path)) {
+            return null;
+        }
+        int split = nameStart(path);
+        Integer dir = dirIds.get(path.substring(0, split));
+        if (dir == null) {
+            return null;
+        }
+        byte[] name = path.substring(split).getBytes(UTF_8);
+        long hash = hash(dir, name);
+        return segmentFor(hash).get(hash, dir, name);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public CacheEntry put(String key, CacheEntry value) {
+        int split = nameStart(key);
+        int dir = intern(key.substring(0, split));
+        byte[] name = key.substring(split).getBytes(UTF_8);
+        long hash = hash(dir, name);
+        return segmentFor(hash).put(hash, dir, name, value);
+    }
+
+    @Override
+    public CacheEntry remove(Object key) {
+        if (!(key instanceof String path)) {
+            return null;
+        }
+        int split = nameStart(path);
+        Integer dir = dirIds.get(path.substring(0, split));
+        if (dir == null) {
+            return null;
+        }
+        byte[] name = path.substring(split).getBytes(UTF_8);
+        long hash = hash(dir, name);
+        return segmentFor(hash).remove(hash, dir, name);
+    }
+
+    @Override
+    public int size() {
+        int total = 0;
+        for (Segment segment : segments) {
+            total += segment.size();
+        }
+        return total;
+    }
+
+    @Override
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    @Override
+    public Set<Map.Entry<String, CacheEntry>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Map.Entry<String, CacheEntry>> iterator() {
+                return new SegmentIterator();
+            }
+
+            @Override
+            public int size() {
+                return CompactEntryMap.this.size();
+            }
+        };
+    }
+
+    /** Index just past the last path separator (either flavor), i.e. where the file name starts. */
+    private static int nameStart(String path) {
+        return Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\')) + 1;
+    }
+
+    private int intern(String dir) {
+        Integer id = dirIds.get(dir);
+        return (id != null) ? id : dirIds.computeIfAbsent(dir, d -> {
+            synchronized (dirs) {
+                dirs.add(d);
+                return dirs.size() - 1;
+            }
+        });
+    }
+
+    private String dir(int id) {
+        synchronized (dirs) {
+            return dirs.get(id);
+        }
+    }
+
+    private Segment segmentFor(long hash) {
+        return segments[(int) (hash >>> (64 - SEGMENT_BITS))];
+    }
+
+    /** FNV-1a of the name seeded with the directory id, then a Murmur3 finalizer to mix all bits. */
+    private static long hash(int dir, byte[] name) {
+        long h = PathHash.of(name) ^ (dir * 0x9E3779B97F4A7C15L);
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static final class Segment {
+        private final StampedLock lock = new StampedLock();
+
+        private int[] table;        // entry index + 1; 0 marks an empty slot
+        private long[] hashes;
+        private long[] fileSizes;
+        private long[] lastModifieds;
+        private long[] exifMillis;
+        private long[] perceptualHashes;
+        private long[] contentSignatures;
+        private byte[] hashSources;
+        private int[] dirIds;
+        private int[] nameOffsets;  // into names: a one- or two-byte length prefix, then UTF-8 bytes
+        private byte[] names;
+        private int namesUsed;
+        private int namesGarbage;
+        private int size;
+
+        Segment() {
+            allocate();
+        }
+
+        CacheEntry get(long hash, int dir, byte[] name) {
+            long stamp = lock.readLock();
+            try {
+                int e = find(hash, dir, name);
+                return (e < 0) ? null : entryAt(e);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        CacheEntry put(long hash, int dir, byte[] name, CacheEntry value) {
+            long stamp = lock.writeLock();
+            try {
+                int e = find(hash, dir, name);
+                CacheEntry previous = null;
+                if (e >= 0) {
+                    previous = entryAt(e);
+                } else {
+                    e = append(hash, dir, name);
+                }
+                fileSizes[e] = value.fileSize();
+                lastModifieds[e] = value.lastModified();
+                exifMillis[e] = value.exifMillis();
+                perceptualHashes[e] = value.perceptualHash();
+                contentSignatures[e] = value.contentSignature();
+                hashSources[e] = (byte) value.sourceCode();
+                return previous;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        CacheEntry remove(long hash, int dir, byte[] name) {
+            long stamp = lock.writeLock();
+            try {
+                int slot = slotOf(hash, dir, name);
+                if (slot < 0) {
+                    return null;
+                }
+                int e = table[slot] - 1;
+                CacheEntry previous = entryAt(e);
+                namesGarbage += nameSpan(e);
+                deleteSlot(slot);
+                moveLastInto(e);
+                return previous;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        int size() {
+            long stamp = lock.readLock();
+            try {
+                return size;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        void clear() {
+            long stamp = lock.writeLock();
+            try {
+                allocate();
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        /** Entries of this segment as {@code (dirId, name, entry)}, copied under the read lock. */
+        List<Snapshot> snapshot() {
+            long stamp = lock.readLock();
+            try {
+                List<Snapshot> out = new ArrayList<>(size);
+                for (int e = 0; e < size; e++) {
+                    out.add(new Snapshot(dirIds[e], nameAt(e), entryAt(e)));
+                }
+                return out;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        private int find(long hash, int dir, byte[] name) {
+            int slot = slotOf(hash, dir, name);
+            return (slot < 0) ? -1 : table[slot] - 1;
+        }
+
+        private int slotOf(long hash, int dir, byte[] name) {
+            int mask = table.length - 1;
+            for (int slot = (int) hash & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+                int e = table[slot] - 1;
+                if (hashes[e] == hash && dirIds[e] == dir && nameEquals(e, name)) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        private int append(long hash, int dir, byte[] name) {
+            if (size == hashes.length) {
+                growColumns(hashes.length + (hashes.length >> 1));
+            }
+            if ((size + 1) * 4L > table.length * 3L) {
+                rebuildTable(table.length * 2);
+            }
+            int e = size++;
+            hashes[e] = hash;
+            dirIds[e] = dir;
+            nameOffsets[e] = appendName(name);
+            table[freeSlot(hash)] = e + 1;
+            return e;
+        }
+
+        private int freeSlot(long hash) {
+            int mask = table.length - 1;
+            int slot = (int) hash & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        /** Backward-shift deletion: keeps probe chains intact without tombstones. */
+        private void deleteSlot(int slot) {
+            int mask = table.length - 1;
+            int hole = slot;
+            for (int next = (hole + 1) & mask; table[next] != 0; next = (next + 1) & mask) {
+                int home = (int) hashes[table[next] - 1] & mask;
+                boolean movable = (hole <= next) ? (home <= hole || home > next) : (home <= hole && home > next);
+                if (movable) {
+                    table[hole] = table[next];
+                    hole = next;
+                }
+            }
+            table[hole] = 0;
+        }
+
+        /** Keeps the columns dense after a removal by moving the last entry into the freed index. */
+        private void moveLastInto(int e) {
+            int last = --size;
+            if (e == last) {
+                return;
+            }
+            int mask = table.length - 1;
+            int slot = (int) hashes[last] & mask;
+            while (table[slot] != last + 1) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = e + 1;
+            hashes[e] = hashes[last];
+            fileSizes[e] = fileSizes[last];
+            lastModifieds[e] = lastModifieds[last];
+            exifMillis[e] = exifMillis[last];
+            perceptualHashes[e] = perceptualHashes[last];
+            contentSignatures[e] = contentSignatures[last];
+            hashSources[e] = hashSources[last];
+            dirIds[e] = dirIds[last];
+            nameOffsets[e] = nameOffsets[last];
+        }
+
+        private CacheEntry entryAt(int e) {
+            return CacheEntry.fromCode(fileSizes[e], lastModifieds[e], exifMillis[e],
+                                       perceptualHashes[e], contentSignatures[e], hashSources[e] & 0xFF);
+        }
+
+        private boolean nameEquals(int e, byte[] name) {
+            int off = nameOffsets[e];
+            int len = nameLength(off);
+            int start = off + prefixBytes(len);
+            return len == name.length && Arrays.equals(names, start, start + len, name, 0, len);
+        }
+
+        private byte[] nameAt(int e) {
+            int off = nameOffsets[e];
+            int len = nameLength(off);
+            int start = off + prefixBytes(len);
+            return Arrays.copyOfRange(names, start, start + len);
+        }
+
+        private int nameSpan(int e) {
+            int len = nameLength(nameOffsets[e]);
+            return prefixBytes(len) + len;
+        }
+
+        private int nameLength(int off) {
+            int b = names[off];
+            return (b >= 0) ? b : ((b & 0x7f) << 8) | (names[off + 1] & 0xff);
+        }
+
+        private static int prefixBytes(int len) {
+            return (len < 0x80) ? 1 : 2;
+        }
+
+        private int appendName(byte[] name) {
+            if (name.length > 0x7fff) {
+                throw new IllegalArgumentException("File name too long: " + name.length + " bytes");
+            }
+            int span = prefixBytes(name.length) + name.length;
+            if (namesUsed + span > names.length) {
+                if (namesGarbage * 2 > namesUsed) {
+                    compactNames();
+                }
+                if (namesUsed + span > names.length) {
+                    names = Arrays.copyOf(names, Math.max(names.length + (names.length >> 1), namesUsed + span));
+                }
+            }
+            int off = namesUsed;
+            if (name.length < 0x80) {
+                names[off] = (byte) name.length;
+            } else {
+                names[off] = (byte) (0x80 | (name.length >>> 8));
+                names[off + 1] = (byte) name.length;
+            }
+            System.arraycopy(name, 0, names, off + prefixBytes(name.length), name.length);
+            namesUsed += span;
+            return off;
+        }
+
+        /** Drops the bytes of removed names by rewriting the live ones contiguously. */
+        private void compactNames() {
+            byte[] packed = new byte[names.length];
+            int used = 0;
+            for (int e = 0; e < size; e++) {
+                int span = nameSpan(e);
+                System.arraycopy(names, nameOffsets[e], packed, used, span);
+                nameOffsets[e] = used;
+                used += span;
+            }
+            names = packed;
+            namesUsed = used;
+            namesGarbage = 0;
+        }
+
+        private void growColumns(int capacity) {
+            hashes = Arrays.copyOf(hashes, capacity);
+            fileSizes = Arrays.copyOf(fileSizes, capacity);
+            lastModifieds = Arrays.copyOf(lastModifieds, capacity);
+            exifMillis = Arrays.copyOf(exifMillis, capacity);
+            perceptualHashes = Arrays.copyOf(perceptualHashes, capacity);
+            contentSignatures = Arrays.copyOf(contentSignatures, capacity);
+            hashSources = Arrays.copyOf(hashSources, capacity);
+            dirIds = Arrays.copyOf(dirIds, capacity);
+            nameOffsets = Arrays.copyOf(nameOffsets, capacity);
+        }
+
+        private void rebuildTable(int capacity) {
+            table = new int[capacity];
+            for (int e = 0; e < size; e++) {
+                table[freeSlot(hashes[e])] = e + 1;
+            }
+        }
+
+        private void allocate() {
+            table = new int[INITIAL_CAPACITY * 2];
+            hashes = new long[INITIAL_CAPACITY];
+            fileSizes = new long[INITIAL_CAPACITY];
+            lastModifieds = new long[INITIAL_CAPACITY];
+            exifMillis = new long[INITIAL_CAPACITY];
+            perceptualHashes = new long[INITIAL_CAPACITY];
+            contentSignatures = new long[INITIAL_CAPACITY];
+            hashSources = new byte[INITIAL_CAPACITY];
+            dirIds = new int[INITIAL_CAPACITY];
+            nameOffsets = new int[INITIAL_CAPACITY];
+            names = new byte[INITIAL_CAPACITY * 32];
+            namesUsed = 0;
+            namesGarbage = 0;
+            size = 0;
+        }
+    }
+
+    private record Snapshot(int dir, byte[] name, CacheEntry entry) { }
+
+    private final class SegmentIterator implements Iterator<Map.Entry<String, CacheEntry>> {
+        private int nextSegment;
+        private Iterator<Snapshot> current = List.<Snapshot>of().iterator();
+        private Map.Entry<String, CacheEntry> last;
+
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext() && nextSegment < SEGMENTS) {
+                current = segments[nextSegment++].snapshot().iterator();
+            }
+            return current.hasNext();
+        }
+
+        @Override
+        public Map.Entry<String, CacheEntry> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Snapshot s = current.next();
+            last = new SimpleImmutableEntry<>(dir(s.dir()) + new String(s.name(), UTF_8), s.entry());
+            return last;
+        }
+
+        @Override
+        public void remove() {
+            if (last == null) {
+                throw new IllegalStateException();
+            }
+            CompactEntryMap.this.remove(last.getKey());
+            last = null;
+        }
+    }
+}
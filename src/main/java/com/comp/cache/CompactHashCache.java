@@ -0,0 +1,12 @@
+package com.comp.cache;
+
+/**
+ * In-memory only cache backed by a {@link CompactEntryMap}: primitive arrays keyed by a 64-bit path
+ * hash instead of a {@code ConcurrentHashMap<String, CacheEntry>}, for scans of millions of files.
+ */
+public class CompactHashCache extends AbstractMapHashCache {
+
+    public CompactHashCache() {
+        super(new CompactEntryMap());
+    }
+}
@@ -0,0 +1,205 @@
+package com.comp.cache;
+
+import com.comp.domain.ScannedFile;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Per-directory listings persisted next to the hash cache, so an incremental rescan can skip
+ * listing directories that have not changed since the last run and replay their files instead.
+ * <p>
+ * A directory's mtime changes whenever an entry is added, removed or renamed in it, so a directory
+ * whose mtime matches its recorded listing still holds exactly the recorded entries. It does
+ * <b>not</b> change when a file inside is rewritten in place: a replayed file carries its recorded
+ * size and mtime, so such an edit goes unnoticed until its directory changes or a full scan runs.
+ * A listing taken within {@link #RACY_MILLIS} of the directory's last change is never trusted, since
+ * a later change in the same timestamp tick would leave the mtime as recorded.
+ * <p>
+ * The listings of one run replace those of the last, and are only written by {@link #save()} after a
+ * complete scan. A directory not reached this run is dropped. The file is binary: a magic number,
+ * version and listing count, then per directory its path, mtime, listing time, file and
+ * subdirectory counts, each file's name, size and mtime, and each subdirectory's name. A truncated
+ * tail is dropped on load.
+ */
+public final class DirectoryIndex {
+
+    private static final Logger logger = LogManager.getLogger(DirectoryIndex.class);
+
+    private static final int MAGIC = 0x50544449; // "PTDI"
+    private static final int VERSION = 1;
+    /** Coarsest common mtime granularity (FAT); a listing this close to a change is racy. */
+    static final long RACY_MILLIS = 2000;
+
+    private final Path file;
+    private final Map<String, Listing> previous;
+    private final Map<String, Listing> next = new ConcurrentHashMap<>();
+
+    private DirectoryIndex(Path file, Map<String, Listing> previous) {
+        this.file = file;
+        this.previous = previous;
+    }
+
+    /** Reads the index at {@code file}; a missing or unreadable file gives an empty index. */
+    public static DirectoryIndex load(Path file) throws IOException {
+        final Map<String, Listing> listings = new ConcurrentHashMap<>();
+        if (Files.exists(file)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    logger.warn("Ignoring unreadable directory index {}", file);
+                } else {
+                    readListings(in, listings);
+                }
+            } catch (EOFException e) {
+                logger.warn("Directory index {} is truncated; keeping {} complete listings", file, listings.size());
+            }
+            logger.info("Loaded {} directory listings from {}", listings.size(), file);
+        }
+        return new DirectoryIndex(file, listings);
+    }
+
+    /**
+     * The last run's listing of {@code dir}, if the directory is still as listed then: its mtime is
+     * unchanged and was not racy. The listing is carried over to this run's index.
+     */
+    public Optional<Listing> unchanged(Path dir, long mtime) {
+        final String key = dir.toString();
+        final Listing listing = previous.get(key);
+        if (listing == null || listing.mtime != mtime || mtime + RACY_MILLIS > listing.listedAt) {
+            return Optional.empty();
+        }
+        next.put(key, listing);
+        return Optional.of(listing);
+    }
+
+    /**
+     * Records a fresh listing of {@code dir} (modified at {@code mtime}, listed at {@code listedAt}):
+     * every entry other than a directory, and the names of its subdirectories.
+     */
+    public void record(Path dir, long mtime, long listedAt, List<ScannedFile> files, List<String> subdirectories) {
+        final int n = files.size();
+        final String[] names = new String[n];
+        final long[] sizes = new long[n];
+        final long[] times = new long[n];
+        for (int i = 0; i < n; i++) {
+            final ScannedFile f = files.get(i);
+            names[i] = f.path().getFileName().toString();
+            sizes[i] = f.fileSize();
+            times[i] = f.lastModified();
+        }
+        next.put(dir.toString(), new Listing(mtime, listedAt, names, sizes, times,
+                                             subdirectories.toArray(new String[0])));
+    }
+
+    /** Listings recorded or carried over this run. */
+    public int size() {
+        return next.size();
+    }
+
+    /** Atomically replaces the index file with this run's listings (written via a sibling temp file). */
+    public void save() throws IOException {
+        final Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        final List<Map.Entry<String, Listing>> listings = new ArrayList<>(next.entrySet());
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(listings.size());
+            for (final Map.Entry<String, Listing> e : listings) {
+                writeListing(out, e.getKey(), e.getValue());
+            }
+        }
+        Files.move(tmp, file, REPLACE_EXISTING);
+        logger.info("Wrote {} directory listings to {}", listings.size(), file);
+    }
+
+    private static void readListings(DataInputStream in, Map<String, Listing> sink) throws IOException {
+        final int count = in.readInt();
+        for (int n = 0; n < count; n++) {
+            final String dir = in.readUTF();
+            final long mtime = in.readLong();
+            final long listedAt = in.readLong();
+            final int files = in.readInt();
+            final int subdirs = in.readInt();
+            final String[] names = new String[files];
+            final long[] sizes = new long[files];
+            final long[] times = new long[files];
+            for (int i = 0; i < files; i++) {
+                names[i] = in.readUTF();
+                sizes[i] = in.readLong();
+                times[i] = in.readLong();
+            }
+            final String[] children = new String[subdirs];
+            for (int i = 0; i < subdirs; i++) {
+                children[i] = in.readUTF();
+            }
+            sink.put(dir, new Listing(mtime, listedAt, names, sizes, times, children));
+        }
+    }
+
+    private static void writeListing(DataOutputStream out, String dir, Listing l) throws IOException {
+        out.writeUTF(dir);
+        out.writeLong(l.mtime);
+        out.writeLong(l.listedAt);
+        out.writeInt(l.names.length);
+        out.writeInt(l.subdirectories.length);
+        for (int i = 0; i < l.names.length; i++) {
+            out.writeUTF(l.names[i]);
+            out.writeLong(l.sizes[i]);
+            out.writeLong(l.times[i]);
+        }
+        for (final String s : l.subdirectories) {
+            out.writeUTF(s);
+        }
+    }
+
+    /** One directory as last listed: its files (as scanned) and its subdirectories' names. */
+    public static final class Listing {
+        private final long mtime;
+        private final long listedAt;
+        private final String[] names;
+        private final long[] sizes;
+        private final long[] times;
+        private final String[] subdirectories;
+
+        private Listing(long mtime, long listedAt, String[] names, long[] sizes, long[] times, String[] subdirectories) {
+            this.mtime = mtime;
+            this.listedAt = listedAt;
+            this.names = names;
+            this.sizes = sizes;
+            this.times = times;
+            this.subdirectories = subdirectories;
+        }
+
+        /** Entries of {@code dir} other than directories, with the size and mtime they were scanned with. */
+        public List<ScannedFile> files(Path dir) {
+            final List<ScannedFile> files = new ArrayList<>(names.length);
+            for (int i = 0; i < names.length; i++) {
+                files.add(new ScannedFile(dir.resolve(names[i]), sizes[i], times[i]));
+            }
+            return files;
+        }
+
+        public List<Path> subdirectories(Path dir) {
+            final List<Path> dirs = new ArrayList<>(subdirectories.length);
+            for (final String s : subdirectories) {
+                dirs.add(dir.resolve(s));
+            }
+            return dirs;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.comp.cache;
+
+/**
+ * Stable 64-bit FNV-1a hash of a path's UTF-8 bytes, used to key the primitive cache layouts and
+ * the persisted dedup index. Stable across runs and JVMs (unlike {@link String#hashCode} spread), so
+ * it can be persisted. Collisions are possible, so the caches verify the path bytes on a hash match
+ * (the dedup index, which keeps no paths, also compares size and content signature).
+ */
+public final class PathHash {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private PathHash() { }
+
+    public static long of(byte[] utf8) {
+        long h = FNV_OFFSET;
+        for (byte b : utf8) {
+            h = (h ^ (b & 0xff)) * FNV_PRIME;
+        }
+        return h;
+    }
+}
@@ -46,29 +46,54 @@ public class Console {
 
     /**
      * A single-line progress bar that only repaints when the whole-percent changes, so it can be
-     * fed once per item without flooding stdout. Not thread-safe; drive it from one thread.
+     * fed once per item without flooding stdout. A {@link #detail} line (e.g. the transfer rate of
+     * a large file still copying) is shown after the label and repaints at most every
+     * {@value #DETAIL_MILLIS} ms. Thread-safe.
      */
     public static final class ProgressBar {
         private static final int WIDTH = 30;
+        private static final long DETAIL_MILLIS = 250;
+        private static final String CLEAR_TO_EOL = "\u001B[K";
         private final int total;
         private final String label;
         private int lastPercent = -1;
+        private int current;
+        private String detail = "";
+        private long lastPaintNanos;
 
         public ProgressBar(int total, String label) {
             this.total = total;
             this.label = label;
+            this.lastPaintNanos = System.nanoTime();
         }
 
-        public void update(int current) {
+        public synchronized void update(int current) {
             if (total <= 0) {
                 return;
             }
+            this.current = current;
             int percent = (int) ((long) current * 100 / total);
             if (percent == lastPercent && current < total) {
                 return;
             }
             lastPercent = percent;
+            paint();
+        }
+
+        /** Replaces the text shown after the label; ignored once the bar is full. */
+        public synchronized void detail(String text) {
+            if (total <= 0 || current >= total) {
+                return;
+            }
+            detail = text;
+            if (System.nanoTime() - lastPaintNanos >= DETAIL_MILLIS * 1_000_000) {
+                paint();
+            }
+        }
 
+        private void paint() {
+            lastPaintNanos = System.nanoTime();
+            int percent = Math.max(0, lastPercent);
             int filled = percent * WIDTH / 100;
             StringBuilder bar = new StringBuilder(WIDTH + 2).append('[');
             for (int i = 0; i < WIDTH; i++) {
@@ -76,7 +101,9 @@ public class Console {
             }
             bar.append(']');
 
-            System.out.print("\r" + CYAN + bar + RESET + String.format(" %3d%% %s", percent, label));
+            String suffix = (current >= total || detail.isEmpty()) ? "" : "  " + GRAY + detail + RESET;
+            System.out.print("\r" + CYAN + bar + RESET + String.format(" %3d%% %s", percent, label) + suffix
+                             + CLEAR_TO_EOL);
             if (current >= total) {
                 System.out.println();
             }
@@ -0,0 +1,79 @@
+package com.comp.concurrent;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Admission control by bytes: caps the combined size of the files being read at once, independently
+ * of how many threads are reading them. A worker {@link #acquire acquires} a lease proportional to
+ * a file's size before touching it and closes the lease when done; while the budget is exhausted,
+ * further workers wait. A request larger than the whole budget is clamped to it, so an oversized
+ * file still runs, just alone.
+ * <p>
+ * Permits are kept in KiB (rounded up) on a fair {@link Semaphore}, so a large request is not
+ * starved by a stream of small ones. Time spent waiting is recorded, which tells whether the budget
+ * rather than the disk or the CPU is what limits throughput. A capacity of {@code 0} means
+ * unlimited: leases are free and never wait.
+ */
+public final class ByteBudget {
+
+    /** A held share of the budget; closing it returns the share. */
+    public interface Lease extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private static final int UNIT_SHIFT = 10;
+    private static final Lease FREE = () -> { };
+
+    private final long capacity;
+    private final int units;
+    private final Semaphore permits;
+    private final LongAdder waits = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+
+    /** @param capacityBytes most bytes admitted at once; {@code 0} = unlimited */
+    public ByteBudget(final long capacityBytes) {
+        if (capacityBytes < 0) {
+            throw new IllegalArgumentException("capacityBytes must be >= 0: " + capacityBytes);
+        }
+        this.capacity = capacityBytes;
+        this.units = (int) Math.min(Integer.MAX_VALUE, Math.max(1, toUnits(capacityBytes)));
+        this.permits = (capacityBytes == 0) ? null : new Semaphore(units, true);
+    }
+
+    /** Blocks until {@code bytes} (clamped to the capacity) are available, then holds them until the lease is closed. */
+    public Lease acquire(final long bytes) throws InterruptedException {
+        if (permits == null) {
+            return FREE;
+        }
+        final int n = (int) Math.min(units, Math.max(1, toUnits(bytes)));
+        // Timed tryAcquire honors fairness (the untimed one barges past queued waiters).
+        if (!permits.tryAcquire(n, 0, TimeUnit.NANOSECONDS)) {
+            final long start = System.nanoTime();
+            permits.acquire(n);
+            waitNanos.add(System.nanoTime() - start);
+            waits.increment();
+        }
+        return () -> permits.release(n);
+    }
+
+    public long capacity() {
+        return capacity;
+    }
+
+    /** Number of acquisitions that had to wait for budget. */
+    public long waits() {
+        return waits.sum();
+    }
+
+    /** Total time workers spent waiting for budget, summed across threads. */
+    public long waitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(waitNanos.sum());
+    }
+
+    private static long toUnits(final long bytes) {
+        return (bytes >>> UNIT_SHIFT) + ((bytes & ((1L << UNIT_SHIFT) - 1)) == 0 ? 0 : 1);
+    }
+}
@@ -0,0 +1,224 @@
+package com.comp.concurrent;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The executor behind {@link Parallel#mapStreaming}: the producer packs items into chunks and
+ * submits each chunk to a {@link ForkJoinPool} as one task, so scheduling costs one handoff per
+ * chunk rather than per item. Chunk size follows the measured per-item cost: a chunk aims at
+ * {@link #TARGET_CHUNK_NANOS} of work, so cheap items (cache hits on a warm rerun) travel in
+ * thousands and expensive ones (decodes) one at a time. A chunk task splits itself in halves while
+ * its worker's deque is nearly empty, so idle workers steal the rest of a long chunk instead of
+ * waiting behind it.
+ * <p>
+ * Every chunk writes into its own result slots and chunks are queued in production order, so the
+ * results are merged in production order without per-item synchronization. The producer merges the
+ * finished chunks at the head of the queue as it submits new ones and drops them, and a finished
+ * chunk keeps only its non-null results; a long run therefore holds only the results plus the chunks
+ * still in flight (or finished behind one that is), not one chunk per handoff.
+ */
+final class ChunkedStream<I, O> {
+
+    /** Work a chunk should carry: long enough to amortize a handoff, short enough to balance. */
+    static final long TARGET_CHUNK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    static final int MAX_CHUNK = 4096;
+    /** Split only while the worker has at most this many unstolen tasks queued. */
+    private static final int SURPLUS = 2;
+
+    private final Parallel.ThrowingMapper<I, O> mapper;
+    private final ForkJoinPool pool;
+    private final Semaphore inflight;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private static final Object[] NONE = new Object[0];
+
+    /** Chunks submitted and not merged yet, in production order. */
+    private final ArrayDeque<Chunk> chunks = new ArrayDeque<>();
+    private final List<O> results = new ArrayList<>();
+    /** Running average of mapping cost per item; 0 until the first chunk is measured. */
+    private volatile long perItemNanos;
+    private Object[] pending = new Object[1];
+    private int filled;
+
+    private ChunkedStream(final Parallel.ThrowingMapper<I, O> mapper, final int workers) {
+        this.mapper = mapper;
+        this.pool = new ForkJoinPool(workers);
+        this.inflight = new Semaphore(Math.max(64, workers * 4));
+    }
+
+    static <I, O> List<O> run(final Parallel.Producer<I> producer, final int threads,
+                              final Parallel.ThrowingMapper<I, O> mapper) throws InterruptedException {
+        final ChunkedStream<I, O> stream = new ChunkedStream<>(mapper, Math.max(1, threads));
+        try {
+            return stream.drain(producer);
+        } finally {
+            stream.pool.shutdownNow();
+        }
+    }
+
+    private List<O> drain(final Parallel.Producer<I> producer) throws InterruptedException {
+        try {
+            producer.produce(item -> {
+                if (failure.get() != null) {
+                    throw new InterruptedException("aborted");
+                }
+                pending[filled++] = item;
+                if (filled == pending.length) {
+                    submit();
+                }
+            });
+            if (filled > 0) {
+                submit();
+            }
+        } catch (Throwable t) {
+            failure.compareAndSet(null, t);
+        }
+
+        while (!chunks.isEmpty()) {
+            merge(chunks.poll());
+        }
+        if (failure.get() != null) {
+            throw new RuntimeException("Streaming batch failed", failure.get());
+        }
+        return results;
+    }
+
+    /** Waits for {@code chunk}, which must be the oldest not merged yet, and appends its results. */
+    private void merge(final Chunk chunk) {
+        try {
+            chunk.join();
+        } catch (Throwable t) {
+            failure.compareAndSet(null, t);
+            return;
+        }
+        for (final Object o : chunk.out) {
+            results.add(cast(o));
+        }
+    }
+
+    /** Hands the pending chunk to the pool (blocking while too many are in flight) and starts a new one. */
+    private void submit() throws InterruptedException {
+        inflight.acquire();
+        final Chunk chunk = new Chunk(pending, new Object[filled], 0, filled, true);
+        chunks.add(chunk);
+        pool.execute(chunk);
+        pending = new Object[chunkSize()];
+        filled = 0;
+        while (!chunks.isEmpty() && chunks.peek().isDone()) {
+            merge(chunks.poll());
+        }
+    }
+
+    int chunkSize() {
+        final long cost = perItemNanos;
+        if (cost == 0) {
+            return 1; // unknown cost: assume expensive until measured
+        }
+        return (int) Math.max(1, Math.min(MAX_CHUNK, TARGET_CHUNK_NANOS / cost));
+    }
+
+    private void mapRange(final Object[] items, final Object[] out, final int from, final int to) {
+        final long start = System.nanoTime();
+        for (int i = from; i < to; i++) {
+            if (failure.get() != null) {
+                return;
+            }
+            try {
+                out[i] = mapper.apply(cast(items[i]));
+            } catch (Exception e) {
+                failure.compareAndSet(null, e);
+                return;
+            }
+        }
+        // Racy running average: an occasional lost update only delays adaptation.
+        final long sample = Math.max(1, (System.nanoTime() - start) / (to - from));
+        final long previous = perItemNanos;
+        perItemNanos = (previous == 0) ? sample : previous + (sample - previous) / 8;
+    }
+
+    private static Object[] nonNull(final Object[] out) {
+        int n = 0;
+        for (final Object o : out) {
+            if (o != null) {
+                n++;
+            }
+        }
+        if (n == out.length) {
+            return out;
+        }
+        if (n == 0) {
+            return NONE;
+        }
+        final Object[] kept = new Object[n];
+        n = 0;
+        for (final Object o : out) {
+            if (o != null) {
+                kept[n++] = o;
+            }
+        }
+        return kept;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T cast(final Object item) {
+        return (T) item;
+    }
+
+    /**
+     * Maps {@code items[from, to)} into {@code out}, forking its upper halves for thieves. A root
+     * chunk drops its inputs once they are all mapped and shrinks {@code out} to the non-null
+     * results, so only those wait to be merged.
+     */
+    @SuppressWarnings("serial") // never serialized
+    private final class Chunk extends RecursiveAction {
+        private Object[] items;
+        private Object[] out;
+        private final int from;
+        private final int to;
+        private final boolean root;
+
+        Chunk(final Object[] items, final Object[] out, final int from, final int to, final boolean root) {
+            this.items = items;
+            this.out = out;
+            this.from = from;
+            this.to = to;
+            this.root = root;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                int hi = to;
+                List<Chunk> forked = null;
+                while (hi - from > 1 && getSurplusQueuedTaskCount() <= SURPLUS) {
+                    final int mid = (from + hi) >>> 1;
+                    final Chunk upper = new Chunk(items, out, mid, hi, false);
+                    upper.fork();
+                    if (forked == null) {
+                        forked = new ArrayList<>();
+                    }
+                    forked.add(upper);
+                    hi = mid;
+                }
+                mapRange(items, out, from, hi);
+                if (forked != null) {
+                    for (int i = forked.size() - 1; i >= 0; i--) {
+                        forked.get(i).join();
+                    }
+                }
+            } finally {
+                if (root) {
+                    items = null;
+                    out = nonNull(out);
+                    inflight.release();
+                }
+            }
+        }
+    }
+}
@@ -9,8 +9,8 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -24,7 +24,14 @@ import java.util.concurrent.atomic.AtomicReference;
  * so no threads leak.
  * <p>
  * {@link #map} takes a fully-materialized list; {@link #mapStreaming} instead pulls items from a
- * producer as they are discovered, overlapping production (e.g. a directory walk) with mapping.
+ * producer as they are discovered, overlapping production (e.g. a directory walk) with mapping, and
+ * hands them to a work-stealing pool in chunks sized to the measured per-item cost.
+ * {@link #mapStreamingVirtual} does the same on a virtual thread per item, for mappers that mostly
+ * wait on I/O: its concurrency can be in the thousands because a waiting virtual thread holds no
+ * OS thread. Such mappers gate their CPU-heavy part themselves (e.g. a semaphore sized to the cores).
+ * {@link #mapStreamingStaged} splits the mapping into two stages with their own pools, joined by a
+ * bounded queue, so I/O and CPU work are sized independently and {@link StageStats} show which one
+ * limits the run. {@link #forRange} runs a CPU-bound loop over an index range on a fixed pool.
  * <p>
  * Concurrency lives only here; callers just invoke these methods. Per-item failures are the
  * mapper's responsibility to absorb — an exception thrown here is fatal: remaining items are
@@ -51,6 +58,21 @@ public final class Parallel {
         void produce(Sink<I> sink) throws Exception;
     }
 
+    /** Loop body over the indices {@code [from, to)}. */
+    @FunctionalInterface
+    public interface RangeBody {
+        void run(int from, int to);
+    }
+
+    /** Passes a stage's output on; may block for backpressure. */
+    @FunctionalInterface
+    private interface Emitter<T> {
+        void emit(T item) throws InterruptedException;
+    }
+
+    /** Ends a work queue: each consumer exits when it takes one. */
+    private static final Object DONE = new Object();
+
     /** Applies {@code mapper} to every input using at most {@code threads} workers, dropping nulls. */
     @SuppressWarnings("unchecked")
     public static <I, O> List<O> map(final List<I> inputs, final int threads,
@@ -105,76 +127,271 @@ public final class Parallel {
     }
 
     /**
-     * Maps items pulled from {@code producer} as they are produced, so production overlaps mapping.
-     * The producer runs on its own thread and feeds a bounded queue (backpressure caps memory);
-     * {@code threads} workers drain it concurrently. Results are returned in completion order.
+     * Runs {@code body} over {@code [0, size)} in blocks of {@code block} indices, claimed from a
+     * shared cursor by at most {@code threads} workers, so blocks of uneven cost balance out. With
+     * one worker (or one block) the loop runs on the calling thread.
      */
-    public static <I, O> List<O> mapStreaming(final Producer<I> producer, final int threads,
-                                              final ThrowingMapper<I, O> mapper) throws InterruptedException {
-        final int workers = Math.max(1, threads);
-        final BlockingQueue<I> queue = new ArrayBlockingQueue<>(Math.max(64, workers * 4));
-        final ConcurrentLinkedQueue<O> results = new ConcurrentLinkedQueue<>();
+    public static void forRange(final int size, final int threads, final int block,
+                                final RangeBody body) throws InterruptedException {
+        final int blocks = (size + block - 1) / block;
+        final int workers = Math.max(1, Math.min(threads, blocks));
+        if (workers == 1) {
+            if (size > 0) {
+                body.run(0, size);
+            }
+            return;
+        }
+        final AtomicInteger cursor = new AtomicInteger(0);
         final AtomicReference<Throwable> failure = new AtomicReference<>();
-        final AtomicBoolean producing = new AtomicBoolean(true);
 
-        final ExecutorService exec = Executors.newFixedThreadPool(workers + 1);
+        final ExecutorService exec = Executors.newFixedThreadPool(workers);
         try {
-            exec.submit(() -> {
+            final List<Future<?>> futures = new ArrayList<>(workers);
+            for (int w = 0; w < workers; w++) {
+                futures.add(exec.submit(() -> {
+                    int b;
+                    while (failure.get() == null && (b = cursor.getAndIncrement()) < blocks) {
+                        final int from = b * block;
+                        body.run(from, Math.min(size, from + block));
+                    }
+                }));
+            }
+            for (final Future<?> f : futures) {
                 try {
-                    producer.produce(item -> {
-                        if (failure.get() != null) {
-                            throw new InterruptedException("aborted");
-                        }
-                        queue.put(item);
-                    });
-                } catch (Throwable t) {
-                    failure.compareAndSet(null, t);
-                } finally {
-                    producing.set(false);
+                    f.get();
+                } catch (ExecutionException e) {
+                    failure.compareAndSet(null, e.getCause());
                 }
-            });
+            }
+        } finally {
+            exec.shutdownNow();
+        }
 
-            final List<Future<?>> consumers = new ArrayList<>(workers);
-            for (int w = 0; w < workers; w++) {
-                consumers.add(exec.submit(() -> {
-                    try {
-                        while (failure.get() == null) {
-                            final I item = queue.poll(50, TimeUnit.MILLISECONDS);
-                            if (item == null) {
-                                if (!producing.get() && queue.isEmpty()) {
-                                    break;
-                                }
-                                continue;
-                            }
-                            try {
+        if (failure.get() != null) {
+            throw new RuntimeException("Parallel loop failed", failure.get());
+        }
+    }
+
+    /**
+     * Maps items pulled from {@code producer} as they are produced, so production overlaps mapping.
+     * The producer runs on the calling thread and packs items into chunks sized to the measured
+     * per-item cost (one item while the cost is unknown, up to thousands for cache hits); each chunk
+     * is one task on a {@code threads}-worker work-stealing pool, and idle workers steal halves of a
+     * busy worker's chunk. A bounded number of chunks in flight caps memory (backpressure). Results
+     * are returned in production order. See {@link ChunkedStream}.
+     */
+    public static <I, O> List<O> mapStreaming(final Producer<I> producer, final int threads,
+                                              final ThrowingMapper<I, O> mapper) throws InterruptedException {
+        return ChunkedStream.run(producer, threads, mapper);
+    }
+
+    /**
+     * As {@link #mapStreaming}, but each item is mapped on its own virtual thread, with at most
+     * {@code concurrency} in flight. The producer runs on the calling thread and blocks while all
+     * slots are taken (backpressure). Results are returned in completion order.
+     */
+    public static <I, O> List<O> mapStreamingVirtual(final Producer<I> producer, final int concurrency,
+                                                     final ThrowingMapper<I, O> mapper) throws InterruptedException {
+        final Semaphore slots = new Semaphore(Math.max(1, concurrency));
+        final ConcurrentLinkedQueue<O> results = new ConcurrentLinkedQueue<>();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        try (ExecutorService exec = Executors.newVirtualThreadPerTaskExecutor()) {
+            try {
+                producer.produce(item -> {
+                    if (failure.get() != null) {
+                        throw new InterruptedException("aborted");
+                    }
+                    slots.acquire();
+                    exec.execute(() -> {
+                        try {
+                            if (failure.get() == null) {
                                 O out = mapper.apply(item);
                                 if (out != null) {
                                     results.add(out);
                                 }
-                            } catch (Exception e) {
-                                failure.compareAndSet(null, e);
-                                return;
                             }
+                        } catch (Throwable t) {
+                            failure.compareAndSet(null, t);
+                        } finally {
+                            slots.release();
                         }
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
+                    });
+                });
+            } catch (Throwable t) {
+                failure.compareAndSet(null, t);
+            }
+            if (failure.get() != null) {
+                exec.shutdownNow();
+            }
+        } // close() waits for every started mapper
+
+        if (failure.get() != null) {
+            throw new RuntimeException("Streaming batch failed", failure.get());
+        }
+        return new ArrayList<>(results);
+    }
+
+    /**
+     * As {@link #mapStreaming}, with the mapping split in two stages: {@code first} runs on
+     * {@code firstThreads} workers and hands its results through a bounded queue to {@code second} on
+     * {@code secondThreads} workers, so a slow stage backs up the one before it instead of
+     * oversubscribing. Nulls from either stage are dropped. Each stage's time split, up to when its
+     * last worker finished, is recorded in its {@link StageStats}. Results are returned in completion
+     * order.
+     */
+    public static <I, M, O> List<O> mapStreamingStaged(final Producer<I> producer,
+                                                       final int firstThreads, final ThrowingMapper<I, M> first,
+                                                       final StageStats firstStats,
+                                                       final int secondThreads, final ThrowingMapper<M, O> second,
+                                                       final StageStats secondStats) throws InterruptedException {
+        final int firstWorkers = Math.max(1, firstThreads);
+        final int secondWorkers = Math.max(1, secondThreads);
+        final BlockingQueue<Object> input = new ArrayBlockingQueue<>(Math.max(64, firstWorkers * 4));
+        final BlockingQueue<Object> handoff = new ArrayBlockingQueue<>(Math.max(16, secondWorkers * 2));
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final AtomicInteger firstRunning = new AtomicInteger(firstWorkers);
+        final AtomicInteger secondRunning = new AtomicInteger(secondWorkers);
+
+        firstStats.started(firstWorkers);
+        secondStats.started(secondWorkers);
+        final long start = System.nanoTime();
+        final ExecutorService exec = Executors.newFixedThreadPool(firstWorkers + secondWorkers + 1);
+        final List<Results<O>> parts = new ArrayList<>(secondWorkers);
+        try {
+            exec.submit(() -> produce(producer, input, firstWorkers, failure, exec));
+
+            final List<Future<?>> firsts = new ArrayList<>(firstWorkers);
+            for (int w = 0; w < firstWorkers; w++) {
+                firsts.add(exec.submit(() -> {
+                    drain(input, first, handoff::put, firstStats, failure, exec);
+                    if (firstRunning.decrementAndGet() == 0) {
+                        firstStats.finished(System.nanoTime() - start);
+                        for (int i = 0; i < secondWorkers; i++) {
+                            handoff.put(DONE);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            final List<Future<Results<O>>> seconds = new ArrayList<>(secondWorkers);
+            for (int w = 0; w < secondWorkers; w++) {
+                seconds.add(exec.submit(() -> {
+                    final Results<O> results = new Results<>();
+                    drain(handoff, second, results::add, secondStats, failure, exec);
+                    if (secondRunning.decrementAndGet() == 0) {
+                        secondStats.finished(System.nanoTime() - start);
                     }
+                    return results;
                 }));
             }
-            for (final Future<?> f : consumers) {
+            for (final Future<?> f : firsts) {
                 try {
                     f.get();
                 } catch (ExecutionException e) {
                     failure.compareAndSet(null, e.getCause());
                 }
             }
+            for (final Future<Results<O>> f : seconds) {
+                try {
+                    parts.add(f.get());
+                } catch (ExecutionException e) {
+                    failure.compareAndSet(null, e.getCause());
+                }
+            }
+        } catch (RejectedExecutionException e) {
+            failure.compareAndSet(null, e); // aborted before every worker was started
         } finally {
             exec.shutdownNow();
         }
 
         if (failure.get() != null) {
-            throw new RuntimeException("Streaming batch failed", failure.get());
+            throw new RuntimeException("Staged batch failed", failure.get());
+        }
+        return Results.concat(parts);
+    }
+
+    /**
+     * Runs {@code producer} into {@code queue}, then queues one end marker per consumer. A producer
+     * failure aborts the batch instead.
+     */
+    private static <I> void produce(final Producer<I> producer, final BlockingQueue<Object> queue,
+                                    final int consumers, final AtomicReference<Throwable> failure, final ExecutorService exec) {
+        try {
+            producer.produce(item -> {
+                if (failure.get() != null) {
+                    throw new InterruptedException("aborted");
+                }
+                queue.put(item);
+            });
+            for (int i = 0; i < consumers; i++) {
+                queue.put(DONE);
+            }
+        } catch (Throwable t) {
+            abort(failure, t, exec);
+        }
+    }
+
+    /**
+     * One stage worker: maps items from {@code in} until it takes an end marker, passing non-null
+     * results to {@code out} and recording its time split in {@code stats}. A mapper failure aborts
+     * the batch.
+     */
+    private static <A, B> void drain(final BlockingQueue<Object> in, final ThrowingMapper<A, B> mapper,
+                                     final Emitter<B> out, final StageStats stats,
+                                     final AtomicReference<Throwable> failure,
+                                     final ExecutorService exec) throws InterruptedException {
+        long idleSince = System.nanoTime();
+        Object next;
+        while ((next = in.take()) != DONE) {
+            final long mapStart = System.nanoTime();
+            final B mapped;
+            try {
+                mapped = mapper.apply(cast(next));
+            } catch (Exception e) {
+                abort(failure, e, exec);
+                return;
+            }
+            final long mapEnd = System.nanoTime();
+            if (mapped != null) {
+                out.emit(mapped);
+            }
+            final long emitted = System.nanoTime();
+            stats.item(mapStart - idleSince, mapEnd - mapStart, emitted - mapEnd);
+            idleSince = emitted;
+        }
+        stats.starved(System.nanoTime() - idleSince);
+    }
+
+    /** Records the first failure and interrupts every worker and the producer. */
+    private static void abort(final AtomicReference<Throwable> failure, final Throwable t, final ExecutorService exec) {
+        failure.compareAndSet(null, t);
+        exec.shutdownNow();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T cast(final Object item) {
+        return (T) item;
+    }
+
+    /** One worker's results, kept apart from the others' until every worker is done. */
+    private static final class Results<O> {
+        private final ArrayList<O> items = new ArrayList<>();
+
+        void add(final O item) {
+            items.add(item);
+        }
+
+        static <O> List<O> concat(final List<Results<O>> parts) {
+            int total = 0;
+            for (final Results<O> part : parts) {
+                total += part.items.size();
+            }
+            final List<O> out = new ArrayList<>(total);
+            for (final Results<O> part : parts) {
+                out.addAll(part.items);
+            }
+            return out;
         }
-        return new ArrayList<>(results);
     }
 }
@@ -0,0 +1,79 @@
+package com.comp.concurrent;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Where a pipeline stage's workers spent their time: mapping items (busy), waiting for input from the
+ * stage before (starved) or waiting for room in the queue to the stage after (blocked). Shares are of
+ * {@code threads x wall time}. The stage to tune is the one that is busy while its neighbours are
+ * starved (downstream) or blocked (upstream): a busy read stage with a starved hash stage means the
+ * run is disk-bound, and a busy hash stage with a blocked read stage means it is CPU-bound.
+ */
+public final class StageStats {
+
+    private final String name;
+    private final LongAdder items = new LongAdder();
+    private final LongAdder busyNanos = new LongAdder();
+    private final LongAdder starvedNanos = new LongAdder();
+    private final LongAdder blockedNanos = new LongAdder();
+    private volatile int threads;
+    private volatile long wallNanos;
+
+    public StageStats(final String name) {
+        this.name = name;
+    }
+
+    void started(final int threads) {
+        this.threads = threads;
+    }
+
+    void finished(final long wallNanos) {
+        this.wallNanos = wallNanos;
+    }
+
+    void item(final long starved, final long busy, final long blocked) {
+        items.increment();
+        starvedNanos.add(starved);
+        busyNanos.add(busy);
+        blockedNanos.add(blocked);
+    }
+
+    void starved(final long nanos) {
+        starvedNanos.add(nanos);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public int threads() {
+        return threads;
+    }
+
+    public long items() {
+        return items.sum();
+    }
+
+    public double busyShare() {
+        return share(busyNanos.sum());
+    }
+
+    public double starvedShare() {
+        return share(starvedNanos.sum());
+    }
+
+    public double blockedShare() {
+        return share(blockedNanos.sum());
+    }
+
+    private double share(final long nanos) {
+        final double capacity = (double) threads * wallNanos;
+        return (capacity <= 0) ? 0 : Math.min(1, nanos / capacity);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d threads, %d items, busy %.0f%%, starved %.0f%%, blocked %.0f%%",
+                             threads, items(), busyShare() * 100, starvedShare() * 100, blockedShare() * 100);
+    }
+}
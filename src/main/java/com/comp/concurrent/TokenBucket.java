@@ -0,0 +1,66 @@
+package com.comp.concurrent;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bandwidth cap shared by any number of threads: {@link #acquire acquiring} bytes takes that many
+ * tokens from a bucket refilled at {@code bytesPerSecond} and holding at most one second's worth, so
+ * a caller idle for a while may burst that much before being paced.
+ * <p>
+ * A request larger than what is in the bucket is still granted at once but leaves it in debt, and
+ * the caller sleeps until the debt would be repaid. Later callers queue behind that debt, so the
+ * long-run rate holds however the requests are sized or interleaved, without a thread ever waiting
+ * on a lock. A rate of {@code 0} means unlimited: acquiring is free and never waits.
+ */
+public final class TokenBucket {
+
+    private final long rate;
+    private double tokens;
+    private long lastNanos = System.nanoTime();
+    private final LongAdder waits = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+
+    /** @param bytesPerSecond sustained rate; {@code 0} = unlimited */
+    public TokenBucket(final long bytesPerSecond) {
+        if (bytesPerSecond < 0) {
+            throw new IllegalArgumentException("bytesPerSecond must be >= 0: " + bytesPerSecond);
+        }
+        this.rate = bytesPerSecond;
+        this.tokens = bytesPerSecond;
+    }
+
+    /** Takes {@code bytes} tokens, sleeping as long as the rate requires. */
+    public void acquire(final long bytes) throws InterruptedException {
+        if (rate == 0) {
+            return;
+        }
+        final long wait;
+        synchronized (this) {
+            final long now = System.nanoTime();
+            tokens = Math.min(rate, tokens + (now - lastNanos) * (rate / 1e9));
+            lastNanos = now;
+            tokens -= bytes;
+            wait = (tokens >= 0) ? 0 : (long) (-tokens * 1e9 / rate);
+        }
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+            waitNanos.add(wait);
+            waits.increment();
+        }
+    }
+
+    public long bytesPerSecond() {
+        return rate;
+    }
+
+    /** Number of acquisitions that had to wait for tokens. */
+    public long waits() {
+        return waits.sum();
+    }
+
+    /** Total time callers spent paced, summed across threads. */
+    public long waitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(waitNanos.sum());
+    }
+}
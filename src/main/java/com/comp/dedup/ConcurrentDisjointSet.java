@@ -0,0 +1,52 @@
+package com.comp.dedup;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Union-find that threads may union into concurrently: parent links are set by CAS. Every set is
+ * rooted at its lowest member, since a union always links the higher root under the lower one, so
+ * the roots, and with them the clusters and their order, come out the same whatever order or
+ * interleaving the unions arrive in. Parents only ever point to lower ids, so no cycle can form.
+ * {@link #find} halves paths with a best-effort CAS; losing that race only leaves a path longer.
+ */
+final class ConcurrentDisjointSet {
+
+    private final AtomicIntegerArray parent;
+
+    ConcurrentDisjointSet(int n) {
+        parent = new AtomicIntegerArray(n);
+        for (int i = 0; i < n; i++) {
+            parent.set(i, i);
+        }
+    }
+
+    int find(int x) {
+        while (true) {
+            final int p = parent.get(x);
+            if (p == x) {
+                return x;
+            }
+            final int grandparent = parent.get(p);
+            if (grandparent != p) {
+                parent.compareAndSet(x, p, grandparent); // path halving
+            }
+            x = grandparent;
+        }
+    }
+
+    void union(int a, int b) {
+        while (true) {
+            final int ra = find(a);
+            final int rb = find(b);
+            if (ra == rb) {
+                return;
+            }
+            final int low = Math.min(ra, rb);
+            final int high = Math.max(ra, rb);
+            if (parent.compareAndSet(high, high, low)) {
+                return;
+            }
+            // another union linked `high` first: retry from the new roots
+        }
+    }
+}
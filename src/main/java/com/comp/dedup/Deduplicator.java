@@ -7,7 +7,8 @@ import java.util.List;
 /**
  * Partitions a batch of analyzed media into keepers and near-duplicates.
  * Implementations receive the full batch (deduplication is inherently a barrier — every item
- * must be seen before any can be classified) and return a complete partition of it.
+ * must be seen before any can be classified) and return a complete partition of it. The exception
+ * is {@link IncrementalDeduplicator}, which keeps what it has seen and partitions only the new items.
  */
 public interface Deduplicator {
 
@@ -0,0 +1,91 @@
+package com.comp.dedup;
+
+import com.comp.domain.HashSource;
+
+import java.util.Arrays;
+
+/**
+ * The part of a batch of analyzed files that deduplication reads, one primitive column per field:
+ * perceptual hash, content signature, size, {@link HashSource} and path length (the keeper
+ * tie-break), plus an int path id the caller resolves the file by afterwards (e.g. a
+ * {@link com.comp.cache.CacheTable} record index). About 33 bytes per file, against about 250 for a
+ * {@link com.comp.domain.MediaItem}, and nothing for the garbage collector to trace.
+ * Not thread-safe; filled before {@link MihDeduplicator#deduplicate(HashBatch)} reads it.
+ */
+public final class HashBatch {
+
+    private int size;
+    private int[] pathIds;
+    private long[] perceptualHashes;
+    private long[] signatures;
+    private long[] sizes;
+    private byte[] sources;
+    private int[] pathLengths;
+
+    public HashBatch(final int capacity) {
+        final int n = Math.max(16, capacity);
+        pathIds = new int[n];
+        perceptualHashes = new long[n];
+        signatures = new long[n];
+        sizes = new long[n];
+        sources = new byte[n];
+        pathLengths = new int[n];
+    }
+
+    /** Appends one file; entries are numbered in the order they are added. */
+    public void add(final int pathId, final long perceptualHash, final long signature, final long fileSize,
+                    final HashSource source, final int pathLength) {
+        if (size == pathIds.length) {
+            final int n = size * 2;
+            pathIds = Arrays.copyOf(pathIds, n);
+            perceptualHashes = Arrays.copyOf(perceptualHashes, n);
+            signatures = Arrays.copyOf(signatures, n);
+            sizes = Arrays.copyOf(sizes, n);
+            sources = Arrays.copyOf(sources, n);
+            pathLengths = Arrays.copyOf(pathLengths, n);
+        }
+        pathIds[size] = pathId;
+        perceptualHashes[size] = perceptualHash;
+        signatures[size] = signature;
+        sizes[size] = fileSize;
+        sources[size] = (byte) source.code();
+        pathLengths[size] = pathLength;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int pathId(final int i) {
+        return pathIds[i];
+    }
+
+    long perceptualHash(final int i) {
+        return perceptualHashes[i];
+    }
+
+    long signature(final int i) {
+        return signatures[i];
+    }
+
+    public long fileSize(final int i) {
+        return sizes[i];
+    }
+
+    int source(final int i) {
+        return sources[i];
+    }
+
+    /**
+     * {@link MihDeduplicator#KEEPER_ORDER} over entries: larger file first, then shorter path, then
+     * the earlier entry.
+     */
+    int compareKeepers(final int a, final int b) {
+        int c = Long.compare(sizes[b], sizes[a]);
+        if (c == 0) {
+            c = Integer.compare(pathLengths[a], pathLengths[b]);
+        }
+        return (c != 0) ? c : Integer.compare(a, b);
+    }
+}
@@ -0,0 +1,171 @@
+package com.comp.dedup;
+
+import com.comp.cache.PathHash;
+import com.comp.domain.MediaItem;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Deduplicates batches that arrive over time against everything seen before, without re-running the
+ * whole library: the same two tiers and the same clusters as {@link MihDeduplicator}, but the
+ * exact-copy map, the multi-index and the union-find live on between calls (in a {@link MihIndex})
+ * and each batch is only inserted into them. {@link #open} persists them across runs too, so a run
+ * that adds a few photos to a large library costs what it adds.
+ * <p>
+ * Items passed to {@link #seed}, loaded from disk, or reported by an earlier call are already filed:
+ * they take part in clustering but are never reported again, and a batch item with the same path,
+ * size and content signature as one of them is skipped (it is neither a keeper nor a duplicate).
+ * A new item whose cluster already holds an earlier item is a duplicate — the earlier keeper stays
+ * the keeper even when the new copy would rank higher, since it has been filed already. A cluster
+ * made only of new items gets its keeper exactly as a full run would pick it.
+ * <p>
+ * A reported item that then fails to file is not filed at all: {@link #retain} drops it again, so
+ * the next batch or run sees it as new instead of known. Not thread-safe; feed it from one thread.
+ */
+public class IncrementalDeduplicator implements Deduplicator {
+
+    private static final Logger logger = LogManager.getLogger(IncrementalDeduplicator.class);
+
+    private final MihIndex index;
+    /** The items the last {@link #deduplicate} call inserted, from id {@link #pendingFrom} on. */
+    private List<MediaItem> pending = List.of();
+    private int pendingFrom;
+
+    /** An index kept in memory only, matching within the default radius. */
+    public IncrementalDeduplicator() {
+        this(MihDeduplicator.DEFAULT_RADIUS);
+    }
+
+    /** An index kept in memory only, matching within {@code radius} bits. */
+    public IncrementalDeduplicator(final int radius) {
+        this(new MihIndex(radius));
+    }
+
+    private IncrementalDeduplicator(final MihIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * Opens the index persisted at {@code file} (empty if there is none yet), matching within
+     * {@code radius} bits; see {@link #save()}.
+     */
+    public static IncrementalDeduplicator open(final Path file, final int radius) throws IOException {
+        return new IncrementalDeduplicator(MihIndex.open(file, radius));
+    }
+
+    /** Registers items that are already filed, so later batches are matched against them. */
+    public void seed(final List<MediaItem> filed) {
+        pending = List.of();
+        for (final MediaItem item : filed) {
+            if (!known(item)) {
+                index.settle(insert(item));
+            }
+        }
+        logger.debug("Seeded incremental dedup with {} items", filed.size());
+    }
+
+    @Override
+    public DeduplicationResult deduplicate(final List<MediaItem> batch) {
+        final int first = index.size();
+        final List<MediaItem> fresh = new ArrayList<>(batch.size());
+        for (final MediaItem item : batch) {
+            if (!known(item)) {
+                insert(item);
+                fresh.add(item);
+            }
+        }
+
+        final Map<Integer, List<MediaItem>> clusters = new LinkedHashMap<>();
+        for (int i = 0; i < fresh.size(); i++) {
+            clusters.computeIfAbsent(index.find(first + i), k -> new ArrayList<>()).add(fresh.get(i));
+        }
+        final List<MediaItem> keepers = new ArrayList<>();
+        final List<MediaItem> duplicates = new ArrayList<>();
+        for (final Map.Entry<Integer, List<MediaItem>> cluster : clusters.entrySet()) {
+            final List<MediaItem> members = cluster.getValue();
+            if (index.isSettled(cluster.getKey())) {
+                duplicates.addAll(members); // the cluster's keeper was filed before
+            } else {
+                members.sort(MihDeduplicator.KEEPER_ORDER);
+                keepers.add(members.getFirst());
+                duplicates.addAll(members.subList(1, members.size()));
+            }
+        }
+        for (int i = first; i < index.size(); i++) {
+            index.settle(i);
+        }
+
+        pending = fresh;
+        pendingFrom = first;
+
+        logger.debug("Deduplicated batch of {} ({} new) against {} -> {} keepers, {} duplicates",
+                     batch.size(), fresh.size(), first, keepers.size(), duplicates.size());
+        return new DeduplicationResult(keepers, duplicates);
+    }
+
+    /**
+     * Keeps, of the items the last {@link #deduplicate} call reported, only those in {@code filed};
+     * call it once they are filed, before {@link #save()}. The others (a failed or undone move, a file
+     * skipped by policy) are dropped, together with the links they made between clusters, so a later
+     * batch sees them as new.
+     */
+    public void retain(final Collection<MediaItem> filed) {
+        final Set<MediaItem> kept = Collections.newSetFromMap(new IdentityHashMap<>());
+        kept.addAll(filed);
+        final List<MediaItem> keep = pending.stream().filter(kept::contains).toList();
+        if (keep.size() < pending.size()) {
+            index.truncate(pendingFrom);
+            for (final MediaItem item : keep) {
+                index.settle(insert(item));
+            }
+            logger.debug("Dropped {} unfiled items from the dedup index", pending.size() - keep.size());
+        }
+        pending = List.of();
+    }
+
+    /**
+     * Persists everything inserted since the last save; call it once the reported items are filed
+     * and {@link #retain retained}.
+     * Does nothing for an in-memory index.
+     */
+    public void save() throws IOException {
+        pending = List.of();
+        index.save();
+    }
+
+    /** Items seeded, loaded or deduplicated so far. */
+    public int size() {
+        return index.size();
+    }
+
+    /** Cluster of the {@code id}-th item inserted, as its lowest item id. */
+    int cluster(final int id) {
+        return index.find(id);
+    }
+
+    private boolean known(final MediaItem item) {
+        return index.contains(pathHash(item), item.getFileSize(), item.getContentSignature());
+    }
+
+    private int insert(final MediaItem item) {
+        return index.insert(pathHash(item), item.getPerceptualHash(), item.getFileSize(),
+                            item.getContentSignature(), item.getHashSource());
+    }
+
+    private static long pathHash(final MediaItem item) {
+        return PathHash.of(item.getPath().toString().getBytes(UTF_8));
+    }
+}
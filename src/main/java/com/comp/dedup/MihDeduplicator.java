@@ -1,14 +1,22 @@
 package com.comp.dedup;
 
+import com.comp.concurrent.Parallel;
+import com.comp.domain.HashSource;
 import com.comp.domain.MediaItem;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Comparator;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntBinaryOperator;
+import java.util.stream.IntStream;
 
 /**
  * Near-duplicate detector using Multi-Index Hashing (MIH) with union-find clustering, plus an exact
@@ -16,45 +24,87 @@ import java.util.Map;
  *
  * <h2>Why MIH</h2>
  * For Hamming-radius search over 64-bit perceptual hashes, MIH is exact and near-constant per query:
- * split each hash into {@code RADIUS+1} segments — by the pigeonhole principle two hashes within
- * {@link #RADIUS} bits must match exactly in at least one segment — so candidates are found by hash
- * lookup instead of tree traversal. Scales far better than a BK-tree on uniformly-distributed hashes.
+ * split each hash into segments — by the pigeonhole principle two hashes within the radius are
+ * within {@code radius / segments} bits of each other in at least one segment — so candidates are
+ * found by looking up each segment value and its near values instead of by tree traversal. Scales far
+ * better than a BK-tree on uniformly-distributed hashes. The radius is configurable (default
+ * {@value #DEFAULT_RADIUS}); the segment count and per-segment probe radius are picked from it and the
+ * number of hashes ({@link MihLayout}), so buckets stay small as the library grows. The segment
+ * tables are primitive arrays ({@link SegmentTables}), 4 bytes per hash per segment.
  *
  * <h2>Clustering</h2>
  * Every within-radius pair is unioned (union-find), so clusters are true connected components rather
  * than order-dependent greedy groups. Within each cluster the keeper is the largest file (tie-broken
- * by shortest path); the rest are duplicates.
+ * by shortest path); the rest are duplicates. The queries run on {@code threads} workers over blocks
+ * of hashes, unioning into a {@link ConcurrentDisjointSet}; its roots do not depend on the order of
+ * the unions, so the result is the same as the serial one, list order included.
  *
  * <h2>Tiers</h2>
  * <ol>
  * <li><b>Exact</b>: items sharing a content signature (and size) are certain copies; collapsed first
  * so only one representative per exact group enters the fuzzy pass.</li>
- * <li><b>Near-duplicate</b>: representatives are clustered by MIH over their perceptual hashes.</li>
+ * <li><b>Near-duplicate</b>: representatives are clustered by MIH over their perceptual hashes,
+ * separately per {@link HashSource}: a thumbnail hash and a decoded-image hash of the same picture
+ * are not held to the same radius, so they are never compared. The cache re-hashes entries from a
+ * source the run would not pick, so a run's sources only differ where its own choice does.</li>
  * </ol>
  * Items without a perceptual hash (videos, unreadable images) are always kept.
+ *
+ * <h2>Columnar batches</h2>
+ * {@link #deduplicate(HashBatch)} runs the same tiers over primitive columns instead of
+ * {@link MediaItem}s, for runs too large to hold every item in heap: exact copies are grouped by
+ * sorting entry ids rather than by hashing boxed keys, and the result is a {@link BitSet} of the
+ * duplicate entries.
  */
 public class MihDeduplicator implements Deduplicator {
 
     private static final Logger logger = LogManager.getLogger(MihDeduplicator.class);
-    private static final int RADIUS = 5;
-    private static final int SEGMENTS = RADIUS + 1;
+    public static final int DEFAULT_RADIUS = 5;
+    public static final int MAX_RADIUS = 16;
 
-    private static final Comparator<MediaItem> KEEPER_ORDER =
+    static final Comparator<MediaItem> KEEPER_ORDER =
             Comparator.comparingLong(MediaItem::getFileSize).reversed()
                       .thenComparingInt(i -> i.getPath().toString().length());
 
-    private record ExactKey(long size, long signature) { }
+    /** Hashes per block of queries claimed by a worker; later blocks have fewer candidates left. */
+    private static final int QUERY_BLOCK = 1024;
+
+    record ExactKey(long size, long signature) { }
+
+    private final int radius;
+    private final int threads;
+    private final AtomicLong candidates = new AtomicLong();
+
+    /** The default radius, queried on the calling thread. */
+    public MihDeduplicator() {
+        this(DEFAULT_RADIUS, 1);
+    }
+
+    /** The default radius, queried on {@code threads} workers. */
+    public MihDeduplicator(final int threads) {
+        this(DEFAULT_RADIUS, threads);
+    }
+
+    /** Matches hashes within {@code radius} bits (0 to {@value #MAX_RADIUS}), querying on {@code threads} workers. */
+    public MihDeduplicator(final int radius, final int threads) {
+        if (radius < 0 || radius > MAX_RADIUS) {
+            throw new IllegalArgumentException("Hamming radius out of range: " + radius);
+        }
+        this.radius = radius;
+        this.threads = Math.max(1, threads);
+    }
 
     @Override
     public DeduplicationResult deduplicate(final List<MediaItem> items) {
         final List<MediaItem> keepers = new ArrayList<>();
         final List<MediaItem> duplicates = new ArrayList<>();
+        candidates.set(0);
 
         final List<MediaItem> representatives = collapseExactCopies(items, duplicates);
         clusterNearDuplicates(representatives, keepers, duplicates);
 
-        logger.debug("Deduplicated {} items -> {} keepers, {} duplicates",
-                     items.size(), keepers.size(), duplicates.size());
+        logger.debug("Deduplicated {} items -> {} keepers, {} duplicates ({} candidates compared)",
+                     items.size(), keepers.size(), duplicates.size(), candidates.get());
         return new DeduplicationResult(keepers, duplicates);
     }
 
@@ -88,24 +138,27 @@ public class MihDeduplicator implements Deduplicator {
      * emitting one keeper per cluster. Representatives without a hash are kept as-is.
      */
     private void clusterNearDuplicates(List<MediaItem> reps, List<MediaItem> keepers, List<MediaItem> duplicates) {
-        final List<MediaItem> hashable = new ArrayList<>();
+        final Map<HashSource, List<MediaItem>> bySource = new EnumMap<>(HashSource.class);
         for (MediaItem rep : reps) {
             if (rep.getPerceptualHash() == 0) {
                 keepers.add(rep); // no usable hash: always a keeper
             } else {
-                hashable.add(rep);
+                bySource.computeIfAbsent(rep.getHashSource(), s -> new ArrayList<>()).add(rep);
             }
         }
-        if (hashable.isEmpty()) {
-            return;
+        for (List<MediaItem> hashable : bySource.values()) {
+            clusterWithinSource(hashable, keepers, duplicates);
         }
+    }
+
+    private void clusterWithinSource(List<MediaItem> hashable, List<MediaItem> keepers, List<MediaItem> duplicates) {
 
         final long[] hashes = new long[hashable.size()];
         for (int i = 0; i < hashes.length; i++) {
             hashes[i] = hashable.get(i).getPerceptualHash();
         }
 
-        final DisjointSet clusters = new DisjointSet(hashable.size());
+        final ConcurrentDisjointSet clusters = new ConcurrentDisjointSet(hashable.size());
         unionWithinRadius(hashes, clusters);
 
         final Map<Integer, List<MediaItem>> components = new HashMap<>();
@@ -119,75 +172,137 @@ public class MihDeduplicator implements Deduplicator {
         }
     }
 
-    /** Builds the multi-index and unions every pair within {@link #RADIUS} Hamming distance. */
-    private void unionWithinRadius(long[] hashes, DisjointSet clusters) {
-        final List<Map<Long, List<Integer>>> index = buildIndex(hashes);
-        for (int i = 0; i < hashes.length; i++) {
-            for (int seg = 0; seg < SEGMENTS; seg++) {
-                for (int j : index.get(seg).getOrDefault(segment(hashes[i], seg), List.of())) {
-                    if (j > i && Long.bitCount(hashes[i] ^ hashes[j]) <= RADIUS) {
-                        clusters.union(i, j);
-                    }
-                }
+    /**
+     * Deduplicates a columnar batch with the tiers and keeper choice of {@link #deduplicate(List)}
+     * (ties between equal keepers go to the earlier entry). Returns the entries that are duplicates;
+     * every other entry is a keeper.
+     */
+    public BitSet deduplicate(final HashBatch batch) {
+        final BitSet duplicates = new BitSet(batch.size());
+        candidates.set(0);
+
+        final int[] representatives = collapseExactCopies(batch, duplicates);
+        for (final HashSource source : HashSource.values()) {
+            final int[] hashable = Arrays.stream(representatives)
+                                         .filter(i -> batch.perceptualHash(i) != 0 && batch.source(i) == source.code())
+                                         .toArray();
+            if (hashable.length > 0) {
+                clusterWithinSource(batch, hashable, duplicates);
             }
         }
+
+        logger.debug("Deduplicated {} entries -> {} keepers, {} duplicates ({} candidates compared)",
+                     batch.size(), batch.size() - duplicates.cardinality(), duplicates.cardinality(), candidates.get());
+        return duplicates;
     }
 
-    private List<Map<Long, List<Integer>>> buildIndex(long[] hashes) {
-        final List<Map<Long, List<Integer>>> index = new ArrayList<>(SEGMENTS);
-        for (int seg = 0; seg < SEGMENTS; seg++) {
-            index.add(new HashMap<>());
-        }
-        for (int i = 0; i < hashes.length; i++) {
-            for (int seg = 0; seg < SEGMENTS; seg++) {
-                index.get(seg).computeIfAbsent(segment(hashes[i], seg), k -> new ArrayList<>()).add(i);
+    /**
+     * Sorts the entries that have a signature by (size, signature), keeper first within each run of
+     * equal pairs, marks the rest of each run as duplicates, and returns the entries left, in order.
+     */
+    private static int[] collapseExactCopies(HashBatch batch, BitSet duplicates) {
+        final int[] signed = IntStream.range(0, batch.size()).filter(i -> batch.signature(i) != 0).toArray();
+        sort(signed, (a, b) -> {
+            int c = Long.compare(batch.fileSize(a), batch.fileSize(b));
+            if (c == 0) {
+                c = Long.compare(batch.signature(a), batch.signature(b));
+            }
+            return (c != 0) ? c : batch.compareKeepers(a, b);
+        });
+        for (int k = 1; k < signed.length; k++) {
+            if (batch.fileSize(signed[k]) == batch.fileSize(signed[k - 1])
+                    && batch.signature(signed[k]) == batch.signature(signed[k - 1])) {
+                duplicates.set(signed[k]);
             }
         }
-        return index;
+        return IntStream.range(0, batch.size()).filter(i -> !duplicates.get(i)).toArray();
     }
 
-    /** Value of the {@code seg}-th slice of the 64-bit hash (slices partition all 64 bits). */
-    private static long segment(long hash, int seg) {
-        int base = 64 / SEGMENTS;
-        int rem = 64 % SEGMENTS;
-        int start = seg * base + Math.min(seg, rem);
-        int len = base + (seg < rem ? 1 : 0);
-        return (hash >>> start) & ((1L << len) - 1);
-    }
+    /** Clusters the {@code hashable} entries (one source) and marks all but each cluster's keeper. */
+    private void clusterWithinSource(HashBatch batch, int[] hashable, BitSet duplicates) {
+        final long[] hashes = new long[hashable.length];
+        for (int k = 0; k < hashes.length; k++) {
+            hashes[k] = batch.perceptualHash(hashable[k]);
+        }
 
-    private static final class DisjointSet {
-        private final int[] parent;
-        private final int[] rank;
+        final ConcurrentDisjointSet clusters = new ConcurrentDisjointSet(hashable.length);
+        unionWithinRadius(hashes, clusters);
 
-        DisjointSet(int n) {
-            parent = new int[n];
-            rank = new int[n];
-            for (int i = 0; i < n; i++) {
-                parent[i] = i;
+        final int[] keeper = new int[hashable.length]; // by root: the position of the cluster's keeper
+        Arrays.fill(keeper, -1);
+        for (int k = 0; k < hashable.length; k++) {
+            final int root = clusters.find(k);
+            if (keeper[root] < 0 || batch.compareKeepers(hashable[k], hashable[keeper[root]]) < 0) {
+                keeper[root] = k;
             }
         }
-
-        int find(int x) {
-            while (parent[x] != x) {
-                parent[x] = parent[parent[x]]; // path halving
-                x = parent[x];
+        for (int k = 0; k < hashable.length; k++) {
+            if (keeper[clusters.find(k)] != k) {
+                duplicates.set(hashable[k]);
             }
-            return x;
         }
+    }
 
-        void union(int a, int b) {
-            int ra = find(a);
-            int rb = find(b);
-            if (ra == rb) {
-                return;
-            }
-            if (rank[ra] < rank[rb]) {
-                int t = ra; ra = rb; rb = t;
-            }
-            parent[rb] = ra;
-            if (rank[ra] == rank[rb]) {
-                rank[ra]++;
+    /** Bottom-up merge sort of {@code ids} by {@code order}, without boxing them. */
+    private static void sort(int[] ids, IntBinaryOperator order) {
+        int[] from = ids;
+        int[] to = new int[ids.length];
+        for (int width = 1; width < ids.length; width *= 2) {
+            for (int lo = 0; lo < ids.length; lo += 2 * width) {
+                final int mid = Math.min(lo + width, ids.length);
+                final int hi = Math.min(lo + 2 * width, ids.length);
+                int a = lo;
+                int b = mid;
+                for (int k = lo; k < hi; k++) {
+                    to[k] = (b >= hi || (a < mid && order.applyAsInt(from[a], from[b]) <= 0)) ? from[a++] : from[b++];
+                }
             }
+            final int[] swap = from;
+            from = to;
+            to = swap;
+        }
+        if (from != ids) {
+            System.arraycopy(from, 0, ids, 0, ids.length);
+        }
+    }
+
+    /** Candidate pairs compared (Hamming distance computed) by the last {@link #deduplicate} call. */
+    long candidates() {
+        return candidates.get();
+    }
+
+    /** Builds the multi-index and unions every pair within the radius. */
+    private void unionWithinRadius(long[] hashes, ConcurrentDisjointSet clusters) {
+        final MihLayout layout = MihLayout.plan(radius, hashes.length);
+        logger.debug("MIH over {} hashes within {} bits: {}", hashes.length, radius, layout);
+        final SegmentTables tables = new SegmentTables(layout, hashes);
+        try {
+            Parallel.forRange(hashes.length, threads, QUERY_BLOCK, (from, to) -> {
+                long compared = 0;
+                for (int i = from; i < to; i++) {
+                    final long hash = hashes[i];
+                    for (int seg = 0; seg < layout.segments(); seg++) {
+                        final long value = layout.segment(hash, seg);
+                        final int[] ids = tables.ids(seg);
+                        for (final long mask : layout.masks(seg)) {
+                            final long probe = value ^ mask;
+                            final int start = tables.firstAfter(seg, probe, i);
+                            final int end = tables.end(seg, probe);
+                            for (int k = start; k < end; k++) {
+                                final int j = ids[k];
+                                if (Long.bitCount(hash ^ hashes[j]) <= radius) {
+                                    clusters.union(i, j);
+                                }
+                            }
+                            compared += end - start;
+                        }
+                    }
+                }
+                candidates.addAndGet(compared);
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while deduplicating", e);
         }
     }
 }
@@ -0,0 +1,698 @@
+package com.comp.dedup;
+
+import com.comp.domain.HashSource;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * The state behind {@link IncrementalDeduplicator}: every item inserted so far, as hashes only (path
+ * hash, perceptual hash, size, content signature, hash source), with the exact-copy map, the
+ * multi-index over perceptual hashes and the union-find over clusters. It can be persisted, so a run
+ * that adds a thousand photos to a library of millions inserts and queries only those, instead of
+ * re-indexing the library.
+ *
+ * <h2>Layout</h2>
+ * A persisted index is a base table read in place through {@link java.nio.MappedByteBuffer}s, plus
+ * a journal of the items inserted since. The base is {@code header | records | path order | exact
+ * order | segment tables}. The 32-byte header holds a magic number, version, item count, exact-key
+ * count, indexed-item count, and the segment count and radius of the {@link MihLayout} the segment
+ * tables were built with (planned for the base's size when it is written). Each 40-byte record holds {@code pathHash,
+ * perceptualHash, fileSize, contentSignature} (longs), the item's cluster root (int) and its flags
+ * (int: the {@link HashSource} code, and whether the item is in the multi-index). The path order
+ * lists item ids sorted by path hash; the exact order lists the first item of each (size,
+ * signature) pair sorted by that pair; both are binary-searched. Each segment table is CSR-style: an
+ * offsets array with a slot per possible segment value, then the ids of the indexed items grouped by
+ * value, so a bucket is one contiguous range. Items inserted after the base was written live in
+ * memory under a layout of their own: a {@link SegmentTables} bulk-built and planned for their number,
+ * plus {@link SegmentChains} for the few inserted since, rebuilt once that tail reaches a sixteenth of
+ * the table. A large batch thus costs about what {@link MihDeduplicator} does instead of growing with
+ * its square. They are appended to the journal by {@link #save()}. A base written for another radius
+ * is re-indexed on opening and rewritten by the next save.
+ *
+ * <h2>Union-find</h2>
+ * Every cluster is rooted at its lowest item id, so the union-find state depends only on the items
+ * and their ids, not on the order pairs were found in: loading, inserting and saving in any batches
+ * gives the same clusters as one full build. The base stores each item's root directly; a union
+ * that later joins two base clusters re-parents one base root in a small in-memory overlay. Every
+ * persisted item counts as settled (filed in an earlier run).
+ *
+ * <h2>Writes</h2>
+ * A save appends the new items to the journal, so it costs what was added. Once the journal holds a
+ * quarter of the base (and at least {@value #COMPACT_MIN} items), the save rewrites the base instead:
+ * the base's records merged with the journaled ones and the segment tables rebuilt by a counting
+ * sort. The cost of saves thus stays proportional to the items added, amortized. Opening replays the
+ * journal by repeating its inserts, which gives back the same clusters; items the base already holds
+ * (left by a crash between a rewrite and the journal's deletion) are skipped.
+ * <p>
+ * Each mapped section is limited to 2 GB, i.e. roughly 50M items. Not thread-safe.
+ */
+final class MihIndex {
+
+    private static final Logger logger = LogManager.getLogger(MihIndex.class);
+
+    private static final int MAGIC = 0x50544d49; // "PTMI"
+    private static final int JOURNAL_MAGIC = 0x50544d4a; // "PTMJ"
+    private static final int VERSION = 1;
+    private static final int HEADER = 32;
+    private static final int RECORD = 40;
+    private static final int IO_BUFFER = 64 * 1024;
+    static final int COMPACT_MIN = 4096;
+    private static final int COMPACT_RATIO = 4;
+    /** Items inserted since the in-memory table was built at which it is rebuilt, at the least. */
+    private static final int TAIL_MIN = 1024;
+    private static final int TAIL_RATIO = 16;
+
+    private static final int PATH_HASH = 0;
+    private static final int PERCEPTUAL_HASH = 8;
+    private static final int FILE_SIZE = 16;
+    private static final int SIGNATURE = 24;
+    private static final int ROOT = 32;
+    private static final int FLAGS = 36;
+    private static final int SOURCE_MASK = 0xff;
+    private static final int INDEXED = 0x100;
+
+    private final Path file;
+    private final Path journalFile;
+    private final int radius;
+    /** The base's layout; the in-memory items have their own ({@link #table}). */
+    private MihLayout layout;
+    /** The base was re-indexed for another radius; the next save rewrites it. */
+    private boolean rebuilt;
+
+    // The mapped base table: items [0, base).
+    private int base;
+    private int baseExact;
+    private int baseIndexed;
+    private ByteBuffer records;
+    private IntBuffer pathOrder;
+    private IntBuffer exactOrder;
+    private IntBuffer[] offsets;
+    private IntBuffer[] members;
+    /** Base roots joined to a lower root since the base was written. */
+    private final Map<Integer, Integer> moved = new HashMap<>();
+
+    // Items inserted since: [base, base + added), the first `journaled` of them already in the journal.
+    private int added;
+    private int journaled;
+    private long[] pathHashes = new long[16];
+    private long[] hashes = new long[16];
+    private long[] sizes = new long[16];
+    private long[] signatures = new long[16];
+    private int[] flags = new int[16];
+    private int[] parent = new int[16];
+    private boolean[] settled = new boolean[16];
+    private final Map<MihDeduplicator.ExactKey, Integer> exact = new HashMap<>();
+    private final Map<Long, List<Integer>> byPath = new HashMap<>();
+    /** The indexed items among the first {@link #tabled} in memory: their slots and hashes. */
+    private SegmentTables table;
+    private MihLayout tableLayout;
+    private int[] tableSlots;
+    private long[] tableHashes;
+    private int tabled;
+    /** The indexed items in memory from {@link #tabled} on, by offset from it. */
+    private SegmentChains tail;
+
+    /** An empty index that lives in memory only; {@link #save()} does nothing. */
+    MihIndex(int radius) {
+        this(null, radius);
+    }
+
+    private MihIndex(Path file, int radius) {
+        this.file = file;
+        this.journalFile = (file == null) ? null : file.resolveSibling(file.getFileName() + ".journal");
+        this.radius = radius;
+        useLayout(MihLayout.plan(radius, 0));
+        retable();
+    }
+
+    /**
+     * Opens the index persisted at {@code file}, matching within {@code radius} bits; a missing or
+     * unreadable file gives an empty one.
+     */
+    static MihIndex open(Path file, int radius) throws IOException {
+        final MihIndex index = new MihIndex(file, radius);
+        index.mapBase();
+        final int replayed = index.replayJournal();
+        logger.info("Opened dedup index {}: {} items ({} from the journal)", file, index.size(), replayed);
+        return index;
+    }
+
+    /** Items inserted so far, loaded ones included; ids run from 0 to this. */
+    int size() {
+        return base + added;
+    }
+
+    /** Whether an item with this path hash, size and content signature was inserted before. */
+    boolean contains(long pathHash, long fileSize, long signature) {
+        for (final int i : byPath.getOrDefault(pathHash, List.of())) {
+            if (sizes[i - base] == fileSize && signatures[i - base] == signature) {
+                return true;
+            }
+        }
+        int lo = 0;
+        int hi = base - 1;
+        while (lo <= hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (records.getLong(pathOrder.get(mid) * RECORD + PATH_HASH) < pathHash) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        for (int k = lo; k < base; k++) {
+            final int i = pathOrder.get(k);
+            if (records.getLong(i * RECORD + PATH_HASH) != pathHash) {
+                break;
+            }
+            if (sizeOf(i) == fileSize && signatureOf(i) == signature) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds one item and unions it with what it matches; returns its id. An exact copy (same size and
+     * content signature) joins its copy's cluster without entering the multi-index, as in the exact
+     * tier of a full run; otherwise an item with a perceptual hash is unioned with every indexed
+     * same-source hash within the radius and indexed.
+     */
+    int insert(long pathHash, long perceptualHash, long fileSize, long signature, HashSource source) {
+        final int id = base + added;
+        grow(added + 1);
+        pathHashes[added] = pathHash;
+        hashes[added] = perceptualHash;
+        sizes[added] = fileSize;
+        signatures[added] = signature;
+        flags[added] = source.code();
+        parent[added] = id;
+        settled[added] = false;
+        added++;
+        byPath.computeIfAbsent(pathHash, k -> new ArrayList<>(1)).add(id);
+
+        if (signature != 0) {
+            final int copy = exactCopy(fileSize, signature);
+            if (copy >= 0) {
+                union(copy, id);
+                return id;
+            }
+            exact.put(new MihDeduplicator.ExactKey(fileSize, signature), id);
+        }
+        if (perceptualHash == 0) {
+            return id; // no usable hash: its own cluster
+        }
+        if (base > 0) {
+            for (int seg = 0; seg < layout.segments(); seg++) {
+                final long value = layout.segment(perceptualHash, seg);
+                final IntBuffer ids = members[seg];
+                for (final long mask : layout.masks(seg)) {
+                    final int probe = (int) (value ^ mask);
+                    for (int k = offsets[seg].get(probe), end = offsets[seg].get(probe + 1); k < end; k++) {
+                        unionIfNear(id, perceptualHash, source.code(), ids.get(k));
+                    }
+                }
+            }
+        }
+        for (int seg = 0; seg < tableLayout.segments(); seg++) {
+            final long value = tableLayout.segment(perceptualHash, seg);
+            final int[] ids = table.ids(seg);
+            for (final long mask : tableLayout.masks(seg)) {
+                final long probe = value ^ mask;
+                for (int k = table.start(seg, probe), end = table.end(seg, probe); k < end; k++) {
+                    final int p = ids[k];
+                    if (Long.bitCount(perceptualHash ^ tableHashes[p]) <= radius) {
+                        unionIfNear(id, perceptualHash, source.code(), base + tableSlots[p]);
+                    }
+                }
+            }
+        }
+        final MihLayout tailLayout = tail.layout();
+        for (int seg = 0; seg < tailLayout.segments(); seg++) {
+            final long value = tailLayout.segment(perceptualHash, seg);
+            for (final long mask : tailLayout.masks(seg)) {
+                for (int j = tail.first(seg, value ^ mask); j != SegmentChains.NONE; j = tail.next(seg, j)) {
+                    unionIfNear(id, perceptualHash, source.code(), base + tabled + j);
+                }
+            }
+        }
+        flags[added - 1] |= INDEXED;
+        if (added - tabled > Math.max(TAIL_MIN, tabled / TAIL_RATIO)) {
+            retable();
+        } else {
+            tail.add(added - 1 - tabled, perceptualHash);
+        }
+        return id;
+    }
+
+    /** Root of {@code id}'s cluster: its lowest item id. */
+    int find(int id) {
+        int root = id;
+        for (int p = parentOf(root); p != root; p = parentOf(root)) {
+            root = p;
+        }
+        while (id >= base && parent[id - base] != root) { // compress the in-memory links
+            final int next = parent[id - base];
+            parent[id - base] = root;
+            id = next;
+        }
+        return root;
+    }
+
+    /** Whether the cluster rooted at {@code root} holds an item filed before (persisted or settled). */
+    boolean isSettled(int root) {
+        return root < base || settled[root - base];
+    }
+
+    void settle(int id) {
+        final int root = find(id);
+        if (root >= base) {
+            settled[root - base] = true;
+        }
+    }
+
+    /**
+     * Drops the items from id {@code size} on, as if they had never been inserted. The in-memory items
+     * before it are inserted again, in order, which gives back their clusters without the links the
+     * dropped items made; so it costs what the index holds in memory, not what it dropped. The items
+     * kept must all be settled, as they are between batches, and none of the dropped ones saved.
+     */
+    void truncate(int size) {
+        if (size < base + journaled || size > size()) {
+            throw new IllegalArgumentException("Cannot truncate " + size() + " items (" + (base + journaled)
+                                               + " saved) to " + size);
+        }
+        final int keep = size - base;
+        added = 0;
+        moved.clear();
+        exact.clear();
+        byPath.clear();
+        retable();
+        for (int i = 0; i < keep; i++) {
+            settle(insert(pathHashes[i], hashes[i], sizes[i], signatures[i],
+                          HashSource.fromCode(flags[i] & SOURCE_MASK)));
+        }
+    }
+
+    /**
+     * Persists the items inserted since the last save: appended to the journal, or, once the journal
+     * is large enough, by rewriting the base. Does nothing for an in-memory index.
+     */
+    void save() throws IOException {
+        if (file == null || (journaled == added && !rebuilt)) {
+            return;
+        }
+        if (rebuilt || added >= Math.max(COMPACT_MIN, base / COMPACT_RATIO)) {
+            compact();
+        } else {
+            appendJournal();
+        }
+    }
+
+    /** Rewrites the base with every item and drops the journal. */
+    void compact() throws IOException {
+        final Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        final int n = size();
+        writeBase(tmp);
+        try {
+            Files.move(tmp, file, REPLACE_EXISTING, ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Could not replace {} ({}); journaling instead", file, e.toString());
+            Files.deleteIfExists(tmp);
+            appendJournal();
+            return;
+        }
+        Files.deleteIfExists(journalFile);
+        resetAdded();
+        rebuilt = false;
+        mapBase();
+        logger.info("Wrote dedup index -> {} items", n);
+    }
+
+    private void unionIfNear(int id, long hash, int source, int other) {
+        if (Long.bitCount(hash ^ hashOf(other)) <= radius && (flagsOf(other) & SOURCE_MASK) == source) {
+            union(id, other);
+        }
+    }
+
+    private void union(int a, int b) {
+        final int ra = find(a);
+        final int rb = find(b);
+        if (ra == rb) {
+            return;
+        }
+        final int low = Math.min(ra, rb);
+        final int high = Math.max(ra, rb);
+        if (high < base) {
+            moved.put(high, low);
+        } else {
+            parent[high - base] = low;
+            if (low >= base) {
+                settled[low - base] |= settled[high - base];
+            }
+        }
+    }
+
+    private int parentOf(int id) {
+        if (id >= base) {
+            return parent[id - base];
+        }
+        final Integer to = moved.get(id);
+        return (to != null) ? to : records.getInt(id * RECORD + ROOT);
+    }
+
+    /** Id of the first item with this size and signature, or -1. */
+    private int exactCopy(long fileSize, long signature) {
+        final Integer fresh = exact.get(new MihDeduplicator.ExactKey(fileSize, signature));
+        if (fresh != null) {
+            return fresh;
+        }
+        int lo = 0;
+        int hi = baseExact - 1;
+        while (lo <= hi) {
+            final int mid = (lo + hi) >>> 1;
+            final int i = exactOrder.get(mid);
+            final int c = compareExact(sizeOf(i), signatureOf(i), fileSize, signature);
+            if (c == 0) {
+                return i;
+            } else if (c < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return -1;
+    }
+
+    private static int compareExact(long sizeA, long signatureA, long sizeB, long signatureB) {
+        final int c = Long.compare(sizeA, sizeB);
+        return (c != 0) ? c : Long.compare(signatureA, signatureB);
+    }
+
+    private long pathHashOf(int id) {
+        return (id < base) ? records.getLong(id * RECORD + PATH_HASH) : pathHashes[id - base];
+    }
+
+    private long hashOf(int id) {
+        return (id < base) ? records.getLong(id * RECORD + PERCEPTUAL_HASH) : hashes[id - base];
+    }
+
+    private long sizeOf(int id) {
+        return (id < base) ? records.getLong(id * RECORD + FILE_SIZE) : sizes[id - base];
+    }
+
+    private long signatureOf(int id) {
+        return (id < base) ? records.getLong(id * RECORD + SIGNATURE) : signatures[id - base];
+    }
+
+    private int flagsOf(int id) {
+        return (id < base) ? records.getInt(id * RECORD + FLAGS) : flags[id - base];
+    }
+
+    private void grow(int n) {
+        if (n > parent.length) {
+            final int capacity = Math.max(n, parent.length * 2);
+            pathHashes = Arrays.copyOf(pathHashes, capacity);
+            hashes = Arrays.copyOf(hashes, capacity);
+            sizes = Arrays.copyOf(sizes, capacity);
+            signatures = Arrays.copyOf(signatures, capacity);
+            flags = Arrays.copyOf(flags, capacity);
+            parent = Arrays.copyOf(parent, capacity);
+            settled = Arrays.copyOf(settled, capacity);
+        }
+    }
+
+    private void resetAdded() {
+        added = 0;
+        journaled = 0;
+        moved.clear();
+        exact.clear();
+        byPath.clear();
+        retable();
+    }
+
+    /**
+     * Bulk-builds the table over every indexed item in memory, under a layout planned for their
+     * number, and starts an empty tail planned for the most it will hold before the next rebuild.
+     */
+    private void retable() {
+        int n = 0;
+        tableSlots = new int[added];
+        for (int i = 0; i < added; i++) {
+            if ((flags[i] & INDEXED) != 0) {
+                tableSlots[n++] = i;
+            }
+        }
+        tableSlots = Arrays.copyOf(tableSlots, n);
+        tableHashes = new long[n];
+        for (int p = 0; p < n; p++) {
+            tableHashes[p] = hashes[tableSlots[p]];
+        }
+        tableLayout = MihLayout.plan(radius, n);
+        table = new SegmentTables(tableLayout, tableHashes);
+        tabled = added;
+        final int limit = Math.max(TAIL_MIN, tabled / TAIL_RATIO);
+        tail = new SegmentChains(MihLayout.plan(radius, limit), TAIL_MIN);
+        if (n > 0) {
+            logger.debug("Rebuilt the in-memory dedup index over {} items: {}", n, tableLayout);
+        }
+    }
+
+    /** Switches the base to {@code next}'s segments. */
+    private void useLayout(MihLayout next) {
+        layout = next;
+        offsets = new IntBuffer[next.segments()];
+        members = new IntBuffer[next.segments()];
+    }
+
+    // --- persistence ---
+
+    private void mapBase() throws IOException {
+        base = 0;
+        baseExact = 0;
+        baseIndexed = 0;
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (FileChannel ch = FileChannel.open(file, READ)) {
+            final ByteBuffer header = ByteBuffer.allocate(HEADER);
+            if (ch.read(header, 0) < HEADER || header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                logger.warn("Ignoring unreadable dedup index {}", file);
+                return;
+            }
+            final MihLayout stored;
+            try {
+                stored = new MihLayout(header.getInt(24), header.getInt(20));
+            } catch (IllegalArgumentException ex) {
+                logger.warn("Ignoring unreadable dedup index {}", file);
+                return;
+            }
+            final long n = header.getInt(8);
+            final long e = header.getInt(12);
+            final long m = header.getInt(16);
+            long expected = HEADER + n * RECORD + n * 4 + e * 4;
+            for (int seg = 0; seg < stored.segments(); seg++) {
+                expected += 4L * ((1 << stored.bits(seg)) + 1) + m * 4;
+            }
+            if (n * RECORD > Integer.MAX_VALUE) {
+                throw new IOException("Dedup index too large to map: " + file);
+            }
+            if (ch.size() != expected) {
+                logger.warn("Ignoring truncated dedup index {}", file);
+                return;
+            }
+            long pos = HEADER;
+            records = ch.map(FileChannel.MapMode.READ_ONLY, pos, n * RECORD);
+            if (stored.radius() != radius) {
+                reindex((int) n, stored.radius());
+                return;
+            }
+            useLayout(stored);
+            pos += n * RECORD;
+            pathOrder = ch.map(FileChannel.MapMode.READ_ONLY, pos, n * 4).asIntBuffer();
+            pos += n * 4;
+            exactOrder = ch.map(FileChannel.MapMode.READ_ONLY, pos, e * 4).asIntBuffer();
+            pos += e * 4;
+            for (int seg = 0; seg < stored.segments(); seg++) {
+                final long slots = (1L << stored.bits(seg)) + 1;
+                offsets[seg] = ch.map(FileChannel.MapMode.READ_ONLY, pos, slots * 4).asIntBuffer();
+                pos += slots * 4;
+                members[seg] = ch.map(FileChannel.MapMode.READ_ONLY, pos, m * 4).asIntBuffer();
+                pos += m * 4;
+            }
+            base = (int) n;
+            baseExact = (int) e;
+            baseIndexed = (int) m;
+        }
+    }
+
+    /**
+     * Re-inserts the {@code n} mapped base records into memory, clustering them within this index's
+     * radius instead of the one the base was built for. They count as settled, as loaded items do.
+     */
+    private void reindex(int n, int builtFor) {
+        logger.info("Re-indexing dedup index {} ({} items) for radius {} (built for {})", file, n, radius, builtFor);
+        final ByteBuffer old = records;
+        records = null;
+        for (int i = 0; i < n; i++) {
+            final int at = i * RECORD;
+            settle(insert(old.getLong(at + PATH_HASH), old.getLong(at + PERCEPTUAL_HASH), old.getLong(at + FILE_SIZE),
+                          old.getLong(at + SIGNATURE), HashSource.fromCode(old.getInt(at + FLAGS) & SOURCE_MASK)));
+        }
+        rebuilt = true;
+    }
+
+    /** Re-inserts the journaled items; a truncated last record is dropped. */
+    private int replayJournal() throws IOException {
+        if (!Files.exists(journalFile)) {
+            return 0;
+        }
+        int replayed = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(journalFile)))) {
+            if (in.readInt() != JOURNAL_MAGIC || in.readInt() != VERSION) {
+                logger.warn("Ignoring unreadable dedup journal {}", journalFile);
+                return 0;
+            }
+            while (true) {
+                final long pathHash = in.readLong();
+                final long hash = in.readLong();
+                final long fileSize = in.readLong();
+                final long signature = in.readLong();
+                final HashSource source = HashSource.fromCode(in.readByte());
+                if (!contains(pathHash, fileSize, signature)) {
+                    settle(insert(pathHash, hash, fileSize, signature, source));
+                    replayed++;
+                }
+            }
+        } catch (EOFException end) {
+            // end of the journal, or a record cut short by a crash
+        }
+        journaled = added;
+        return replayed;
+    }
+
+    private void appendJournal() throws IOException {
+        final boolean fresh = !Files.exists(journalFile) || Files.size(journalFile) == 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(journalFile, CREATE, APPEND), IO_BUFFER))) {
+            if (fresh) {
+                out.writeInt(JOURNAL_MAGIC);
+                out.writeInt(VERSION);
+            }
+            for (int i = journaled; i < added; i++) {
+                out.writeLong(pathHashes[i]);
+                out.writeLong(hashes[i]);
+                out.writeLong(sizes[i]);
+                out.writeLong(signatures[i]);
+                out.writeByte(flags[i] & SOURCE_MASK);
+            }
+        }
+        logger.debug("Journaled {} dedup index items", added - journaled);
+        journaled = added;
+    }
+
+    /**
+     * Writes every item as a new base to {@code target}. The sorted sections merge the base's (already
+     * sorted) order with the sorted new items; each segment table is a counting sort over all items,
+     * holding one {@code int[]} of the indexed ids at a time.
+     */
+    private void writeBase(Path target) throws IOException {
+        final int n = size();
+        final List<Integer> newByPath = new ArrayList<>(added);
+        int newIndexed = 0;
+        for (int i = base; i < n; i++) {
+            newByPath.add(i);
+            if ((flags[i - base] & INDEXED) != 0) {
+                newIndexed++;
+            }
+        }
+        newByPath.sort(Comparator.comparingLong(this::pathHashOf));
+        final List<Integer> newExact = new ArrayList<>(exact.values());
+        newExact.sort((a, b) -> compareExact(sizeOf(a), signatureOf(a), sizeOf(b), signatureOf(b)));
+        final int indexed = baseIndexed + newIndexed;
+        final MihLayout next = MihLayout.plan(radius, indexed);
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(target), IO_BUFFER))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(n);
+            out.writeInt(baseExact + newExact.size());
+            out.writeInt(indexed);
+            out.writeInt(next.segments());
+            out.writeInt(radius);
+            out.writeInt(0);
+            for (int i = 0; i < n; i++) {
+                out.writeLong(pathHashOf(i));
+                out.writeLong(hashOf(i));
+                out.writeLong(sizeOf(i));
+                out.writeLong(signatureOf(i));
+                out.writeInt(find(i));
+                out.writeInt(flagsOf(i));
+            }
+            writeMerged(out, pathOrder, base, newByPath, Comparator.comparingLong(this::pathHashOf));
+            writeMerged(out, exactOrder, baseExact, newExact,
+                        (a, b) -> compareExact(sizeOf(a), signatureOf(a), sizeOf(b), signatureOf(b)));
+            final int[] ids = new int[indexed];
+            for (int seg = 0; seg < next.segments(); seg++) {
+                final int[] start = new int[(1 << next.bits(seg)) + 1];
+                for (int i = 0; i < n; i++) {
+                    if ((flagsOf(i) & INDEXED) != 0) {
+                        start[(int) next.segment(hashOf(i), seg) + 1]++;
+                    }
+                }
+                for (int v = 1; v < start.length; v++) {
+                    start[v] += start[v - 1];
+                }
+                for (final int offset : start) {
+                    out.writeInt(offset);
+                }
+                for (int i = 0; i < n; i++) {
+                    if ((flagsOf(i) & INDEXED) != 0) {
+                        ids[start[(int) next.segment(hashOf(i), seg)]++] = i;
+                    }
+                }
+                for (final int id : ids) {
+                    out.writeInt(id);
+                }
+            }
+        }
+    }
+
+    /** Writes the ids of a sorted base section merged with sorted new ids. */
+    private void writeMerged(DataOutputStream out, IntBuffer sorted, int count, List<Integer> fresh,
+                             Comparator<Integer> order) throws IOException {
+        int k = 0;
+        int f = 0;
+        while (k < count || f < fresh.size()) {
+            if (f == fresh.size() || (k < count && order.compare(sorted.get(k), fresh.get(f)) <= 0)) {
+                out.writeInt(sorted.get(k++));
+            } else {
+                out.writeInt(fresh.get(f++));
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.comp.dedup;
+
+/**
+ * How a multi-index cuts 64-bit hashes into segments, and how far it probes each one. Two hashes
+ * within {@code radius} bits differ in at most {@code radius / segments} bits in at least one segment
+ * (pigeonhole), so probing every value within that {@link #probeRadius()} of each of a hash's segment
+ * values finds every pair within the radius. With a probe radius of 0 this is plain MIH: one exact
+ * lookup per segment.
+ * <p>
+ * {@link #plan} picks the segment count for a radius and a number of hashes from an estimate of the
+ * per-query cost. Each segment costs one lookup per probed value, plus one comparison per candidate
+ * found. For uniform hashes that is about {@code n / 2^bits} candidates per probed value. Many narrow
+ * segments need one probe each, but their buckets grow with {@code n}. Fewer, wider segments keep
+ * buckets small, but once the probe radius passes 0 the probes multiply (C(bits, k) values at
+ * distance k). Segments are kept to at most {@code max(11, ceil(log2(2n)))} bits. Each segment's
+ * offsets table ({@link SegmentTables}, {@code 2^bits + 1} ints) then costs under 16 bytes per hash,
+ * or a fixed 8 KB while the 11-bit floor applies (below 1024 hashes).
+ */
+final class MihLayout {
+
+    /** Cost of probing one segment value (offsets lookup plus a binary search), in comparisons. */
+    private static final double PROBE_COST = 4;
+    private static final int MIN_SEGMENTS = 2;
+    private static final int MAX_SEGMENTS = 16;
+    private static final int MIN_WIDEST_BITS = 11;
+
+    private final int radius;
+    private final int segments;
+    private final int probeRadius;
+    private final int[] shifts;
+    private final int[] bits;
+    /** Per segment, every XOR mask of up to {@link #probeRadius} bits within the segment's width. */
+    private final long[][] masks;
+
+    MihLayout(int radius, int segments) {
+        if (radius < 0 || radius > MihDeduplicator.MAX_RADIUS) {
+            throw new IllegalArgumentException("Hamming radius out of range: " + radius);
+        }
+        if (segments < MIN_SEGMENTS || segments > MAX_SEGMENTS) {
+            throw new IllegalArgumentException("Segment count out of range: " + segments);
+        }
+        this.radius = radius;
+        this.segments = segments;
+        this.probeRadius = radius / segments;
+        this.shifts = new int[segments];
+        this.bits = new int[segments];
+        this.masks = new long[segments][];
+        final int base = 64 / segments;
+        final int rem = 64 % segments;
+        for (int seg = 0; seg < segments; seg++) {
+            shifts[seg] = seg * base + Math.min(seg, rem);
+            bits[seg] = base + (seg < rem ? 1 : 0);
+            masks[seg] = masks(bits[seg], probeRadius);
+        }
+    }
+
+    /** The cheapest layout for finding pairs within {@code radius} among about {@code n} hashes. */
+    static MihLayout plan(int radius, long n) {
+        final int widest = Math.max(MIN_WIDEST_BITS, 64 - Long.numberOfLeadingZeros(Math.max(1, 2 * n - 1)));
+        int best = -1;
+        double bestCost = Double.MAX_VALUE;
+        for (int m = MIN_SEGMENTS; m <= MAX_SEGMENTS; m++) {
+            if (64 / m + (64 % m == 0 ? 0 : 1) > widest) {
+                continue;
+            }
+            final double cost = cost(radius / m, m, n);
+            if (cost < bestCost) {
+                best = m;
+                bestCost = cost;
+            }
+        }
+        return new MihLayout(radius, best);
+    }
+
+    /** Estimated comparisons per query with {@code m} segments probed to {@code probe} bits. */
+    private static double cost(int probe, int m, long n) {
+        double cost = 0;
+        for (int seg = 0; seg < m; seg++) {
+            final int width = 64 / m + (seg < 64 % m ? 1 : 0);
+            cost += probes(width, probe) * (PROBE_COST + n / Math.pow(2, width));
+        }
+        return cost;
+    }
+
+    /** Values within {@code probe} bits of a {@code width}-bit value: sum of C(width, k), k <= probe. */
+    private static double probes(int width, int probe) {
+        double total = 0;
+        double choose = 1;
+        for (int k = 0; k <= probe; k++) {
+            total += choose;
+            choose = choose * (width - k) / (k + 1);
+        }
+        return total;
+    }
+
+    /** Every {@code width}-bit mask with at most {@code probe} bits set, the empty mask first. */
+    private static long[] masks(int width, int probe) {
+        final long[] out = new long[(int) probes(width, probe)];
+        int n = 0;
+        for (int k = 0; k <= Math.min(probe, width); k++) {
+            long mask = (1L << k) - 1;
+            while (mask < (1L << width)) {
+                out[n++] = mask;
+                if (mask == 0) {
+                    break;
+                }
+                final long lowest = mask & -mask; // next mask with k bits (Gosper's hack)
+                final long ripple = mask + lowest;
+                mask = (((ripple ^ mask) >>> 2) / lowest) | ripple;
+            }
+        }
+        return out;
+    }
+
+    int radius() {
+        return radius;
+    }
+
+    int segments() {
+        return segments;
+    }
+
+    int probeRadius() {
+        return probeRadius;
+    }
+
+    /** Width in bits of the {@code seg}-th slice. */
+    int bits(int seg) {
+        return bits[seg];
+    }
+
+    /** Value of the {@code seg}-th slice of the 64-bit hash (slices partition all 64 bits). */
+    long segment(long hash, int seg) {
+        return (hash >>> shifts[seg]) & ((1L << bits[seg]) - 1);
+    }
+
+    /** XOR masks giving the values to probe around a value of segment {@code seg}. */
+    long[] masks(int seg) {
+        return masks[seg];
+    }
+
+    @Override
+    public String toString() {
+        return segments + " segments, probe radius " + probeRadius;
+    }
+}
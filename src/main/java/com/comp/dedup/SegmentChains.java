@@ -0,0 +1,63 @@
+package com.comp.dedup;
+
+import java.util.Arrays;
+
+/**
+ * A multi-index that grows one hash at a time, in primitive arrays: for each segment,
+ * {@code heads[seg][v]} is the latest item whose segment value is {@code v}, and
+ * {@code next[seg][i]} the item added before {@code i} with the same value. A bucket is thus a chain
+ * in descending item order.
+ * <p>
+ * The counterpart of {@link SegmentTables} for items that arrive over time: the same 4 bytes per
+ * item per segment, plus {@code 2^bits} heads per segment instead of offsets. Walking a chain jumps
+ * around memory where a table's bucket is contiguous, so the owner keeps chains short and folds them
+ * into a new table as they grow. The layout is fixed and planned for the most items expected.
+ */
+final class SegmentChains {
+
+    static final int NONE = -1;
+
+    private final MihLayout layout;
+    private final int[][] heads;
+    private int[][] next;
+
+    SegmentChains(MihLayout layout, int capacity) {
+        this.layout = layout;
+        this.heads = new int[layout.segments()][];
+        this.next = new int[layout.segments()][];
+        for (int seg = 0; seg < layout.segments(); seg++) {
+            heads[seg] = new int[1 << layout.bits(seg)];
+            Arrays.fill(heads[seg], NONE);
+            next[seg] = new int[Math.max(16, capacity)];
+        }
+    }
+
+    MihLayout layout() {
+        return layout;
+    }
+
+    /** Adds {@code item}, which must be above every item held, under {@code hash}'s segment values. */
+    void add(int item, long hash) {
+        if (item >= next[0].length) {
+            final int capacity = Math.max(item + 1, next[0].length * 2);
+            for (int seg = 0; seg < next.length; seg++) {
+                next[seg] = Arrays.copyOf(next[seg], capacity);
+            }
+        }
+        for (int seg = 0; seg < heads.length; seg++) {
+            final int value = (int) layout.segment(hash, seg);
+            next[seg][item] = heads[seg][value];
+            heads[seg][value] = item;
+        }
+    }
+
+    /** The latest item in segment {@code seg}'s bucket for {@code value}, or {@link #NONE}. */
+    int first(int seg, long value) {
+        return heads[seg][(int) value];
+    }
+
+    /** The item before {@code item} in its segment {@code seg} bucket, or {@link #NONE}. */
+    int next(int seg, int item) {
+        return next[seg][item];
+    }
+}
@@ -0,0 +1,70 @@
+package com.comp.dedup;
+
+/**
+ * The multi-index over a fixed array of perceptual hashes, in primitive arrays: for each segment, a
+ * CSR-style table of the hash ids grouped by that segment's value. {@code offsets[seg][v]} is where
+ * value {@code v}'s bucket starts in {@code ids[seg]} and {@code offsets[seg][v + 1]} where it ends.
+ * Segments are narrow ({@link MihLayout} keeps them to about {@code log2(2n)} bits), so the offsets
+ * are indexed by value directly, without hashing or searching.
+ * <p>
+ * Built by a counting sort, so the ids in each bucket ascend: the candidates a hash has not been
+ * compared with yet are a suffix of its bucket, found by binary search, and walking a bucket reads
+ * the hash array front to back. Costs 4 bytes per hash per segment, against about 250 bytes per hash
+ * for boxed {@code HashMap<Long, List<Integer>>} buckets.
+ */
+final class SegmentTables {
+
+    private final int[][] offsets;
+    private final int[][] ids;
+
+    SegmentTables(MihLayout layout, long[] hashes) {
+        offsets = new int[layout.segments()][];
+        ids = new int[layout.segments()][];
+        for (int seg = 0; seg < layout.segments(); seg++) {
+            final int[] start = new int[(1 << layout.bits(seg)) + 1];
+            for (final long hash : hashes) {
+                start[(int) layout.segment(hash, seg) + 1]++;
+            }
+            for (int v = 1; v < start.length; v++) {
+                start[v] += start[v - 1];
+            }
+            offsets[seg] = start.clone();
+            final int[] bucketed = new int[hashes.length];
+            for (int i = 0; i < hashes.length; i++) {
+                bucketed[start[(int) layout.segment(hashes[i], seg)]++] = i;
+            }
+            ids[seg] = bucketed;
+        }
+    }
+
+    /** The ids of segment {@code seg}'s table; a bucket is a range of it. */
+    int[] ids(int seg) {
+        return ids[seg];
+    }
+
+    /** Start of the bucket for {@code value} in {@link #ids(int) ids(seg)}. */
+    int start(int seg, long value) {
+        return offsets[seg][(int) value];
+    }
+
+    /** End (exclusive) of the bucket for {@code value} in {@link #ids(int) ids(seg)}. */
+    int end(int seg, long value) {
+        return offsets[seg][(int) value + 1];
+    }
+
+    /** Position of the first id above {@code id} in the bucket for {@code value}. */
+    int firstAfter(int seg, long value, int id) {
+        final int[] bucket = ids[seg];
+        int lo = offsets[seg][(int) value];
+        int hi = offsets[seg][(int) value + 1];
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (bucket[mid] <= id) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
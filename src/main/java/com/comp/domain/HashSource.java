@@ -0,0 +1,32 @@
+package com.comp.domain;
+
+/**
+ * Which pixels a perceptual hash was computed from. Hashes from different sources describe the same
+ * picture through different filters, so they are only compared within one source. The numeric
+ * {@link #code()} is what the cache persists; never renumber existing constants.
+ */
+public enum HashSource {
+    DECODED(0),     // the (subsampled) decoded image; what every cache written before sources existed holds
+    DC(1),          // JPEG DC coefficients only: a 1/8-scale luma image without inverse DCTs
+    THUMBNAIL(2);   // the JPEG thumbnail embedded in the EXIF block
+
+    private final int code;
+
+    HashSource(int code) {
+        this.code = code;
+    }
+
+    public int code() {
+        return code;
+    }
+
+    /** The source persisted as {@code code}; unknown codes read as {@link #DECODED}. */
+    public static HashSource fromCode(int code) {
+        for (HashSource source : values()) {
+            if (source.code == code) {
+                return source;
+            }
+        }
+        return DECODED;
+    }
+}
@@ -17,15 +17,22 @@ public final class MediaItem {
     private final Date exifDate;        // null when no capture date could be read
     private final long perceptualHash;  // 0 when none could be computed (video, unreadable image)
     private final long contentSignature; // 0 when unknown; quick content fingerprint for exact-copy grouping
+    private final HashSource hashSource; // what the perceptual hash was computed from
 
     public MediaItem(Path path, long fileSize, long lastModified, Date exifDate,
                      long perceptualHash, long contentSignature) {
+        this(path, fileSize, lastModified, exifDate, perceptualHash, contentSignature, HashSource.DECODED);
+    }
+
+    public MediaItem(Path path, long fileSize, long lastModified, Date exifDate,
+                     long perceptualHash, long contentSignature, HashSource hashSource) {
         this.path = path;
         this.fileSize = fileSize;
         this.lastModified = lastModified;
         this.exifDate = exifDate;
         this.perceptualHash = perceptualHash;
         this.contentSignature = contentSignature;
+        this.hashSource = hashSource;
     }
 
     public Date getEffectiveDate() {
@@ -46,6 +53,8 @@ public final class MediaItem {
 
     public long getContentSignature() { return contentSignature; }
 
+    public HashSource getHashSource() { return hashSource; }
+
     @Override
     public String toString() {
         String dateStr = (exifDate != null) ? "[EXIF] " + exifDate : "[OS] " + new Date(lastModified);
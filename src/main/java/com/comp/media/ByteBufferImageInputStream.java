@@ -0,0 +1,49 @@
+package com.comp.media;
+
+import java.nio.ByteBuffer;
+import javax.imageio.stream.ImageInputStreamImpl;
+
+/**
+ * A seekable {@link javax.imageio.stream.ImageInputStream} over a {@link ByteBuffer}. Unlike the
+ * stream ImageIO wraps around an {@link java.io.InputStream}, it needs no memory or temp-file cache to
+ * support seeking: decoders read the buffer (typically a mapped file) in place, pulling only the
+ * bytes they actually need.
+ */
+final class ByteBufferImageInputStream extends ImageInputStreamImpl {
+
+    private final ByteBuffer buffer;
+
+    /** Exposes {@code source}'s bytes from its position to its limit; {@code source} itself is not moved. */
+    ByteBufferImageInputStream(ByteBuffer source) {
+        this.buffer = source.slice();
+    }
+
+    @Override
+    public int read() {
+        bitOffset = 0;
+        if (streamPos >= buffer.limit()) {
+            return -1;
+        }
+        return buffer.get((int) streamPos++) & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        bitOffset = 0;
+        if (len == 0) {
+            return 0;
+        }
+        if (streamPos >= buffer.limit()) {
+            return -1;
+        }
+        int n = (int) Math.min(len, buffer.limit() - streamPos);
+        buffer.get((int) streamPos, b, off, n);
+        streamPos += n;
+        return n;
+    }
+
+    @Override
+    public long length() {
+        return buffer.limit();
+    }
+}
@@ -14,6 +14,7 @@ import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.Date;
 import java.util.Optional;
 
@@ -26,6 +27,14 @@ public final class CaptureDateReader {
         return readDate(new ByteArrayInputStream(bytes));
     }
 
+    /**
+     * Reads the date from the bytes between {@code content}'s position and limit without copying them;
+     * on a mapped file only the metadata segments the parser visits are faulted in.
+     */
+    public static Optional<Date> readDate(ByteBuffer content) throws IOException, ImageProcessingException {
+        return readDate(new ByteBufferInputStream(content));
+    }
+
     public static Optional<Date> readDate(InputStream source) throws IOException, ImageProcessingException {
         final BufferedInputStream in = new BufferedInputStream(source);
         final FileType fileType = FileTypeDetector.detectFileType(in);
@@ -1,5 +1,7 @@
 package com.comp.media;
 
+import java.nio.ByteBuffer;
+
 /**
  * A cheap 64-bit content fingerprint used to group exact copies without a full cryptographic hash.
  * <p>
@@ -17,15 +19,26 @@ public final class ContentSignature {
 
     /** Non-zero fingerprint of the given content (0 is reserved for "unknown"). */
     public static long of(byte[] bytes) {
+        return of(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Fingerprint of the bytes between {@code content}'s position and limit, read in place with
+     * absolute gets: only the sampled head and tail are touched, so a mapped file faults in at most
+     * {@code 2 x 64 KB}. The buffer's position is not changed.
+     */
+    public static long of(ByteBuffer content) {
+        int start = content.position();
+        int length = content.remaining();
         long h = FNV_OFFSET;
-        h = mix(h, bytes.length);
+        h = mix(h, length);
 
-        int headEnd = Math.min(SAMPLE, bytes.length);
+        int headEnd = Math.min(SAMPLE, length);
         for (int i = 0; i < headEnd; i++) {
-            h = (h ^ (bytes[i] & 0xff)) * FNV_PRIME;
+            h = (h ^ (content.get(start + i) & 0xff)) * FNV_PRIME;
         }
-        for (int i = Math.max(headEnd, bytes.length - SAMPLE); i < bytes.length; i++) {
-            h = (h ^ (bytes[i] & 0xff)) * FNV_PRIME;
+        for (int i = Math.max(headEnd, length - SAMPLE); i < length; i++) {
+            h = (h ^ (content.get(start + i) & 0xff)) * FNV_PRIME;
         }
         return (h == 0) ? 1 : h;
     }
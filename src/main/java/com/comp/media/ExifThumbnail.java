@@ -0,0 +1,102 @@
+package com.comp.media;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Locates the JPEG thumbnail that cameras embed in the EXIF block (IFD1, tags
+ * {@code JPEGInterchangeFormat} / {@code JPEGInterchangeFormatLength}) without parsing the rest of
+ * the metadata. Only the APP segments ahead of the image data are examined.
+ */
+final class ExifThumbnail {
+
+    private static final int TAG_THUMBNAIL_OFFSET = 0x0201;
+    private static final int TAG_THUMBNAIL_LENGTH = 0x0202;
+
+    private ExifThumbnail() { }
+
+    /**
+     * The embedded thumbnail's JPEG bytes, or {@code null} if the JPEG between {@code jpeg}'s position
+     * and limit has none. The buffer's position is not changed.
+     */
+    static byte[] find(ByteBuffer jpeg) {
+        try {
+            return scan(jpeg.slice());
+        } catch (RuntimeException e) {
+            return null; // truncated or inconsistent EXIF block
+        }
+    }
+
+    private static byte[] scan(ByteBuffer jpeg) {
+        if (jpeg.limit() < 4 || (jpeg.get(0) & 0xFF) != 0xFF || (jpeg.get(1) & 0xFF) != 0xD8) {
+            return null;
+        }
+        int pos = 2;
+        while (pos + 4 <= jpeg.limit() && (jpeg.get(pos) & 0xFF) == 0xFF) {
+            int marker = jpeg.get(pos + 1) & 0xFF;
+            if (marker == 0xDA || marker == 0xD9) {
+                return null; // image data reached without an EXIF thumbnail
+            }
+            int length = ((jpeg.get(pos + 2) & 0xFF) << 8) | (jpeg.get(pos + 3) & 0xFF);
+            int body = pos + 4;
+            if (marker == 0xE1 && length >= 16 && isExifHeader(jpeg, body)) {
+                byte[] thumbnail = fromTiff(jpeg, body + 6, pos + 2 + length);
+                if (thumbnail != null) {
+                    return thumbnail;
+                }
+            }
+            pos += 2 + length;
+        }
+        return null;
+    }
+
+    private static boolean isExifHeader(ByteBuffer b, int at) {
+        return b.get(at) == 'E' && b.get(at + 1) == 'x' && b.get(at + 2) == 'i' && b.get(at + 3) == 'f'
+                && b.get(at + 4) == 0 && b.get(at + 5) == 0;
+    }
+
+    /** Follows IFD0's next-IFD link to IFD1 and returns the thumbnail it points at. */
+    private static byte[] fromTiff(ByteBuffer b, int tiff, int end) {
+        boolean little = b.get(tiff) == 'I' && b.get(tiff + 1) == 'I';
+        if (!little && !(b.get(tiff) == 'M' && b.get(tiff + 1) == 'M')) {
+            return null;
+        }
+        int ifd0 = tiff + u32(b, tiff + 4, little);
+        int entries0 = u16(b, ifd0, little);
+        int ifd1Offset = u32(b, ifd0 + 2 + entries0 * 12, little);
+        if (ifd1Offset <= 0) {
+            return null;
+        }
+        int ifd1 = tiff + ifd1Offset;
+        int entries1 = u16(b, ifd1, little);
+        int offset = -1;
+        int length = -1;
+        for (int i = 0; i < entries1; i++) {
+            int entry = ifd1 + 2 + i * 12;
+            int tag = u16(b, entry, little);
+            int value = u16(b, entry + 2, little) == 3 ? u16(b, entry + 8, little) : u32(b, entry + 8, little);
+            if (tag == TAG_THUMBNAIL_OFFSET) {
+                offset = value;
+            } else if (tag == TAG_THUMBNAIL_LENGTH) {
+                length = value;
+            }
+        }
+        int start = tiff + offset;
+        if (offset <= 0 || length <= 4 || start + length > end
+                || (b.get(start) & 0xFF) != 0xFF || (b.get(start + 1) & 0xFF) != 0xD8) {
+            return null;
+        }
+        byte[] thumbnail = new byte[length];
+        b.get(start, thumbnail);
+        return thumbnail;
+    }
+
+    private static int u16(ByteBuffer b, int at, boolean little) {
+        return little ? (b.get(at) & 0xFF) | (b.get(at + 1) & 0xFF) << 8
+                      : (b.get(at) & 0xFF) << 8 | (b.get(at + 1) & 0xFF);
+    }
+
+    private static int u32(ByteBuffer b, int at, boolean little) {
+        return little ? u16(b, at, true) | u16(b, at + 2, true) << 16
+                      : u16(b, at, false) << 16 | u16(b, at + 2, false);
+    }
+}
@@ -4,7 +4,17 @@ import java.awt.Graphics2D;
 import java.awt.color.ColorSpace;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorConvertOp;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
 import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Iterator;
 import javax.imageio.ImageIO;
 import javax.imageio.ImageReadParam;
@@ -21,9 +31,20 @@ public final class ImageHasher {
     private static final int SIZE = 32;
     private static final int LOW_FREQ = 8;
 
+    /**
+     * Coefficients closer than this to the average are re-derived with the reference summation order,
+     * so the fast transform never flips a hash bit relative to it. Summation error of either order is
+     * below 1e-7 for 8-bit input, so this only triggers on near-ties (e.g. flat images).
+     */
+    private static final double TIE_EPSILON = 1e-6;
+
+    /** Largest relative aspect-ratio mismatch at which an EXIF thumbnail still stands in for its image. */
+    private static final double THUMBNAIL_ASPECT_TOLERANCE = 0.03;
+
     // Precomputed DCT cosine terms so the transform avoids millions of Math.cos calls.
     private static final double[] COEFF = new double[SIZE];
     private static final double[][] COS = new double[SIZE][SIZE];
+    private static final double[] COS_T = new double[LOW_FREQ * SIZE]; // COS_T[v * SIZE + j] = COS[j][v]
     static {
         for (int i = 0; i < SIZE; i++) {
             COEFF[i] = (i == 0) ? 1.0 / Math.sqrt(2) : 1.0;
@@ -31,6 +52,42 @@ public final class ImageHasher {
                 COS[i][j] = Math.cos(((2 * i + 1) / (2.0 * SIZE)) * j * Math.PI);
             }
         }
+        for (int v = 0; v < LOW_FREQ; v++) {
+            for (int j = 0; j < SIZE; j++) {
+                COS_T[v * SIZE + j] = COS[j][v];
+            }
+        }
+    }
+
+    /** Per-thread working buffers, so hashing allocates nothing beyond the downscaled image. */
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private static final class Scratch {
+        final double[] pixels = new double[SIZE * SIZE];         // pixels[x * SIZE + y]
+        final double[] partial = new double[SIZE * LOW_FREQ];    // row pass: partial[x * LOW_FREQ + v]
+        final double[] coeffs = new double[LOW_FREQ * LOW_FREQ]; // coeffs[u * LOW_FREQ + v]
+        final long[] cellSums = new long[SIZE * SIZE];           // luma sum per output cell, [x * SIZE + y]
+        int[] columnCells = new int[0];                          // source column -> output cell x, grown on demand
+    }
+
+    // Luma weights (x256) matching the primaries of the Java2D gray conversion, so both paths agree closely.
+    private static final int LUMA_R = 57;
+    private static final int LUMA_G = 184;
+    private static final int LUMA_B = 15;
+
+    // CS_GRAY samples are linear; Java2D re-encodes them to sRGB before they reach the transform.
+    private static final int[] GRAY_TO_SRGB = new int[256];
+    static {
+        ColorSpace gray = ColorSpace.getInstance(ColorSpace.CS_GRAY);
+        for (int i = 0; i < 256; i++) {
+            GRAY_TO_SRGB[i] = Math.round(gray.toRGB(new float[]{i / 255f})[0] * 255f);
+        }
+    }
+
+    /** How a decoded image is reduced to the {@value #SIZE}x{@value #SIZE} grayscale input of the transform. */
+    public enum Downscale {
+        JAVA2D,     // Graphics2D resize + ColorConvertOp; identical to the hashes in existing caches
+        DIRECT      // integer box filter read straight off the raster (falls back to JAVA2D for exotic color models)
     }
 
     private ImageHasher() { }
@@ -43,10 +100,21 @@ public final class ImageHasher {
      * expanded in memory to produce a 64-bit hash.
      */
     public static long fromBytes(byte[] bytes) {
-        try (ImageInputStream iis = ImageIO.createImageInputStream(new ByteArrayInputStream(bytes))) {
-            if (iis == null) {
-                return 0;
-            }
+        return fromBytes(bytes, Downscale.JAVA2D);
+    }
+
+    /** As {@link #fromBytes(byte[])}, reducing the decoded image with the given {@link Downscale} path. */
+    public static long fromBytes(byte[] bytes, Downscale downscale) {
+        return fromBytes(ByteBuffer.wrap(bytes), downscale);
+    }
+
+    /**
+     * As {@link #fromBytes(byte[], Downscale)} for the bytes between {@code content}'s position and
+     * limit. The decoder reads the buffer in place (no stream cache), so a memory-mapped file is only
+     * paged in as far as the decoder actually reads.
+     */
+    public static long fromBytes(ByteBuffer content, Downscale downscale) {
+        try (ImageInputStream iis = new ByteBufferImageInputStream(content)) {
             Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
             if (!readers.hasNext()) {
                 return 0;
@@ -57,7 +125,7 @@ public final class ImageHasher {
                 int step = Math.max(1, Math.min(reader.getWidth(0), reader.getHeight(0)) / SIZE);
                 ImageReadParam param = reader.getDefaultReadParam();
                 param.setSourceSubsampling(step, step, 0, 0);
-                return hash(reader.read(0, param));
+                return hash(reader.read(0, param), downscale);
             } finally {
                 reader.dispose();
             }
@@ -66,19 +134,103 @@ public final class ImageHasher {
         }
     }
 
+    /**
+     * Hashes a JPEG from its DC coefficients alone — a 1/8-scale luma image, see {@link JpegDcDecoder}.
+     * Returns 0 if the bytes are not a supported JPEG or that image is under {@value #SIZE}px a side.
+     */
+    public static long fromJpegDc(byte[] bytes) {
+        return fromJpegDc(ByteBuffer.wrap(bytes));
+    }
+
+    /** As {@link #fromJpegDc(byte[])} for the bytes between {@code content}'s position and limit. */
+    public static long fromJpegDc(ByteBuffer content) {
+        JpegDcDecoder.Plane plane = JpegDcDecoder.decode(content);
+        if (plane == null || plane.width() < SIZE || plane.height() < SIZE) {
+            return 0;
+        }
+        Scratch scratch = SCRATCH.get();
+        int w = plane.width();
+        int h = plane.height();
+        int[] columnCells = startCells(scratch, w);
+        byte[] luma = plane.luma();
+        long[] sums = scratch.cellSums;
+        for (int y = 0; y < h; y++) {
+            int row = (int) ((long) y * SIZE / h);
+            for (int x = 0, p = y * w; x < w; x++, p++) {
+                sums[columnCells[x] * SIZE + row] += luma[p] & 0xFF;
+            }
+        }
+        finishCells(scratch, w, h);
+        return hashPixels(scratch);
+    }
+
+    /**
+     * Hashes the thumbnail embedded in a JPEG's EXIF block. Returns 0 if there is none, it is under
+     * {@value #SIZE}px a side, or its aspect ratio disagrees with the main image's — a letterboxed
+     * thumbnail, or one an editor left stale after cropping.
+     */
+    public static long fromThumbnail(byte[] bytes, Downscale downscale) {
+        return fromThumbnail(ByteBuffer.wrap(bytes), downscale);
+    }
+
+    /** As {@link #fromThumbnail(byte[], Downscale)} for the bytes between {@code content}'s position and limit. */
+    public static long fromThumbnail(ByteBuffer content, Downscale downscale) {
+        byte[] thumbnail = ExifThumbnail.find(content);
+        int[] main = (thumbnail == null) ? null : JpegDcDecoder.dimensions(content);
+        if (main == null) {
+            return 0;
+        }
+        try {
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(thumbnail));
+            if (image == null || image.getWidth() < SIZE || image.getHeight() < SIZE) {
+                return 0;
+            }
+            double mainAspect = (double) main[0] / main[1];
+            double thumbAspect = (double) image.getWidth() / image.getHeight();
+            if (Math.abs(thumbAspect - mainAspect) > THUMBNAIL_ASPECT_TOLERANCE * mainAspect) {
+                return 0;
+            }
+            return hash(image, downscale);
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
     /** Returns the perceptual hash of an image, or 0 if the image is null. */
     public static long hash(BufferedImage image) {
+        return hash(image, Downscale.JAVA2D);
+    }
+
+    /** Returns the perceptual hash of an image reduced with the given {@link Downscale} path, or 0 if null. */
+    public static long hash(BufferedImage image, Downscale downscale) {
         if (image == null) {
             return 0;
         }
-        double[][] pixels = toGrayscale32(image);
-        double[][] dct = dct(pixels);
+        Scratch scratch = SCRATCH.get();
+        if (downscale != Downscale.DIRECT || !boxFilterLuma32(image, scratch)) {
+            toGrayscale32(image, scratch.pixels);
+        }
+        return hashPixels(scratch);
+    }
+
+    public static int hammingDistance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    /** The hash of the {@value #SIZE}x{@value #SIZE} grayscale values already in {@code scratch.pixels}. */
+    private static long hashPixels(Scratch scratch) {
+        double[] dct = scratch.coeffs;
+        lowFrequencyDct(scratch.pixels, scratch.partial, dct);
         double average = lowFreqAverage(dct);
+        if (nearTie(dct, average)) {
+            lowFrequencyDctReference(scratch.pixels, dct);
+            average = lowFreqAverage(dct);
+        }
 
         long hash = 0;
         for (int x = 0; x < LOW_FREQ; x++) {
             for (int y = 0; y < LOW_FREQ; y++) {
-                if ((x != 0 || y != 0) && dct[x][y] > average) {
+                if ((x != 0 || y != 0) && dct[x * LOW_FREQ + y] > average) {
                     hash |= (1L << (x + y * LOW_FREQ));
                 }
             }
@@ -86,11 +238,7 @@ public final class ImageHasher {
         return hash;
     }
 
-    public static int hammingDistance(long a, long b) {
-        return Long.bitCount(a ^ b);
-    }
-
-    private static double[][] toGrayscale32(BufferedImage image) {
+    private static void toGrayscale32(BufferedImage image, double[] values) {
         BufferedImage resized = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_ARGB);
         Graphics2D g = resized.createGraphics();
         g.drawImage(image, 0, 0, SIZE, SIZE, null);
@@ -98,40 +246,205 @@ public final class ImageHasher {
         resized = new ColorConvertOp(ColorSpace.getInstance(ColorSpace.CS_GRAY), null)
                 .filter(resized, null);
 
-        double[][] values = new double[SIZE][SIZE];
         for (int x = 0; x < SIZE; x++) {
             for (int y = 0; y < SIZE; y++) {
-                values[x][y] = resized.getRGB(x, y) & 0xFF;
+                values[x * SIZE + y] = resized.getRGB(x, y) & 0xFF;
+            }
+        }
+    }
+
+    /**
+     * Averages the image into {@value #SIZE}x{@value #SIZE} cells of integer luma, reading pixels
+     * straight from the raster's {@link DataBuffer}: no intermediate images, no Java2D loops and no
+     * shared color-management state. Handles packed-int RGB and interleaved-byte RGB/gray rasters in
+     * sRGB or gray color spaces; returns false (leaving the caller to use Java2D) for anything else.
+     */
+    private static boolean boxFilterLuma32(BufferedImage image, Scratch scratch) {
+        int w = image.getWidth();
+        int h = image.getHeight();
+        ColorModel cm = image.getColorModel();
+        Raster raster = image.getRaster();
+        if (w < SIZE || h < SIZE || cm.isAlphaPremultiplied() || raster.getParent() != null) {
+            return false;
+        }
+        boolean rgb = cm.getColorSpace().isCS_sRGB();
+        boolean gray = cm.getColorSpace() == ColorSpace.getInstance(ColorSpace.CS_GRAY);
+        if (!rgb && !gray) {
+            return false;
+        }
+
+        int[] columnCells = startCells(scratch, w);
+        long[] sums = scratch.cellSums;
+
+        boolean read = switch (raster.getDataBuffer()) {
+            case DataBufferInt ints when rgb && cm instanceof DirectColorModel
+                    && raster.getSampleModel() instanceof SinglePixelPackedSampleModel sm ->
+                    sumPackedInts(ints, sm, w, h, columnCells, sums);
+            case DataBufferByte bytes when raster.getSampleModel() instanceof ComponentSampleModel sm
+                    && cm.getComponentSize(0) == 8 ->
+                    sumInterleavedBytes(bytes, sm, gray, w, h, columnCells, sums);
+            default -> false;
+        };
+        if (read) {
+            finishCells(scratch, w, h);
+        }
+        return read;
+    }
+
+    /** Clears the cell sums and maps each of {@code w} source columns to its output cell. */
+    private static int[] startCells(Scratch scratch, int w) {
+        if (scratch.columnCells.length < w) {
+            scratch.columnCells = new int[w];
+        }
+        int[] columnCells = scratch.columnCells;
+        for (int x = 0; x < w; x++) {
+            columnCells[x] = (int) ((long) x * SIZE / w);
+        }
+        Arrays.fill(scratch.cellSums, 0);
+        return columnCells;
+    }
+
+    /** Turns the cell sums of a {@code w}x{@code h} source into rounded cell means in {@code scratch.pixels}. */
+    private static void finishCells(Scratch scratch, int w, int h) {
+        long[] sums = scratch.cellSums;
+        double[] values = scratch.pixels;
+        for (int cx = 0; cx < SIZE; cx++) {
+            long cellWidth = cellExtent(cx, w);
+            for (int cy = 0; cy < SIZE; cy++) {
+                long count = cellWidth * cellExtent(cy, h);
+                values[cx * SIZE + cy] = (sums[cx * SIZE + cy] + count / 2) / count;
+            }
+        }
+    }
+
+    private static boolean sumPackedInts(DataBufferInt buffer, SinglePixelPackedSampleModel sm,
+                                         int w, int h, int[] columnCells, long[] sums) {
+        int[] masks = sm.getBitMasks();
+        if (masks.length < 3 || Integer.bitCount(masks[0]) != 8
+                || Integer.bitCount(masks[1]) != 8 || Integer.bitCount(masks[2]) != 8) {
+            return false;
+        }
+        int rShift = Integer.numberOfTrailingZeros(masks[0]);
+        int gShift = Integer.numberOfTrailingZeros(masks[1]);
+        int bShift = Integer.numberOfTrailingZeros(masks[2]);
+        int[] data = buffer.getData();
+        int stride = sm.getScanlineStride();
+        int base = buffer.getOffset();
+        for (int y = 0; y < h; y++) {
+            int row = (int) ((long) y * SIZE / h);
+            int p = base + y * stride;
+            for (int x = 0; x < w; x++, p++) {
+                int argb = data[p];
+                int luma = (LUMA_R * ((argb >>> rShift) & 0xFF) + LUMA_G * ((argb >>> gShift) & 0xFF)
+                        + LUMA_B * ((argb >>> bShift) & 0xFF) + 128) >> 8;
+                sums[columnCells[x] * SIZE + row] += luma;
+            }
+        }
+        return true;
+    }
+
+    private static boolean sumInterleavedBytes(DataBufferByte buffer, ComponentSampleModel sm, boolean gray,
+                                               int w, int h, int[] columnCells, long[] sums) {
+        int[] bandOffsets = sm.getBandOffsets();
+        if (buffer.getNumBanks() != 1 || bandOffsets.length < (gray ? 1 : 3)
+                || Arrays.stream(sm.getBankIndices()).anyMatch(bank -> bank != 0)) {
+            return false;
+        }
+        byte[] data = buffer.getData();
+        int pixelStride = sm.getPixelStride();
+        int stride = sm.getScanlineStride();
+        int base = buffer.getOffset();
+        for (int y = 0; y < h; y++) {
+            int row = (int) ((long) y * SIZE / h);
+            int p = base + y * stride;
+            if (gray) {
+                int g = bandOffsets[0];
+                for (int x = 0; x < w; x++, p += pixelStride) {
+                    sums[columnCells[x] * SIZE + row] += GRAY_TO_SRGB[data[p + g] & 0xFF];
+                }
+            } else {
+                int r = bandOffsets[0];
+                int g = bandOffsets[1];
+                int b = bandOffsets[2];
+                for (int x = 0; x < w; x++, p += pixelStride) {
+                    int luma = (LUMA_R * (data[p + r] & 0xFF) + LUMA_G * (data[p + g] & 0xFF)
+                            + LUMA_B * (data[p + b] & 0xFF) + 128) >> 8;
+                    sums[columnCells[x] * SIZE + row] += luma;
+                }
+            }
+        }
+        return true;
+    }
+
+    /** Number of source pixels that map to output cell {@code cell} along an axis of {@code length}. */
+    private static long cellExtent(int cell, int length) {
+        return ceilDiv((long) (cell + 1) * length, SIZE) - ceilDiv((long) cell * length, SIZE);
+    }
+
+    private static long ceilDiv(long a, long b) {
+        return (a + b - 1) / b;
+    }
+
+    /**
+     * The {@value #LOW_FREQ}x{@value #LOW_FREQ} low-frequency DCT-II block of a {@value #SIZE}x{@value
+     * #SIZE} input, computed separably: a row pass reduces each row to its low-frequency terms, then a
+     * column pass combines them — about 10K multiply-adds instead of the 1M of the full 2-D sum.
+     */
+    static void lowFrequencyDct(double[] f, double[] partial, double[] out) {
+        for (int i = 0; i < SIZE; i++) {
+            int row = i * SIZE;
+            for (int v = 0; v < LOW_FREQ; v++) {
+                int basis = v * SIZE;
+                double sum = 0.0;
+                for (int j = 0; j < SIZE; j++) {
+                    sum += f[row + j] * COS_T[basis + j];
+                }
+                partial[i * LOW_FREQ + v] = sum;
+            }
+        }
+        for (int u = 0; u < LOW_FREQ; u++) {
+            for (int v = 0; v < LOW_FREQ; v++) {
+                double sum = 0.0;
+                for (int i = 0; i < SIZE; i++) {
+                    sum += COS[i][u] * partial[i * LOW_FREQ + v];
+                }
+                out[u * LOW_FREQ + v] = 0.25 * COEFF[u] * COEFF[v] * sum;
             }
         }
-        return values;
     }
 
-    private static double[][] dct(double[][] f) {
-        double[][] result = new double[SIZE][SIZE];
-        for (int u = 0; u < SIZE; u++) {
-            for (int v = 0; v < SIZE; v++) {
+    /**
+     * The same block with the original direct 2-D summation order, so its rounding — and therefore
+     * every hash bit — is identical to the hashes already stored in caches.
+     */
+    static void lowFrequencyDctReference(double[] f, double[] out) {
+        for (int u = 0; u < LOW_FREQ; u++) {
+            for (int v = 0; v < LOW_FREQ; v++) {
                 double sum = 0.0;
                 for (int i = 0; i < SIZE; i++) {
                     for (int j = 0; j < SIZE; j++) {
-                        sum += f[i][j] * COS[i][u] * COS[j][v];
+                        sum += f[i * SIZE + j] * COS[i][u] * COS[j][v];
                     }
                 }
-                result[u][v] = 0.25 * COEFF[u] * COEFF[v] * sum;
+                out[u * LOW_FREQ + v] = 0.25 * COEFF[u] * COEFF[v] * sum;
             }
         }
-        return result;
+    }
+
+    private static boolean nearTie(double[] dct, double average) {
+        for (int k = 1; k < LOW_FREQ * LOW_FREQ; k++) {
+            if (Math.abs(dct[k] - average) < TIE_EPSILON) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /** Average of the low-frequency block excluding the DC term at (0,0). */
-    private static double lowFreqAverage(double[][] dct) {
+    private static double lowFreqAverage(double[] dct) {
         double total = 0;
-        for (int x = 0; x < LOW_FREQ; x++) {
-            for (int y = 0; y < LOW_FREQ; y++) {
-                if (x != 0 || y != 0) {
-                    total += dct[x][y];
-                }
-            }
+        for (int k = 1; k < LOW_FREQ * LOW_FREQ; k++) {
+            total += dct[k];
         }
         return total / (LOW_FREQ * LOW_FREQ - 1);
     }
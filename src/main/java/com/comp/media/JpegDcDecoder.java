@@ -0,0 +1,427 @@
+package com.comp.media;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Reads a 1/8-scale luma image out of a sequential Huffman JPEG using only the DC coefficient of
+ * each 8x8 block — the block's mean brightness. AC coefficients are still entropy-decoded (the
+ * bitstream cannot be skipped without doing so) but never dequantized or transformed, and chroma is
+ * never upsampled or color-converted, which is where most of a full decode's time goes.
+ * <p>
+ * Supports baseline and extended sequential 8-bit frames, any sampling factors, interleaved and
+ * single-component scans, and restart intervals. Progressive, lossless, arithmetic-coded, 12-bit
+ * and non-YCbCr (Adobe RGB/CMYK) files return {@code null} so the caller can fall back to a full
+ * decode; so does anything malformed.
+ */
+final class JpegDcDecoder {
+
+    /** One sample per 8x8 luma block (its mean, 0-255), row-major. */
+    record Plane(byte[] luma, int width, int height) { }
+
+    private static final int LOOKUP_BITS = 9;
+
+    private final ByteBuffer data; // the whole file, indexed from 0
+    private int pos;
+
+    private final HuffmanTable[] dcTables = new HuffmanTable[4];
+    private final HuffmanTable[] acTables = new HuffmanTable[4];
+    private final int[] dcQuant = new int[4];
+    private int restartInterval;
+    private int adobeTransform = -1;
+
+    // Frame header
+    private int width;
+    private int height;
+    private int[] componentIds;
+    private int[] hSampling;
+    private int[] vSampling;
+    private int[] quantTable;
+    private int hMax;
+    private int vMax;
+
+    private JpegDcDecoder(ByteBuffer jpeg) {
+        this.data = jpeg.slice();
+    }
+
+    /**
+     * Returns the DC luma plane of the JPEG between {@code jpeg}'s position and limit, or {@code null}
+     * if it is not a supported or intact JPEG. The buffer's position is not changed.
+     */
+    static Plane decode(ByteBuffer jpeg) {
+        try {
+            return new JpegDcDecoder(jpeg).run(true);
+        } catch (RuntimeException e) {
+            return null; // malformed stream: truncated segments, bad Huffman codes, etc.
+        }
+    }
+
+    /** Width and height from the frame header as {@code {width, height}}, or {@code null} if unreadable. */
+    static int[] dimensions(ByteBuffer jpeg) {
+        try {
+            JpegDcDecoder decoder = new JpegDcDecoder(jpeg);
+            decoder.run(false);
+            return decoder.width > 0 ? new int[]{decoder.width, decoder.height} : null;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private Plane run(boolean decodeScan) {
+        if (data.limit() < 4 || (data.get(0) & 0xFF) != 0xFF || (data.get(1) & 0xFF) != 0xD8) {
+            return null;
+        }
+        pos = 2;
+        while (pos < data.limit()) {
+            int marker = nextMarker();
+            if (marker == 0xD9) {
+                return null; // EOI before any luma scan
+            }
+            if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD8)) {
+                continue; // standalone markers carry no length
+            }
+            int length = u16(pos);
+            int segment = pos + 2;
+            int segmentEnd = pos + length;
+            switch (marker) {
+                case 0xC0, 0xC1, 0xC2, 0xC3, 0xC5, 0xC6, 0xC7, 0xC9, 0xCA, 0xCB, 0xCD, 0xCE, 0xCF -> {
+                    boolean sequentialHuffman = marker == 0xC0 || marker == 0xC1;
+                    if (!readFrame(segment) || !decodeScan || !sequentialHuffman) {
+                        return null; // 12-bit, or progressive, lossless, hierarchical or arithmetic coding
+                    }
+                }
+                case 0xC4 -> readHuffmanTables(segment, segmentEnd);
+                case 0xDB -> readQuantTables(segment, segmentEnd);
+                case 0xDD -> restartInterval = u16(segment);
+                case 0xEE -> readAdobe(segment, segmentEnd);
+                case 0xDA -> {
+                    if (componentIds == null || (adobeTransform == 0 && componentIds.length == 3)
+                            || componentIds.length == 4) {
+                        return null; // no frame yet, or RGB/CMYK-coded components
+                    }
+                    pos = segmentEnd;
+                    Plane plane = readScan(segment);
+                    if (plane != null) {
+                        return plane;
+                    }
+                    continue; // a scan without luma: its entropy data was skipped, keep looking
+                }
+                default -> { } // APPn, COM and other segments carry nothing we need
+            }
+            pos = segmentEnd;
+        }
+        return null;
+    }
+
+    /** Advances past fill bytes to the next marker code and returns it (without the 0xFF prefix). */
+    private int nextMarker() {
+        while ((data.get(pos) & 0xFF) != 0xFF) {
+            pos++; // tolerate garbage between segments
+        }
+        while ((data.get(pos) & 0xFF) == 0xFF) {
+            pos++;
+        }
+        return data.get(pos++) & 0xFF;
+    }
+
+    private boolean readFrame(int at) {
+        height = u16(at + 1);
+        width = u16(at + 3);
+        int n = data.get(at + 5) & 0xFF;
+        if ((data.get(at) & 0xFF) != 8 || width == 0 || height == 0 || n == 0) {
+            return false; // 12-bit samples, or height defined later by DNL: not worth supporting
+        }
+        componentIds = new int[n];
+        hSampling = new int[n];
+        vSampling = new int[n];
+        quantTable = new int[n];
+        for (int c = 0; c < n; c++) {
+            int p = at + 6 + c * 3;
+            componentIds[c] = data.get(p) & 0xFF;
+            hSampling[c] = Math.max(1, (data.get(p + 1) & 0xFF) >> 4);
+            vSampling[c] = Math.max(1, data.get(p + 1) & 0x0F);
+            quantTable[c] = data.get(p + 2) & 0x03;
+            hMax = Math.max(hMax, hSampling[c]);
+            vMax = Math.max(vMax, vSampling[c]);
+        }
+        return true;
+    }
+
+    private void readHuffmanTables(int at, int end) {
+        while (at < end) {
+            int classAndId = data.get(at) & 0xFF;
+            int[] counts = new int[17];
+            int total = 0;
+            for (int len = 1; len <= 16; len++) {
+                counts[len] = data.get(at + len) & 0xFF;
+                total += counts[len];
+            }
+            int[] symbols = new int[total];
+            for (int i = 0; i < total; i++) {
+                symbols[i] = data.get(at + 17 + i) & 0xFF;
+            }
+            HuffmanTable table = new HuffmanTable(counts, symbols);
+            if ((classAndId >> 4) == 0) {
+                dcTables[classAndId & 0x03] = table;
+            } else {
+                acTables[classAndId & 0x03] = table;
+            }
+            at += 17 + total;
+        }
+    }
+
+    private void readQuantTables(int at, int end) {
+        while (at < end) {
+            int precisionAndId = data.get(at) & 0xFF;
+            boolean wide = (precisionAndId >> 4) != 0;
+            dcQuant[precisionAndId & 0x03] = wide ? u16(at + 1) : data.get(at + 1) & 0xFF; // zigzag index 0 is DC
+            at += 1 + (wide ? 128 : 64);
+        }
+    }
+
+    private void readAdobe(int at, int end) {
+        if (end - at >= 12 && data.get(at) == 'A' && data.get(at + 1) == 'd' && data.get(at + 2) == 'o'
+                && data.get(at + 3) == 'b' && data.get(at + 4) == 'e') {
+            adobeTransform = data.get(at + 11) & 0xFF;
+        }
+    }
+
+    /**
+     * Decodes one scan whose entropy data starts at {@link #pos}. Returns the luma plane if the scan
+     * carries the first frame component, otherwise skips to the next marker and returns {@code null}.
+     */
+    private Plane readScan(int at) {
+        int ns = data.get(at) & 0xFF;
+        int[] frameIndex = new int[ns];
+        HuffmanTable[] dc = new HuffmanTable[ns];
+        HuffmanTable[] ac = new HuffmanTable[ns];
+        int lumaInScan = -1;
+        for (int s = 0; s < ns; s++) {
+            int id = data.get(at + 1 + s * 2) & 0xFF;
+            int tables = data.get(at + 2 + s * 2) & 0xFF;
+            frameIndex[s] = indexOf(id);
+            dc[s] = dcTables[tables >> 4];
+            ac[s] = acTables[tables & 0x03];
+            if (frameIndex[s] == 0) {
+                lumaInScan = s;
+            }
+        }
+        if (lumaInScan < 0) {
+            skipEntropyData();
+            return null;
+        }
+        for (int s = 0; s < ns; s++) {
+            if (frameIndex[s] < 0 || dc[s] == null || ac[s] == null) {
+                throw new IllegalStateException("Scan references an undefined component or table");
+            }
+        }
+
+        int lumaWidth = ceilDiv(ceilDiv(width * hSampling[0], hMax), 8);
+        int lumaHeight = ceilDiv(ceilDiv(height * vSampling[0], vMax), 8);
+        byte[] luma = new byte[lumaWidth * lumaHeight];
+        int quant = dcQuant[quantTable[0]];
+
+        // A single-component (necessarily luma) scan has one block per MCU over the luma block grid.
+        boolean interleaved = ns > 1;
+        int mcusAcross = interleaved ? ceilDiv(width, 8 * hMax) : lumaWidth;
+        int mcusDown = interleaved ? ceilDiv(height, 8 * vMax) : lumaHeight;
+
+        BitReader bits = new BitReader();
+        int[] predictors = new int[ns];
+        int mcus = mcusAcross * mcusDown;
+        for (int mcu = 0; mcu < mcus; mcu++) {
+            if (restartInterval > 0 && mcu > 0 && mcu % restartInterval == 0) {
+                bits.restart();
+                Arrays.fill(predictors, 0);
+            }
+            int mcuX = mcu % mcusAcross;
+            int mcuY = mcu / mcusAcross;
+            for (int s = 0; s < ns; s++) {
+                int c = frameIndex[s];
+                int blocksAcross = interleaved ? hSampling[c] : 1;
+                int blocksDown = interleaved ? vSampling[c] : 1;
+                for (int by = 0; by < blocksDown; by++) {
+                    for (int bx = 0; bx < blocksAcross; bx++) {
+                        predictors[s] += bits.decodeDcDiff(dc[s]);
+                        bits.skipAc(ac[s]);
+                        if (s == lumaInScan) {
+                            int x = mcuX * blocksAcross + bx;
+                            int y = mcuY * blocksDown + by;
+                            if (x < lumaWidth && y < lumaHeight) {
+                                int mean = Math.round(predictors[s] * quant / 8f) + 128;
+                                luma[y * lumaWidth + x] = (byte) Math.clamp(mean, 0, 255);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return new Plane(luma, lumaWidth, lumaHeight);
+    }
+
+    private int indexOf(int componentId) {
+        for (int c = 0; c < componentIds.length; c++) {
+            if (componentIds[c] == componentId) {
+                return c;
+            }
+        }
+        return -1;
+    }
+
+    /** Moves {@link #pos} to the next marker that is neither byte stuffing nor a restart marker. */
+    private void skipEntropyData() {
+        while (pos + 1 < data.limit()) {
+            if ((data.get(pos) & 0xFF) == 0xFF) {
+                int next = data.get(pos + 1) & 0xFF;
+                if (next != 0x00 && (next < 0xD0 || next > 0xD7) && next != 0xFF) {
+                    return;
+                }
+            }
+            pos++;
+        }
+    }
+
+    private int u16(int at) {
+        return ((data.get(at) & 0xFF) << 8) | (data.get(at + 1) & 0xFF);
+    }
+
+    private static int ceilDiv(int a, int b) {
+        return (a + b - 1) / b;
+    }
+
+    /** Canonical Huffman code with a {@value #LOOKUP_BITS}-bit fast lookup for the common short codes. */
+    private static final class HuffmanTable {
+        final int[] lookup = new int[1 << LOOKUP_BITS]; // (length << 8) | symbol; 0 when the code is longer
+        final int[] maxCode = new int[17];               // largest code of each length, -1 if none
+        final int[] valueOffset = new int[17];
+        final int[] symbols;
+
+        HuffmanTable(int[] counts, int[] symbols) {
+            this.symbols = symbols;
+            int code = 0;
+            int k = 0;
+            for (int len = 1; len <= 16; len++) {
+                valueOffset[len] = k - code;
+                for (int i = 0; i < counts[len]; i++, k++, code++) {
+                    if (len <= LOOKUP_BITS) {
+                        int shift = LOOKUP_BITS - len;
+                        for (int suffix = 0; suffix < (1 << shift); suffix++) {
+                            lookup[(code << shift) | suffix] = (len << 8) | symbols[k];
+                        }
+                    }
+                }
+                maxCode[len] = counts[len] == 0 ? -1 : code - 1;
+                code <<= 1;
+            }
+        }
+    }
+
+    /** MSB-first reader over the entropy-coded segment, removing byte stuffing and stopping at markers. */
+    private final class BitReader {
+        private long buffer;
+        private int count;
+        private boolean atMarker;
+
+        private void fill() {
+            while (count <= 56) {
+                int b = 0;
+                if (!atMarker && pos < data.limit()) {
+                    b = data.get(pos) & 0xFF;
+                    if (b == 0xFF) {
+                        int next = pos + 1 < data.limit() ? data.get(pos + 1) & 0xFF : 0xD9;
+                        if (next == 0x00) {
+                            pos += 2;
+                        } else {
+                            atMarker = true; // leave the marker in place; feed zeros past it
+                            b = 0;
+                        }
+                    } else {
+                        pos++;
+                    }
+                }
+                buffer = (buffer << 8) | b;
+                count += 8;
+            }
+        }
+
+        private int peek(int n) {
+            return (int) (buffer >>> (count - n)) & ((1 << n) - 1);
+        }
+
+        private int read(int n) {
+            if (count < n) {
+                fill();
+            }
+            int v = peek(n);
+            count -= n;
+            return v;
+        }
+
+        private int decode(HuffmanTable table) {
+            if (count < 16) {
+                fill();
+            }
+            int entry = table.lookup[peek(LOOKUP_BITS)];
+            if (entry != 0) {
+                count -= entry >> 8;
+                return entry & 0xFF;
+            }
+            for (int len = LOOKUP_BITS + 1; len <= 16; len++) {
+                int code = peek(len);
+                if (code <= table.maxCode[len]) {
+                    count -= len;
+                    return table.symbols[table.valueOffset[len] + code];
+                }
+            }
+            throw new IllegalStateException("Invalid Huffman code");
+        }
+
+        int decodeDcDiff(HuffmanTable table) {
+            int size = decode(table);
+            if (size == 0) {
+                return 0;
+            }
+            if (size > 11) {
+                throw new IllegalStateException("Invalid DC magnitude " + size);
+            }
+            int v = read(size);
+            return v < (1 << (size - 1)) ? v - (1 << size) + 1 : v; // sign-extend per JPEG's EXTEND
+        }
+
+        void skipAc(HuffmanTable table) {
+            for (int k = 1; k < 64; k++) {
+                int rs = decode(table);
+                int run = rs >> 4;
+                int size = rs & 0x0F;
+                if (size == 0) {
+                    if (run != 15) {
+                        return; // end of block
+                    }
+                    k += 15; // sixteen zeros
+                } else {
+                    k += run;
+                    read(size);
+                }
+            }
+        }
+
+        /** Discards the padding bits of a finished restart interval and steps over its RSTn marker. */
+        void restart() {
+            buffer = 0;
+            count = 0;
+            atMarker = false;
+            for (; pos + 1 < data.limit(); pos++) {
+                if ((data.get(pos) & 0xFF) == 0xFF) {
+                    int next = data.get(pos + 1) & 0xFF;
+                    if (next >= 0xD0 && next <= 0xD7) {
+                        pos += 2;
+                        return;
+                    }
+                    if (next != 0x00 && next != 0xFF) {
+                        return; // some other marker: the stream is damaged, decoding will fail on it
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.comp.pipeline;
+
+import com.comp.concurrent.Parallel;
+import com.comp.concurrent.TokenBucket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Copies files chunk by chunk with {@link FileChannel#transferTo}, which hands file-to-file copies
+ * to the kernel (on Linux, {@code copy_file_range} or {@code sendfile}), so the bytes never pass
+ * through the Java heap and filesystems that can clone extents may do so. Between chunks it takes
+ * the chunk's bytes from a shared {@link TokenBucket} and reports a {@link Transfer}, so a
+ * multi-GB video shows progress, and is paced, while it copies rather than only once it is done.
+ * <p>
+ * Copied data is left to the OS to write back unless {@code syncEvery} is set: then the files
+ * copied are forced to disk in batches of that many, which costs one flush per batch instead of
+ * stalling on every file. A file that cannot be forced is logged and kept for {@link #sync} to
+ * report, without stopping the rest of its batch. A failed copy deletes the partial target.
+ */
+public final class CopyEngine {
+
+    private static final Logger logger = LogManager.getLogger(CopyEngine.class);
+
+    public static final int DEFAULT_CHUNK_BYTES = 8 << 20;
+
+    /** A copy in progress, reported after each chunk, with the engine's totals since {@link #start}. */
+    public record Transfer(Path file, long done, long size, long fileNanos, long totalBytes, long totalNanos) {
+
+        public double fileMbPerSec() {
+            return mbPerSec(done, fileNanos);
+        }
+
+        public double totalMbPerSec() {
+            return mbPerSec(totalBytes, totalNanos);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.1f MB/s | %s %d/%d MB (%.1f MB/s)", totalMbPerSec(), file.getFileName(),
+                                 done >> 20, size >> 20, fileMbPerSec());
+        }
+
+        private static double mbPerSec(long bytes, long nanos) {
+            return bytes / (1024.0 * 1024.0) / (Math.max(1, nanos) / 1e9);
+        }
+    }
+
+    private final long chunkBytes;
+    private final TokenBucket bandwidth;
+    private final int syncEvery;
+    private final LongAdder copied = new LongAdder();
+    private final List<Path> unsynced = new ArrayList<>();
+    /** Copies that could not be forced since {@link #sync} last reported. */
+    private final Set<Path> unforced = ConcurrentHashMap.newKeySet();
+    private volatile long startNanos = System.nanoTime();
+    private volatile Consumer<Transfer> listener = t -> { };
+
+    /**
+     * @param chunkBytes     bytes handed to the kernel per call, and per progress report
+     * @param bytesPerSecond most bytes copied per second across all callers; {@code 0} = unlimited
+     * @param syncEvery      files forced to disk together; {@code 0} = leave write-back to the OS,
+     *                       {@code Integer.MAX_VALUE} = all of them at {@link #sync}
+     */
+    CopyEngine(final long chunkBytes, final long bytesPerSecond, final int syncEvery) {
+        if (chunkBytes <= 0) {
+            throw new IllegalArgumentException("chunkBytes must be > 0: " + chunkBytes);
+        }
+        this.chunkBytes = chunkBytes;
+        this.bandwidth = new TokenBucket(bytesPerSecond);
+        this.syncEvery = Math.max(0, syncEvery);
+    }
+
+    /** Receives a {@link Transfer} after every chunk, on the copying thread. */
+    void setListener(final Consumer<Transfer> listener) {
+        this.listener = listener;
+    }
+
+    /** Restarts the totals reported with each {@link Transfer}. */
+    void start() {
+        copied.reset();
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * Copies {@code src} to {@code dst}, which must not exist unless {@code replace} is set.
+     *
+     * @return bytes copied
+     */
+    long copy(final Path src, final Path dst, final boolean replace) throws IOException {
+        return copy(src, dst, replace, false);
+    }
+
+    /**
+     * Copies {@code src} to {@code dst} as {@link #copy(Path, Path, boolean)} does; with
+     * {@code keepAttributes}, also gives the copy the source's times and, where both filesystems
+     * have them, its POSIX permissions, as {@link Files#move} does across filesystems. They are set
+     * before the copy is forced, so a forced copy has them on disk too.
+     */
+    long copy(final Path src, final Path dst, final boolean replace, final boolean keepAttributes)
+            throws IOException {
+        long pos = 0;
+        try (FileChannel in = FileChannel.open(src, StandardOpenOption.READ)) {
+            if (replace) {
+                // Replaced as Files.copy does, by unlinking first: ext4 flushes a file truncated and
+                // rewritten in place when it is closed, which cut throughput threefold.
+                Files.deleteIfExists(dst);
+            }
+            final FileChannel out = FileChannel.open(dst, StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW);
+            try (out) {
+                final long size = in.size();
+                final long start = System.nanoTime();
+                while (pos < size) {
+                    final long n = Math.min(chunkBytes, size - pos);
+                    bandwidth.acquire(n);
+                    final long sent = in.transferTo(pos, n, out);
+                    if (sent == 0) {
+                        break;  // the source shrank while it was copied
+                    }
+                    pos += sent;
+                    copied.add(sent);
+                    final long now = System.nanoTime();
+                    listener.accept(new Transfer(src, pos, size, now - start, copied.sum(), now - startNanos));
+                }
+                if (keepAttributes) {
+                    copyAttributes(src, dst);
+                }
+                if (syncEvery == 1) {
+                    out.force(true);
+                }
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(dst);
+                throw e;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                Files.deleteIfExists(dst);
+                throw new InterruptedIOException("Interrupted while copying " + src);
+            }
+            if (syncEvery > 1) {
+                queueSync(dst);
+            }
+            return pos;
+        }
+    }
+
+    /**
+     * Forces to disk the files copied since the last batch was, on up to {@code threads} threads;
+     * call once copying is done.
+     *
+     * @return the copies that could not be forced, in this batch or an earlier one since the last call
+     */
+    Set<Path> sync(final int threads) throws InterruptedIOException {
+        final List<Path> batch;
+        synchronized (unsynced) {
+            batch = new ArrayList<>(unsynced);
+            unsynced.clear();
+        }
+        try {
+            Parallel.forRange(batch.size(), threads, 1, (from, to) -> force(batch.subList(from, to)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while syncing copies");
+        }
+        final Set<Path> failed = new HashSet<>(unforced);
+        unforced.removeAll(failed);
+        return failed;
+    }
+
+    private void queueSync(final Path dst) {
+        List<Path> batch = null;
+        synchronized (unsynced) {
+            unsynced.add(dst);
+            if (unsynced.size() >= syncEvery) {
+                batch = new ArrayList<>(unsynced);
+                unsynced.clear();
+            }
+        }
+        if (batch != null) {
+            force(batch);
+        }
+    }
+
+    private static void copyAttributes(final Path src, final Path dst) throws IOException {
+        final BasicFileAttributes attrs = Files.readAttributes(src, BasicFileAttributes.class);
+        Files.getFileAttributeView(dst, BasicFileAttributeView.class)
+                .setTimes(attrs.lastModifiedTime(), attrs.lastAccessTime(), attrs.creationTime());
+        final PosixFileAttributeView from = Files.getFileAttributeView(src, PosixFileAttributeView.class);
+        final PosixFileAttributeView to = Files.getFileAttributeView(dst, PosixFileAttributeView.class);
+        if (from != null && to != null) {
+            to.setPermissions(from.readAttributes().permissions());
+        }
+    }
+
+    /** Forces each of {@code files}; one that fails is recorded and the rest are still forced. */
+    private void force(final List<Path> files) {
+        for (final Path file : files) {
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                ch.force(true);
+            } catch (IOException e) {
+                logger.error("Failed to force {} to disk: {}", file, e.toString());
+                unforced.add(file);
+            }
+        }
+    }
+}
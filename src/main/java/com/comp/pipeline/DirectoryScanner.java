@@ -1,5 +1,6 @@
 package com.comp.pipeline;
 
+import com.comp.cache.DirectoryIndex;
 import com.comp.concurrent.Parallel;
 import com.comp.domain.ScannedFile;
 import org.apache.logging.log4j.LogManager;
@@ -7,35 +8,86 @@ import org.apache.logging.log4j.Logger;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Walks a source directory and emits every supported media file as a {@link ScannedFile}.
  * Symlinks are not followed (avoids cycles and double-counting). This stage touches only cheap
  * filesystem metadata; content is read later by the hashing stage.
+ * <p>
+ * With more than one thread, subdirectories are listed concurrently on a bounded pool, so a deep
+ * tree on network storage keeps several {@code readdir}/{@code stat} round trips in flight instead
+ * of one. Found files still reach the sink on the calling thread, through a bounded queue that
+ * stalls the listers when the sink falls behind. Emission order is then not deterministic.
+ * <p>
+ * Given a {@link DirectoryIndex}, the walk does not list a directory whose mtime is unchanged since
+ * the last run: its files are replayed from the index as they were scanned then, and only its
+ * subdirectories are stat'ed. The walk records fresh listings of every other directory in the index.
  */
 public class DirectoryScanner {
 
     private static final Logger logger = LogManager.getLogger(DirectoryScanner.class);
 
+    /** Found files waiting for the sink; listers block when it is full. */
+    private static final int HANDOFF = 1024;
+    /** Ends the handoff queue once every directory has been listed. */
+    private static final ScannedFile DONE = new ScannedFile(Paths.get(""), 0, 0);
+
     private final Path sourcePath;
     private final Set<String> supportingExts;
+    private final int threads;
+    private final DirectoryIndex index;
+    private final AtomicLong directories = new AtomicLong();
+    private final AtomicLong unchangedDirectories = new AtomicLong();
+    private final AtomicLong files = new AtomicLong();
+    private volatile long walkNanos;
 
     public DirectoryScanner(String sourcePath, Set<String> supportingExts) {
         this(Paths.get(sourcePath), supportingExts);
     }
 
     public DirectoryScanner(Path sourcePath, Set<String> supportingExts) {
+        this(sourcePath, supportingExts, 1);
+    }
+
+    public DirectoryScanner(String sourcePath, Set<String> supportingExts, int threads) {
+        this(Paths.get(sourcePath), supportingExts, threads);
+    }
+
+    /** @param threads directories listed at once; 1 walks the tree on the calling thread */
+    public DirectoryScanner(Path sourcePath, Set<String> supportingExts, int threads) {
+        this(sourcePath, supportingExts, threads, null);
+    }
+
+    /**
+     * @param threads directories listed at once
+     * @param index   listings from the last run, to skip unchanged directories; refreshed by the walk
+     *                (null for a full walk)
+     */
+    public DirectoryScanner(Path sourcePath, Set<String> supportingExts, int threads, DirectoryIndex index) {
         this.sourcePath = sourcePath;
         this.supportingExts = supportingExts;
+        this.threads = Math.max(1, threads);
+        this.index = index;
     }
 
     /** Emits each supported file to the sink as it is discovered (used to overlap with hashing). */
@@ -43,9 +95,52 @@ public class DirectoryScanner {
         if (!Files.exists(sourcePath)) {
             throw new IOException("Source directory does not exist: " + sourcePath);
         }
+        directories.set(0);
+        unchangedDirectories.set(0);
+        files.set(0);
+        final long start = System.nanoTime();
+        try {
+            if (threads == 1 && index == null) {
+                walk(sink);
+            } else {
+                walkListing(sink);
+            }
+        } finally {
+            walkNanos = System.nanoTime() - start;
+        }
+    }
+
+    /** Directories listed by the last {@link #traverse}, the source included. */
+    public long directories() {
+        return directories.get();
+    }
+
+    /** Directories of the last {@link #traverse} whose files were replayed from the index unlisted. */
+    public long unchangedDirectories() {
+        return unchangedDirectories.get();
+    }
+
+    /** Entries other than directories seen by the last {@link #traverse}, supported or not. */
+    public long files() {
+        return files.get();
+    }
+
+    /** Wall time of the last {@link #traverse}, including time the sink held it up. */
+    public long walkNanos() {
+        return walkNanos;
+    }
+
+    private void walk(Parallel.Sink<ScannedFile> sink) throws IOException {
         Files.walkFileTree(sourcePath, new SimpleFileVisitor<>() {
+            @Override
+            public @NotNull FileVisitResult preVisitDirectory(@NotNull Path dir, @NotNull BasicFileAttributes attrs) {
+                directories.incrementAndGet();
+                return FileVisitResult.CONTINUE;
+            }
+
             @Override
             public @NotNull FileVisitResult visitFile(@NotNull Path file, @NotNull BasicFileAttributes attrs) {
+                files.incrementAndGet();
                 if (isSupported(file)) {
                     try {
                         sink.accept(ScannedFile.from(file, attrs));
@@ -65,6 +160,130 @@ public class DirectoryScanner {
         });
     }
 
+    /**
+     * Lists directories on {@code threads} workers: each listing queues its subdirectories as new
+     * tasks and hands its supported files to the calling thread, which feeds the sink. The worker
+     * that finishes the last outstanding directory ends the queue. Like {@link Files#walkFileTree}
+     * without {@code FOLLOW_LINKS}, a symlink is treated as a file, never descended into, and an
+     * unreadable entry is logged and skipped. Also used, on one thread or more, for incremental
+     * walks.
+     */
+    private void walkListing(Parallel.Sink<ScannedFile> sink) throws IOException {
+        final long rootModified = Files.getLastModifiedTime(sourcePath).toMillis();
+        final Walk walk = new Walk();
+        try {
+            walk.submit(sourcePath, rootModified);
+            ScannedFile next;
+            while ((next = walk.found.take()) != DONE) {
+                sink.accept(next);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            walk.pool.shutdownNow();
+        }
+    }
+
+    /** The state one {@link #walkListing} shares across its listers. */
+    private final class Walk {
+        private final BlockingQueue<ScannedFile> found = new ArrayBlockingQueue<>(HANDOFF);
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final ExecutorService pool = Executors.newFixedThreadPool(threads);
+
+        void submit(Path dir, long modified) {
+            outstanding.incrementAndGet();
+            try {
+                pool.execute(() -> {
+                    try {
+                        try {
+                            visit(dir, modified);
+                        } finally {
+                            if (outstanding.decrementAndGet() == 0) {
+                                found.put(DONE);
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        // the walk was abandoned; the pool is shutting down
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // the walk was abandoned; nobody is waiting for this directory any more
+            }
+        }
+
+        private void visit(Path dir, long modified) throws InterruptedException {
+            directories.incrementAndGet();
+            final Optional<DirectoryIndex.Listing> cached =
+                    (index == null) ? Optional.empty() : index.unchanged(dir, modified);
+            if (cached.isPresent()) {
+                replay(dir, cached.get());
+            } else {
+                list(dir, modified);
+            }
+        }
+
+        private void list(Path dir, long modified) throws InterruptedException {
+            final long listedAt = System.currentTimeMillis();
+            final List<ScannedFile> listed = new ArrayList<>();
+            final List<String> subdirectories = new ArrayList<>();
+            boolean complete = true;
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                for (Path entry : entries) {
+                    final BasicFileAttributes attrs;
+                    try {
+                        attrs = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    } catch (IOException e) {
+                        logger.warn("Failed to access file: {}", entry);
+                        complete = false;
+                        continue;
+                    }
+                    if (attrs.isDirectory()) {
+                        subdirectories.add(entry.getFileName().toString());
+                        submit(entry, attrs.lastModifiedTime().toMillis());
+                    } else {
+                        final ScannedFile file = ScannedFile.from(entry, attrs);
+                        if (index != null) {
+                            listed.add(file);
+                        }
+                        emit(file);
+                    }
+                }
+            } catch (IOException | DirectoryIteratorException e) {
+                logger.warn("Failed to access file: {}", dir);
+                complete = false;
+            }
+            if (index != null && complete) {
+                index.record(dir, modified, listedAt, listed, subdirectories);
+            }
+        }
+
+        /** An unchanged directory: its files come from the index; only its subdirectories are stat'ed. */
+        private void replay(Path dir, DirectoryIndex.Listing listing) throws InterruptedException {
+            unchangedDirectories.incrementAndGet();
+            for (ScannedFile file : listing.files(dir)) {
+                emit(file);
+            }
+            for (Path sub : listing.subdirectories(dir)) {
+                try {
+                    final BasicFileAttributes attrs =
+                            Files.readAttributes(sub, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    if (attrs.isDirectory()) {
+                        submit(sub, attrs.lastModifiedTime().toMillis());
+                    }
+                } catch (IOException e) {
+                    logger.warn("Failed to access file: {}", sub);
+                }
+            }
+        }
+
+        private void emit(ScannedFile file) throws InterruptedException {
+            files.incrementAndGet();
+            if (isSupported(file.path())) {
+                found.put(file);
+            }
+        }
+    }
+
     /** Collects all supported files into a list (convenience over {@link #traverse}). */
     public List<ScannedFile> scan() throws IOException {
         List<ScannedFile> found = new ArrayList<>();
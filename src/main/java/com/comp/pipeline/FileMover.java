@@ -1,43 +1,150 @@
 package com.comp.pipeline;
 
 import com.comp.app.Options;
+import com.comp.concurrent.Parallel;
 import com.comp.dedup.DeduplicationResult;
 import com.comp.domain.MediaItem;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileStore;
 import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.function.Predicate;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
 import java.util.function.IntConsumer;
 
 /**
  * Files media into the dated destination layout. Keepers go under the destination root; duplicates
  * go under a {@code duplicates/} subtree so they can be reviewed separately.
  * <p>
- * Moving is done sequentially (single-threaded): filesystem moves on one disk are IO-bound rather
- * than CPU-bound, and serial execution keeps the {@code INCREASE} unique-naming logic race-free.
+ * Files are partitioned by target directory, and each directory's files are filed in order by one
+ * worker, with directories spread over {@code run.file.threads} workers. Names only collide within a
+ * directory, so the {@code INCREASE} unique naming stays race-free and gives the same names whatever
+ * the thread count. Name collisions are checked against a {@link NameIndex} to which every name
+ * handed out is added, so two files of one {@code move} (even a dry run, which creates nothing) never
+ * get the same target. Each target directory is listed into it once per {@code move} and dropped
+ * once filed, so it holds the names of the directories in progress only. One worker suits a single
+ * disk; a copy to another disk or a NAS keeps more transfers in flight with more. Copy mode goes
+ * through a {@link CopyEngine} shared by the workers, so its bandwidth cap holds across all of them.
+ * So does move mode when the source and the destination are on different filesystems
+ * ({@link #method}), deleting each source once its copy is filed, where {@link Files#move} would copy
+ * each file unthrottled and without progress.
+ * <p>
+ * {@code run.file.durability} decides what is forced to disk: nothing ({@code NONE}, the OS writes
+ * back when it likes); the copied data and every changed directory once at the end of each batch
+ * ({@code DIRECTORY}); or each file's data and directory entry before the next file
+ * ({@code FILE}). A move changes its source directory as well as its target. A copy or directory
+ * that fails to be forced is logged and does not stop the rest, nor fail a file whose data has
+ * already landed; a move across filesystems whose copy, or target directory, was not forced is
+ * undone rather than completed.
  */
 public class FileMover {
 
     private static final Logger logger = LogManager.getLogger(FileMover.class);
 
+    /** How filing gets a file to its target. */
+    public enum Method {
+        COPY("copy"),
+        RENAME("move by rename (same filesystem)"),
+        COPY_DELETE("move by copy + delete (different filesystems)");
+
+        private final String description;
+
+        Method(final String description) {
+            this.description = description;
+        }
+
+        public String description() {
+            return description;
+        }
+    }
+
     private final Options opts;
     private final Locator locator;
+    private final Method method;
+    private final CopyEngine copier;
+    private final int threads;
+    private final LongAdder bytesFiled = new LongAdder();
+    /** Directories known to exist: each target directory is checked (and created) once per mover. */
+    private final Set<Path> readyDirs = ConcurrentHashMap.newKeySet();
+    /** Directories changed since they were last forced to disk, under {@code DIRECTORY} durability. */
+    private final Set<Path> unsyncedDirs = ConcurrentHashMap.newKeySet();
+    /** Moves across filesystems whose sources are deleted once their copies are on disk ({@code DIRECTORY}). */
+    private final Queue<Move> pendingMoves = new ConcurrentLinkedQueue<>();
 
     public FileMover(Options opts) {
-        this(opts, path -> path.toFile().exists());
+        this(opts, new NameIndex());
+    }
+
+    FileMover(Options opts, NameIndex names) {
+        this(opts, names, method(opts));
     }
 
-    protected FileMover(Options opts, Predicate<Path> fileChecker) {
+    FileMover(Options opts, NameIndex names, Method method) {
         this.opts = opts;
-        this.locator = new Locator(opts, fileChecker);
+        this.locator = new Locator(opts, names);
+        this.method = method;
+        this.copier = new CopyEngine(opts.copyChunkBytes, opts.copyBytesPerSecond, switch (opts.durability) {
+            case NONE -> opts.copySyncFiles;
+            case DIRECTORY -> (opts.copySyncFiles > 0) ? opts.copySyncFiles : Integer.MAX_VALUE;
+            case FILE -> 1;
+        });
+        this.threads = (opts.fileThreads > 0) ? opts.fileThreads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * How {@code opts} files: {@code COPY} in copy mode; in move mode, {@code RENAME} when the source
+     * and the destination (its nearest existing ancestor) are on the same {@link FileStore}, else
+     * {@code COPY_DELETE}. A move whose stores cannot be told is left to {@link Files#move}, which
+     * renames or, across filesystems, copies and deletes on its own.
+     */
+    public static Method method(final Options opts) {
+        if (!opts.moveFiles) {
+            return Method.COPY;
+        }
+        if (opts.srcDir == null || opts.dstBaseDir == null) {
+            return Method.RENAME;
+        }
+        try {
+            final FileStore src = Files.getFileStore(existingAncestor(Paths.get(opts.srcDir)));
+            final FileStore dst = Files.getFileStore(existingAncestor(Paths.get(opts.dstBaseDir)));
+            return src.equals(dst) ? Method.RENAME : Method.COPY_DELETE;
+        } catch (IOException | InvalidPathException e) {
+            logger.warn("Cannot tell whether {} and {} share a filesystem: {}", opts.srcDir, opts.dstBaseDir,
+                        e.toString());
+            return Method.RENAME;
+        }
+    }
+
+    public Method method() {
+        return method;
     }
 
     /**
@@ -47,65 +154,410 @@ public class FileMover {
      * @return number of files actually filed (moved/copied, or counted in dry-run)
      */
     public int move(final DeduplicationResult result, final IntConsumer onProgress) {
-        int handled = 0;
-        int seen = 0;
-        handled += fileAll(result.keepers(), false, onProgress, seen);
-        seen += result.keepers().size();
-        handled += fileAll(result.duplicates(), true, onProgress, seen);
-        return handled;
+        return move(result, onProgress, item -> { });
+    }
+
+    /**
+     * Files every keeper and duplicate, as {@link #move(DeduplicationResult, IntConsumer)} does, then
+     * passes each item that was filed (or would be, in dry-run) to {@code onFiled}, on the calling
+     * thread. A move undone at the end of the batch is not passed.
+     */
+    public int move(final DeduplicationResult result, final IntConsumer onProgress,
+                    final Consumer<MediaItem> onFiled) {
+        final List<MediaItem> keepers = result.keepers();
+        final List<MediaItem> duplicates = result.duplicates();
+        final int k = keepers.size();
+        final IntFunction<MediaItem> items = i -> (i < k) ? keepers.get(i) : duplicates.get(i - k);
+        final BitSet filed = fileAll(result.total(), items, i -> i >= k, onProgress);
+        filed.stream().forEach(i -> onFiled.accept(items.apply(i)));
+        return filed.cardinality();
+    }
+
+    /**
+     * Files entries {@code [0, count)} of a columnar batch, as {@link #move(DeduplicationResult,
+     * IntConsumer)} does. Each entry is turned into its item by {@code items} only when it is needed,
+     * so the batch is never held as items.
+     *
+     * @param duplicates the entries to file as duplicates
+     */
+    public int move(final int count, final BitSet duplicates, final IntFunction<MediaItem> items,
+                    final IntConsumer onProgress) {
+        return fileAll(count, items, duplicates::get, onProgress).cardinality();
+    }
+
+    /**
+     * Receives the progress of copy mode after every chunk copied, from the filing workers; see
+     * {@link CopyEngine.Transfer}. Rates are measured from the start of the current {@code move}.
+     */
+    public void setTransferListener(final Consumer<CopyEngine.Transfer> listener) {
+        copier.setListener(listener);
+    }
+
+    /** Bytes of the files filed so far (moved/copied, or counted in dry-run). */
+    public long bytesFiled() {
+        return bytesFiled.sum();
     }
 
-    private int fileAll(final List<MediaItem> items, final boolean duplicate,
-                        final IntConsumer onProgress, final int alreadySeen) {
-        int handled = 0;
-        int seen = alreadySeen;
-        for (final MediaItem item : items) {
-            handled += fileOne(item, duplicate);
-            onProgress.accept(++seen);
+    /**
+     * Groups entries {@code [0, count)} by target directory, in order of first appearance, then files
+     * each group in entry order on one worker. Entries skipped or failing before they have a target
+     * are reported as handled while grouping.
+     *
+     * @return the entries filed
+     */
+    private BitSet fileAll(final int count, final IntFunction<MediaItem> items, final IntPredicate duplicate,
+                        final IntConsumer onProgress) {
+        final AtomicInteger seen = new AtomicInteger();
+        final IntConsumer progress = n -> {
+            synchronized (seen) {
+                onProgress.accept(seen.addAndGet(n));
+            }
+        };
+        copier.start();
+        final Map<Path, Group> byDir = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            final MediaItem item = items.apply(i);
+            try {
+                final Optional<Path> target = locator.target(item, duplicate.test(i));
+                if (target.isPresent()) {
+                    byDir.computeIfAbsent(target.get().getParent(), Group::new).add(i);
+                    continue;
+                }
+            } catch (Exception e) {
+                logger.error("Failed to file {}: {}", item, e.toString());
+            }
+            progress.accept(1);
+        }
+
+        final List<Group> groups = new ArrayList<>(byDir.values());
+        final boolean[] filed = new boolean[count];
+        try {
+            Parallel.forRange(groups.size(), threads, 1, (from, to) -> {
+                for (int g = from; g < to; g++) {
+                    final Group group = groups.get(g);
+                    for (int k = 0; k < group.size; k++) {
+                        final int i = group.ids[k];
+                        filed[i] = fileOne(items.apply(i), duplicate.test(i), i);
+                        progress.accept(1);
+                    }
+                    // No other group files into this directory; a later move lists it again.
+                    locator.forget(group.dir);
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while filing", e);
+        }
+        final Set<Path> unforced;
+        try {
+            unforced = copier.sync(threads);
+        } catch (InterruptedIOException e) {
+            throw new IllegalStateException("Interrupted while syncing copies", e);
+        }
+        completeMoves(unforced, syncDirectories(), filed);
+        final BitSet done = new BitSet(count);
+        for (int i = 0; i < count; i++) {
+            done.set(i, filed[i]);
+        }
+        return done;
+    }
+
+    /**
+     * Deletes the sources of the pending moves whose copies, and the directories leading to them,
+     * were forced to disk, then forces the source directories. A move whose copy is not known to be
+     * on disk is undone instead: the source is kept and the copy removed, so a crash cannot lose
+     * both and a rerun files it again. So is one whose source cannot be deleted, as
+     * {@link Files#move} would, so the photo is not left in both places. An undone move's entry is
+     * cleared in {@code filed}.
+     */
+    private void completeMoves(final Set<Path> unforced, final Set<Path> unforcedDirs, final boolean[] filed) {
+        if (pendingMoves.isEmpty()) {
+            return;
+        }
+        final List<Move> moves = new ArrayList<>(pendingMoves);
+        pendingMoves.clear();
+        try {
+            Parallel.forRange(moves.size(), threads, 64, (from, to) -> {
+                for (int i = from; i < to; i++) {
+                    final Move move = moves.get(i);
+                    if (unforced.contains(move.dst()) || anyAncestorIn(move.dst(), unforcedDirs)) {
+                        logger.error("Kept {}: its copy {} could not be forced to disk", move.src(), move.dst());
+                        undo(move);
+                        filed[move.entry()] = false;
+                        continue;
+                    }
+                    try {
+                        deleteMovedSource(move);
+                    } catch (IOException e) {
+                        logger.error("Kept {}: it could not be deleted: {}", move.src(), e.toString());
+                        undo(move);
+                        filed[move.entry()] = false;
+                    }
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while deleting moved sources", e);
+        }
+        syncDirectories();
+    }
+
+    /** Removes the copy of a counted {@code move}, frees its target name and uncounts it; its source stays. */
+    private void undo(final Move move) {
+        discard(move.dst());
+        bytesFiled.add(-move.size());
+    }
+
+    /** Removes a copy that will not be completed and frees its target name. */
+    private void discard(final Path copy) {
+        try {
+            Files.deleteIfExists(copy);
+        } catch (IOException e) {
+            logger.error("Failed to remove {}: {}", copy, e.toString());
+        }
+        locator.release(copy);
+    }
+
+    private static boolean anyAncestorIn(final Path file, final Set<Path> dirs) {
+        for (Path dir = file.getParent(); dir != null; dir = dir.getParent()) {
+            if (dirs.contains(dir)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Forces every directory changed by this batch to disk, once each, on the filing workers.
+     *
+     * @return the directories that could not be forced
+     */
+    private Set<Path> syncDirectories() {
+        final List<Path> dirs = new ArrayList<>(unsyncedDirs);
+        unsyncedDirs.removeAll(dirs);
+        final Set<Path> failed = ConcurrentHashMap.newKeySet();
+        try {
+            Parallel.forRange(dirs.size(), threads, 1, (from, to) -> {
+                for (int d = from; d < to; d++) {
+                    try {
+                        syncDirectory(dirs.get(d));
+                    } catch (IOException e) {
+                        logger.error("Failed to force {} to disk: {}", dirs.get(d), e.toString());
+                        failed.add(dirs.get(d));
+                    }
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while syncing directories", e);
         }
-        return handled;
+        return failed;
     }
 
-    private int fileOne(final MediaItem item, final boolean duplicate) {
+    /** Files one entry; whether it was filed (a move may still be undone at the end of the batch). */
+    private boolean fileOne(final MediaItem item, final boolean duplicate, final int entry) {
         try {
             final Optional<String> destOpt = locator.resolveDest(item, duplicate);
             if (destOpt.isEmpty()) {
-                return 0;
+                return false;
             }
             final Path src = item.getPath();
             final Path dst = Paths.get(destOpt.get());
 
             if (opts.dryRun) {
-                return 1;
+                bytesFiled.add(item.getFileSize());
+                return true;
             }
 
-            Files.createDirectories(dst.getParent());
-            final StandardCopyOption[] copyOpts = (opts.duplicateOpt == Options.DuplicateOpt.OVERWRITE)
-                    ? new StandardCopyOption[]{StandardCopyOption.REPLACE_EXISTING}
-                    : new StandardCopyOption[]{};
+            ensureDirectory(dst.getParent());
+            final boolean replace = opts.duplicateOpt == Options.DuplicateOpt.OVERWRITE;
 
-            if (opts.moveFiles) {
-                Files.move(src, dst, copyOpts);
-            } else {
-                Files.copy(src, dst, copyOpts);
+            switch (method) {
+                case RENAME -> {
+                    if (replace) {
+                        Files.move(src, dst, StandardCopyOption.REPLACE_EXISTING);
+                    } else {
+                        Files.move(src, dst);
+                    }
+                }
+                case COPY -> copier.copy(src, dst, replace);
+                case COPY_DELETE -> copier.copy(src, dst, replace, true);
+            }
+            // The file has landed: from here on a directory that cannot be forced does not fail it.
+            final boolean forced = changedOrLogged(dst.getParent());
+            switch (method) {
+                case RENAME -> changedOrLogged(src.getParent());
+                case COPY_DELETE -> {
+                    if (!forced) {
+                        logger.error("Kept {}: its copy {} could not be forced to disk", src, dst);
+                        discard(dst);
+                        return false;
+                    }
+                    deleteSource(new Move(src, dst, item.getFileSize(), entry));
+                }
+                case COPY -> { }
             }
-            return 1;
+            bytesFiled.add(item.getFileSize());
+            return true;
         } catch (Exception e) {
             logger.error("Failed to file {}: {}", item, e.toString());
-            return 0;
+            return false;
+        }
+    }
+
+    /**
+     * Completes a move across filesystems. Under {@code DIRECTORY} durability the source is deleted
+     * at the end of the batch, once its copy has been forced to disk; otherwise now (under
+     * {@code FILE}, the copy already is). Either way, if the source cannot be deleted the copy is
+     * removed and its target name freed, as {@link Files#move} does, and the move is not counted.
+     */
+    private void deleteSource(final Move move) throws IOException {
+        if (opts.durability == Options.Durability.DIRECTORY) {
+            pendingMoves.add(move);
+            return;
+        }
+        try {
+            deleteMovedSource(move);
+        } catch (IOException e) {
+            discard(move.dst());
+            throw e;
+        }
+    }
+
+    /**
+     * Deletes the source of {@code move}; one already gone leaves its copy the only one, so that is
+     * kept. Once the source is deleted this does not throw: the copy is then all that is left.
+     */
+    private void deleteMovedSource(final Move move) throws IOException {
+        try {
+            Files.delete(move.src());
+        } catch (NoSuchFileException e) {
+            logger.warn("{} vanished before it could be deleted; keeping its copy {}", move.src(), move.dst());
+        }
+        changedOrLogged(move.src().getParent());
+    }
+
+    private static Path existingAncestor(final Path path) throws NoSuchFileException {
+        Path p = path.toAbsolutePath();
+        while (p != null && !Files.exists(p)) {
+            p = p.getParent();
+        }
+        if (p == null) {
+            throw new NoSuchFileException(path.toString());
+        }
+        return p;
+    }
+
+    /**
+     * Creates {@code dir} and any missing parents unless it is known to exist. Under a durability
+     * policy, the parent of each directory created is recorded as {@link #changed}.
+     */
+    private void ensureDirectory(final Path dir) throws IOException {
+        if (dir == null || readyDirs.contains(dir)) {
+            return;
+        }
+        if (!Files.isDirectory(dir)) {
+            ensureDirectory(dir.getParent());
+            try {
+                Files.createDirectory(dir);
+                changed(dir.getParent());
+            } catch (FileAlreadyExistsException e) {
+                if (!Files.isDirectory(dir)) {
+                    throw e;
+                }
+            }
+        }
+        readyDirs.add(dir);
+    }
+
+    /** {@code dir} gained or lost an entry: force it to disk now, or at batch end, per policy. */
+    private void changed(final Path dir) throws IOException {
+        switch (opts.durability) {
+            case FILE -> syncDirectory(dir);
+            case DIRECTORY -> {
+                if (dir != null) {
+                    unsyncedDirs.add(dir);
+                }
+            }
+            case NONE -> { }
+        }
+    }
+
+    /**
+     * As {@link #changed}, for an entry already made: a directory that cannot be forced is logged.
+     *
+     * @return whether {@code dir} was forced, or is left to the policy to force later
+     */
+    private boolean changedOrLogged(final Path dir) {
+        try {
+            changed(dir);
+            return true;
+        } catch (IOException e) {
+            logger.error("Failed to force {} to disk: {}", dir, e.toString());
+            return false;
+        }
+    }
+
+    /** Forces {@code dir}'s entries to disk; overridden by tests to simulate a failing disk. */
+    void syncDirectory(final Path dir) throws IOException {
+        // Windows cannot open a directory for flushing, and NTFS journals directory changes itself.
+        if (dir == null || File.separatorChar == '\\') {
+            return;
+        }
+        try (FileChannel ch = FileChannel.open(dir, StandardOpenOption.READ)) {
+            ch.force(true);
+        }
+    }
+
+    /** A file copied across filesystems (batch entry {@code entry}), whose source is still to be deleted. */
+    private record Move(Path src, Path dst, long size, int entry) {
+    }
+
+    /** The entries bound for one target directory, in entry order. */
+    private static final class Group {
+        final Path dir;
+        int[] ids = new int[8];
+        int size;
+
+        Group(Path dir) {
+            this.dir = dir;
+        }
+
+        void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
         }
     }
 
     static class Locator {
         private final Options opts;
-        private final Predicate<Path> fileChecker;
+        /** What each target directory holds, plus every target handed out by {@link #resolveDest}. */
+        private final NameIndex names;
+        // SimpleDateFormat is not thread-safe: one copy per filing worker.
+        private final ThreadLocal<DateFormat> dirFormat;
+        private final ThreadLocal<DateFormat> fileFormat;
 
-        Locator(Options opts, Predicate<Path> fileChecker) {
+        Locator(Options opts, NameIndex names) {
             this.opts = opts;
-            this.fileChecker = fileChecker;
+            this.names = names;
+            this.dirFormat = ThreadLocal.withInitial(() -> (DateFormat) opts.dirNameFormatter.clone());
+            this.fileFormat = ThreadLocal.withInitial(() -> (DateFormat) opts.fileNameFormatter.clone());
         }
 
-        Optional<String> resolveDest(MediaItem item, boolean duplicate) {
+        /** Frees a target handed out by {@link #resolveDest} whose file was removed again. */
+        void release(Path target) {
+            names.release(target);
+        }
+
+        /** Done filing into {@code dir}: drops its names from the index. */
+        void forget(Path dir) {
+            names.forget(dir);
+        }
+
+        /** Where {@code item} goes before any name collision is handled; empty if it is skipped. */
+        Optional<Path> target(MediaItem item, boolean duplicate) {
             Date date = item.getEffectiveDate();
 
             if (!item.hasExifDate()) {
@@ -122,32 +574,41 @@ public class FileMover {
             String extStr = getExt(item.getPath().getFileName().toString());
 
             // We normalize the input strings to ensure "yyyy/MM" becomes "yyyy\MM" on Windows
-            Path target = Paths.get(normalize(baseDirStr), normalize(nameStr) + "." + extStr);
+            return Optional.of(Paths.get(normalize(baseDirStr), normalize(nameStr) + "." + extStr));
+        }
+
+        /**
+         * The target for {@code item} with collisions handled per {@code policy.duplicate}, claimed for
+         * it. Callers resolve the files of one directory one at a time.
+         */
+        Optional<String> resolveDest(MediaItem item, boolean duplicate) {
+            Optional<Path> resolved = target(item, duplicate);
+            if (resolved.isEmpty()) {
+                return Optional.empty();
+            }
+            Path target = resolved.get();
 
-            if (fileChecker.test(target)) {
-                return switch (opts.duplicateOpt) {
-                    case SKIP -> Optional.empty();
+            if (names.contains(target)) {
+                target = switch (opts.duplicateOpt) {
+                    case SKIP -> null;
                     case STOP -> throw new RuntimeException("Stop: Duplicate " + target);
-                    case OVERWRITE -> Optional.of(target.toString());
-                    case INCREASE -> Optional.of(findUnique(target));
+                    case OVERWRITE -> target;
+                    case INCREASE -> findUnique(target);
                 };
+                if (target == null) {
+                    return Optional.empty();
+                }
             }
 
+            names.claim(target);
             return Optional.of(target.toString());
         }
 
-        private String findUnique(Path originalTarget) {
-            Path dir = originalTarget.getParent();
+        private Path findUnique(Path originalTarget) {
             String fName = originalTarget.getFileName().toString();
             String name = fName.substring(0, fName.lastIndexOf('.'));
             String ext = fName.substring(fName.lastIndexOf('.') + 1);
-
-            int i = 0;
-            Path p;
-            do {
-                p = dir.resolve(String.format("%s_%03d.%s", name, ++i, ext));
-            } while (fileChecker.test(p));
-            return p.toString();
+            return names.nextFree(originalTarget.getParent(), name, ext);
         }
 
         private String getBaseDir(Date date, MediaItem item, boolean duplicate) {
@@ -159,7 +620,7 @@ public class FileMover {
             if (!item.hasExifDate() && opts.noExifDir == Options.NoExifOpt.FIXED_DIR) {
                 return base + File.separator + opts.noExifDirName;
             }
-            return Paths.get(base, opts.dirNameFormatter.format(date)).toString();
+            return Paths.get(base, dirFormat.get().format(date)).toString();
         }
 
         private String getBaseName(Date date, MediaItem item) {
@@ -168,7 +629,7 @@ public class FileMover {
                 int idx = n.lastIndexOf('.');
                 return (idx > 0) ? n.substring(0, idx) : n;
             }
-            return opts.fileNameFormatter.format(date);
+            return fileFormat.get().format(date);
         }
 
         private String getExt(String name) {
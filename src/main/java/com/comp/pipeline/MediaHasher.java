@@ -1,24 +1,49 @@
 package com.comp.pipeline;
 
+import com.comp.concurrent.ByteBudget;
 import com.comp.media.CaptureDateReader;
 import com.comp.media.ContentSignature;
 import com.comp.media.ImageHasher;
+import com.comp.domain.HashSource;
 import com.comp.domain.MediaItem;
 import com.comp.domain.ScannedFile;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Date;
 import java.util.Set;
+import java.util.concurrent.Semaphore;
 
 /**
  * Turns a {@link ScannedFile} into a fully-analyzed {@link MediaItem} (capture date, perceptual
  * hash, content signature). Images are read from disk exactly once and all values are derived from
- * the same bytes. Videos and oversized files get their date only. Per-file failures are absorbed so
- * one bad file never aborts the batch — the file still gets filed by modification date.
+ * the same bytes. Videos and oversized files get their date only.
+ * <p>
+ * A file that fits the per-worker buffer budget is read into that worker's reusable buffer; a larger
+ * one is memory-mapped, so the metadata reader, the signature's head/tail sample and the decoder
+ * only page in what they touch. Transient heap is therefore {@code workers x budget}, whatever the
+ * file sizes. Across workers, an optional {@link ByteBudget} admits a file only once its size fits
+ * beside the bytes already in flight, so many threads cannot all be decoding huge files at once.
+ * Per-file failures are absorbed so one bad file never aborts the batch — the file still gets filed
+ * by modification date. That includes a mapped file cut short while it is analyzed, which faults
+ * rather than reading short.
+ * <p>
+ * On virtual threads, pass a CPU gate sized to the core count: reads then run ungated and in any
+ * number, while decoding and hashing hold a gate permit. In that mode every file is read eagerly
+ * into its own array, because thousands of threads cannot each keep a buffer, and a page fault on a
+ * mapping would stall a core while holding the gate. The {@link ByteBudget} then bounds the heap.
+ * <p>
+ * With fast sources enabled, a JPEG is hashed from its EXIF thumbnail or, failing that, its DC
+ * coefficients, and only decoded when neither is usable; the item records which {@link HashSource}
+ * produced its hash.
  */
 public class MediaHasher {
 
@@ -26,29 +51,187 @@ public class MediaHasher {
 
     private static final Set<String> VIDEO_EXTS = Set.of("mp4", "avi", "3gp", "mov", "wmv", "mts");
     private static final long MAX_DECODE_BYTES = 100L * 1024 * 1024;
+    public static final int DEFAULT_BUFFER_BYTES = 16 * 1024 * 1024;
+    private static final int MIN_BUFFER_BYTES = 64 * 1024;
+
+    private final ImageHasher.Downscale downscale;
+    private final boolean fastSources;
+    private final int bufferBytes;
+    private final ByteBudget inflight;
+    private final Semaphore cpu;
+    private final ThreadLocal<ByteBuffer> buffers = new ThreadLocal<>();
+
+    public MediaHasher() {
+        this(ImageHasher.Downscale.JAVA2D);
+    }
+
+    public MediaHasher(final ImageHasher.Downscale downscale) {
+        this(downscale, false);
+    }
+
+    public MediaHasher(final ImageHasher.Downscale downscale, final boolean fastSources) {
+        this(downscale, fastSources, DEFAULT_BUFFER_BYTES);
+    }
+
+    /** @param bufferBytes per-worker read buffer; files larger than this are mapped instead of read */
+    public MediaHasher(final ImageHasher.Downscale downscale, final boolean fastSources, final int bufferBytes) {
+        this(downscale, fastSources, bufferBytes, new ByteBudget(0));
+    }
+
+    /** @param inflight shared across workers; each decodable file holds its size from it while being read */
+    public MediaHasher(final ImageHasher.Downscale downscale, final boolean fastSources, final int bufferBytes,
+                       final ByteBudget inflight) {
+        this(downscale, fastSources, bufferBytes, inflight, null);
+    }
+
+    /**
+     * @param cpu permits for decode work when running on virtual threads; {@code null} when the thread
+     *            count already bounds it
+     */
+    public MediaHasher(final ImageHasher.Downscale downscale, final boolean fastSources, final int bufferBytes,
+                       final ByteBudget inflight, final Semaphore cpu) {
+        if (bufferBytes < 0) {
+            throw new IllegalArgumentException("bufferBytes must be >= 0: " + bufferBytes);
+        }
+        this.downscale = downscale;
+        this.fastSources = fastSources;
+        this.bufferBytes = bufferBytes;
+        this.inflight = inflight;
+        this.cpu = cpu;
+    }
 
     public MediaItem hash(final ScannedFile file) {
-        final Path path = file.path();
-        Date date = null;
+        return analyze(load(file, cpu != null));
+    }
+
+    /**
+     * The I/O half of {@link #hash}, for a pipeline that reads and analyzes on different threads:
+     * takes the file's share of the in-flight budget and reads it whole into its own array (videos and
+     * oversized files get their date here instead). Pass the result to {@link #analyze}, which returns
+     * the budget; it may run on any thread.
+     */
+    public Loaded read(final ScannedFile file) {
+        return load(file, true);
+    }
+
+    /** The CPU half of {@link #hash}: capture date, perceptual hash and signature from loaded bytes. */
+    public MediaItem analyze(final Loaded loaded) {
+        final ScannedFile file = loaded.file;
+        Date date = loaded.date;
         long perceptualHash = 0;
         long signature = 0;
+        HashSource source = HashSource.DECODED;
 
-        try {
-            if (isDecodable(file)) {
-                final byte[] bytes = Files.readAllBytes(path);
-                date = CaptureDateReader.readDate(bytes).orElse(null);
-                perceptualHash = ImageHasher.fromBytes(bytes);
-                signature = ContentSignature.of(bytes);
-            } else {
-                try (InputStream in = Files.newInputStream(path)) {
-                    date = CaptureDateReader.readDate(in).orElse(null);
+        try (loaded) {
+            final ByteBuffer bytes = loaded.bytes;
+            if (bytes != null) {
+                if (cpu != null) {
+                    cpu.acquire();
+                }
+                try {
+                    date = CaptureDateReader.readDate(bytes).orElse(null);
+                    if (fastSources) {
+                        perceptualHash = ImageHasher.fromThumbnail(bytes, downscale);
+                        source = HashSource.THUMBNAIL;
+                        if (perceptualHash == 0) {
+                            perceptualHash = ImageHasher.fromJpegDc(bytes);
+                            source = HashSource.DC;
+                        }
+                    }
+                    if (perceptualHash == 0) {
+                        perceptualHash = ImageHasher.fromBytes(bytes, downscale);
+                        source = HashSource.DECODED;
+                    }
+                    signature = ContentSignature.of(bytes);
+                } finally {
+                    if (cpu != null) {
+                        cpu.release();
+                    }
                 }
             }
+        } catch (InterruptedException e) {
+            // Only an aborting batch interrupts a worker; fail rather than cache a hashless item.
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for CPU: " + file.path(), e);
+        } catch (Exception e) {
+            logger.warn("Analysis failed for {}: {}", file.path(), e.toString());
+        } catch (InternalError e) {
+            // A mapped file truncated while it is read (e.g. still being written) faults the access
+            // rather than reading short; that is this file's failure, not the batch's.
+            if (!(loaded.bytes instanceof MappedByteBuffer)) {
+                throw e;
+            }
+            logger.warn("Analysis failed for {}: truncated while mapped ({})", file.path(), e.toString());
+        }
+
+        return new MediaItem(file.path(), file.fileSize(), file.lastModified(), date, perceptualHash, signature, source);
+    }
+
+    /**
+     * Takes the file's budget and loads it for {@link #analyze}, into its own array if
+     * {@code detached}. Package-private so tests can change the file in between.
+     */
+    Loaded load(final ScannedFile file, final boolean detached) {
+        final Path path = file.path();
+        if (!isDecodable(file)) {
+            Date date = null;
+            try (InputStream in = Files.newInputStream(path)) {
+                date = CaptureDateReader.readDate(in).orElse(null);
+            } catch (Exception e) {
+                logger.warn("Analysis failed for {}: {}", path, e.toString());
+            }
+            return new Loaded(file, null, date, null);
+        }
+
+        final ByteBudget.Lease lease;
+        try {
+            lease = inflight.acquire(file.fileSize());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for read budget: " + path, e);
+        }
+        try {
+            return new Loaded(file, content(path, detached), null, lease);
         } catch (Exception e) {
+            lease.close();
             logger.warn("Analysis failed for {}: {}", path, e.toString());
+            return new Loaded(file, null, null, null);
+        }
+    }
+
+    /**
+     * The file's bytes, valid until this thread's next call: the worker's buffer when the file fits
+     * the budget, otherwise a read-only mapping (released by the GC once the caller drops it).
+     * {@code detached} content is always a fresh array filled before returning.
+     */
+    private ByteBuffer content(final Path path, final boolean detached) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            final ByteBuffer buffer;
+            if (detached) {
+                buffer = ByteBuffer.allocate((int) size);
+            } else if (size > bufferBytes) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                buffer = buffer((int) size);
+            }
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // a channel may return short reads; keep going until full or end of file
+            }
+            return buffer.flip();
         }
+    }
 
-        return new MediaItem(path, file.fileSize(), file.lastModified(), date, perceptualHash, signature);
+    /** This thread's buffer, cleared and limited to {@code size}; grown geometrically up to the budget. */
+    private ByteBuffer buffer(final int size) {
+        ByteBuffer buffer = buffers.get();
+        if (buffer == null || buffer.capacity() < size) {
+            final int current = (buffer == null) ? MIN_BUFFER_BYTES / 2 : buffer.capacity();
+            final int capacity = (int) Math.min(bufferBytes, Math.max(size, 2L * current));
+            buffer = ByteBuffer.allocate(capacity);
+            buffers.set(buffer);
+        }
+        return buffer.clear().limit(size);
     }
 
     private boolean isDecodable(ScannedFile file) {
@@ -60,4 +243,32 @@ public class MediaHasher {
         int dot = name.lastIndexOf('.');
         return dot > 0 && VIDEO_EXTS.contains(name.substring(dot + 1).toLowerCase());
     }
+
+    /** A file read by {@link #read} and awaiting {@link #analyze}; holds the file's in-flight budget until then. */
+    public static final class Loaded implements AutoCloseable {
+        private final ScannedFile file;
+        private final ByteBuffer bytes;     // null for date-only files and failed reads
+        private final Date date;            // date-only files: read with the metadata
+        private ByteBudget.Lease lease;
+
+        private Loaded(final ScannedFile file, final ByteBuffer bytes, final Date date, final ByteBudget.Lease lease) {
+            this.file = file;
+            this.bytes = bytes;
+            this.date = date;
+            this.lease = lease;
+        }
+
+        public ScannedFile file() {
+            return file;
+        }
+
+        /** Returns the budget; called by {@link #analyze}. */
+        @Override
+        public void close() {
+            if (lease != null) {
+                lease.close();
+                lease = null;
+            }
+        }
+    }
 }
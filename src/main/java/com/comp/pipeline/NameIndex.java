@@ -0,0 +1,135 @@
+package com.comp.pipeline;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * The names in each destination directory, listed once, when the directory is first asked about,
+ * and kept up to date by {@link #claim} as files are filed. A collision check is then a set lookup
+ * instead of a filesystem stat, and finding the next free {@code _NNN} suffix resumes where the last
+ * search for that name stopped, so a burst of photos taken in the same second costs one listing, not
+ * one stat per candidate name.
+ * <p>
+ * Names are compared ignoring case, as on the Windows and macOS filesystems; on a case-sensitive one
+ * that only means {@code IMG.JPG} and {@code img.jpg} are never both filed into one directory.
+ * Files created in a directory by anything else after it was listed are not seen. Each directory is
+ * used by one filing worker at a time; directories are independent.
+ * <p>
+ * A directory done with is {@link #forget forgotten}, so the index holds the names of the directories
+ * being filed, not of every directory a run has touched; asked about again, it is listed again.
+ */
+final class NameIndex {
+
+    private final Function<Path, Collection<String>> lister;
+    private final Map<Path, Directory> dirs = new ConcurrentHashMap<>();
+
+    /** An index over the directories on disk. */
+    NameIndex() {
+        this(NameIndex::list);
+    }
+
+    /** @param lister the names in a directory; empty if it does not exist */
+    NameIndex(Function<Path, Collection<String>> lister) {
+        this.lister = lister;
+    }
+
+    /** Whether {@code target} is taken: on disk when its directory was listed, or claimed since. */
+    boolean contains(Path target) {
+        return directory(target.getParent()).names.contains(key(target.getFileName().toString()));
+    }
+
+    /** Records {@code target} as taken. */
+    void claim(Path target) {
+        directory(target.getParent()).names.add(key(target.getFileName().toString()));
+    }
+
+    /**
+     * Records {@code target} as free again, e.g. after the file claimed for it was removed. A
+     * forgotten directory is left alone: its next listing will not see the file.
+     */
+    void release(Path target) {
+        final Directory d = dirs.get(dirKey(target.getParent()));
+        if (d != null) {
+            d.names.remove(key(target.getFileName().toString()));
+        }
+    }
+
+    /** Drops what is known about {@code dir}; it is listed again if asked about later. */
+    void forget(Path dir) {
+        dirs.remove(dirKey(dir));
+    }
+
+    /**
+     * The first {@code <stem>_NNN.<ext>} in {@code dir} that is not taken, counting from 001. Each
+     * search for a name resumes after the suffix the last one returned, which stays taken once claimed.
+     */
+    Path nextFree(Path dir, String stem, String ext) {
+        final Directory d = directory(dir);
+        final String key = key(stem + "." + ext);
+        int i = d.lastSuffix.getOrDefault(key, 0);
+        Path p;
+        do {
+            p = dir.resolve(String.format("%s_%03d.%s", stem, ++i, ext));
+        } while (d.names.contains(key(p.getFileName().toString())));
+        d.lastSuffix.put(key, i);
+        return p;
+    }
+
+    private Directory directory(Path dir) {
+        final Path key = dirKey(dir);
+        Directory d = dirs.get(key);
+        if (d == null) {
+            d = new Directory(lister.apply(key));
+            final Directory raced = dirs.putIfAbsent(key, d);
+            if (raced != null) {
+                d = raced;
+            }
+        }
+        return d;
+    }
+
+    private static Path dirKey(Path dir) {
+        return (dir == null) ? Path.of("") : dir;
+    }
+
+    private static String key(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    private static Collection<String> list(Path dir) {
+        final List<String> names = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+            for (final Path entry : entries) {
+                names.add(entry.getFileName().toString());
+            }
+        } catch (NoSuchFileException e) {
+            return List.of();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot list " + dir, e);
+        }
+        return names;
+    }
+
+    private static final class Directory {
+        final Set<String> names = ConcurrentHashMap.newKeySet();
+        final Map<String, Integer> lastSuffix = new ConcurrentHashMap<>();
+
+        Directory(Collection<String> listed) {
+            for (final String name : listed) {
+                names.add(key(name));
+            }
+        }
+    }
+}
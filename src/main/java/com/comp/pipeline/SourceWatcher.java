@@ -0,0 +1,220 @@
+package com.comp.pipeline;
+
+import com.comp.domain.ScannedFile;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * Watches a source tree for new and changed media files and hands them over in batches, so a
+ * long-running process handles a trickle of new photos without rescanning the tree.
+ * <p>
+ * A {@link WatchService} watches one directory each, so every directory is registered when the
+ * watcher is created and every directory created later is registered as it appears (and walked, for
+ * files that landed in it before it was registered). Symlinks are not followed. Events are
+ * debounced: a batch is handed over once no event has arrived for the debounce interval (a camera
+ * import or a copy in progress keeps rewriting its files), or at the latest ten intervals after its
+ * first event. A file is handed over again only if its size or mtime changed since it last was; a
+ * file is only remembered while it stays in the source, so moving filed photos out keeps the
+ * watcher's memory flat. When the service drops events (overflow), the whole tree is walked again.
+ * <p>
+ * Registration starts in the constructor, so a watcher created before a full scan also catches
+ * files that arrive during it (the handler then sees some files the scan already handled).
+ * <p>
+ * {@link #stop} ends {@link #run} between batches: a batch being handled is finished first, so a
+ * handler is never interrupted halfway through filing.
+ */
+public class SourceWatcher implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger(SourceWatcher.class);
+    private static final int MAX_DELAY_INTERVALS = 10;
+
+    /** Receives each debounced batch on the watching thread. */
+    @FunctionalInterface
+    public interface BatchHandler {
+        void handle(List<ScannedFile> batch) throws Exception;
+    }
+
+    private final Path root;
+    private final Set<String> supportingExts;
+    private final long debounceNanos;
+    private final WatchService service;
+    private final Map<WatchKey, Path> dirs = new HashMap<>();
+    private final Map<Path, ScannedFile> delivered = new HashMap<>();
+    private final Set<Path> pending = new LinkedHashSet<>();
+    private volatile boolean stopping;
+
+    public SourceWatcher(Path root, Set<String> supportingExts, long debounceMillis) throws IOException {
+        this.root = root;
+        this.supportingExts = supportingExts;
+        this.debounceNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, debounceMillis));
+        this.service = FileSystems.getDefault().newWatchService();
+        registerTree(root, false);
+    }
+
+    /** Watches until {@link #stop stopped} or the thread is interrupted, handing each batch to {@code handler}. */
+    public void run(BatchHandler handler) throws Exception {
+        long firstEvent = 0;
+        long lastEvent = 0;
+        try {
+            while (!stopping && !Thread.currentThread().isInterrupted()) {
+                final WatchKey key;
+                if (pending.isEmpty()) {
+                    key = service.take();
+                } else {
+                    final long now = System.nanoTime();
+                    final long due = Math.min(lastEvent + debounceNanos,
+                                              firstEvent + MAX_DELAY_INTERVALS * debounceNanos);
+                    key = (now >= due) ? null : service.poll(due - now, TimeUnit.NANOSECONDS);
+                }
+                if (key == null) {
+                    final List<ScannedFile> batch = drainPending();
+                    if (!batch.isEmpty()) {
+                        handler.handle(batch);
+                        forgetGone(batch);
+                    }
+                    continue;
+                }
+                if (pending.isEmpty()) {
+                    firstEvent = System.nanoTime();
+                }
+                lastEvent = System.nanoTime();
+                process(key);
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // stopping
+        }
+    }
+
+    /**
+     * Makes {@link #run} return once the batch it is handling, if any, is done; events not yet
+     * handed over are dropped. Safe to call from any thread, e.g. a shutdown hook.
+     */
+    public void stop() throws IOException {
+        stopping = true;
+        service.close(); // wakes a run() waiting for events
+    }
+
+    @Override
+    public void close() throws IOException {
+        service.close();
+    }
+
+    private void process(WatchKey key) {
+        final Path dir = dirs.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                logger.warn("Missed file events under {}; walking it again", root);
+                registerTree(root, true);
+                continue;
+            }
+            if (dir == null) {
+                continue;
+            }
+            final Path child = dir.resolve((Path) event.context());
+            if (event.kind() == ENTRY_CREATE && Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                registerTree(child, true);
+            } else if (isSupported(child)) {
+                pending.add(child);
+            }
+        }
+        if (!key.reset()) {
+            dirs.remove(key); // directory deleted or moved away
+        }
+    }
+
+    /** Registers every directory under {@code start}; with {@code collect}, queues the files found too. */
+    private void registerTree(Path start, boolean collect) {
+        try {
+            Files.walkFileTree(start, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                    dirs.put(dir.register(service, ENTRY_CREATE, ENTRY_MODIFY), dir); // same key if already watched
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (collect && isSupported(file)) {
+                        pending.add(file);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    logger.warn("Failed to access file: {}", file);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            logger.warn("Failed to watch {}: {}", start, e.toString());
+        }
+    }
+
+    /** The pending files that are still regular files and changed since last handed over. */
+    private List<ScannedFile> drainPending() {
+        final List<ScannedFile> batch = new ArrayList<>(pending.size());
+        for (Path path : pending) {
+            final BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            } catch (IOException e) {
+                delivered.remove(path);
+                continue; // gone again (a temp file, or moved on)
+            }
+            if (!attrs.isRegularFile()) {
+                continue;
+            }
+            final ScannedFile file = ScannedFile.from(path, attrs);
+            if (!file.equals(delivered.put(path, file))) {
+                batch.add(file);
+            }
+        }
+        pending.clear();
+        return batch;
+    }
+
+    /** Forgets the files of {@code batch} that are gone, e.g. moved out of the source by the handler. */
+    private void forgetGone(List<ScannedFile> batch) {
+        for (ScannedFile file : batch) {
+            if (!Files.exists(file.path(), LinkOption.NOFOLLOW_LINKS)) {
+                delivered.remove(file.path());
+            }
+        }
+    }
+
+    /** Number of files remembered as handed over; read only once {@link #run} has returned. */
+    int remembered() {
+        return delivered.size();
+    }
+
+    private boolean isSupported(Path file) {
+        final String name = file.getFileName().toString();
+        final int dot = name.lastIndexOf('.');
+        return dot > 0 && supportingExts.contains(name.substring(dot + 1).toLowerCase());
+    }
+}
@@ -1,15 +1,25 @@
 package com.comp.app;
 
+import com.comp.cache.CacheEntry;
+import com.comp.cache.CachingHasher;
+import com.comp.cache.InMemoryHashCache;
 import com.comp.dedup.DeduplicationResult;
 import com.comp.dedup.Deduplicator;
+import com.comp.domain.HashSource;
 import com.comp.domain.MediaItem;
+import com.comp.domain.ScannedFile;
+import com.comp.media.ImageHasher;
 import com.comp.pipeline.FileMover;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 import java.util.function.IntConsumer;
 
 class PhotoTidyTest {
@@ -59,6 +69,33 @@ class PhotoTidyTest {
                                 "dedup must receive exactly the hashed items");
     }
 
+    @Test
+    void testCachedHashesAreReusedOnlyIfThisRunWouldHashThemTheSameWay() {
+        Options opts = dummyOpts();
+        opts.hashSource = Options.HashSourceMode.FAST;
+        opts.hashDownscale = ImageHasher.Downscale.DIRECT;
+        InMemoryHashCache cache = new InMemoryHashCache();
+        int fastDirect = CacheEntry.FAST_SOURCES | CacheEntry.DIRECT_DOWNSCALE;
+        Map<String, CacheEntry> cached = Map.of(
+                "decode-run.jpg", new CacheEntry(1, 1, -1, 0x11L, 0, HashSource.DECODED, 0),
+                "fallback.jpg", new CacheEntry(1, 1, -1, 0x12L, 0, HashSource.DECODED, fastDirect),
+                "java2d-thumb.jpg", new CacheEntry(1, 1, -1, 0x13L, 0, HashSource.THUMBNAIL, CacheEntry.FAST_SOURCES),
+                "java2d-dc.jpg", new CacheEntry(1, 1, -1, 0x14L, 0, HashSource.DC, CacheEntry.FAST_SOURCES),
+                "video.mov", new CacheEntry(1, 1, -1, 0, 0, HashSource.DECODED, 0));
+        cached.forEach((name, entry) -> cache.put(new ScannedFile(Paths.get(name), 1, 1), entry));
+
+        Set<String> rehashed = new HashSet<>();
+        CachingHasher hasher = new TestablePipeline(opts).cachingHasher(cache, file -> {
+            rehashed.add(file.path().toString());
+            return new MediaItem(file.path(), 1, 1L, null, 0x99L, 0, HashSource.THUMBNAIL);
+        });
+        cached.keySet().forEach(name -> hasher.hash(new ScannedFile(Paths.get(name), 1, 1)));
+
+        Assertions.assertEquals(Set.of("decode-run.jpg", "java2d-thumb.jpg"), rehashed);
+        Assertions.assertEquals(fastDirect, cache.get(new ScannedFile(Paths.get("decode-run.jpg"), 1, 1))
+                                               .orElseThrow().hashFlags(), "re-hashed entries record this run");
+    }
+
     private static Options dummyOpts() {
         Options opts = new Options();
         opts.srcDir = "src_dummy";
@@ -109,9 +146,11 @@ class PhotoTidyTest {
         }
 
         @Override
-        public int move(DeduplicationResult result, IntConsumer onProgress) {
+        public int move(DeduplicationResult result, IntConsumer onProgress, Consumer<MediaItem> onFiled) {
             keepers = result.keepers().size();
             duplicates = result.duplicates().size();
+            result.keepers().forEach(onFiled);
+            result.duplicates().forEach(onFiled);
             return result.total();
         }
     }
@@ -0,0 +1,195 @@
+package com.comp.cache;
+
+import com.comp.domain.HashSource;
+import com.comp.domain.MediaItem;
+import com.comp.domain.ScannedFile;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.Optional;
+
+class BinaryHashCacheTest {
+
+    private static ScannedFile file(String path, long size, long mtime) {
+        return new ScannedFile(Path.of(path), size, mtime);
+    }
+
+    private static CacheEntry entry(ScannedFile f, Date exif, long phash) {
+        return CacheEntry.of(f, new MediaItem(f.path(), f.fileSize(), f.lastModified(), exif, phash, 0xF00DL));
+    }
+
+    @Test
+    void testPersistsAndReloadsAcrossInstances(@TempDir Path dir) throws Exception {
+        Path cacheFile = dir.resolve("cache.bin");
+        ScannedFile f = file("/photos/a.jpg", 1000, 5555);
+
+        try (BinaryHashCache cache = new BinaryHashCache(cacheFile)) {
+            cache.put(f, entry(f, new Date(1234000), 0xABCDL));
+        }
+
+        try (BinaryHashCache reopened = new BinaryHashCache(cacheFile)) {
+            Optional<CacheEntry> hit = reopened.get(f);
+            Assertions.assertTrue(hit.isPresent(), "entry should survive a reopen");
+            Assertions.assertEquals(0xABCDL, hit.get().perceptualHash());
+            Assertions.assertEquals(0xF00DL, hit.get().contentSignature(), "signature must round-trip");
+            Assertions.assertEquals(new Date(1234000), hit.get().toMediaItem(f).getExifDate().orElseThrow());
+        }
+        Assertions.assertFalse(Files.exists(dir.resolve("cache.bin.journal")), "journal folded into the table");
+    }
+
+    @Test
+    void testStaleWhenSizeOrMtimeChanges(@TempDir Path dir) throws Exception {
+        Path cacheFile = dir.resolve("cache.bin");
+        ScannedFile original = file("/photos/a.jpg", 1000, 5555);
+        try (BinaryHashCache cache = new BinaryHashCache(cacheFile)) {
+            cache.put(original, entry(original, null, 7L));
+        }
+        try (BinaryHashCache cache = new BinaryHashCache(cacheFile)) {
+            Assertions.assertTrue(cache.get(file("/photos/a.jpg", 1000, 5555)).isPresent());
+            Assertions.assertTrue(cache.get(file("/photos/a.jpg", 2000, 5555)).isEmpty(), "size change invalidates");
+            Assertions.assertTrue(cache.get(file("/photos/a.jpg", 1000, 9999)).isEmpty(), "mtime change invalidates");
+        }
+    }
+
+    @Test
+    void testManyEntriesMergeAndSupersede(@TempDir Path dir) throws Exception {
+        Path cacheFile = dir.resolve("cache.bin");
+        try (BinaryHashCache first = new BinaryHashCache(cacheFile)) {
+            for (int i = 0; i < 2000; i += 2) {
+                ScannedFile f = file("/photos/" + i + ".jpg", i, i);
+                first.put(f, entry(f, null, i + 1));
+            }
+        }
+        // Second run adds the odd files and re-hashes a changed even one; both must merge in order.
+        ScannedFile changed = file("/photos/10.jpg", 10, 77);
+        try (BinaryHashCache second = new BinaryHashCache(cacheFile)) {
+            for (int i = 1; i < 2000; i += 2) {
+                ScannedFile f = file("/photos/" + i + ".jpg", i, i);
+                second.put(f, entry(f, null, i + 1));
+            }
+            second.put(changed, entry(changed, null, 0x77L));
+        }
+        try (BinaryHashCache third = new BinaryHashCache(cacheFile)) {
+            for (int i = 0; i < 2000; i++) {
+                if (i == 10) {
+                    continue;
+                }
+                Optional<CacheEntry> hit = third.get(file("/photos/" + i + ".jpg", i, i));
+                Assertions.assertEquals(i + 1, hit.orElseThrow().perceptualHash(), "entry " + i);
+            }
+            Assertions.assertEquals(0x77L, third.get(changed).orElseThrow().perceptualHash(), "newer entry wins");
+            Assertions.assertTrue(third.get(file("/photos/missing.jpg", 1, 1)).isEmpty());
+        }
+    }
+
+    @Test
+    void testCompactOverlayMergesIntoTable(@TempDir Path dir) throws Exception {
+        Path cacheFile = dir.resolve("cache.bin");
+        ScannedFile old = file("/photos/old.jpg", 1, 1);
+        ScannedFile added = file("/photos/added.jpg", 2, 2);
+        try (BinaryHashCache first = new BinaryHashCache(cacheFile, true)) {
+            first.put(old, entry(old, null, 1L));
+        }
+        try (BinaryHashCache second = new BinaryHashCache(cacheFile, true)) {
+            second.put(added, entry(added, null, 2L));
+            Assertions.assertEquals(2L, second.get(added).orElseThrow().perceptualHash(), "served from the overlay");
+        }
+        try (BinaryHashCache third = new BinaryHashCache(cacheFile)) {
+            Assertions.assertEquals(1L, third.get(old).orElseThrow().perceptualHash());
+            Assertions.assertEquals(2L, third.get(added).orElseThrow().perceptualHash());
+        }
+    }
+
+    @Test
+    void testPrunesDeletedFileAfterCompleteScan(@TempDir Path dir) throws Exception {
+        Path cacheFile = dir.resolve("cache.bin");
+        ScannedFile kept = file("/photos/kept.jpg", 1, 1);
+        ScannedFile deleted = file("/photos/deleted.jpg", 2, 2);
+        ScannedFile other = file("/other/x.jpg", 3, 3);
+
+        try (BinaryHashCache first = new BinaryHashCache(cacheFile)) {
+            first.put(kept, entry(kept, null, 1L));
+            first.put(deleted, entry(deleted, null, 2L));
+            first.put(other, entry(other, null, 3L));
+        }
+        try (BinaryHashCache second = new BinaryHashCache(cacheFile)) {
+            second.get(kept);
+            second.markScanComplete(Path.of("/photos"));
+        }
+        try (BinaryHashCache third = new BinaryHashCache(cacheFile)) {
+            Assertions.assertTrue(third.get(kept).isPresent(), "living file kept");
+            Assertions.assertTrue(third.get(deleted).isEmpty(), "deleted file pruned after complete scan");
+            Assertions.assertTrue(third.get(other).isPresent(), "entries outside the scanned root are retained");
+        }
+    }
+
+    @Test
+    void testJournalIsReplayedAfterCrash(@TempDir Path dir) throws Exception {
+        Path cacheFile = dir.resolve("cache.bin");
+        ScannedFile f = file("/photos/a.jpg", 5, 6);
+        // A crashed run leaves only its journal behind.
+        Files.writeString(dir.resolve("cache.bin.journal"), "42\t5\t6\t-1\t9\t/photos/a.jpg\n");
+
+        try (BinaryHashCache cache = new BinaryHashCache(cacheFile)) {
+            Assertions.assertEquals(42L, cache.get(f).orElseThrow().perceptualHash());
+        }
+        try (BinaryHashCache reopened = new BinaryHashCache(cacheFile)) {
+            Assertions.assertEquals(42L, reopened.get(f).orElseThrow().perceptualHash(), "folded into table");
+        }
+    }
+
+    @Test
+    void testOpenMigratesTsvOnce(@TempDir Path dir) throws Exception {
+        Path tsv = dir.resolve("cache.tsv");
+        ScannedFile f = file("/photos/a.jpg", 1000, 5555);
+        try (FileHashCache legacy = new FileHashCache(tsv)) {
+            legacy.put(f, entry(f, new Date(1234000), 0xABCDL));
+        }
+
+        try (BinaryHashCache migrated = BinaryHashCache.open(tsv)) {
+            Assertions.assertEquals(0xABCDL, migrated.get(f).orElseThrow().perceptualHash());
+        }
+        Assertions.assertTrue(Files.exists(dir.resolve("cache.bin")), "binary table written beside the TSV");
+        Assertions.assertTrue(Files.exists(tsv), "TSV left untouched");
+    }
+
+    @Test
+    void testHashSourceRoundTrips(@TempDir Path dir) throws Exception {
+        Path cacheFile = dir.resolve("cache.bin");
+        ScannedFile f = file("/photos/a.jpg", 5, 6);
+        ScannedFile g = file("/photos/b.jpg", 7, 8);
+        try (BinaryHashCache cache = new BinaryHashCache(cacheFile)) {
+            cache.put(f, new CacheEntry(5, 6, CacheEntry.NO_EXIF, 42L, 0, HashSource.THUMBNAIL));
+            cache.put(g, new CacheEntry(7, 8, CacheEntry.NO_EXIF, 43L, 0, HashSource.DECODED, CacheEntry.FAST_SOURCES));
+        }
+        try (BinaryHashCache reopened = new BinaryHashCache(cacheFile)) {
+            Assertions.assertEquals(HashSource.THUMBNAIL, reopened.get(f).orElseThrow().hashSource());
+            Assertions.assertEquals(0, reopened.get(f).orElseThrow().hashFlags());
+            Assertions.assertEquals(HashSource.DECODED, reopened.get(g).orElseThrow().hashSource());
+            Assertions.assertEquals(CacheEntry.FAST_SOURCES, reopened.get(g).orElseThrow().hashFlags());
+        }
+    }
+
+    @Test
+    void testTableListsWrittenRecordsAsItems(@TempDir Path dir) throws Exception {
+        Path cacheFile = dir.resolve("cache.bin");
+        ScannedFile f = file("/photos/a.jpg", 1000, 5555);
+        try (BinaryHashCache cache = new BinaryHashCache(cacheFile)) {
+            cache.put(f, entry(f, new Date(1234000), 0xABCDL));
+        }
+
+        CacheTable table = CacheTable.open(cacheFile);
+
+        Assertions.assertEquals(1, table.size());
+        MediaItem item = table.item(0);
+        Assertions.assertEquals(f.path(), item.getPath());
+        Assertions.assertEquals(5555, item.getLastModified());
+        Assertions.assertEquals(0xABCDL, item.getPerceptualHash());
+        Assertions.assertEquals(new Date(1234000), item.getExifDate().orElseThrow());
+        Assertions.assertEquals(0, CacheTable.open(dir.resolve("missing.bin")).size());
+    }
+}
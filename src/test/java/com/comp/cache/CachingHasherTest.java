@@ -1,5 +1,6 @@
 package com.comp.cache;
 
+import com.comp.domain.HashSource;
 import com.comp.domain.MediaItem;
 import com.comp.domain.ScannedFile;
 import org.junit.jupiter.api.Assertions;
@@ -51,4 +52,49 @@ class CachingHasherTest {
         Assertions.assertEquals(2, computeCalls.get(), "a changed file must be recomputed");
         Assertions.assertEquals(0, hasher.cacheHits());
     }
+
+    @Test
+    void testRejectedEntryIsRecomputedAndReplaced() {
+        AtomicInteger computeCalls = new AtomicInteger();
+        InMemoryHashCache cache = new InMemoryHashCache();
+        ScannedFile f = file("/a.jpg", 10, 20);
+        cache.put(f, new CacheEntry(10, 20, CacheEntry.NO_EXIF, 0x55L, 0, HashSource.THUMBNAIL));
+
+        CachingHasher hasher = new CachingHasher(cache, scanned -> {
+            computeCalls.incrementAndGet();
+            return item(scanned, 0x99L);
+        }, entry -> entry.hashSource() == HashSource.DECODED);
+
+        Assertions.assertEquals(0x99L, hasher.hash(f).getPerceptualHash(), "thumbnail-sourced entry is not reused");
+        Assertions.assertEquals(0x99L, hasher.hash(f).getPerceptualHash());
+        Assertions.assertEquals(1, computeCalls.get(), "the recomputed entry replaces the rejected one");
+        Assertions.assertEquals(1, hasher.cacheHits());
+    }
+
+    @Test
+    void testStoredEntriesCarryTheRunsHashFlags() {
+        InMemoryHashCache cache = new InMemoryHashCache();
+        ScannedFile f = file("/c.jpg", 12, 22);
+        CachingHasher fast = new CachingHasher(cache, scanned -> item(scanned, 0x77L), CacheEntry.FAST_SOURCES,
+                                               entry -> (entry.hashFlags() & CacheEntry.FAST_SOURCES) != 0);
+
+        fast.hash(f);
+        Assertions.assertEquals(CacheEntry.FAST_SOURCES, cache.get(f).orElseThrow().hashFlags());
+        Assertions.assertEquals(0x77L, fast.hash(f).getPerceptualHash());
+        Assertions.assertEquals(1, fast.cacheHits(), "an entry hashed the same way is reused");
+    }
+
+    @Test
+    void testLookupAndStoreSplitTheHashCall() {
+        ScannedFile f = file("/b.jpg", 11, 21);
+        CachingHasher hasher = new CachingHasher(new InMemoryHashCache(), scanned -> {
+            throw new AssertionError("staged callers compute outside the hasher");
+        });
+
+        Assertions.assertTrue(hasher.lookup(f).isEmpty());
+        Assertions.assertEquals(0x42L, hasher.store(f, item(f, 0x42L)).getPerceptualHash());
+        Assertions.assertEquals(0x42L, hasher.lookup(f).orElseThrow().getPerceptualHash());
+        Assertions.assertEquals(0x42L, hasher.hash(f).getPerceptualHash());
+        Assertions.assertEquals(2, hasher.cacheHits());
+    }
 }
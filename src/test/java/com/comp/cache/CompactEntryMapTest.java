@@ -0,0 +1,86 @@
+package com.comp.cache;
+
+import com.comp.concurrent.Parallel;
+import com.comp.domain.HashSource;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+class CompactEntryMapTest {
+
+    private static CacheEntry entry(long n) {
+        return new CacheEntry(n, n + 1, CacheEntry.NO_EXIF, n * 31, n * 17);
+    }
+
+    private static String path(int i) {
+        return "/photos/" + (i % 37) + "/IMG_" + i + ".jpg";
+    }
+
+    @Test
+    void testPutGetOverwrite() {
+        CompactEntryMap map = new CompactEntryMap();
+        Assertions.assertNull(map.put("/a/b.jpg", entry(1)));
+        Assertions.assertEquals(entry(1), map.get("/a/b.jpg"));
+        Assertions.assertEquals(entry(1), map.put("/a/b.jpg", entry(2)), "put returns the previous value");
+        Assertions.assertEquals(entry(2), map.get("/a/b.jpg"));
+        Assertions.assertEquals(1, map.size());
+        Assertions.assertNull(map.get("/a/c.jpg"));
+        Assertions.assertNull(map.get("/unknown-dir/b.jpg"));
+
+        CacheEntry dc = new CacheEntry(3, 4, CacheEntry.NO_EXIF, 5, 6, HashSource.DC);
+        map.put("/a/b.jpg", dc);
+        Assertions.assertEquals(dc, map.get("/a/b.jpg"), "hash source is stored with the entry");
+    }
+
+    @Test
+    void testSameNameInDifferentDirectoriesIsDistinct() {
+        CompactEntryMap map = new CompactEntryMap();
+        map.put("/x/IMG_1.jpg", entry(1));
+        map.put("/y/IMG_1.jpg", entry(2));
+        map.put("C:\\z\\IMG_1.jpg", entry(3));
+        map.put("IMG_1.jpg", entry(4));
+
+        Assertions.assertEquals(entry(1), map.get("/x/IMG_1.jpg"));
+        Assertions.assertEquals(entry(2), map.get("/y/IMG_1.jpg"));
+        Assertions.assertEquals(entry(3), map.get("C:\\z\\IMG_1.jpg"));
+        Assertions.assertEquals(entry(4), map.get("IMG_1.jpg"));
+    }
+
+    @Test
+    void testMatchesHashMapUnderPutsAndRemoves() {
+        CompactEntryMap map = new CompactEntryMap();
+        Map<String, CacheEntry> reference = new HashMap<>();
+        for (int i = 0; i < 20_000; i++) {
+            map.put(path(i), entry(i));
+            reference.put(path(i), entry(i));
+        }
+        for (int i = 0; i < 20_000; i += 3) {
+            Assertions.assertEquals(reference.remove(path(i)), map.remove(path(i)));
+        }
+        String longName = "/photos/" + "n".repeat(300) + ".jpg";
+        map.put(longName, entry(-5));
+        reference.put(longName, entry(-5));
+
+        Assertions.assertEquals(reference.size(), map.size());
+        for (int i = 0; i < 20_000; i++) {
+            Assertions.assertEquals(reference.get(path(i)), map.get(path(i)), path(i));
+        }
+        Assertions.assertEquals(reference, new HashMap<>(map), "iteration yields exactly the live entries");
+    }
+
+    @Test
+    void testConcurrentPutsAndGets() throws Exception {
+        CompactEntryMap map = new CompactEntryMap();
+        List<Integer> inputs = IntStream.range(0, 50_000).boxed().toList();
+
+        Parallel.map(inputs, 8, i -> map.put(path(i), entry(i)));
+        List<Boolean> hits = Parallel.map(inputs, 8, i -> entry(i).equals(map.get(path(i))));
+
+        Assertions.assertEquals(inputs.size(), map.size());
+        Assertions.assertFalse(hits.contains(false), "every concurrently written entry must be readable");
+    }
+}
@@ -0,0 +1,101 @@
+package com.comp.cache;
+
+import com.comp.domain.ScannedFile;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+class DirectoryIndexTest {
+
+    private static final Path DIR = Path.of("/photos/2020");
+    private static final long MTIME = 1_600_000_000_000L;
+    private static final long LISTED = MTIME + 60_000;
+
+    private static void recordSample(DirectoryIndex index) {
+        index.record(DIR, MTIME, LISTED,
+                     List.of(new ScannedFile(DIR.resolve("a.jpg"), 100, 11), new ScannedFile(DIR.resolve("b.txt"), 5, 22)),
+                     List.of("trip"));
+    }
+
+    @Test
+    void testListingSurvivesASaveAndLoad(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("cache.tsv.dirs");
+        DirectoryIndex first = DirectoryIndex.load(file);
+        recordSample(first);
+        first.save();
+
+        Optional<DirectoryIndex.Listing> listing = DirectoryIndex.load(file).unchanged(DIR, MTIME);
+
+        Assertions.assertTrue(listing.isPresent());
+        Assertions.assertEquals(List.of(new ScannedFile(DIR.resolve("a.jpg"), 100, 11),
+                                        new ScannedFile(DIR.resolve("b.txt"), 5, 22)),
+                                listing.get().files(DIR));
+        Assertions.assertEquals(List.of(DIR.resolve("trip")), listing.get().subdirectories(DIR));
+    }
+
+    @Test
+    void testChangedOrRacyDirectoryIsNotTrusted(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("cache.tsv.dirs");
+        DirectoryIndex first = DirectoryIndex.load(file);
+        recordSample(first);
+        Path racy = Path.of("/photos/racy");
+        first.record(racy, MTIME, MTIME + DirectoryIndex.RACY_MILLIS - 1, List.of(), List.of());
+        first.save();
+
+        DirectoryIndex second = DirectoryIndex.load(file);
+
+        Assertions.assertTrue(second.unchanged(DIR, MTIME + 1).isEmpty(), "mtime moved on");
+        Assertions.assertTrue(second.unchanged(racy, MTIME).isEmpty(), "listed too soon after a change");
+        Assertions.assertTrue(second.unchanged(Path.of("/elsewhere"), MTIME).isEmpty());
+        Assertions.assertEquals(0, second.size(), "nothing is carried over");
+    }
+
+    @Test
+    void testOnlyThisRunsListingsAreSaved(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("cache.tsv.dirs");
+        DirectoryIndex first = DirectoryIndex.load(file);
+        recordSample(first);
+        first.record(Path.of("/photos/deleted"), MTIME, LISTED, List.of(), List.of());
+        first.save();
+
+        DirectoryIndex second = DirectoryIndex.load(file);
+        second.unchanged(DIR, MTIME);
+        second.save();
+
+        DirectoryIndex third = DirectoryIndex.load(file);
+        Assertions.assertTrue(third.unchanged(DIR, MTIME).isPresent(), "carried over unchanged");
+        Assertions.assertTrue(third.unchanged(Path.of("/photos/deleted"), MTIME).isEmpty(), "not reached, dropped");
+    }
+
+    @Test
+    void testTruncatedIndexKeepsCompleteListings(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("cache.tsv.dirs");
+        DirectoryIndex first = DirectoryIndex.load(file);
+        recordSample(first);
+        first.record(Path.of("/photos/other"), MTIME, LISTED,
+                     List.of(new ScannedFile(Path.of("/photos/other/c.jpg"), 1, 1)), List.of());
+        first.save();
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 4));
+
+        DirectoryIndex loaded = DirectoryIndex.load(file);
+
+        int trusted = (loaded.unchanged(DIR, MTIME).isPresent() ? 1 : 0)
+                + (loaded.unchanged(Path.of("/photos/other"), MTIME).isPresent() ? 1 : 0);
+        Assertions.assertEquals(1, trusted, "the cut listing is dropped, the other kept");
+    }
+
+    @Test
+    void testGarbageFileGivesAnEmptyIndex(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("cache.tsv.dirs");
+        Files.writeString(file, "not an index at all");
+
+        Assertions.assertTrue(DirectoryIndex.load(file).unchanged(DIR, MTIME).isEmpty());
+    }
+}
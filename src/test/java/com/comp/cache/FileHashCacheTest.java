@@ -1,11 +1,13 @@
 package com.comp.cache;
 
+import com.comp.domain.HashSource;
 import com.comp.domain.MediaItem;
 import com.comp.domain.ScannedFile;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Date;
 import java.util.Optional;
@@ -102,4 +104,56 @@ class FileHashCacheTest {
             Assertions.assertTrue(restored.getExifDate().isEmpty(), "absent date must round-trip as absent");
         }
     }
+
+    @Test
+    void testCompactIndexRoundTripsAndPrunes(@TempDir Path dir) throws Exception {
+        Path cacheFile = dir.resolve("cache.tsv");
+        ScannedFile kept = file("/photos/kept.jpg", 1, 1);
+        ScannedFile deleted = file("/photos/deleted.jpg", 2, 2);
+
+        try (FileHashCache first = new FileHashCache(cacheFile, true)) {
+            first.put(kept, CacheEntry.of(kept, item("/photos/kept.jpg", 1, 1, new Date(1234000), 1L)));
+            first.put(deleted, CacheEntry.of(deleted, item("/photos/deleted.jpg", 2, 2, null, 2L)));
+        }
+        try (FileHashCache second = new FileHashCache(cacheFile, true)) {
+            Assertions.assertEquals(new Date(1234000),
+                                    second.get(kept).orElseThrow().toMediaItem(kept).getExifDate().orElseThrow());
+            second.markScanComplete(Path.of("/photos"));
+        }
+        try (FileHashCache third = new FileHashCache(cacheFile)) {
+            Assertions.assertTrue(third.get(kept).isPresent(), "living file kept");
+            Assertions.assertTrue(third.get(deleted).isEmpty(), "deleted file pruned after complete scan");
+        }
+    }
+
+    @Test
+    void testHashSourceRoundTripsAndLegacyLinesReadAsDecoded(@TempDir Path dir) throws Exception {
+        Path cacheFile = dir.resolve("cache.tsv");
+        ScannedFile thumb = file("/photos/thumb.jpg", 1, 1);
+        ScannedFile dc = file("/photos/dc.jpg", 2, 2);
+        ScannedFile fallback = file("/photos/progressive.jpg", 4, 4);
+        ScannedFile legacy = file("/photos/tab\tname.jpg", 3, 3);
+        // A line written before hash sources existed: six fields, path last (here containing a tab).
+        Files.writeString(cacheFile, "33\t3\t3\t-1\t9\t/photos/tab\tname.jpg\n");
+
+        for (boolean compact : new boolean[]{false, true}) {
+            try (FileHashCache cache = new FileHashCache(cacheFile, compact)) {
+                cache.put(thumb, new CacheEntry(1, 1, CacheEntry.NO_EXIF, 11L, 0, HashSource.THUMBNAIL));
+                cache.put(dc, new CacheEntry(2, 2, CacheEntry.NO_EXIF, 22L, 0, HashSource.DC));
+                cache.put(fallback, new CacheEntry(4, 4, CacheEntry.NO_EXIF, 44L, 0, HashSource.DECODED,
+                                                   CacheEntry.FAST_SOURCES));
+            }
+            try (FileHashCache reopened = new FileHashCache(cacheFile, compact)) {
+                Assertions.assertEquals(HashSource.THUMBNAIL, reopened.get(thumb).orElseThrow().hashSource());
+                Assertions.assertEquals(HashSource.DC, reopened.get(dc).orElseThrow().toMediaItem(dc).getHashSource());
+                CacheEntry decoded = reopened.get(fallback).orElseThrow();
+                Assertions.assertEquals(HashSource.DECODED, decoded.hashSource());
+                Assertions.assertEquals(CacheEntry.FAST_SOURCES, decoded.hashFlags(), "flags survive with the source");
+                Assertions.assertEquals(0, reopened.get(dc).orElseThrow().hashFlags());
+                CacheEntry old = reopened.get(legacy).orElseThrow();
+                Assertions.assertEquals(33L, old.perceptualHash(), "legacy line still parses");
+                Assertions.assertEquals(HashSource.DECODED, old.hashSource());
+            }
+        }
+    }
 }
@@ -0,0 +1,90 @@
+package com.comp.concurrent;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+class ByteBudgetTest {
+
+    private static final long MB = 1024 * 1024;
+
+    @Test
+    void testBytesInFlightStayWithinBudget() throws Exception {
+        ByteBudget budget = new ByteBudget(10 * MB);
+        AtomicLong inFlight = new AtomicLong();
+        AtomicLong maxSeen = new AtomicLong();
+        List<Integer> sizes = IntStream.range(0, 40).map(i -> 1 + i % 4).boxed().toList(); // 1..4 MB
+
+        Parallel.map(sizes, 16, mb -> {
+            try (ByteBudget.Lease ignored = budget.acquire(mb * MB)) {
+                maxSeen.accumulateAndGet(inFlight.addAndGet(mb * MB), Math::max);
+                Thread.sleep(2);
+                inFlight.addAndGet(-mb * MB);
+            }
+            return mb;
+        });
+
+        Assertions.assertTrue(maxSeen.get() <= 10 * MB, "saw " + maxSeen.get() + " bytes in flight");
+        Assertions.assertTrue(budget.waits() > 0, "16 workers x up to 4 MB must have waited on a 10 MB budget");
+    }
+
+    @Test
+    void testOversizedRequestIsClampedAndRunsAlone() throws Exception {
+        ByteBudget budget = new ByteBudget(MB);
+        ByteBudget.Lease oversized = budget.acquire(50 * MB);
+        Thread other = new Thread(() -> {
+            try (ByteBudget.Lease ignored = budget.acquire(1)) {
+                // admitted only after the oversized lease is returned
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        other.start();
+        awaitBlocked(other);
+        Thread.sleep(60);
+        Assertions.assertTrue(other.isAlive(), "the clamped request holds the whole budget");
+        oversized.close();
+        other.join(5000);
+        Assertions.assertFalse(other.isAlive());
+        Assertions.assertEquals(1, budget.waits());
+        Assertions.assertTrue(budget.waitMillis() >= 50, "waited " + budget.waitMillis() + " ms");
+    }
+
+    @Test
+    void testHugeRequestDoesNotOverflowIntoASmallOne() throws Exception {
+        ByteBudget budget = new ByteBudget(2 * MB);
+        ByteBudget.Lease huge = budget.acquire(Long.MAX_VALUE);
+        Thread other = new Thread(() -> {
+            try (ByteBudget.Lease ignored = budget.acquire(MB)) {
+                // must wait: the huge request took the whole budget
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        other.start();
+        awaitBlocked(other);
+        Assertions.assertTrue(other.isAlive());
+        huge.close();
+        other.join(5000);
+        Assertions.assertFalse(other.isAlive());
+    }
+
+    @Test
+    void testZeroCapacityIsUnlimited() throws Exception {
+        ByteBudget budget = new ByteBudget(0);
+        try (ByteBudget.Lease a = budget.acquire(Long.MAX_VALUE); ByteBudget.Lease b = budget.acquire(Long.MAX_VALUE)) {
+            Assertions.assertEquals(0, budget.waits());
+        }
+    }
+
+    private static void awaitBlocked(Thread thread) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (thread.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        Assertions.assertEquals(Thread.State.WAITING, thread.getState(), "thread should be parked on the budget");
+    }
+}
@@ -4,6 +4,8 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.IntStream;
 
 class ParallelBatchTest {
@@ -83,4 +85,144 @@ class ParallelBatchTest {
                 4,
                 x -> { throw new IllegalStateException("boom"); }));
     }
+
+    @Test
+    void testVirtualStreamingMapsEveryItemWithBoundedConcurrency() throws Exception {
+        var inFlight = new java.util.concurrent.atomic.AtomicInteger();
+        var maxSeen = new java.util.concurrent.atomic.AtomicInteger();
+
+        List<Integer> out = Parallel.<Integer, Integer>mapStreamingVirtual(
+                sink -> { for (int i = 1; i <= 500; i++) sink.accept(i); },
+                50,
+                x -> {
+                    maxSeen.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                    Thread.sleep(2);
+                    inFlight.decrementAndGet();
+                    return x * 2;
+                });
+
+        Assertions.assertEquals(500, out.size());
+        Assertions.assertEquals(500L * 501, out.stream().mapToLong(Integer::longValue).sum());
+        Assertions.assertTrue(maxSeen.get() <= 50, "saw " + maxSeen.get() + " in flight");
+        Assertions.assertTrue(maxSeen.get() > 8, "sleeping mappers should overlap well past the core count");
+    }
+
+    @Test
+    void testVirtualStreamingMapperExceptionPropagates() {
+        Assertions.assertThrows(RuntimeException.class, () -> Parallel.<Integer, Integer>mapStreamingVirtual(
+                sink -> { for (int i = 0; i < 100; i++) sink.accept(i); },
+                4,
+                x -> { throw new IllegalStateException("boom"); }));
+    }
+
+    @Test
+    void testStagedMapsEveryItemThroughBothStages() throws Exception {
+        StageStats first = new StageStats("first");
+        StageStats second = new StageStats("second");
+
+        List<Integer> out = Parallel.<Integer, Integer, Integer>mapStreamingStaged(
+                sink -> { for (int i = 1; i <= 500; i++) sink.accept(i); },
+                3, x -> (x % 5 == 0) ? null : x * 2, first,
+                2, x -> x + 1, second);
+
+        Assertions.assertEquals(400, out.size(), "nulls from the first stage are dropped");
+        long expected = IntStream.rangeClosed(1, 500).filter(i -> i % 5 != 0).mapToLong(i -> 2L * i + 1).sum();
+        Assertions.assertEquals(expected, out.stream().mapToLong(Integer::longValue).sum());
+        Assertions.assertEquals(500, first.items());
+        Assertions.assertEquals(400, second.items());
+        Assertions.assertEquals(3, first.threads());
+    }
+
+    @Test
+    void testStagedStatsPointAtTheSlowStage() throws Exception {
+        StageStats fast = new StageStats("fast");
+        StageStats slow = new StageStats("slow");
+
+        Parallel.<Integer, Integer, Integer>mapStreamingStaged(
+                sink -> { for (int i = 0; i < 100; i++) sink.accept(i); },
+                2, x -> x, fast,
+                1, x -> { Thread.sleep(3); return x; }, slow);
+
+        Assertions.assertTrue(slow.busyShare() > 0.7, "slow stage: " + slow);
+        Assertions.assertTrue(fast.blockedShare() > fast.busyShare(), "fast stage waits on the slow one: " + fast);
+    }
+
+    @Test
+    void testStagedSecondStageExceptionPropagates() {
+        Assertions.assertThrows(RuntimeException.class, () -> Parallel.<Integer, Integer, Integer>mapStreamingStaged(
+                sink -> { for (int i = 0; i < 1000; i++) sink.accept(i); },
+                2, x -> x, new StageStats("a"),
+                2, x -> { throw new IllegalStateException("boom"); }, new StageStats("b")));
+    }
+
+    @Test
+    void testStreamingKeepsProductionOrder() throws Exception {
+        List<Integer> out = Parallel.<Integer, Integer>mapStreaming(
+                sink -> { for (int i = 0; i < 2000; i++) sink.accept(i); },
+                8,
+                x -> {
+                    if (x % 7 == 0) {
+                        Thread.sleep(1); // let later items overtake this one
+                    }
+                    return (x % 3 == 0) ? null : x;
+                });
+
+        List<Integer> expected = IntStream.range(0, 2000).filter(i -> i % 3 != 0).boxed().toList();
+        Assertions.assertEquals(expected, out);
+    }
+
+    @Test
+    void testStreamingProducerExceptionPropagates() {
+        Assertions.assertThrows(RuntimeException.class, () -> Parallel.<Integer, Integer>mapStreaming(
+                sink -> {
+                    sink.accept(1);
+                    throw new IllegalStateException("walk failed");
+                },
+                4,
+                x -> x));
+    }
+
+    @Test
+    void testStreamingSpreadsSlowItemsBehindCheapOnes() throws Exception {
+        // Thousands of cheap items grow the chunks; the slow tail lands in one big chunk that idle
+        // workers must steal from, or it runs serially on one thread.
+        Set<String> slowThreads = ConcurrentHashMap.newKeySet();
+        long start = System.nanoTime();
+        List<Integer> out = Parallel.<Integer, Integer>mapStreaming(
+                sink -> { for (int i = 0; i < 100_064; i++) sink.accept(i); },
+                8,
+                x -> {
+                    if (x >= 100_000) {
+                        slowThreads.add(Thread.currentThread().getName());
+                        Thread.sleep(5);
+                    }
+                    return x;
+                });
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        Assertions.assertEquals(100_064, out.size());
+        Assertions.assertTrue(slowThreads.size() > 1, "slow items ran on " + slowThreads);
+        Assertions.assertTrue(elapsedMs < 64 * 5, "took " + elapsedMs + " ms");
+    }
+
+    @Test
+    void testForRangeCoversEveryIndexOnce() throws Exception {
+        var hits = new java.util.concurrent.atomic.AtomicIntegerArray(10_001);
+
+        Parallel.forRange(10_001, 4, 64, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                hits.incrementAndGet(i);
+            }
+        });
+
+        for (int i = 0; i < hits.length(); i++) {
+            Assertions.assertEquals(1, hits.get(i), "index " + i);
+        }
+    }
+
+    @Test
+    void testForRangeBodyExceptionPropagates() {
+        Assertions.assertThrows(RuntimeException.class,
+                () -> Parallel.forRange(1000, 4, 10, (from, to) -> { throw new IllegalStateException("boom"); }));
+    }
 }
@@ -0,0 +1,48 @@
+package com.comp.concurrent;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+class TokenBucketTest {
+
+    private static final long MB = 1024 * 1024;
+
+    @Test
+    void testUnlimitedNeverWaits() throws Exception {
+        TokenBucket bucket = new TokenBucket(0);
+        for (int i = 0; i < 100; i++) {
+            bucket.acquire(Long.MAX_VALUE / 2);
+        }
+        Assertions.assertEquals(0, bucket.waits());
+    }
+
+    @Test
+    void testBurstOfOneSecondThenPaced() throws Exception {
+        TokenBucket bucket = new TokenBucket(10 * MB);
+        long start = System.nanoTime();
+        bucket.acquire(10 * MB);
+        Assertions.assertEquals(0, bucket.waits(), "a full bucket grants one second's worth at once");
+
+        bucket.acquire(2 * MB);
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        Assertions.assertEquals(1, bucket.waits());
+        Assertions.assertTrue(millis >= 150, "2 MB at 10 MB/s past the burst took " + millis + " ms");
+    }
+
+    @Test
+    void testRateHoldsAcrossThreads() throws Exception {
+        TokenBucket bucket = new TokenBucket(20 * MB);
+        bucket.acquire(20 * MB); // drain the burst
+        long start = System.nanoTime();
+
+        Parallel.map(List.of(1, 2, 3, 4, 5, 6, 7, 8), 8, i -> {
+            bucket.acquire(MB);
+            return i;
+        });
+
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        Assertions.assertTrue(millis >= 350, "8 MB at 20 MB/s on 8 threads took " + millis + " ms");
+    }
+}
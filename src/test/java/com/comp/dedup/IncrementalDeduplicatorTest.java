@@ -0,0 +1,159 @@
+package com.comp.dedup;
+
+import com.comp.domain.MediaItem;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+class IncrementalDeduplicatorTest {
+
+    private static MediaItem item(String name, long size, long phash, long signature) {
+        return new MediaItem(Paths.get(name), size, 1L, null, phash, signature);
+    }
+
+    @Test
+    void testNewCopyOfAFiledPhotoIsADuplicateEvenIfLarger() {
+        IncrementalDeduplicator dedup = new IncrementalDeduplicator();
+        dedup.seed(List.of(item("filed.jpg", 100, 0x20L, 1)));
+
+        MediaItem bigger = item("bigger.jpg", 900, 0x3FL, 2); // distance 5
+        MediaItem unrelated = item("other.jpg", 50, 0xFFFF_0000L, 3);
+        DeduplicationResult r = dedup.deduplicate(List.of(bigger, unrelated));
+
+        Assertions.assertEquals(List.of(unrelated), r.keepers());
+        Assertions.assertEquals(List.of(bigger), r.duplicates(), "the filed copy stays the keeper");
+        Assertions.assertEquals(3, dedup.size());
+    }
+
+    @Test
+    void testExactCopiesAcrossBatches() {
+        IncrementalDeduplicator dedup = new IncrementalDeduplicator();
+        MediaItem video = item("clip.mov", 100, 0, 0xABCD);
+        Assertions.assertEquals(List.of(video), dedup.deduplicate(List.of(video)).keepers());
+
+        MediaItem copy = item("copy.mov", 100, 0, 0xABCD);
+        MediaItem otherVideo = item("other.mov", 100, 0, 0xBEEF);
+        DeduplicationResult r = dedup.deduplicate(List.of(copy, otherVideo));
+
+        Assertions.assertEquals(List.of(otherVideo), r.keepers(), "no phash: only exact copies match");
+        Assertions.assertEquals(List.of(copy), r.duplicates());
+    }
+
+    @Test
+    void testNewItemCanBridgeANewClusterToAFiledOne() {
+        IncrementalDeduplicator dedup = new IncrementalDeduplicator();
+        dedup.seed(List.of(item("filed.jpg", 100, 0xF000L, 1)));
+
+        MediaItem far = item("far.jpg", 900, 0xF3FFL, 2);   // 10 bits from filed
+        MediaItem bridge = item("bridge.jpg", 10, 0xF01FL, 3); // 5 from filed, 5 from far
+        DeduplicationResult r = dedup.deduplicate(List.of(far, bridge));
+
+        Assertions.assertTrue(r.keepers().isEmpty(), "both joined the filed cluster through the bridge");
+        Assertions.assertEquals(2, r.duplicates().size());
+    }
+
+    @Test
+    void testItemsNotFiledAreNewToTheNextRun(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("cache.tsv.mih");
+        MediaItem filed = item("a/filed.jpg", 100, 0x20L, 1);
+        MediaItem failed = item("a/failed.jpg", 200, 0xFFFF_0000L, 2);
+        IncrementalDeduplicator first = IncrementalDeduplicator.open(file, MihDeduplicator.DEFAULT_RADIUS);
+        Assertions.assertEquals(List.of(filed, failed), first.deduplicate(List.of(filed, failed)).keepers());
+        first.retain(List.of(filed));
+        first.save();
+
+        IncrementalDeduplicator second = IncrementalDeduplicator.open(file, MihDeduplicator.DEFAULT_RADIUS);
+        DeduplicationResult r = second.deduplicate(List.of(item("a/filed.jpg", 100, 0x20L, 1),
+                                                           item("a/failed.jpg", 200, 0xFFFF_0000L, 2)));
+
+        Assertions.assertEquals(1, r.keepers().size(), "the failed file is filed again, the filed one is known");
+        Assertions.assertEquals(failed.getPath(), r.keepers().getFirst().getPath());
+    }
+
+    @Test
+    void testUnfiledBridgeNoLongerLinksClusters() {
+        IncrementalDeduplicator dedup = new IncrementalDeduplicator();
+        dedup.seed(List.of(item("filed.jpg", 100, 0xF000L, 1)));
+
+        MediaItem bridge = item("bridge.jpg", 10, 0xF01FL, 3); // 5 from filed, 5 from far
+        MediaItem other = item("other.jpg", 50, 0xFFFF_0000L, 4);
+        dedup.deduplicate(List.of(bridge, other));
+        dedup.retain(List.of(other));
+
+        MediaItem far = item("far.jpg", 900, 0xF3FFL, 2); // 10 bits from filed
+        DeduplicationResult r = dedup.deduplicate(List.of(far));
+
+        Assertions.assertEquals(List.of(far), r.keepers(), "only the bridge linked it to the filed photo");
+        Assertions.assertEquals(3, dedup.size());
+    }
+
+    @Test
+    void testBatchOnItsOwnMatchesAFullRun() {
+        Random random = new Random(7);
+        List<MediaItem> items = new ArrayList<>();
+        // Distinct sizes: the keeper of a size-and-path-length tie is arbitrary in a full run.
+        for (int i = 0; i < 400; i++) {
+            long base = random.nextLong() & ~0xFFL;
+            items.add(item("p" + i + ".jpg", 1000 + 2 * i, base, i + 1));
+            if (i % 3 == 0) {
+                items.add(item("q" + i + ".jpg", 1001 + 2 * i, base ^ (1L << random.nextInt(8)), -i));
+            }
+        }
+
+        DeduplicationResult full = new MihDeduplicator().deduplicate(items);
+        DeduplicationResult incremental = new IncrementalDeduplicator().deduplicate(items);
+
+        Assertions.assertEquals(new HashSet<>(full.keepers()), new HashSet<>(incremental.keepers()));
+        Assertions.assertEquals(new HashSet<>(full.duplicates()), new HashSet<>(incremental.duplicates()));
+    }
+
+    @Test
+    void testPersistedRunsSkipKnownItemsAndMatchNewOnes(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("cache.tsv.mih");
+        MediaItem filed = item("a/filed.jpg", 100, 0x20L, 1);
+        IncrementalDeduplicator first = IncrementalDeduplicator.open(file, MihDeduplicator.DEFAULT_RADIUS);
+        Assertions.assertEquals(List.of(filed), first.deduplicate(List.of(filed)).keepers());
+        first.save();
+
+        IncrementalDeduplicator second = IncrementalDeduplicator.open(file, MihDeduplicator.DEFAULT_RADIUS);
+        MediaItem copy = item("b/copy.jpg", 900, 0x3FL, 2);
+        DeduplicationResult r = second.deduplicate(List.of(item("a/filed.jpg", 100, 0x20L, 1), copy));
+
+        Assertions.assertTrue(r.keepers().isEmpty());
+        Assertions.assertEquals(List.of(copy), r.duplicates(), "the known file is neither");
+        Assertions.assertEquals(2, second.size());
+    }
+
+    @Test
+    void testBatchesSavedAndReopenedClusterLikeOneBatch(@TempDir Path dir) throws Exception {
+        Random random = new Random(11);
+        List<MediaItem> items = new ArrayList<>();
+        for (int i = 0; i < 600; i++) {
+            long base = random.nextLong() & ~0xFFL;
+            items.add(item("p" + i + ".jpg", 1000 + 2 * i, base, i + 1));
+            items.add(item("q" + i + ".jpg", 1001 + 2 * i, base ^ (1L << random.nextInt(8)), -i));
+        }
+        IncrementalDeduplicator whole = new IncrementalDeduplicator();
+        whole.deduplicate(items);
+
+        Path file = dir.resolve("cache.tsv.mih");
+        for (int from = 0; from < items.size(); from += 100) {
+            IncrementalDeduplicator run = IncrementalDeduplicator.open(file, MihDeduplicator.DEFAULT_RADIUS);
+            run.deduplicate(items.subList(from, from + 100));
+            run.save();
+        }
+        IncrementalDeduplicator reopened = IncrementalDeduplicator.open(file, MihDeduplicator.DEFAULT_RADIUS);
+
+        Assertions.assertEquals(items.size(), reopened.size());
+        for (int i = 0; i < items.size(); i++) {
+            Assertions.assertEquals(whole.cluster(i), reopened.cluster(i), "item " + i);
+        }
+    }
+}
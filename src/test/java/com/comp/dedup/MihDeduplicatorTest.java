@@ -1,11 +1,16 @@
 package com.comp.dedup;
 
+import com.comp.domain.HashSource;
 import com.comp.domain.MediaItem;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
 
 class MihDeduplicatorTest {
 
@@ -42,6 +47,18 @@ class MihDeduplicatorTest {
         Assertions.assertEquals("a.jpg", r.keepers().getFirst().getPath().getFileName().toString());
     }
 
+    @Test
+    void testHashesFromDifferentSourcesAreNotCompared() {
+        MediaItem decoded = item("a.jpg", 500, 0x20L, 1);
+        MediaItem thumb = new MediaItem(Paths.get("b.jpg"), 100, 1L, null, 0x20L, 2, HashSource.THUMBNAIL);
+        MediaItem thumbCopy = new MediaItem(Paths.get("c.jpg"), 90, 1L, null, 0x21L, 3, HashSource.THUMBNAIL);
+
+        DeduplicationResult r = dedup.deduplicate(List.of(decoded, thumb, thumbCopy));
+
+        Assertions.assertEquals(2, r.keepers().size(), "equal hashes from different sources stay apart");
+        Assertions.assertEquals(List.of(thumbCopy), r.duplicates(), "same-source near-duplicates still cluster");
+    }
+
     @Test
     void testDistinctImagesAllKept() {
         // distance(0x0001, 0xFFFF) = 15 (> radius) => no clustering.
@@ -98,4 +115,104 @@ class MihDeduplicatorTest {
     void testEmptyInput() {
         Assertions.assertEquals(0, dedup.deduplicate(List.of()).total());
     }
+
+    @Test
+    void testParallelQueryGivesTheSerialResult() {
+        Random random = new Random(21);
+        List<MediaItem> items = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            long hash = (i > 0 && random.nextInt(4) == 0)
+                    ? items.get(random.nextInt(i)).getPerceptualHash() ^ (1L << random.nextInt(64))
+                    : random.nextLong() & 0x0F0F_0F0F_0F0F_0F0FL; // crowded buckets, long chains
+            items.add(item("p" + i + ".jpg", 1000 + random.nextInt(100), hash, i + 1));
+        }
+
+        DeduplicationResult serial = new MihDeduplicator(1).deduplicate(items);
+        for (int run = 0; run < 3; run++) {
+            DeduplicationResult parallel = new MihDeduplicator(8).deduplicate(items);
+
+            Assertions.assertEquals(serial.keepers(), parallel.keepers(), "same keepers, same order");
+            Assertions.assertEquals(serial.duplicates(), parallel.duplicates(), "same duplicates, same order");
+        }
+    }
+
+    @Test
+    void testEveryRadiusFindsExactlyThePairsWithinIt() {
+        Random random = new Random(8);
+        List<MediaItem> items = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            long hash = (i > 0 && random.nextInt(2) == 0)
+                    ? items.get(random.nextInt(i)).getPerceptualHash() ^ random.nextLong() & random.nextLong() & random.nextLong()
+                    : random.nextLong();
+            items.add(item("r" + i + ".jpg", 1000 + i, hash, i + 1)); // distinct sizes: keepers are unambiguous
+        }
+
+        for (int radius : new int[] {0, 3, 5, 9, 12, 16}) {
+            int[] parent = new int[items.size()];
+            for (int i = 0; i < parent.length; i++) {
+                parent[i] = i;
+            }
+            for (int i = 0; i < items.size(); i++) {
+                for (int j = i + 1; j < items.size(); j++) {
+                    if (Long.bitCount(items.get(i).getPerceptualHash() ^ items.get(j).getPerceptualHash()) <= radius) {
+                        parent[root(parent, i)] = root(parent, j);
+                    }
+                }
+            }
+            long clusters = IntStream.range(0, parent.length).filter(i -> root(parent, i) == i).count();
+
+            DeduplicationResult r = new MihDeduplicator(radius, 2).deduplicate(items);
+
+            Assertions.assertEquals(clusters, r.keepers().size(), "radius " + radius);
+        }
+    }
+
+    @Test
+    void testColumnarBatchMatchesItems() {
+        Random random = new Random(20);
+        List<MediaItem> items = new ArrayList<>();
+        for (int i = 0; i < 4000; i++) {
+            int kind = random.nextInt(10);
+            MediaItem item;
+            if (kind == 0 && i > 0) { // exact copy of an earlier item, under a longer name
+                MediaItem of = items.get(random.nextInt(i));
+                item = new MediaItem(Paths.get("copy" + i + "_" + of.getPath()), of.getFileSize(), 1L, null,
+                                     of.getPerceptualHash(), of.getContentSignature(), of.getHashSource());
+            } else {
+                long hash = (kind < 5 && i > 0)
+                        ? items.get(random.nextInt(i)).getPerceptualHash() ^ (1L << random.nextInt(64))
+                        : (kind == 9) ? 0 : random.nextLong();
+                HashSource source = (kind == 8) ? HashSource.THUMBNAIL : HashSource.DECODED;
+                item = new MediaItem(Paths.get("p" + i + ".jpg"), 1000 + i, 1L, null, hash, random.nextInt(3) * (i + 1L), source);
+            }
+            items.add(item);
+        }
+        HashBatch batch = new HashBatch(0);
+        for (int i = 0; i < items.size(); i++) {
+            MediaItem item = items.get(i);
+            batch.add(i, item.getPerceptualHash(), item.getContentSignature(), item.getFileSize(),
+                      item.getHashSource(), item.getPath().toString().length());
+        }
+
+        DeduplicationResult expected = new MihDeduplicator(2).deduplicate(items);
+        BitSet duplicates = new MihDeduplicator(2).deduplicate(batch);
+
+        Assertions.assertEquals(expected.duplicates().size(), duplicates.cardinality());
+        for (MediaItem duplicate : expected.duplicates()) {
+            Assertions.assertTrue(duplicates.get(items.indexOf(duplicate)), duplicate.toString());
+        }
+    }
+
+    private static int root(int[] parent, int i) {
+        while (parent[i] != i) {
+            i = parent[i];
+        }
+        return i;
+    }
+
+    @Test
+    void testRadiusOutOfRangeIsRejected() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new MihDeduplicator(MihDeduplicator.MAX_RADIUS + 1, 1));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new MihDeduplicator(-1, 1));
+    }
 }
@@ -0,0 +1,196 @@
+package com.comp.dedup;
+
+import com.comp.domain.HashSource;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+class MihIndexTest {
+
+    private static final int RADIUS = MihDeduplicator.DEFAULT_RADIUS;
+
+    /** Inserts {@code n} items from {@code random}: clustered hashes, some exact copies, some unhashed. */
+    private static void insertRandom(MihIndex index, Random random, int n) {
+        for (int i = 0; i < n; i++) {
+            long pathHash = random.nextLong();
+            long hash = (random.nextInt(4) == 0) ? 0 : random.nextLong() & 0xFFFF_0000_0000_FFFFL;
+            long size = 1 + random.nextInt(20);
+            long signature = random.nextInt(40);
+            index.insert(pathHash, hash, size, signature, HashSource.DECODED);
+            index.settle(index.size() - 1);
+        }
+    }
+
+    private static int[] clusters(MihIndex index) {
+        int[] roots = new int[index.size()];
+        for (int i = 0; i < roots.length; i++) {
+            roots[i] = index.find(i);
+        }
+        return roots;
+    }
+
+    @Test
+    void testJournaledAndCompactedIndexesMatchOneBuild(@TempDir Path dir) throws Exception {
+        MihIndex whole = new MihIndex(RADIUS);
+        insertRandom(whole, new Random(3), 3000);
+
+        Random random = new Random(3);
+        Path file = dir.resolve("cache.tsv.mih");
+        for (int batch = 0; batch < 6; batch++) {
+            MihIndex index = MihIndex.open(file, RADIUS);
+            insertRandom(index, random, 500);
+            if (batch == 2) {
+                index.compact();
+            } else {
+                index.save(); // below COMPACT_MIN: journaled
+            }
+        }
+        Assertions.assertTrue(Files.exists(file), "compacted once");
+        Assertions.assertTrue(Files.exists(dir.resolve("cache.tsv.mih.journal")), "journaled since");
+
+        MihIndex reopened = MihIndex.open(file, RADIUS);
+        Assertions.assertEquals(3000, reopened.size());
+        Assertions.assertArrayEquals(clusters(whole), clusters(reopened));
+
+        reopened.compact();
+        Assertions.assertFalse(Files.exists(dir.resolve("cache.tsv.mih.journal")));
+        Assertions.assertArrayEquals(clusters(whole), clusters(MihIndex.open(file, RADIUS)));
+    }
+
+    @Test
+    void testInsertsOutgrowingTheLayoutMatchPairwiseClustering() {
+        Random random = new Random(11);
+        long[] centres = new long[60];
+        Arrays.setAll(centres, i -> random.nextLong());
+        long[] hashes = new long[5000];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = centres[random.nextInt(centres.length)];
+            for (int flips = random.nextInt(5); flips > 0; flips--) {
+                hashes[i] ^= 1L << random.nextInt(64);
+            }
+        }
+
+        MihIndex index = new MihIndex(RADIUS); // re-planned several times on the way
+        int[] expected = new int[hashes.length];
+        for (int i = 0; i < hashes.length; i++) {
+            index.insert(random.nextLong(), hashes[i], 1, i, HashSource.DECODED);
+            expected[i] = i;
+            for (int j = 0; j < i; j++) {
+                if (Long.bitCount(hashes[i] ^ hashes[j]) <= RADIUS) {
+                    int a = root(expected, i);
+                    int b = root(expected, j);
+                    expected[Math.max(a, b)] = Math.min(a, b);
+                }
+            }
+        }
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = root(expected, i);
+        }
+        Assertions.assertArrayEquals(expected, clusters(index));
+    }
+
+    private static int root(int[] parent, int i) {
+        while (parent[i] != i) {
+            i = parent[i];
+        }
+        return i;
+    }
+
+    @Test
+    void testPersistedItemsAreSettledAndKnown(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("cache.tsv.mih");
+        MihIndex first = MihIndex.open(file, RADIUS);
+        first.insert(42, 0x20L, 100, 7, HashSource.DECODED);
+        first.settle(0);
+        first.compact();
+
+        MihIndex second = MihIndex.open(file, RADIUS);
+        Assertions.assertTrue(second.contains(42, 100, 7));
+        Assertions.assertFalse(second.contains(42, 101, 7), "same path, changed file");
+        int near = second.insert(43, 0x3FL, 900, 8, HashSource.DECODED);
+        int elsewhere = second.insert(44, 0x20L, 900, 9, HashSource.THUMBNAIL);
+
+        Assertions.assertEquals(0, second.find(near));
+        Assertions.assertTrue(second.isSettled(second.find(near)));
+        Assertions.assertEquals(elsewhere, second.find(elsewhere), "other hash sources are not compared");
+        Assertions.assertFalse(second.isSettled(elsewhere));
+    }
+
+    @Test
+    void testNewItemCanJoinTwoPersistedClusters(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("cache.tsv.mih");
+        MihIndex first = MihIndex.open(file, RADIUS);
+        first.insert(1, 0xF000L, 10, 1, HashSource.DECODED);
+        first.insert(2, 0xF3FFL, 10, 2, HashSource.DECODED); // 10 bits away: apart
+        first.compact();
+
+        MihIndex second = MihIndex.open(file, RADIUS);
+        Assertions.assertNotEquals(second.find(0), second.find(1));
+        second.insert(3, 0xF01FL, 10, 3, HashSource.DECODED); // 5 from each
+        second.save();
+
+        MihIndex third = MihIndex.open(file, RADIUS);
+        Assertions.assertArrayEquals(new int[] {0, 0, 0}, clusters(third));
+    }
+
+    @Test
+    void testReplayingAJournalTwiceAddsNothing(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("cache.tsv.mih");
+        MihIndex first = MihIndex.open(file, RADIUS);
+        insertRandom(first, new Random(5), 50);
+        first.save();
+        Path journal = dir.resolve("cache.tsv.mih.journal");
+        byte[] saved = Files.readAllBytes(journal);
+
+        MihIndex second = MihIndex.open(file, RADIUS);
+        second.compact();
+        Files.write(journal, saved); // as if the rewrite finished but the journal was not deleted
+
+        Assertions.assertEquals(50, MihIndex.open(file, RADIUS).size());
+    }
+
+    @Test
+    void testTruncatedJournalKeepsCompleteRecords(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("cache.tsv.mih");
+        MihIndex first = MihIndex.open(file, RADIUS);
+        insertRandom(first, new Random(9), 10);
+        first.save();
+        Path journal = dir.resolve("cache.tsv.mih.journal");
+        byte[] bytes = Files.readAllBytes(journal);
+        Files.write(journal, Arrays.copyOf(bytes, bytes.length - 3));
+
+        Assertions.assertEquals(9, MihIndex.open(file, RADIUS).size());
+    }
+
+    @Test
+    void testIndexBuiltForAnotherRadiusIsReindexed(@TempDir Path dir) throws Exception {
+        MihIndex wide = new MihIndex(10);
+        insertRandom(wide, new Random(13), 2000);
+
+        Path file = dir.resolve("cache.tsv.mih");
+        MihIndex narrow = MihIndex.open(file, RADIUS);
+        insertRandom(narrow, new Random(13), 2000);
+        narrow.compact();
+        Assertions.assertFalse(Arrays.equals(clusters(wide), clusters(MihIndex.open(file, RADIUS))));
+
+        MihIndex reopened = MihIndex.open(file, 10);
+        Assertions.assertArrayEquals(clusters(wide), clusters(reopened));
+        Assertions.assertTrue(reopened.isSettled(reopened.find(1999)), "loaded items stay filed");
+        reopened.save(); // nothing added, but the base is rewritten for the new radius
+        Assertions.assertArrayEquals(clusters(wide), clusters(MihIndex.open(file, 10)));
+    }
+
+    @Test
+    void testGarbageFilesGiveAnEmptyIndex(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("cache.tsv.mih");
+        Files.writeString(file, "not an index at all, but long enough for a header");
+        Files.writeString(dir.resolve("cache.tsv.mih.journal"), "nor a journal");
+
+        Assertions.assertEquals(0, MihIndex.open(file, RADIUS).size());
+    }
+}
@@ -0,0 +1,57 @@
+package com.comp.dedup;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+class MihLayoutTest {
+
+    @Test
+    void testSegmentsPartitionTheHash() {
+        Random random = new Random(1);
+        for (int segments = 2; segments <= 16; segments++) {
+            MihLayout layout = new MihLayout(5, segments);
+            long hash = random.nextLong();
+            long rebuilt = 0;
+            int shift = 0;
+            for (int seg = 0; seg < segments; seg++) {
+                rebuilt |= layout.segment(hash, seg) << shift;
+                shift += layout.bits(seg);
+            }
+            Assertions.assertEquals(64, shift, segments + " segments");
+            Assertions.assertEquals(hash, rebuilt, segments + " segments");
+        }
+    }
+
+    @Test
+    void testMasksAreEveryValueWithinTheProbeRadius() {
+        MihLayout layout = new MihLayout(9, 4); // 16-bit segments, probe radius 2
+        long[] masks = layout.masks(0);
+
+        Assertions.assertEquals(2, layout.probeRadius());
+        Assertions.assertEquals(1 + 16 + 120, masks.length);
+        Assertions.assertEquals(0, masks[0], "the exact value first");
+        Assertions.assertEquals(masks.length, Arrays.stream(masks).distinct().count());
+        Assertions.assertTrue(Arrays.stream(masks).allMatch(m -> m < (1 << 16) && Long.bitCount(m) <= 2));
+    }
+
+    @Test
+    void testPlanKeepsSegmentsNarrowAndProbesMore() {
+        MihLayout small = MihLayout.plan(5, 1000);
+        Assertions.assertEquals(6, small.segments(), "classic MIH: radius + 1 segments, exact lookups");
+        Assertions.assertEquals(0, small.probeRadius());
+
+        MihLayout large = MihLayout.plan(10, 10_000_000);
+        for (int seg = 0; seg < large.segments(); seg++) {
+            Assertions.assertTrue(large.bits(seg) <= 25, "offsets stay within a few bytes per hash");
+        }
+    }
+
+    @Test
+    void testRadiusOutOfRangeIsRejected() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new MihLayout(MihDeduplicator.MAX_RADIUS + 1, 6));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new MihLayout(5, 1));
+    }
+}
@@ -3,7 +3,9 @@ package com.comp.media;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.Random;
 
 class ContentSignatureTest {
 
@@ -39,6 +41,19 @@ class ContentSignatureTest {
         Assertions.assertEquals(ContentSignature.of(a), ContentSignature.of(b));
     }
 
+    @Test
+    void testBufferSignatureMatchesArrayAndLeavesPositionAlone() {
+        byte[] content = new byte[300 * 1024];
+        new Random(3).nextBytes(content);
+        // Embed the content mid-buffer, as in a pooled buffer or a mapping with an offset.
+        ByteBuffer framed = ByteBuffer.allocateDirect(content.length + 200);
+        framed.position(100);
+        framed.put(content).flip().position(100);
+
+        Assertions.assertEquals(ContentSignature.of(content), ContentSignature.of(framed));
+        Assertions.assertEquals(100, framed.position());
+    }
+
     private static byte[] bytes(int len, int seed) {
         byte[] b = new byte[len];
         Arrays.fill(b, (byte) seed);
@@ -6,11 +6,20 @@ import org.junit.jupiter.api.Test;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
 import javax.imageio.ImageIO;
 
 class ImageHasherTest {
 
+    private static final long LEGACY_GRADIENT_1 = 0xFFBDF7BD356D4852L;
+    private static final long LEGACY_GRADIENT_40 = 0x8040EAC3800B1EBCL;
+    private static final long LEGACY_FLAT = 0xFFFF7DEED377F732L;
+
     private static BufferedImage gradient(int seed) {
         BufferedImage img = new BufferedImage(64, 64, BufferedImage.TYPE_INT_RGB);
         for (int x = 0; x < 64; x++) {
@@ -75,6 +84,169 @@ class ImageHasherTest {
         Assertions.assertEquals(0, ImageHasher.fromBytes(new byte[]{1, 2, 3, 4}));
     }
 
+    @Test
+    void testSeparableDctMatchesReferenceBitForBit() {
+        // Hashes already stored in caches came from the direct 2-D sum; the fast path must reproduce them.
+        Random random = new Random(7);
+        double[] pixels = new double[32 * 32];
+        double[] partial = new double[32 * 8];
+        double[] fast = new double[64];
+        double[] reference = new double[64];
+        for (int round = 0; round < 500; round++) {
+            int flat = random.nextInt(256);
+            for (int k = 0; k < pixels.length; k++) {
+                // Mix noisy, flat and stepped inputs so near-ties around the average are exercised.
+                pixels[k] = switch (round % 3) {
+                    case 0 -> random.nextInt(256);
+                    case 1 -> flat;
+                    default -> (k % 32) < 16 ? flat : 255 - flat;
+                };
+            }
+            ImageHasher.lowFrequencyDct(pixels, partial, fast);
+            ImageHasher.lowFrequencyDctReference(pixels, reference);
+            for (int k = 0; k < 64; k++) {
+                Assertions.assertEquals(reference[k], fast[k], 1e-7, "coefficient " + k + " in round " + round);
+            }
+        }
+    }
+
+    @Test
+    void testHashesMatchLegacyTransform() {
+        // Golden values produced by the original full 32x32 DCT before it was made separable.
+        Assertions.assertEquals(LEGACY_GRADIENT_1, ImageHasher.hash(gradient(1)));
+        Assertions.assertEquals(LEGACY_GRADIENT_40, ImageHasher.hash(gradient(40)));
+        Assertions.assertEquals(LEGACY_FLAT, ImageHasher.hash(flat(new Color(90, 90, 90))));
+    }
+
+    @Test
+    void testDirectDownscaleIsIndependentOfRasterLayout() {
+        BufferedImage base = gradient(5);
+        long expected = ImageHasher.hash(base, ImageHasher.Downscale.DIRECT);
+        for (int type : new int[]{BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_BGR,
+                                  BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_4BYTE_ABGR}) {
+            Assertions.assertEquals(expected, ImageHasher.hash(convert(base, type), ImageHasher.Downscale.DIRECT),
+                                    "raster type " + type);
+        }
+    }
+
+    @Test
+    void testDirectDownscaleStaysCloseToJava2d() {
+        int totalBits = 0;
+        for (int seed = 0; seed < 8; seed++) {
+            BufferedImage img = gradient(seed);
+            int d = ImageHasher.hammingDistance(ImageHasher.hash(img, ImageHasher.Downscale.JAVA2D),
+                                                ImageHasher.hash(img, ImageHasher.Downscale.DIRECT));
+            Assertions.assertTrue(d <= 12, "seed " + seed + " differs by " + d + " bits");
+            totalBits += d;
+        }
+        Assertions.assertTrue(totalBits > 0, "the direct path must actually be taken for TYPE_INT_RGB");
+    }
+
+    @Test
+    void testDirectDownscaleFallsBackForExoticColorModels() {
+        // Packed 565 and indexed rasters are not read directly; they must hash exactly as Java2D does.
+        for (int type : new int[]{BufferedImage.TYPE_USHORT_565_RGB, BufferedImage.TYPE_BYTE_INDEXED}) {
+            BufferedImage img = convert(gradient(2), type);
+            Assertions.assertEquals(ImageHasher.hash(img, ImageHasher.Downscale.JAVA2D),
+                                    ImageHasher.hash(img, ImageHasher.Downscale.DIRECT), "raster type " + type);
+        }
+        BufferedImage tiny = new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB);
+        Assertions.assertEquals(ImageHasher.hash(tiny), ImageHasher.hash(tiny, ImageHasher.Downscale.DIRECT));
+    }
+
+    @Test
+    void testJpegDcHashTracksDecodedHash() throws Exception {
+        byte[] jpeg = jpegBytes(gradient(3), 800);
+        long dc = ImageHasher.fromJpegDc(jpeg);
+        long decoded = ImageHasher.fromBytes(jpeg, ImageHasher.Downscale.DIRECT);
+
+        Assertions.assertNotEquals(0, dc);
+        Assertions.assertTrue(ImageHasher.hammingDistance(dc, decoded) <= 12,
+                              "DC and decoded hashes describe the same picture");
+        Assertions.assertEquals(0, ImageHasher.fromJpegDc(jpegBytes(gradient(3), 200)),
+                                "a 25x25 DC image is too small to hash");
+        Assertions.assertEquals(0, ImageHasher.fromJpegDc(new byte[]{1, 2, 3, 4}));
+    }
+
+    @Test
+    void testThumbnailHashUsesEmbeddedThumbnail() throws Exception {
+        byte[] thumbnail = jpegBytes(gradient(3), 120);
+        byte[] jpeg = withThumbnail(jpegBytes(gradient(3), 800), thumbnail);
+
+        long fromThumbnail = ImageHasher.fromThumbnail(jpeg, ImageHasher.Downscale.JAVA2D);
+        Assertions.assertEquals(ImageHasher.hash(ImageIO.read(new ByteArrayInputStream(thumbnail))), fromThumbnail,
+                                "hash of the embedded JPEG");
+        Assertions.assertEquals(0, ImageHasher.fromThumbnail(jpegBytes(gradient(3), 800), ImageHasher.Downscale.JAVA2D),
+                                "no thumbnail embedded");
+    }
+
+    @Test
+    void testThumbnailWithDifferentAspectIsIgnored() throws Exception {
+        BufferedImage wide = new BufferedImage(160, 90, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = wide.createGraphics();
+        g.drawImage(gradient(3), 0, 0, 160, 90, null);
+        g.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(wide, "jpg", out);
+
+        byte[] jpeg = withThumbnail(jpegBytes(gradient(3), 800), out.toByteArray());
+        Assertions.assertEquals(0, ImageHasher.fromThumbnail(jpeg, ImageHasher.Downscale.JAVA2D),
+                                "a 16:9 thumbnail cannot stand in for a square image");
+    }
+
+    @Test
+    void testBufferSourcesMatchByteArraySources() throws Exception {
+        byte[] jpeg = withThumbnail(jpegBytes(gradient(4), 400), jpegBytes(gradient(4), 80));
+        ByteBuffer framed = ByteBuffer.allocate(jpeg.length + 64);
+        framed.position(32);
+        framed.put(jpeg).flip().position(32);
+
+        Assertions.assertEquals(ImageHasher.fromBytes(jpeg), ImageHasher.fromBytes(framed, ImageHasher.Downscale.JAVA2D));
+        Assertions.assertEquals(ImageHasher.fromBytes(jpeg, ImageHasher.Downscale.DIRECT),
+                                ImageHasher.fromBytes(framed, ImageHasher.Downscale.DIRECT));
+        Assertions.assertEquals(ImageHasher.fromJpegDc(jpeg), ImageHasher.fromJpegDc(framed));
+        long thumbnail = ImageHasher.fromThumbnail(framed, ImageHasher.Downscale.JAVA2D);
+        Assertions.assertNotEquals(0, thumbnail);
+        Assertions.assertEquals(ImageHasher.fromThumbnail(jpeg, ImageHasher.Downscale.JAVA2D), thumbnail);
+        Assertions.assertEquals(32, framed.position(), "readers must not move the caller's buffer");
+    }
+
+    private static BufferedImage convert(BufferedImage src, int type) {
+        BufferedImage out = new BufferedImage(src.getWidth(), src.getHeight(), type);
+        Graphics2D g = out.createGraphics();
+        g.drawImage(src, 0, 0, null);
+        g.dispose();
+        return out;
+    }
+
+    private static BufferedImage flat(Color color) {
+        BufferedImage img = new BufferedImage(64, 64, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = img.createGraphics();
+        g.setColor(color);
+        g.fillRect(0, 0, 64, 64);
+        g.dispose();
+        return img;
+    }
+
+    /** Splices an EXIF APP1 whose IFD1 points at {@code thumbnail} right after the SOI marker. */
+    private static byte[] withThumbnail(byte[] jpeg, byte[] thumbnail) {
+        // TIFF: header(8) | IFD0 @8: no entries, next -> 14 | IFD1 @14: offset + length tags | JPEG @44
+        ByteBuffer tiff = ByteBuffer.allocate(44 + thumbnail.length).order(ByteOrder.LITTLE_ENDIAN);
+        tiff.put((byte) 'I').put((byte) 'I').putShort((short) 42).putInt(8);
+        tiff.putShort((short) 0).putInt(14);
+        tiff.putShort((short) 2);
+        tiff.putShort((short) 0x0201).putShort((short) 4).putInt(1).putInt(44);
+        tiff.putShort((short) 0x0202).putShort((short) 4).putInt(1).putInt(thumbnail.length);
+        tiff.putInt(0).put(thumbnail);
+
+        byte[] exif = "Exif\0\0".getBytes(StandardCharsets.US_ASCII);
+        int length = 2 + exif.length + tiff.capacity();
+        ByteBuffer out = ByteBuffer.allocate(jpeg.length + 2 + length);
+        out.put(jpeg, 0, 2).put((byte) 0xFF).put((byte) 0xE1).putShort((short) length);
+        out.put(exif).put(tiff.array()).put(jpeg, 2, jpeg.length - 2);
+        return out.array();
+    }
+
     private static byte[] jpegBytes(BufferedImage small, int upscaleTo) throws Exception {
         BufferedImage big = new BufferedImage(upscaleTo, upscaleTo, BufferedImage.TYPE_INT_RGB);
         Graphics2D g = big.createGraphics();
@@ -0,0 +1,147 @@
+package com.comp.media;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+
+class JpegDcDecoderTest {
+
+    private static BufferedImage picture(int w, int h, int type) {
+        BufferedImage img = new BufferedImage(w, h, type);
+        Graphics2D g = img.createGraphics();
+        g.setPaint(new GradientPaint(0, 0, new Color(20, 90, 200), w, h, new Color(240, 200, 40)));
+        g.fillRect(0, 0, w, h);
+        g.setColor(new Color(30, 160, 60));
+        g.fillOval(w / 4, h / 4, w / 2, h / 3);
+        g.setColor(Color.WHITE);
+        g.fillRect(w / 8, h / 2, w / 3, h / 8);
+        g.dispose();
+        return img;
+    }
+
+    @Test
+    void testColorPlaneMatchesBlockMeansOfFullDecode() throws Exception {
+        byte[] jpeg = encode(picture(333, 257, BufferedImage.TYPE_INT_RGB), false, 0);
+        JpegDcDecoder.Plane plane = JpegDcDecoder.decode(ByteBuffer.wrap(jpeg));
+
+        Assertions.assertNotNull(plane);
+        Assertions.assertEquals(42, plane.width(), "ceil(333 / 8) blocks across");
+        Assertions.assertEquals(33, plane.height(), "ceil(257 / 8) blocks down");
+        assertCloseToBlockMeans(plane, ImageIO.read(new ByteArrayInputStream(jpeg)));
+    }
+
+    @Test
+    void testGrayscalePlaneMatchesBlockMeans() throws Exception {
+        byte[] jpeg = encode(picture(200, 120, BufferedImage.TYPE_BYTE_GRAY), false, 0);
+        JpegDcDecoder.Plane plane = JpegDcDecoder.decode(ByteBuffer.wrap(jpeg));
+
+        Assertions.assertNotNull(plane);
+        Assertions.assertEquals(25, plane.width());
+        Assertions.assertEquals(15, plane.height());
+        assertCloseToBlockMeans(plane, ImageIO.read(new ByteArrayInputStream(jpeg)));
+    }
+
+    @Test
+    void testRestartIntervalsAreHonored() throws Exception {
+        BufferedImage picture = picture(320, 240, BufferedImage.TYPE_INT_RGB);
+        byte[] plain = encode(picture, false, 0);
+        byte[] restarted = encode(picture, false, 3);
+        Assertions.assertTrue(containsMarker(restarted, 0xDD), "fixture must carry a DRI segment");
+
+        JpegDcDecoder.Plane a = JpegDcDecoder.decode(ByteBuffer.wrap(plain));
+        JpegDcDecoder.Plane b = JpegDcDecoder.decode(ByteBuffer.wrap(restarted));
+        Assertions.assertNotNull(b);
+        Assertions.assertArrayEquals(a.luma(), b.luma(), "restart markers must not shift the decoded blocks");
+    }
+
+    @Test
+    void testProgressiveAndGarbageAreRejected() throws Exception {
+        byte[] progressive = encode(picture(320, 240, BufferedImage.TYPE_INT_RGB), true, 0);
+        Assertions.assertNull(JpegDcDecoder.decode(ByteBuffer.wrap(progressive)), "progressive needs a full decode");
+        Assertions.assertArrayEquals(new int[]{320, 240}, JpegDcDecoder.dimensions(ByteBuffer.wrap(progressive)));
+
+        byte[] baseline = encode(picture(320, 240, BufferedImage.TYPE_INT_RGB), false, 0);
+        Assertions.assertNull(JpegDcDecoder.decode(ByteBuffer.wrap(Arrays.copyOf(baseline, 300))), "truncated stream");
+        Assertions.assertNull(JpegDcDecoder.decode(ByteBuffer.wrap(new byte[]{1, 2, 3, 4, 5})));
+    }
+
+    /** Each DC sample is its block's mean, so it must track the mean of the fully decoded luma. */
+    private static void assertCloseToBlockMeans(JpegDcDecoder.Plane plane, BufferedImage decoded) {
+        Raster raster = decoded.getRaster();
+        boolean gray = raster.getNumBands() == 1;
+        double totalError = 0;
+        for (int by = 0; by < plane.height(); by++) {
+            for (int bx = 0; bx < plane.width(); bx++) {
+                double sum = 0;
+                int n = 0;
+                for (int y = by * 8; y < Math.min(by * 8 + 8, decoded.getHeight()); y++) {
+                    for (int x = bx * 8; x < Math.min(bx * 8 + 8, decoded.getWidth()); x++) {
+                        int[] px = raster.getPixel(x, y, (int[]) null);
+                        sum += gray ? px[0] : 0.299 * px[0] + 0.587 * px[1] + 0.114 * px[2];
+                        n++;
+                    }
+                }
+                double error = Math.abs(sum / n - (plane.luma()[by * plane.width() + bx] & 0xFF));
+                if (by < plane.height() - 1 && bx < plane.width() - 1) {
+                    Assertions.assertTrue(error < 6, "block " + bx + "," + by + " off by " + error);
+                }
+                totalError += error;
+            }
+        }
+        Assertions.assertTrue(totalError / (plane.width() * plane.height()) < 2, "mean error " + totalError);
+    }
+
+    private static boolean containsMarker(byte[] jpeg, int marker) {
+        for (int i = 0; i + 1 < jpeg.length; i++) {
+            if ((jpeg[i] & 0xFF) == 0xFF && (jpeg[i + 1] & 0xFF) == marker) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static byte[] encode(BufferedImage image, boolean progressive, int restartInterval) throws Exception {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        if (progressive) {
+            param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+        }
+        IIOMetadata metadata = writer.getDefaultImageMetadata(new ImageTypeSpecifier(image), param);
+        if (restartInterval > 0) {
+            String format = metadata.getNativeMetadataFormatName();
+            Node root = metadata.getAsTree(format);
+            Node markers = ((Element) root).getElementsByTagName("markerSequence").item(0);
+            Element dri = new IIOMetadataNode("dri");
+            dri.setAttribute("interval", Integer.toString(restartInterval));
+            markers.insertBefore(dri, markers.getFirstChild());
+            metadata.setFromTree(format, root);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(ios);
+            writer.write(null, new IIOImage(image, null, metadata), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,73 @@
+package com.comp.pipeline;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+class CopyEngineTest {
+
+    @Test
+    void testCopiesInChunksReportingEach(@TempDir Path dir) throws Exception {
+        byte[] bytes = new byte[10_000];
+        new Random(3).nextBytes(bytes);
+        Path src = Files.write(dir.resolve("clip.mts"), bytes);
+        Path dst = dir.resolve("copy.mts");
+        CopyEngine engine = new CopyEngine(4096, 0, 0);
+        List<CopyEngine.Transfer> reports = new ArrayList<>();
+        engine.setListener(reports::add);
+
+        Assertions.assertEquals(bytes.length, engine.copy(src, dst, false));
+
+        Assertions.assertArrayEquals(bytes, Files.readAllBytes(dst));
+        Assertions.assertEquals(List.of(4096L, 8192L, 10_000L), reports.stream().map(CopyEngine.Transfer::done).toList());
+        Assertions.assertEquals(10_000L, reports.get(2).totalBytes());
+    }
+
+    @Test
+    void testExistingTargetIsKeptUnlessReplacing(@TempDir Path dir) throws Exception {
+        Path src = Files.writeString(dir.resolve("a.jpg"), "new");
+        Path dst = Files.writeString(dir.resolve("b.jpg"), "old and longer");
+        CopyEngine engine = new CopyEngine(CopyEngine.DEFAULT_CHUNK_BYTES, 0, 2);
+
+        Assertions.assertThrows(FileAlreadyExistsException.class, () -> engine.copy(src, dst, false));
+        Assertions.assertEquals("old and longer", Files.readString(dst));
+
+        engine.copy(src, dst, true);
+        Assertions.assertEquals(Set.of(), engine.sync(1));
+        Assertions.assertEquals("new", Files.readString(dst));
+    }
+
+    @Test
+    void testSyncReportsCopiesItCouldNotForceAndForcesTheRest(@TempDir Path dir) throws Exception {
+        CopyEngine engine = new CopyEngine(CopyEngine.DEFAULT_CHUNK_BYTES, 0, Integer.MAX_VALUE);
+        for (String name : List.of("a", "b", "c")) {
+            engine.copy(Files.writeString(dir.resolve(name + ".jpg"), name), dir.resolve(name + "-copy.jpg"), false);
+        }
+        Files.delete(dir.resolve("a-copy.jpg")); // cannot be opened to force it
+
+        Assertions.assertEquals(Set.of(dir.resolve("a-copy.jpg")), engine.sync(1));
+        Assertions.assertEquals(Set.of(), engine.sync(1), "reported once");
+    }
+
+    @Test
+    void testBandwidthCapPacesCopies(@TempDir Path dir) throws Exception {
+        Path src = Files.write(dir.resolve("clip.mov"), new byte[300 * 1024]);
+        CopyEngine engine = new CopyEngine(64 * 1024, 1024 * 1024, 0);
+        long start = System.nanoTime();
+
+        for (int i = 0; i < 5; i++) {
+            engine.copy(src, dir.resolve("copy" + i + ".mov"), false);
+        }
+
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        Assertions.assertTrue(millis >= 350, "1.5 MB at 1 MB/s (1 MB burst) took " + millis + " ms");
+    }
+}
@@ -2,16 +2,21 @@ package com.comp.pipeline;
 
 import com.google.common.jimfs.Configuration;
 import com.google.common.jimfs.Jimfs;
+import com.comp.cache.DirectoryIndex;
 import com.comp.domain.ScannedFile;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.io.IOException;
 import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Set;
 
@@ -90,6 +95,129 @@ class DirTraverseTest {
         Assertions.assertTrue(found.isEmpty(), "Should ignore files with no extension or unsupported extensions");
     }
 
+    @Test
+    void testParallelWalkFindsWhatTheSerialWalkFinds() throws Exception {
+        for (int a = 0; a < 6; a++) {
+            Path dirA = Files.createDirectory(rootDir.resolve("a" + a));
+            createFile(dirA, "top" + a + ".jpg");
+            for (int b = 0; b < 5; b++) {
+                Path dirB = Files.createDirectories(dirA.resolve("b" + b).resolve("deep"));
+                createFile(dirB, "img" + b + ".jpg");
+                createFile(dirB, "notes" + b + ".txt");
+            }
+        }
+
+        DirectoryScanner serial = new DirectoryScanner(rootDir, Set.of("jpg"));
+        DirectoryScanner parallel = new DirectoryScanner(rootDir, Set.of("jpg"), 4);
+        List<String> expected = serial.scan().stream().map(f -> f.path().toString()).sorted().toList();
+        List<String> actual = parallel.scan().stream().map(f -> f.path().toString()).sorted().toList();
+
+        Assertions.assertEquals(36, expected.size());
+        Assertions.assertEquals(expected, actual);
+        Assertions.assertEquals(serial.directories(), parallel.directories(), "1 root + 6 + 30 + 30");
+        Assertions.assertEquals(67, parallel.directories());
+        Assertions.assertEquals(66, parallel.files(), "unsupported files are counted too");
+        Assertions.assertTrue(parallel.walkNanos() > 0);
+    }
+
+    @Test
+    void testParallelWalkDoesNotFollowSymlinks() throws Exception {
+        Path realFolder = Files.createDirectory(rootDir.resolve("real_folder"));
+        createFile(realFolder, "photo.jpg");
+        Files.createSymbolicLink(rootDir.resolve("link_folder"), realFolder);
+        Files.createSymbolicLink(realFolder.resolve("loop"), rootDir);
+
+        List<ScannedFile> found = new DirectoryScanner(rootDir, Set.of("jpg"), 4).scan();
+
+        Assertions.assertEquals(1, found.size());
+    }
+
+    @Test
+    void testParallelWalkWaitsForASlowSink() throws Exception {
+        for (int d = 0; d < 8; d++) {
+            Path dir = Files.createDirectory(rootDir.resolve("d" + d));
+            for (int i = 0; i < 400; i++) {
+                createFile(dir, "img" + i + ".jpg");
+            }
+        }
+        List<ScannedFile> found = new ArrayList<>();
+
+        new DirectoryScanner(rootDir, Set.of("jpg"), 4).traverse(file -> {
+            if (found.size() % 500 == 0) {
+                Thread.sleep(5); // listers fill the handoff queue and wait
+            }
+            found.add(file);
+        });
+
+        Assertions.assertEquals(3200, found.size());
+    }
+
+    @Test
+    void testIncrementalWalkReplaysUnchangedDirectories(@TempDir Path disk) throws Exception {
+        Path root = Files.createDirectory(disk.resolve("photos"));
+        Path a = Files.createDirectory(root.resolve("a"));
+        Path b = Files.createDirectory(root.resolve("b"));
+        Files.writeString(a.resolve("x.jpg"), "x");
+        Files.writeString(b.resolve("y.jpg"), "yy");
+        Files.writeString(b.resolve("notes.txt"), "n");
+        FileTime hourAgo = FileTime.fromMillis(System.currentTimeMillis() - 3_600_000);
+        for (Path d : List.of(root, a, b)) {
+            Files.setLastModifiedTime(d, hourAgo);
+        }
+        Path indexFile = disk.resolve("cache.tsv.dirs");
+
+        DirectoryScanner full = scanIncrementally(root, indexFile);
+        Assertions.assertEquals(0, full.unchangedDirectories(), "nothing to replay on the first run");
+
+        List<ScannedFile> listed = new DirectoryScanner(root, Set.of("jpg")).scan();
+        DirectoryIndex index = DirectoryIndex.load(indexFile);
+        DirectoryScanner rerun = new DirectoryScanner(root, Set.of("jpg"), 1, index);
+        List<ScannedFile> replayed = rerun.scan();
+        index.save();
+        Assertions.assertEquals(3, rerun.unchangedDirectories());
+        Assertions.assertEquals(3, rerun.files(), "unsupported files are replayed too");
+        Assertions.assertEquals(sorted(listed), sorted(replayed), "replayed as scanned, size and mtime included");
+
+        Files.writeString(b.resolve("z.jpg"), "zzz"); // b's mtime moves to now
+        DirectoryScanner changed = scanIncrementally(root, indexFile);
+        Assertions.assertEquals(2, changed.unchangedDirectories(), "root and a replayed, b listed");
+        Assertions.assertEquals(3, changed.directories());
+    }
+
+    @Test
+    void testIncrementalWalkSeesDeletionsAndNewSubdirectories(@TempDir Path disk) throws Exception {
+        Path root = Files.createDirectory(disk.resolve("photos"));
+        Path a = Files.createDirectory(root.resolve("a"));
+        Files.writeString(a.resolve("x.jpg"), "x");
+        Files.writeString(a.resolve("gone.jpg"), "g");
+        FileTime hourAgo = FileTime.fromMillis(System.currentTimeMillis() - 3_600_000);
+        Files.setLastModifiedTime(root, hourAgo);
+        Files.setLastModifiedTime(a, hourAgo);
+        Path indexFile = disk.resolve("cache.tsv.dirs");
+        scanIncrementally(root, indexFile);
+
+        Files.delete(a.resolve("gone.jpg"));
+        Path fresh = Files.createDirectory(a.resolve("fresh"));
+        Files.writeString(fresh.resolve("new.jpg"), "n");
+
+        DirectoryIndex index = DirectoryIndex.load(indexFile);
+        List<ScannedFile> found = new DirectoryScanner(root, Set.of("jpg"), 4, index).scan();
+
+        Assertions.assertEquals(List.of("new.jpg", "x.jpg"), names(found).stream().sorted().toList());
+    }
+
+    private static DirectoryScanner scanIncrementally(Path root, Path indexFile) throws IOException {
+        DirectoryIndex index = DirectoryIndex.load(indexFile);
+        DirectoryScanner scanner = new DirectoryScanner(root, Set.of("jpg"), 2, index);
+        scanner.scan();
+        index.save();
+        return scanner;
+    }
+
+    private static List<ScannedFile> sorted(List<ScannedFile> files) {
+        return files.stream().sorted(Comparator.comparing(f -> f.path().toString())).toList();
+    }
+
     @Test
     void testMissingSourceDirThrows() {
         Path missing = fs.getPath("/does-not-exist");
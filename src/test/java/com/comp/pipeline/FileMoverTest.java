@@ -1,17 +1,30 @@
 package com.comp.pipeline;
 
+import com.comp.dedup.DeduplicationResult;
 import com.comp.domain.MediaItem;
 import com.comp.app.Options;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
 
 class FileMoverTest {
 
@@ -24,7 +37,7 @@ class FileMoverTest {
         Date modTime = opts.fileNameFormatter.parse("20200203_112244");
         MediaItem item = createItem("dummy.jpg", null, modTime.getTime());
 
-        FileMover.Locator locator = new FileMover.Locator(opts, p -> false);
+        FileMover.Locator locator = new FileMover.Locator(opts, onDisk());
         Optional<String> res = locator.resolveDest(item, false);
 
         Assertions.assertTrue(res.isPresent());
@@ -37,7 +50,7 @@ class FileMoverTest {
         opts.noExifDir = Options.NoExifOpt.STOP;
         MediaItem item = createItem("dummy.jpg", null, System.currentTimeMillis());
 
-        FileMover.Locator locator = new FileMover.Locator(opts, p -> false);
+        FileMover.Locator locator = new FileMover.Locator(opts, onDisk());
         Assertions.assertThrows(RuntimeException.class, () -> locator.resolveDest(item, false));
     }
 
@@ -47,7 +60,7 @@ class FileMoverTest {
         opts.noExifDir = Options.NoExifOpt.SKIP;
         MediaItem item = createItem("dummy.jpg", null, System.currentTimeMillis());
 
-        FileMover.Locator locator = new FileMover.Locator(opts, p -> false);
+        FileMover.Locator locator = new FileMover.Locator(opts, onDisk());
         Assertions.assertTrue(locator.resolveDest(item, false).isEmpty());
     }
 
@@ -58,7 +71,7 @@ class FileMoverTest {
         opts.noExifDir = Options.NoExifOpt.FIXED_DIR;
         MediaItem item = createItem("img_123.jpg", null, System.currentTimeMillis());
 
-        FileMover.Locator locator = new FileMover.Locator(opts, p -> false);
+        FileMover.Locator locator = new FileMover.Locator(opts, onDisk());
         Optional<String> res = locator.resolveDest(item, false);
 
         Assertions.assertTrue(res.isPresent());
@@ -73,7 +86,7 @@ class FileMoverTest {
         Date exif = opts.fileNameFormatter.parse("20200203_112255");
         MediaItem item = createItem("dummy.jpg", exif, System.currentTimeMillis());
 
-        FileMover.Locator locator = new FileMover.Locator(opts, p -> false);
+        FileMover.Locator locator = new FileMover.Locator(opts, onDisk());
         Optional<String> res = locator.resolveDest(item, false);
         assertPath("targetDir/2020/2020_02/20200203_112255.jpg", res.get());
     }
@@ -86,7 +99,7 @@ class FileMoverTest {
         Date exif = opts.fileNameFormatter.parse("20200203_112255");
         MediaItem item = createItem("dummy.jpg", exif, System.currentTimeMillis());
 
-        FileMover.Locator locator = new FileMover.Locator(opts, p -> false);
+        FileMover.Locator locator = new FileMover.Locator(opts, onDisk());
         // duplicate=true must land under the duplicates subtree
         Optional<String> res = locator.resolveDest(item, true);
         assertPath("targetDir/duplicates/2020/2020_02/20200203_112255.jpg", res.get());
@@ -101,8 +114,7 @@ class FileMoverTest {
         Date exif = opts.fileNameFormatter.parse("20200203_112255");
         MediaItem item = createItem("dummy.jpg", exif, System.currentTimeMillis());
 
-        String existingFile = convert("targetDir/2020/2020_02/20200203_112255.jpg");
-        FileMover.Locator locator = new FileMover.Locator(opts, p -> p.toString().equals(existingFile));
+        FileMover.Locator locator = new FileMover.Locator(opts, onDisk("20200203_112255.jpg"));
 
         Optional<String> res = locator.resolveDest(item, false);
         assertPath("targetDir/2020/2020_02/20200203_112255_001.jpg", res.get());
@@ -116,7 +128,7 @@ class FileMoverTest {
         Date exif = opts.fileNameFormatter.parse("20200203_112255");
         MediaItem item = createItem("dummy.jpg", exif, System.currentTimeMillis());
 
-        FileMover.Locator locator = new FileMover.Locator(opts, p -> true);
+        FileMover.Locator locator = new FileMover.Locator(opts, onDisk("20200203_112255.jpg"));
         Assertions.assertThrows(RuntimeException.class, () -> locator.resolveDest(item, false));
     }
 
@@ -129,11 +141,346 @@ class FileMoverTest {
         Date exif = opts.fileNameFormatter.parse("20200203_112255");
         MediaItem item = createItem("dummy.jpg", exif, System.currentTimeMillis());
 
-        FileMover.Locator locator = new FileMover.Locator(opts, p -> true);
+        FileMover.Locator locator = new FileMover.Locator(opts, onDisk("20200203_112255.jpg"));
         Optional<String> res = locator.resolveDest(item, false);
         assertPath("targetDir/2020/2020_02/20200203_112255.jpg", res.get());
     }
 
+    @Test
+    void testNamesClaimedInOneRunAreNotReused() throws Exception {
+        Options opts = createOptions();
+        opts.dirNameFormatter = new SimpleDateFormat("yyyy/yyyy_MM");
+        opts.duplicateOpt = Options.DuplicateOpt.INCREASE;
+
+        Date exif = opts.fileNameFormatter.parse("20200203_112255");
+        FileMover.Locator locator = new FileMover.Locator(opts, onDisk()); // a dry run: nothing on disk
+
+        assertPath("targetDir/2020/2020_02/20200203_112255.jpg",
+                   locator.resolveDest(createItem("a.jpg", exif, 0), false).get());
+        assertPath("targetDir/2020/2020_02/20200203_112255_001.jpg",
+                   locator.resolveDest(createItem("b.jpg", exif, 0), false).get());
+    }
+
+    @Test
+    void testEachDirectoryIsListedOnceAndNamesMatchIgnoringCase() throws Exception {
+        Options opts = createOptions();
+        opts.dirNameFormatter = new SimpleDateFormat("yyyy/yyyy_MM");
+        opts.duplicateOpt = Options.DuplicateOpt.INCREASE;
+
+        Date exif = opts.fileNameFormatter.parse("20200203_112255");
+        List<Path> listed = new ArrayList<>();
+        FileMover.Locator locator = new FileMover.Locator(opts, new NameIndex(dir -> {
+            listed.add(dir);
+            return List.of("20200203_112255.JPG", "20200203_112255_001.jpg", "20200203_112255_003.jpg");
+        }));
+
+        assertPath("targetDir/2020/2020_02/20200203_112255_002.jpg",
+                   locator.resolveDest(createItem("a.jpg", exif, 0), false).get());
+        assertPath("targetDir/2020/2020_02/20200203_112255_004.jpg",
+                   locator.resolveDest(createItem("b.jpg", exif, 0), false).get());
+        assertPath("targetDir/2020/2020_02/20200203_112255.mov",
+                   locator.resolveDest(createItem("c.mov", exif, 0), false).get());
+        Assertions.assertEquals(List.of(Paths.get(convert("targetDir/2020/2020_02"))), listed);
+    }
+
+    @Test
+    void testFiledDirectoryIsForgottenAndListedAgainByTheNextMove(@TempDir Path dir) throws Exception {
+        Options opts = createOptions();
+        opts.dstBaseDir = dir.resolve("dst").toString();
+        opts.dirNameFormatter = new SimpleDateFormat("yyyy");
+        opts.duplicateOpt = Options.DuplicateOpt.INCREASE;
+        opts.dryRun = false;
+        opts.moveFiles = false;
+        List<Path> listed = new ArrayList<>();
+        FileMover mover = new FileMover(opts, new NameIndex(d -> {
+            listed.add(d);
+            try (Stream<Path> entries = Files.list(d)) {
+                return entries.map(p -> p.getFileName().toString()).toList();
+            } catch (IOException e) {
+                return List.of();
+            }
+        }));
+
+        for (int batch = 0; batch < 2; batch++) {
+            Path src = dir.resolve("src/img" + batch + ".jpg");
+            Files.createDirectories(src.getParent());
+            Files.writeString(src, "photo " + batch);
+            MediaItem item = new MediaItem(src, Files.size(src), 0, new Date(1_577_836_800_000L), 0, 0);
+            Assertions.assertEquals(1, mover.move(new DeduplicationResult(List.of(item), List.of()), n -> { }));
+        }
+
+        Path year = dir.resolve("dst/2020");
+        Assertions.assertEquals(List.of(year, year), listed, "listed by each move");
+        Assertions.assertEquals("photo 0", Files.readString(year.resolve("20200101_000000.jpg")));
+        Assertions.assertEquals("photo 1", Files.readString(year.resolve("20200101_000000_001.jpg")));
+    }
+
+    @Test
+    void testParallelFilingNamesFilesAsSerialFilingDoes(@TempDir Path dir) throws Exception {
+        SimpleDateFormat stamp = new SimpleDateFormat("yyyyMMdd_HHmmss");
+        stamp.setTimeZone(TimeZone.getTimeZone("UTC"));
+        List<MediaItem> keepers = new ArrayList<>();
+        List<MediaItem> duplicates = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            Path src = dir.resolve("src/img" + i + ".jpg");
+            Files.createDirectories(src.getParent());
+            Files.writeString(src, "photo " + i);
+            // Six months, five timestamps each: bursts that need _001, _002, ... within a directory.
+            Date exif = stamp.parse(String.format("2020%02d01_1200%02d", 1 + i % 6, i % 5));
+            MediaItem item = new MediaItem(src, Files.size(src), 0, exif, 0, 0);
+            (i % 4 == 0 ? duplicates : keepers).add(item);
+        }
+        DeduplicationResult result = new DeduplicationResult(keepers, duplicates);
+
+        Map<String, String> serial = fileInto(dir.resolve("serial"), 1, Options.Durability.NONE, result);
+        Map<String, String> parallel = fileInto(dir.resolve("parallel"), 4, Options.Durability.NONE, result);
+
+        Assertions.assertEquals(60, serial.size());
+        Assertions.assertEquals(serial, parallel, "same names, same files behind them");
+    }
+
+    @Test
+    void testDurabilityPoliciesFileTheSameTree(@TempDir Path dir) throws Exception {
+        List<MediaItem> keepers = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            Path src = dir.resolve("src/img" + i + ".jpg");
+            Files.createDirectories(src.getParent());
+            Files.writeString(src, "photo " + i);
+            Date exif = new Date(1_577_836_800_000L + (i % 3) * 40L * 86_400_000L);
+            keepers.add(new MediaItem(src, Files.size(src), 0, exif, 0, 0));
+        }
+        DeduplicationResult result = new DeduplicationResult(keepers, List.of());
+
+        Map<String, String> none = fileInto(dir.resolve("none"), 2, Options.Durability.NONE, result);
+        Assertions.assertEquals(12, none.size());
+        for (Options.Durability durability : List.of(Options.Durability.DIRECTORY, Options.Durability.FILE)) {
+            Assertions.assertEquals(none, fileInto(dir.resolve(durability.name()), 2, durability, result),
+                                    durability.name());
+        }
+    }
+
+    /** An index over directories that each hold exactly {@code names}. */
+    private static NameIndex onDisk(String... names) {
+        return new NameIndex(dir -> List.of(names));
+    }
+
+    @Test
+    void testMethodFollowsFileStores(@TempDir Path dir) {
+        Options opts = createOptions();
+        opts.srcDir = dir.toString();
+        opts.dstBaseDir = dir.resolve("not/created/yet").toString();
+        Assertions.assertEquals(FileMover.Method.COPY, FileMover.method(opts));
+
+        opts.moveFiles = true;
+        Assertions.assertEquals(FileMover.Method.RENAME, FileMover.method(opts));
+    }
+
+    @Test
+    void testCrossDeviceMoveDeletesSourcesOnceCopied(@TempDir Path dir) throws Exception {
+        for (Options.Durability durability : Options.Durability.values()) {
+            Path root = dir.resolve(durability.name());
+            List<MediaItem> keepers = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                Path src = root.resolve("src/img" + i + ".jpg");
+                Files.createDirectories(src.getParent());
+                Files.writeString(src, "photo " + i);
+                keepers.add(new MediaItem(src, Files.size(src), 0, new Date(1_577_836_800_000L + i * 1000L), 0, 0));
+            }
+            Options opts = createOptions();
+            opts.dstBaseDir = root.resolve("dst").toString();
+            opts.dirNameFormatter = new SimpleDateFormat("yyyy");
+            opts.dryRun = false;
+            opts.moveFiles = true;
+            opts.fileThreads = 2;
+            opts.durability = durability;
+
+            FileMover mover = new FileMover(opts, new NameIndex(), FileMover.Method.COPY_DELETE);
+            Assertions.assertEquals(6, mover.move(new DeduplicationResult(keepers, List.of()), n -> { }));
+
+            try (Stream<Path> left = Files.list(root.resolve("src"))) {
+                Assertions.assertEquals(0, left.count(), durability.name());
+            }
+            Assertions.assertEquals("photo 5", Files.readString(root.resolve("dst/2020/20200101_000005.jpg")));
+        }
+    }
+
+    @Test
+    void testCrossDeviceMoveKeepsTimesAndPermissions(@TempDir Path dir) throws Exception {
+        Path src = dir.resolve("src/img0.jpg");
+        Files.createDirectories(src.getParent());
+        Files.writeString(src, "photo 0");
+        FileTime modified = FileTime.fromMillis(1_000_000_000_000L);
+        Files.setLastModifiedTime(src, modified);
+        boolean posix = Files.getFileAttributeView(src, PosixFileAttributeView.class) != null;
+        if (posix) {
+            Files.setPosixFilePermissions(src, PosixFilePermissions.fromString("rw-r-----"));
+        }
+        Options opts = createOptions();
+        opts.dstBaseDir = dir.resolve("dst").toString();
+        opts.dirNameFormatter = new SimpleDateFormat("yyyy");
+        opts.dryRun = false;
+        opts.moveFiles = true;
+        MediaItem item = new MediaItem(src, Files.size(src), 0, new Date(1_577_836_800_000L), 0, 0);
+
+        FileMover mover = new FileMover(opts, new NameIndex(), FileMover.Method.COPY_DELETE);
+        Assertions.assertEquals(1, mover.move(new DeduplicationResult(List.of(item), List.of()), n -> { }));
+
+        Path moved = dir.resolve("dst/2020/20200101_000000.jpg");
+        Assertions.assertFalse(Files.exists(src));
+        Assertions.assertEquals(modified, Files.getLastModifiedTime(moved));
+        if (posix) {
+            Assertions.assertEquals(PosixFilePermissions.fromString("rw-r-----"), Files.getPosixFilePermissions(moved));
+        }
+    }
+
+    @Test
+    void testMoveWhoseCopyCannotBeForcedKeepsItsSource(@TempDir Path dir) throws Exception {
+        List<MediaItem> keepers = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            Path src = dir.resolve("src/img" + i + ".jpg");
+            Files.createDirectories(src.getParent());
+            Files.writeString(src, "photo " + i);
+            keepers.add(new MediaItem(src, Files.size(src), 0, new Date(1_577_836_800_000L + i * 1000L), 0, 0));
+        }
+        Options opts = createOptions();
+        opts.dstBaseDir = dir.resolve("dst").toString();
+        opts.dirNameFormatter = new SimpleDateFormat("yyyy");
+        opts.dryRun = false;
+        opts.moveFiles = true;
+        opts.fileThreads = 2;
+        opts.durability = Options.Durability.DIRECTORY;
+        Path lost = dir.resolve("dst/2020/20200101_000002.jpg");
+
+        FileMover mover = new FileMover(opts, new NameIndex(), FileMover.Method.COPY_DELETE);
+        mover.setTransferListener(t -> {
+            if (t.file().endsWith("img2.jpg")) {
+                try {
+                    Files.delete(lost); // unlinked while open: the end-of-batch force cannot reopen it
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        List<MediaItem> filed = new ArrayList<>();
+        Assertions.assertEquals(5, mover.move(new DeduplicationResult(keepers, List.of()), n -> { }, filed::add));
+
+        try (Stream<Path> left = Files.list(dir.resolve("src"))) {
+            Assertions.assertEquals(List.of(dir.resolve("src/img2.jpg")), left.toList());
+        }
+        List<MediaItem> expected = new ArrayList<>(keepers);
+        expected.remove(2);
+        Assertions.assertEquals(expected, filed, "the undone move is not reported as filed");
+        Assertions.assertFalse(Files.exists(lost));
+        Assertions.assertEquals("photo 3", Files.readString(dir.resolve("dst/2020/20200101_000003.jpg")));
+    }
+
+    @Test
+    void testMoveWhoseSourceCannotBeDeletedIsUndone(@TempDir Path dir) throws Exception {
+        for (Options.Durability durability : Options.Durability.values()) {
+            Path root = dir.resolve(durability.name());
+            List<MediaItem> keepers = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                Path src = root.resolve("src/img" + i + ".jpg");
+                Files.createDirectories(src.getParent());
+                Files.writeString(src, "photo " + i);
+                keepers.add(new MediaItem(src, Files.size(src), 0, new Date(1_577_836_800_000L + i * 1000L), 0, 0));
+            }
+            Options opts = createOptions();
+            opts.dstBaseDir = root.resolve("dst").toString();
+            opts.dirNameFormatter = new SimpleDateFormat("yyyy");
+            opts.dryRun = false;
+            opts.moveFiles = true;
+            opts.fileThreads = 2;
+            opts.durability = durability;
+            Path stuck = root.resolve("src/img3.jpg");
+
+            FileMover mover = new FileMover(opts, new NameIndex(), FileMover.Method.COPY_DELETE);
+            mover.setTransferListener(t -> {
+                if (t.file().equals(stuck)) {
+                    try {
+                        Files.delete(stuck); // still read through the open channel
+                        Files.createDirectories(stuck.resolve("child")); // a non-empty directory cannot be deleted
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+            Assertions.assertEquals(5, mover.move(new DeduplicationResult(keepers, List.of()), n -> { }),
+                                    durability.name());
+
+            try (Stream<Path> left = Files.list(root.resolve("src"))) {
+                Assertions.assertEquals(List.of(stuck), left.toList(), durability.name());
+            }
+            Assertions.assertFalse(Files.exists(root.resolve("dst/2020/20200101_000003.jpg")), durability.name());
+            Assertions.assertEquals("photo 4", Files.readString(root.resolve("dst/2020/20200101_000004.jpg")));
+        }
+    }
+
+    @Test
+    void testDirectoryThatCannotBeForcedDoesNotFailLandedFiles(@TempDir Path dir) throws Exception {
+        for (FileMover.Method method : List.of(FileMover.Method.COPY, FileMover.Method.COPY_DELETE)) {
+            for (String failing : List.of("dst", "src")) {
+                Path root = dir.resolve(method + "-" + failing);
+                List<MediaItem> keepers = new ArrayList<>();
+                for (int i = 0; i < 6; i++) {
+                    Path src = root.resolve("src/img" + i + ".jpg");
+                    Files.createDirectories(src.getParent());
+                    Files.writeString(src, "photo " + i);
+                    keepers.add(new MediaItem(src, Files.size(src), 0, new Date(1_577_836_800_000L + i * 1000L), 0, 0));
+                }
+                Options opts = createOptions();
+                opts.dstBaseDir = root.resolve("dst").toString();
+                opts.dirNameFormatter = new SimpleDateFormat("yyyy");
+                opts.dryRun = false;
+                opts.moveFiles = method == FileMover.Method.COPY_DELETE;
+                opts.durability = Options.Durability.FILE;
+                Path broken = root.resolve(failing.equals("dst") ? "dst/2020" : "src");
+                AtomicBoolean fail = new AtomicBoolean();
+
+                FileMover mover = new FileMover(opts, new NameIndex(), method) {
+                    @Override
+                    void syncDirectory(Path d) throws IOException {
+                        if (d.equals(broken) && fail.getAndSet(false)) {
+                            throw new IOException("simulated");
+                        }
+                        super.syncDirectory(d);
+                    }
+                };
+                mover.setTransferListener(t -> fail.set(fail.get() || t.file().endsWith("img2.jpg")));
+                int filed = mover.move(new DeduplicationResult(keepers, List.of()), n -> { });
+
+                String name = method + " with " + failing + " unforced";
+                boolean undone = method == FileMover.Method.COPY_DELETE && failing.equals("dst");
+                Assertions.assertEquals(undone ? 5 : 6, filed, name);
+                Assertions.assertEquals(!undone, Files.exists(root.resolve("dst/2020/20200101_000002.jpg")), name);
+                Assertions.assertEquals(opts.moveFiles && !undone, !Files.exists(root.resolve("src/img2.jpg")), name);
+            }
+        }
+    }
+
+    /** Copies {@code result} into {@code dst} on {@code threads} workers; returns relative path -> content. */
+    private Map<String, String> fileInto(Path dst, int threads, Options.Durability durability,
+                                         DeduplicationResult result) throws Exception {
+        Options opts = createOptions();
+        opts.dstBaseDir = dst.toString();
+        opts.dirNameFormatter = new SimpleDateFormat("yyyy/yyyy_MM");
+        opts.dirNameFormatter.setTimeZone(TimeZone.getTimeZone("UTC"));
+        opts.duplicateOpt = Options.DuplicateOpt.INCREASE;
+        opts.dryRun = false;
+        opts.moveFiles = false;
+        opts.fileThreads = threads;
+        opts.durability = durability;
+
+        Assertions.assertEquals(result.total(), new FileMover(opts).move(result, n -> { }));
+        Map<String, String> filed = new TreeMap<>();
+        try (Stream<Path> files = Files.walk(dst)) {
+            for (Path f : files.filter(Files::isRegularFile).toList()) {
+                filed.put(dst.relativize(f).toString(), Files.readString(f));
+            }
+        }
+        return filed;
+    }
+
     // --- Helpers ---
     private Options createOptions() {
         Options opts = new Options();
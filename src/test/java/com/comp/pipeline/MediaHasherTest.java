@@ -0,0 +1,119 @@
+package com.comp.pipeline;
+
+import com.comp.concurrent.ByteBudget;
+import com.comp.domain.MediaItem;
+import com.comp.domain.ScannedFile;
+import com.comp.media.ContentSignature;
+import com.comp.media.ImageHasher;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import javax.imageio.ImageIO;
+
+class MediaHasherTest {
+
+    private static Path jpeg(Path dir, String name, int size, int seed) throws Exception {
+        BufferedImage img = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                int v = (x * 255 / size + seed * 40) & 0xFF;
+                img.setRGB(x, y, new Color(v, (y * 255 / size) & 0xFF, (x ^ y) & 0xFF).getRGB());
+            }
+        }
+        Path file = dir.resolve(name);
+        ImageIO.write(img, "jpg", file.toFile());
+        return file;
+    }
+
+    private static MediaItem hash(MediaHasher hasher, Path file) throws Exception {
+        return hasher.hash(new ScannedFile(file, Files.size(file), 0));
+    }
+
+    @Test
+    void testBufferedAndMappedReadsHashTheSame(@TempDir Path dir) throws Exception {
+        Path file = jpeg(dir, "a.jpg", 300, 1);
+        byte[] bytes = Files.readAllBytes(file);
+
+        MediaItem buffered = hash(new MediaHasher(ImageHasher.Downscale.JAVA2D, false, 1 << 20), file);
+        MediaItem mapped = hash(new MediaHasher(ImageHasher.Downscale.JAVA2D, false, 0), file);
+
+        Assertions.assertEquals(ImageHasher.fromBytes(bytes), buffered.getPerceptualHash());
+        Assertions.assertEquals(ContentSignature.of(bytes), buffered.getContentSignature());
+        Assertions.assertEquals(buffered.getPerceptualHash(), mapped.getPerceptualHash());
+        Assertions.assertEquals(buffered.getContentSignature(), mapped.getContentSignature());
+    }
+
+    @Test
+    void testReusedBufferOnlyExposesTheCurrentFile(@TempDir Path dir) throws Exception {
+        Path large = jpeg(dir, "large.jpg", 400, 2);
+        Path small = jpeg(dir, "small.jpg", 100, 3);
+        MediaHasher hasher = new MediaHasher(ImageHasher.Downscale.JAVA2D, false, 1 << 20);
+
+        hash(hasher, large);
+        MediaItem second = hash(hasher, small);
+
+        // Leftover bytes from the larger file must not leak into the smaller file's signature.
+        Assertions.assertEquals(ContentSignature.of(Files.readAllBytes(small)), second.getContentSignature());
+        Assertions.assertEquals(ImageHasher.fromBytes(Files.readAllBytes(small)), second.getPerceptualHash());
+    }
+
+    @Test
+    void testCpuGatedHashingMatchesAndReturnsItsPermit(@TempDir Path dir) throws Exception {
+        Path file = jpeg(dir, "a.jpg", 300, 4);
+        Semaphore cpu = new Semaphore(1);
+
+        MediaItem gated = hash(new MediaHasher(ImageHasher.Downscale.JAVA2D, false, 0, new ByteBudget(0), cpu), file);
+
+        Assertions.assertEquals(hash(new MediaHasher(), file).getPerceptualHash(), gated.getPerceptualHash());
+        Assertions.assertEquals(1, cpu.availablePermits(), "the decode permit must be returned");
+    }
+
+    @Test
+    void testReadOnOneThreadAnalyzeOnAnotherMatchesHash(@TempDir Path dir) throws Exception {
+        Path file = jpeg(dir, "a.jpg", 300, 5);
+        ByteBudget budget = new ByteBudget(1 << 20);
+        MediaHasher hasher = new MediaHasher(ImageHasher.Downscale.JAVA2D, false, 1 << 20, budget);
+        ScannedFile scanned = new ScannedFile(file, Files.size(file), 0);
+
+        MediaHasher.Loaded loaded = CompletableFuture.supplyAsync(() -> hasher.read(scanned)).get();
+        // The thread that read it hashes another file before the first is analyzed: the bytes must be detached.
+        hash(hasher, jpeg(dir, "b.jpg", 200, 6));
+        MediaItem staged = CompletableFuture.supplyAsync(() -> hasher.analyze(loaded)).get();
+
+        MediaItem direct = hash(hasher, file);
+        Assertions.assertEquals(direct.getPerceptualHash(), staged.getPerceptualHash());
+        Assertions.assertEquals(direct.getContentSignature(), staged.getContentSignature());
+        Assertions.assertEquals(0, budget.waits(), "analyze must have returned the read's budget");
+    }
+
+    @Test
+    void testFileTruncatedWhileMappedFailsAloneAndIsStillFiled(@TempDir Path dir) throws Exception {
+        Path file = jpeg(dir, "growing.jpg", 300, 7);
+        MediaHasher hasher = new MediaHasher(ImageHasher.Downscale.JAVA2D, false, 0);
+        ScannedFile scanned = new ScannedFile(file, Files.size(file), 0);
+
+        MediaHasher.Loaded loaded = hasher.load(scanned, false);
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ch.truncate(0);
+        }
+        MediaItem item = hasher.analyze(loaded);
+
+        Assertions.assertEquals(file, item.getPath());
+        Assertions.assertEquals(0, item.getPerceptualHash(), "no hash from a file cut short");
+    }
+
+    @Test
+    void testNegativeBudgetIsRejected() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+                                () -> new MediaHasher(ImageHasher.Downscale.JAVA2D, false, -1));
+    }
+}
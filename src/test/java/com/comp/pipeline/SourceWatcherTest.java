@@ -0,0 +1,151 @@
+package com.comp.pipeline;
+
+import com.comp.domain.ScannedFile;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+class SourceWatcherTest {
+
+    private static final Set<String> EXTS = Set.of("jpg");
+
+    /** Runs a watcher on its own thread; batches land in the returned queue. */
+    private static Thread watch(SourceWatcher watcher, BlockingQueue<List<ScannedFile>> batches) {
+        Thread thread = new Thread(() -> {
+            try {
+                watcher.run(batches::add);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    @Test
+    void testNewFilesArriveInOneDebouncedBatch(@TempDir Path root) throws Exception {
+        BlockingQueue<List<ScannedFile>> batches = new LinkedBlockingQueue<>();
+        try (SourceWatcher watcher = new SourceWatcher(root, EXTS, 200)) {
+            Thread thread = watch(watcher, batches);
+            Files.writeString(root.resolve("a.jpg"), "a");
+            Files.writeString(root.resolve("b.JPG"), "bb");
+            Files.writeString(root.resolve("notes.txt"), "ignored");
+
+            List<ScannedFile> batch = batches.poll(10, TimeUnit.SECONDS);
+            thread.interrupt();
+            thread.join(5000);
+
+            Assertions.assertNotNull(batch, "no batch within 10 s");
+            Assertions.assertEquals(Set.of(root.resolve("a.jpg"), root.resolve("b.JPG")),
+                                    Set.copyOf(batch.stream().map(ScannedFile::path).toList()));
+            Assertions.assertFalse(thread.isAlive(), "stops when interrupted");
+        }
+    }
+
+    @Test
+    void testFilesInANewDirectoryAreFound(@TempDir Path root) throws Exception {
+        BlockingQueue<List<ScannedFile>> batches = new LinkedBlockingQueue<>();
+        try (SourceWatcher watcher = new SourceWatcher(root, EXTS, 200)) {
+            Thread thread = watch(watcher, batches);
+            // The file may land before the new directory is registered; it is found either way.
+            Path dir = Files.createDirectories(root.resolve("import/2024"));
+            Files.writeString(dir.resolve("c.jpg"), "c");
+
+            List<ScannedFile> batch = batches.poll(10, TimeUnit.SECONDS);
+            thread.interrupt();
+            thread.join(5000);
+
+            Assertions.assertNotNull(batch, "no batch within 10 s");
+            Assertions.assertEquals(List.of(dir.resolve("c.jpg")), batch.stream().map(ScannedFile::path).toList());
+        }
+    }
+
+    @Test
+    void testUnchangedFileIsNotHandedOverTwice(@TempDir Path root) throws Exception {
+        BlockingQueue<List<ScannedFile>> batches = new LinkedBlockingQueue<>();
+        try (SourceWatcher watcher = new SourceWatcher(root, EXTS, 100)) {
+            Thread thread = watch(watcher, batches);
+            Path file = Files.writeString(root.resolve("a.jpg"), "a");
+            Assertions.assertNotNull(batches.poll(10, TimeUnit.SECONDS));
+
+            Files.setLastModifiedTime(file, Files.getLastModifiedTime(file)); // an event, but no change
+            Files.writeString(root.resolve("b.jpg"), "b");
+            List<ScannedFile> second = batches.poll(10, TimeUnit.SECONDS);
+            thread.interrupt();
+            thread.join(5000);
+
+            Assertions.assertNotNull(second, "no second batch within 10 s");
+            Assertions.assertEquals(List.of(root.resolve("b.jpg")), second.stream().map(ScannedFile::path).toList());
+        }
+    }
+
+    @Test
+    void testStopLetsTheCurrentBatchFinishUninterrupted(@TempDir Path root) throws Exception {
+        CountDownLatch handling = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean finished = new AtomicBoolean();
+        try (SourceWatcher watcher = new SourceWatcher(root, EXTS, 100)) {
+            Thread thread = new Thread(() -> {
+                try {
+                    watcher.run(batch -> {
+                        handling.countDown();
+                        release.await(); // throws if the batch is interrupted
+                        finished.set(true);
+                    });
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            thread.start();
+            Files.writeString(root.resolve("a.jpg"), "a");
+            Assertions.assertTrue(handling.await(10, TimeUnit.SECONDS), "no batch within 10 s");
+
+            watcher.stop();
+            thread.join(300);
+            Assertions.assertTrue(thread.isAlive(), "waits for the batch being handled");
+            release.countDown();
+            thread.join(5000);
+
+            Assertions.assertFalse(thread.isAlive(), "returns once the batch is done");
+            Assertions.assertTrue(finished.get());
+        }
+    }
+
+    @Test
+    void testFilesMovedOutByTheHandlerAreForgotten(@TempDir Path root) throws Exception {
+        BlockingQueue<List<ScannedFile>> batches = new LinkedBlockingQueue<>();
+        try (SourceWatcher watcher = new SourceWatcher(root, EXTS, 100)) {
+            Thread thread = new Thread(() -> {
+                try {
+                    watcher.run(batch -> {
+                        for (ScannedFile file : batch) {
+                            Files.delete(file.path()); // as move mode files them away
+                        }
+                        batches.add(batch);
+                    });
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            thread.start();
+            Files.writeString(root.resolve("a.jpg"), "a");
+            Files.writeString(root.resolve("b.jpg"), "b");
+
+            Assertions.assertNotNull(batches.poll(10, TimeUnit.SECONDS), "no batch within 10 s");
+            thread.interrupt();
+            thread.join(5000);
+
+            Assertions.assertEquals(0, watcher.remembered());
+        }
+    }
+}